@@ -0,0 +1,72 @@
+package cn.ningmo.ai.model;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OpenAI请求体构建基准测试
+ * 与OpenAIModel.generateReply中的写法一致：人设、对话历史、图片和采样参数
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog.level=WARN", "-Dlog.project.level=WARN"})
+public class OpenAIRequestBenchmark {
+
+    // 对话历史条数，与默认的max_conversation_length相近
+    @Param({"20"})
+    public int historySize;
+
+    // 附带的图片数，图片为压缩后约150KB的JPEG
+    @Param({"0", "2"})
+    public int imageCount;
+
+    private String persona;
+    private List<Map<String, String>> conversation;
+    private List<String> images;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        persona = "你是柠枺，一个活泼可爱的群聊助手。回答要简洁，适当使用颜文字。".repeat(10);
+
+        conversation = new ArrayList<>(historySize);
+        for (int i = 0; i < historySize; i++) {
+            // 最后一条是用户消息，图片附加在这条消息上
+            boolean user = (historySize - 1 - i) % 2 == 0;
+            conversation.add(Map.of(
+                "role", user ? "user" : "assistant",
+                "content", user ? "[小李] 第" + i + "个问题：周末去哪里玩比较好？" : "可以去公园散步，或者找家咖啡店坐坐～".repeat(5)));
+        }
+
+        Random random = new Random(42);
+        images = new ArrayList<>(imageCount);
+        for (int i = 0; i < imageCount; i++) {
+            byte[] jpeg = new byte[150 * 1024];
+            random.nextBytes(jpeg);
+            jpeg[0] = (byte) 0xFF;
+            jpeg[1] = (byte) 0xD8;
+            jpeg[2] = (byte) 0xFF;
+            images.add(Base64.getEncoder().encodeToString(jpeg));
+        }
+    }
+
+    @Benchmark
+    public HttpRequest.BodyPublisher buildRequestBody() throws IOException {
+        return ChatRequestWriter.create()
+            .field("model", "gpt-4o-mini")
+            .messages("system", persona, conversation, images, ChatRequestWriter.ImageFormat.OPENAI)
+            .field("temperature", 0.7)
+            .field("max_tokens", 2000)
+            .toBodyPublisher();
+    }
+}
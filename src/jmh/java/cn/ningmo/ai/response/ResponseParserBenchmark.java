@@ -0,0 +1,83 @@
+package cn.ningmo.ai.response;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 模型响应解析基准测试
+ * 响应体按各家接口的实际格式构造，回复内容约一千字
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog.level=WARN", "-Dlog.project.level=WARN"})
+public class ResponseParserBenchmark {
+
+    private String openAIResponse;
+    private String anthropicResponse;
+    private String ollamaResponse;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        String content = "这是模型生成的回复内容，包含换行\n和\"引号\"以及emoji😀。".repeat(30);
+
+        openAIResponse = new JSONObject()
+            .put("id", "chatcmpl-9f8e7d6c5b4a")
+            .put("object", "chat.completion")
+            .put("created", 1718000000L)
+            .put("model", "gpt-4o-mini")
+            .put("choices", new JSONArray().put(new JSONObject()
+                .put("index", 0)
+                .put("message", new JSONObject().put("role", "assistant").put("content", content))
+                .put("finish_reason", "stop")))
+            .put("usage", new JSONObject()
+                .put("prompt_tokens", 1532)
+                .put("completion_tokens", 612)
+                .put("total_tokens", 2144))
+            .toString();
+
+        anthropicResponse = new JSONObject()
+            .put("id", "msg_01XFDUDYJgAACzvnptvVoYEL")
+            .put("type", "message")
+            .put("role", "assistant")
+            .put("model", "claude-3-5-sonnet")
+            .put("content", new JSONArray().put(new JSONObject().put("type", "text").put("text", content)))
+            .put("stop_reason", "end_turn")
+            .put("usage", new JSONObject().put("input_tokens", 1532).put("output_tokens", 612))
+            .toString();
+
+        ollamaResponse = new JSONObject()
+            .put("model", "qwen2:7b")
+            .put("created_at", "2024-06-10T08:00:00.000Z")
+            .put("message", new JSONObject().put("role", "assistant").put("content", content))
+            .put("done", true)
+            .put("total_duration", 4935886791L)
+            .put("eval_count", 612)
+            .toString();
+    }
+
+    @Benchmark
+    public String openAI() {
+        return ResponseParser.parseResponse(openAIResponse, "gpt-4o-mini");
+    }
+
+    @Benchmark
+    public String openAICustomPath() {
+        return ResponseParser.parseResponse(openAIResponse, "gpt-4o-mini", "choices.0.message.content");
+    }
+
+    @Benchmark
+    public String anthropic() {
+        return ResponseParser.parseResponse(anthropicResponse, "claude-3-5-sonnet");
+    }
+
+    @Benchmark
+    public String ollama() {
+        return ResponseParser.parseResponse(ollamaResponse, "qwen2:7b");
+    }
+}
@@ -0,0 +1,106 @@
+package cn.ningmo.bench;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 基准测试结果对比
+ * 读取两份JMH的JSON结果（-rf json），按基准名和参数逐项对比得分，
+ * 变慢超过阈值的项目标记为退化。结果以平均耗时计，数值越小越好
+ *
+ * 用法: BaselineCompare 基线文件 本次结果文件 [阈值百分比，默认10]
+ * 默认只输出报告；加上 -Dbench.failOnRegression=true 时有退化项目则以非0状态退出，供CI拦截
+ */
+public class BaselineCompare {
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.out.println("用法: BaselineCompare <基线文件> <本次结果文件> [阈值百分比]");
+            return;
+        }
+        Path baselineFile = Paths.get(args[0]);
+        Path resultFile = Paths.get(args[1]);
+        double threshold = args.length > 2 ? Double.parseDouble(args[2]) : 10.0;
+
+        if (!Files.exists(baselineFile)) {
+            System.out.println("没有基线文件 " + baselineFile + "，跳过对比。把本次结果复制过去即可作为基线");
+            return;
+        }
+        if (!Files.exists(resultFile)) {
+            System.out.println("没有本次结果文件 " + resultFile);
+            return;
+        }
+
+        Map<String, Score> baseline = readScores(baselineFile);
+        Map<String, Score> current = readScores(resultFile);
+
+        int regressions = 0;
+        System.out.printf("%-70s %14s %14s %9s%n", "基准", "基线", "本次", "变化");
+        for (Map.Entry<String, Score> entry : new TreeMap<>(current).entrySet()) {
+            Score now = entry.getValue();
+            Score before = baseline.get(entry.getKey());
+            if (before == null) {
+                System.out.printf("%-70s %14s %14s %9s%n", entry.getKey(), "-", now.format(), "新增");
+                continue;
+            }
+            if (!before.unit.equals(now.unit)) {
+                System.out.printf("%-70s %14s %14s %9s%n", entry.getKey(), before.format(), now.format(), "单位不同");
+                continue;
+            }
+            double change = (now.value - before.value) / before.value * 100;
+            boolean regressed = change > threshold;
+            if (regressed) {
+                regressions++;
+            }
+            System.out.printf("%-70s %14s %14s %+8.1f%%%s%n", entry.getKey(), before.format(), now.format(),
+                change, regressed ? " 退化" : "");
+        }
+        for (String name : baseline.keySet()) {
+            if (!current.containsKey(name)) {
+                System.out.printf("%-70s %14s %14s %9s%n", name, baseline.get(name).format(), "-", "未运行");
+            }
+        }
+
+        if (regressions > 0) {
+            System.out.printf("%d 项基准比基线慢了 %.0f%% 以上%n", regressions, threshold);
+            if (Boolean.getBoolean("bench.failOnRegression")) {
+                System.exit(1);
+            }
+        } else {
+            System.out.println("没有超过阈值的性能退化");
+        }
+    }
+
+    /**
+     * 读取JMH结果，键为"基准名 {参数}"
+     */
+    static Map<String, Score> readScores(Path file) throws IOException {
+        JSONArray results = new JSONArray(Files.readString(file));
+        Map<String, Score> scores = new LinkedHashMap<>();
+        for (int i = 0; i < results.length(); i++) {
+            JSONObject result = results.getJSONObject(i);
+            String name = result.getString("benchmark").replaceFirst("^cn\\.ningmo\\.", "");
+            JSONObject params = result.optJSONObject("params");
+            if (params != null && !params.isEmpty()) {
+                name += " " + new TreeMap<>(params.toMap());
+            }
+            JSONObject metric = result.getJSONObject("primaryMetric");
+            scores.put(name, new Score(metric.getDouble("score"), metric.getString("scoreUnit")));
+        }
+        return scores;
+    }
+
+    record Score(double value, String unit) {
+        String format() {
+            return String.format("%.3f %s", value, unit);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+package cn.ningmo.bot;
+
+import cn.ningmo.utils.CommonUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 群消息触发检测基准测试
+ * 与handleGroupMessage中的步骤一致：提取纯文本、检测@机器人、匹配机器人名称
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog.level=WARN", "-Dlog.project.level=WARN"})
+public class MessageHandlerBenchmark {
+
+    private static final String SELF_ID = "3436464181";
+
+    // 包含单字昵称，走正则匹配分支
+    private final List<String> nameList = List.of("柠枺", "小柠", "柠");
+
+    private JSONObject atEvent;
+    private JSONObject nameEvent;
+    private JSONObject untriggeredEvent;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        atEvent = groupEvent("[CQ:reply,id=1024][CQ:at,qq=" + SELF_ID + "] 帮我看看这张图[CQ:image,file=abc.jpg,url=https://example.com/abc.jpg]",
+            new JSONArray()
+                .put(segment("reply", "id", "1024"))
+                .put(segment("at", "qq", SELF_ID))
+                .put(segment("text", "text", " 帮我看看这张图"))
+                .put(segment("image", "file", "abc.jpg")));
+        nameEvent = groupEvent("小柠，明天的会议几点开始？",
+            new JSONArray().put(segment("text", "text", "小柠，明天的会议几点开始？")));
+        untriggeredEvent = groupEvent("[CQ:at,qq=10001] 柠檬茶还是奶茶好喝，今晚一起去吃烧烤吗",
+            new JSONArray()
+                .put(segment("at", "qq", "10001"))
+                .put(segment("text", "text", " 柠檬茶还是奶茶好喝，今晚一起去吃烧烤吗")));
+    }
+
+    @Benchmark
+    public boolean atMessage() {
+        return detect(atEvent);
+    }
+
+    @Benchmark
+    public boolean nameMessage() {
+        return detect(nameEvent);
+    }
+
+    @Benchmark
+    public boolean untriggeredMessage() {
+        return detect(untriggeredEvent);
+    }
+
+    private boolean detect(JSONObject event) {
+        String rawMessage = event.optString("raw_message", "");
+        String messageText = CommonUtils.extractTextFromCQCode(rawMessage).trim();
+        boolean isAtBot = MessageHandler.isAtBot(event, rawMessage, SELF_ID);
+        return MessageHandler.matchBotName(messageText, nameList) != null || isAtBot;
+    }
+
+    private static JSONObject groupEvent(String rawMessage, JSONArray message) {
+        return new JSONObject()
+            .put("post_type", "message")
+            .put("message_type", "group")
+            .put("self_id", Long.parseLong(SELF_ID))
+            .put("group_id", 123456789L)
+            .put("user_id", 10002L)
+            .put("raw_message", rawMessage)
+            .put("message", message);
+    }
+
+    private static JSONObject segment(String type, String key, String value) {
+        return new JSONObject().put("type", type).put("data", new JSONObject().put(key, value));
+    }
+}
@@ -0,0 +1,50 @@
+package cn.ningmo.bot;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 长消息分段基准测试
+ * AI回复超过单条消息长度上限时按段落或句子切分
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog.level=WARN", "-Dlog.project.level=WARN"})
+public class OneBotClientBenchmark {
+
+    private String shortReply;
+    private String longReply;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        shortReply = "好的，明天下午三点在二楼会议室开会，记得带上周报。";
+
+        // 约一万字的回复，段落和中英文句子混排
+        StringBuilder builder = new StringBuilder();
+        int paragraph = 0;
+        while (builder.length() < 10000) {
+            builder.append("第").append(++paragraph).append("部分：");
+            for (int i = 0; i < 8; i++) {
+                builder.append("这是一段比较长的说明文字，用来模拟模型生成的详细回答。");
+                builder.append("It also mixes some English sentences! ");
+            }
+            builder.append("\n\n");
+        }
+        longReply = builder.toString();
+    }
+
+    @Benchmark
+    public List<String> shortReply() {
+        return OneBotClient.splitMessage(shortReply);
+    }
+
+    @Benchmark
+    public List<String> longReply() {
+        return OneBotClient.splitMessage(longReply);
+    }
+}
@@ -0,0 +1,63 @@
+package cn.ningmo.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 数据保存基准测试
+ * 切换模型、人设和群开关时都会整体写出data.yml
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog.level=WARN", "-Dlog.project.level=WARN"})
+public class DataManagerBenchmark {
+
+    @Param({"10000"})
+    public int userCount;
+
+    private DataManager dataManager;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ConfigLoader configLoader = new ConfigLoader();
+        configLoader.loadConfig();
+
+        Map<String, Object> users = new HashMap<>();
+        for (int i = 0; i < userCount; i++) {
+            Map<String, Object> user = new HashMap<>();
+            user.put("model", i % 3 == 0 ? "deepseek-chat" : "gpt-3.5-turbo");
+            user.put("persona", i % 5 == 0 ? "猫娘" : "default");
+            user.put("conversation", new HashMap<>());
+            users.put(String.valueOf(100000000L + i), user);
+        }
+        Map<String, Object> groups = new HashMap<>();
+        for (int i = 0; i < userCount / 20; i++) {
+            groups.put(String.valueOf(700000000L + i), Map.of("ai_enabled", i % 2 == 0));
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("users", users);
+        data.put("groups", groups);
+        data.put("private_message_enabled", true);
+        try (Writer writer = new FileWriter("data.yml")) {
+            new Yaml().dump(data, writer);
+        }
+
+        dataManager = new DataManager(configLoader);
+        dataManager.loadData();
+    }
+
+    @Benchmark
+    public void saveData() {
+        dataManager.saveData();
+    }
+}
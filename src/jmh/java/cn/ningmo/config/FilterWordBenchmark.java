@@ -0,0 +1,69 @@
+package cn.ningmo.config;
+
+import org.openjdk.jmh.annotations.*;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 屏蔽词检查基准测试
+ * 每条群消息都要经过一次检查，词表越大耗时越长
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog.level=WARN", "-Dlog.project.level=WARN"})
+public class FilterWordBenchmark {
+
+    @Param({"10", "1000", "10000"})
+    public int wordCount;
+
+    private FilterWordManager filterWordManager;
+
+    // 不含屏蔽词的普通消息，需要检查完整个词表
+    private final String cleanMessage = "[CQ:at,qq=3436464181] 柠枺你好呀，今天天气怎么样？晚上想吃火锅，有什么推荐吗";
+
+    // 命中词表中最后一个词的消息
+    private String hitMessage;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ConfigLoader configLoader = new ConfigLoader();
+        configLoader.loadConfig();
+
+        List<String> words = new ArrayList<>(wordCount);
+        for (int i = 0; i < wordCount; i++) {
+            // 混合普通词和正则词，与实际词表相近；词尾加"号"避免短词是长词的前缀而提前命中
+            words.add(i % 10 == 0 ? "违规词" + i + "[a-z]+" : "屏蔽词" + i + "号");
+        }
+        new File("data").mkdirs();
+        try (Writer writer = new FileWriter("data/filter_words.yml")) {
+            new Yaml().dump(Map.of("filter_words", words), writer);
+        }
+
+        filterWordManager = new FilterWordManager(configLoader);
+        hitMessage = "这句话里有" + words.get(wordCount - 1) + "，应该被拦截";
+        if (!filterWordManager.isFilterEnabled() || !filterWordManager.containsFilterWord(hitMessage)) {
+            throw new IllegalStateException("屏蔽词未生效，请检查基准测试工作目录中的config.yml");
+        }
+    }
+
+    @Benchmark
+    public boolean cleanMessage() {
+        return filterWordManager.containsFilterWord(cleanMessage);
+    }
+
+    @Benchmark
+    public boolean hitMessage() {
+        return filterWordManager.containsFilterWord(hitMessage);
+    }
+}
@@ -0,0 +1,34 @@
+package cn.ningmo.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * CQ码纯文本提取基准测试
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Dlog.level=WARN", "-Dlog.project.level=WARN"})
+public class CommonUtilsBenchmark {
+
+    private final String plainText = "今天的天气真不错，适合出去走走，顺便买杯奶茶";
+
+    private final String cqMessage = "[CQ:reply,id=-2147480123][CQ:at,qq=3436464181] 帮我看看这两张图有什么区别"
+        + "[CQ:image,file=0f3a5c1e2b.image,url=https://multimedia.nt.qq.com.cn/download?appid=1407&amp;fileid=EhQ,subType=0]"
+        + "[CQ:image,file=9b8c7d6e5f.image,url=https://multimedia.nt.qq.com.cn/download?appid=1407&amp;fileid=AbC,subType=0]"
+        + "[CQ:face,id=178]";
+
+    @Benchmark
+    public String plainText() {
+        return CommonUtils.extractTextFromCQCode(plainText);
+    }
+
+    @Benchmark
+    public String cqMessage() {
+        return CommonUtils.extractTextFromCQCode(cqMessage);
+    }
+}
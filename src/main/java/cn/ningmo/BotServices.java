@@ -0,0 +1,178 @@
+package cn.ningmo;
+
+import cn.ningmo.ai.AIService;
+import cn.ningmo.ai.model.ModelManager;
+import cn.ningmo.ai.persona.PersonaManager;
+import cn.ningmo.bot.MessageHandler;
+import cn.ningmo.bot.OneBotClient;
+import cn.ningmo.config.BlacklistManager;
+import cn.ningmo.config.ConfigLoader;
+import cn.ningmo.config.DataManager;
+import cn.ningmo.config.FilterWordManager;
+import cn.ningmo.metrics.JvmMetrics;
+import cn.ningmo.metrics.MetricsRegistry;
+import cn.ningmo.metrics.trace.Tracer;
+import cn.ningmo.utils.ImageProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务组件容器
+ * 按依赖顺序创建机器人的各个服务，每个服务只创建一次，其他组件通过构造参数拿到同一个实例，
+ * 模型的失败计数和冷却状态因此只有一份。
+ * 互不依赖的组件（数据、黑名单、屏蔽词、人设、模型、图片处理）并行初始化，
+ * 依赖它们的AI服务、机器人客户端和消息处理器随后依次创建。关闭时按相反顺序释放。
+ */
+public class BotServices {
+    private static final Logger logger = LoggerFactory.getLogger(BotServices.class);
+
+    private final ConfigLoader configLoader;
+    private final MetricsRegistry metrics;
+    private final Tracer tracer;
+    private final DataManager dataManager;
+    private final BlacklistManager blacklistManager;
+    private final FilterWordManager filterWordManager;
+    private final PersonaManager personaManager;
+    private final ModelManager modelManager;
+    private final ImageProcessor imageProcessor;
+    private final AIService aiService;
+    private final OneBotClient botClient;
+    private final MessageHandler messageHandler;
+
+    /**
+     * @param configLoader 已加载配置的配置加载器
+     */
+    public BotServices(ConfigLoader configLoader) {
+        long startTime = System.nanoTime();
+        this.configLoader = configLoader;
+        this.metrics = new MetricsRegistry();
+        JvmMetrics.register(metrics);
+        this.tracer = new Tracer(configLoader.getConfigInt("monitoring.trace_capacity", 1024));
+
+        // 只依赖配置和指标的组件并行初始化，各自读取自己的文件或创建HTTP客户端
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            Future<DataManager> data = submit(executor, "数据管理器", () -> {
+                DataManager manager = new DataManager(configLoader);
+                manager.loadData();
+                return manager;
+            });
+            Future<BlacklistManager> blacklist = submit(executor, "黑名单管理器", () -> new BlacklistManager(configLoader));
+            Future<FilterWordManager> filterWords = submit(executor, "屏蔽词管理器", () -> new FilterWordManager(configLoader));
+            Future<PersonaManager> personas = submit(executor, "人设管理器", () -> new PersonaManager(configLoader));
+            Future<ModelManager> models = submit(executor, "模型管理器", () -> new ModelManager(configLoader, metrics));
+            Future<ImageProcessor> images = submit(executor, "图片处理器", () -> new ImageProcessor(configLoader, metrics));
+
+            this.dataManager = await(data, "数据管理器");
+            this.blacklistManager = await(blacklist, "黑名单管理器");
+            this.filterWordManager = await(filterWords, "屏蔽词管理器");
+            this.personaManager = await(personas, "人设管理器");
+            this.modelManager = await(models, "模型管理器");
+            this.imageProcessor = await(images, "图片处理器");
+        }
+
+        this.aiService = new AIService(configLoader, dataManager, personaManager, modelManager, metrics, tracer);
+        this.botClient = new OneBotClient(configLoader.getConfigString("bot.ws_url"), configLoader, dataManager,
+            aiService, blacklistManager, filterWordManager);
+        this.messageHandler = new MessageHandler(botClient, configLoader, dataManager, aiService,
+            blacklistManager, filterWordManager, imageProcessor);
+        botClient.setMessageHandler(messageHandler);
+
+        logger.info("服务初始化完成，耗时 {} ms", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
+    private static <T> Future<T> submit(ExecutorService executor, String name, Callable<T> task) {
+        return executor.submit(() -> {
+            long start = System.nanoTime();
+            T result = task.call();
+            logger.debug("{}初始化耗时 {} ms", name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            return result;
+        });
+    }
+
+    private static <T> T await(Future<T> future, String name) {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(name + "初始化失败", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(name + "初始化被中断", e);
+        }
+    }
+
+    public ConfigLoader getConfigLoader() {
+        return configLoader;
+    }
+
+    public MetricsRegistry getMetrics() {
+        return metrics;
+    }
+
+    public Tracer getTracer() {
+        return tracer;
+    }
+
+    public DataManager getDataManager() {
+        return dataManager;
+    }
+
+    public BlacklistManager getBlacklistManager() {
+        return blacklistManager;
+    }
+
+    public FilterWordManager getFilterWordManager() {
+        return filterWordManager;
+    }
+
+    public PersonaManager getPersonaManager() {
+        return personaManager;
+    }
+
+    public ModelManager getModelManager() {
+        return modelManager;
+    }
+
+    public ImageProcessor getImageProcessor() {
+        return imageProcessor;
+    }
+
+    public AIService getAiService() {
+        return aiService;
+    }
+
+    public OneBotClient getBotClient() {
+        return botClient;
+    }
+
+    public MessageHandler getMessageHandler() {
+        return messageHandler;
+    }
+
+    /**
+     * 按创建的相反顺序关闭：先断开连接不再接收消息，再停止消息处理和AI请求，最后释放底层组件
+     * 数据保存由调用方负责
+     */
+    public void shutdown() {
+        closeQuietly("WebSocket客户端", botClient::shutdown);
+        closeQuietly("消息处理器", messageHandler::shutdown);
+        closeQuietly("AI服务", aiService::shutdown);
+        closeQuietly("图片处理器", imageProcessor::shutdown);
+        closeQuietly("人设管理器", personaManager::shutdown);
+    }
+
+    private static void closeQuietly(String name, Runnable action) {
+        try {
+            action.run();
+            logger.info("{}已关闭", name);
+        } catch (Exception e) {
+            logger.error("关闭{}时出错", name, e);
+        }
+    }
+}
@@ -3,7 +3,6 @@ package cn.ningmo;
 import cn.ningmo.ai.AIService;
 import cn.ningmo.ai.model.ModelManager;
 import cn.ningmo.ai.persona.PersonaManager;
-import cn.ningmo.bot.MessageHandler;
 import cn.ningmo.bot.OneBotClient;
 import cn.ningmo.config.BlacklistManager;
 import cn.ningmo.config.ConfigLoader;
@@ -11,28 +10,39 @@ import cn.ningmo.config.DataManager;
 import cn.ningmo.config.FilterWordManager;
 import cn.ningmo.console.ConsoleCommandManager;
 import cn.ningmo.gui.BotGUI;
+import cn.ningmo.gui.DesktopSupport;
+import cn.ningmo.metrics.JvmMetrics;
+import cn.ningmo.metrics.MetricsHttpServer;
+import cn.ningmo.metrics.MetricsRegistry;
+import cn.ningmo.metrics.StartupTimer;
 import cn.ningmo.utils.CommonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.swing.*;
-import java.awt.*;
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryUsage;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.text.SimpleDateFormat;
+import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 public class NingmoAIBot {
+    // 启动各阶段耗时，放在最前面以便从类初始化开始计时
+    private static final StartupTimer startupTimer = new StartupTimer();
     private static final Logger logger = LoggerFactory.getLogger(NingmoAIBot.class);
     
     private ConfigLoader configLoader;
+    private BotServices services;
     private DataManager dataManager;
     private BlacklistManager blacklistManager;
     private FilterWordManager filterWordManager;
@@ -42,6 +52,8 @@ public class NingmoAIBot {
     private PersonaManager personaManager;
     private ConsoleCommandManager consoleCommandManager;
     private BotGUI botGUI;
+    private MetricsRegistry metrics;
+    private MetricsHttpServer metricsServer;
     
     // 自动保存定时器
     private ScheduledExecutorService autoSaveScheduler;
@@ -55,7 +67,16 @@ public class NingmoAIBot {
     // 是否正在进行内存紧急回收
     private final AtomicBoolean emergencyCleanupActive = new AtomicBoolean(false);
     
+    // 无界面模式，不加载AWT/Swing
+    private final boolean headless;
+    
     public static void main(String[] args) {
+        // 无界面模式：不加载AWT/Swing，不创建托盘图标和GUI，适合服务器和容器
+        boolean headless = Arrays.asList(args).contains("--headless");
+        if (headless) {
+            System.setProperty("java.awt.headless", "true");
+        }
+        
         // 设置默认编码为UTF-8，解决乱码问题
         System.setProperty("file.encoding", "UTF-8");
         System.setProperty("sun.jnu.encoding", "UTF-8");
@@ -63,7 +84,7 @@ public class NingmoAIBot {
         System.setProperty("sun.stderr.encoding", "UTF-8");
         
         // 设置全局异常处理
-        setupUncaughtExceptionHandler();
+        setupUncaughtExceptionHandler(headless);
         
         // 确保日志目录存在
         CommonUtils.ensureDirectoryExists("logs");
@@ -73,54 +94,46 @@ public class NingmoAIBot {
         
         // 备份关键文件
         backupConfigFiles();
+        startupTimer.mark("日志初始化和备份");
+        
+        NingmoAIBot bot = new NingmoAIBot(headless);
         
         // 设置系统托盘图标（如果支持）
-        if (SystemTray.isSupported()) {
-            setupSystemTray();
+        if (!headless) {
+            DesktopSupport.installTrayIcon(bot::showGUI, () -> {
+                bot.saveData();
+                System.exit(0);
+            });
         }
         
-        NingmoAIBot bot = new NingmoAIBot();
         bot.start();
+        
+        if (Arrays.asList(args).contains("--cds-training")) {
+            bot.finishCdsTraining();
+        }
+    }
+    
+    public NingmoAIBot() {
+        this(false);
     }
     
     /**
-     * 设置全局未捕获异常处理器
+     * @param headless 是否为无界面模式
      */
-    private static void setupUncaughtExceptionHandler() {
-        Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> {
-            logger.error("未捕获的异常发生在线程: " + thread.getName(), throwable);
-            showErrorDialog("发生未预期的错误: " + throwable.getMessage() + "\n请检查日志了解详情。", throwable);
-        });
+    public NingmoAIBot(boolean headless) {
+        this.headless = headless;
     }
     
     /**
-     * 显示错误对话框
+     * 设置全局未捕获异常处理器
      */
-    private static void showErrorDialog(String message, Throwable throwable) {
-        if (GraphicsEnvironment.isHeadless()) {
-            System.err.println(message);
-            throwable.printStackTrace();
-        } else {
-            SwingUtilities.invokeLater(() -> {
-                StringBuffer detailMessage = new StringBuffer(message + "\n\n");
-                
-                // 添加异常堆栈
-                StackTraceElement[] stackTraces = throwable.getStackTrace();
-                for (int i = 0; i < Math.min(10, stackTraces.length); i++) {
-                    detailMessage.append(stackTraces[i].toString()).append("\n");
-                }
-                if (stackTraces.length > 10) {
-                    detailMessage.append("...(更多堆栈信息请查看日志)");
-                }
-                
-                JOptionPane.showMessageDialog(
-                    null,
-                    detailMessage.toString(),
-                    "程序错误",
-                    JOptionPane.ERROR_MESSAGE
-                );
-            });
-        }
+    private static void setupUncaughtExceptionHandler(boolean headless) {
+        Thread.setDefaultUncaughtExceptionHandler((thread, throwable) -> {
+            logger.error("未捕获的异常发生在线程: " + thread.getName(), throwable);
+            if (!headless) {
+                DesktopSupport.showErrorDialog("发生未预期的错误: " + throwable.getMessage() + "\n请检查日志了解详情。", throwable);
+            }
+        });
     }
     
     /**
@@ -179,97 +192,16 @@ public class NingmoAIBot {
         }
     }
     
-    private static void setupSystemTray() {
-        try {
-            SystemTray tray = SystemTray.getSystemTray();
-            
-            // 创建默认图标
-            Image image = Toolkit.getDefaultToolkit().createImage(NingmoAIBot.class.getResource("/icon.png"));
-            if (image == null) {
-                // 如果找不到图标，使用默认的Java咖啡杯图标
-                image = Toolkit.getDefaultToolkit().createImage(NingmoAIBot.class.getResource("/java.png"));
-                if (image == null) {
-                    logger.warn("无法加载系统托盘图标");
-                    return;
-                }
-            }
-            
-            final NingmoAIBot[] botRef = new NingmoAIBot[1]; // 用于在匿名类中引用bot实例
-            
-            // 创建托盘图标
-            TrayIcon trayIcon = new TrayIcon(image, "柠檬AI机器人");
-            trayIcon.setImageAutoSize(true);
-            
-            // 创建弹出菜单
-            PopupMenu popup = new PopupMenu();
-            
-            // 显示界面
-            MenuItem showItem = new MenuItem("显示界面");
-            showItem.addActionListener(e -> {
-                if (botRef[0] != null && botRef[0].botGUI != null) {
-                    botRef[0].botGUI.show();
-                }
-            });
-            popup.add(showItem);
-            
-            // 退出
-            MenuItem exitItem = new MenuItem("退出");
-            exitItem.addActionListener(e -> {
-                if (botRef[0] != null) {
-                    // 保存数据
-                    if (botRef[0].dataManager != null) {
-                        botRef[0].dataManager.saveData();
-                    }
-                    if (botRef[0].blacklistManager != null) {
-                        botRef[0].blacklistManager.saveBlacklist();
-                    }
-                    if (botRef[0].filterWordManager != null) {
-                        botRef[0].filterWordManager.saveFilterWords();
-                    }
-                }
-                
-                // 退出程序
-                System.exit(0);
-            });
-            popup.add(exitItem);
-            
-            // 设置托盘图标的弹出菜单
-            trayIcon.setPopupMenu(popup);
-            
-            // 双击托盘图标打开界面
-            trayIcon.addActionListener(e -> {
-                if (botRef[0] != null && botRef[0].botGUI != null) {
-                    botRef[0].botGUI.show();
-                }
-            });
-            
-            // 添加托盘图标
-            tray.add(trayIcon);
-            
-            // 设置引用
-            botRef[0] = null; // 将在start()方法中设置
-            
-            // 保存引用，便于后续管理
-            NingmoAIBot.botRef = botRef;
-            NingmoAIBot.trayIcon = trayIcon;
-        } catch (Exception e) {
-            logger.error("设置系统托盘图标失败", e);
-        }
-    }
-    
-    // 保存静态引用，便于后续管理
-    private static NingmoAIBot[] botRef;
-    private static TrayIcon trayIcon;
-    
     public void start() {
         try {
-            logger.info("正在启动柠枺AI机器人...");
+            logger.info("正在启动柠枺AI机器人{}...", headless ? "（无界面模式）" : "");
             
             // 设置系统属性
             setupSystemProperties();
             
             // 确保配置目录存在
             ensureDirectoriesExist();
+            startupTimer.mark("准备");
             
             // 加载配置和初始化服务
             initializeServices();
@@ -279,20 +211,21 @@ public class NingmoAIBot {
             
             // 连接WebSocket
             connectWebSocket();
+            startupTimer.mark("发起连接");
+            
+            // 启动监控HTTP服务（如果启用）
+            startMetricsServer();
+            startupTimer.mark("监控服务");
             
             // 启动GUI界面（如果启用）
             startGUI();
+            startupTimer.mark(headless ? "控制台" : "界面");
             
             // 注册关闭钩子
             registerShutdownHook();
             
-            // 更新系统托盘引用
-            if (botRef != null) {
-                botRef[0] = this;
-            }
-            
             // 应用启动完成
-            logger.info("柠枺AI机器人已启动");
+            logger.info("柠枺AI机器人已启动，启动耗时: {}", startupTimer.summary());
             
         } catch (Exception e) {
             logger.error("启动失败", e);
@@ -345,53 +278,22 @@ public class NingmoAIBot {
             // 先初始化配置加载器
             configLoader = new ConfigLoader();
             configLoader.loadConfig();
+            // 修改config.yml后自动重新加载
+            configLoader.startWatching();
             logger.info("配置加载完成");
-            
-            // 初始化数据管理器
-            dataManager = new DataManager(configLoader);
-            dataManager.loadData();
-            
-            // 初始化黑名单和屏蔽词管理器
-            blacklistManager = new BlacklistManager(configLoader);
-            // 黑名单管理器在构造函数中会自动加载黑名单数据
-            
-            filterWordManager = new FilterWordManager(configLoader);
-            // 屏蔽词管理器在构造函数中会自动加载屏蔽词数据
-            
-            // 初始化AI服务
-            aiService = new AIService(configLoader, dataManager);
-            
-            // 初始化模型和人设管理器
-            modelManager = new ModelManager(configLoader);
-            personaManager = new PersonaManager(configLoader);
-            
-            // 设置AI服务的依赖
-            aiService.setModelManager(modelManager);
-            aiService.setPersonaManager(personaManager);
-
-            // 初始化机器人客户端
-            botClient = new OneBotClient(
-                configLoader.getConfigString("bot.ws_url"),
-                configLoader,
-                dataManager,
-                blacklistManager,
-                filterWordManager
-            );
-            
-            // 初始化消息处理器
-            MessageHandler messageHandler = new MessageHandler(
-                botClient,
-                configLoader,
-                dataManager,
-                aiService,
-                blacklistManager,
-                filterWordManager
-            );
-            messageHandler.setModelManager(modelManager);
-            messageHandler.setPersonaManager(personaManager);
-            
-            // 设置机器人客户端的消息处理器
-            botClient.setMessageHandler(messageHandler);
+            startupTimer.mark("配置加载");
+            
+            // 所有服务由容器按依赖顺序各创建一次
+            services = new BotServices(configLoader);
+            dataManager = services.getDataManager();
+            blacklistManager = services.getBlacklistManager();
+            filterWordManager = services.getFilterWordManager();
+            metrics = services.getMetrics();
+            modelManager = services.getModelManager();
+            personaManager = services.getPersonaManager();
+            aiService = services.getAiService();
+            botClient = services.getBotClient();
+            startupTimer.mark("服务初始化");
             
             // 初始化控制台命令管理器
             consoleCommandManager = new ConsoleCommandManager(
@@ -404,8 +306,6 @@ public class NingmoAIBot {
                 modelManager,
                 personaManager
             );
-            
-            logger.info("服务初始化完成");
         } catch (Exception e) {
             logger.error("服务初始化失败", e);
             throw new RuntimeException("服务初始化失败", e);
@@ -417,7 +317,13 @@ public class NingmoAIBot {
      */
     private void connectWebSocket() {
         try {
-            // 连接WebSocket
+            // 连接WebSocket，连接是异步的，首次连接成功时记录从进程启动起的总耗时
+            // 模型实例在首次使用时才创建，连接成功后在后台预热默认模型，不拖慢连接也不拖慢第一次回复
+            botClient.getFirstConnect().thenRun(() -> {
+                logger.info("WebSocket首次连接成功，距进程启动 {} ms", startupTimer.sinceProcessStartMillis());
+                Thread.ofVirtual().name("model-warm-up").start(() ->
+                    modelManager.warmUp(configLoader.getConfigString("ai.default_model", "")));
+            });
             botClient.connect();
             logger.info("WebSocket客户端已连接");
         } catch (Exception e) {
@@ -426,12 +332,50 @@ public class NingmoAIBot {
         }
     }
     
+    /**
+     * 启动监控HTTP服务，提供/metrics和/health
+     * 启动失败只记录错误，不影响机器人运行
+     */
+    private void startMetricsServer() {
+        if (!configLoader.getConfigBoolean("monitoring.http.enabled", false)) {
+            return;
+        }
+        String host = configLoader.getConfigString("monitoring.http.host", "127.0.0.1");
+        int port = configLoader.getConfigInt("monitoring.http.port", 9464);
+        try {
+            metricsServer = new MetricsHttpServer(metrics, this::checkHealth, host, port);
+            metricsServer.start();
+        } catch (IOException e) {
+            logger.error("启动监控HTTP服务失败: {}:{}", host, port, e);
+        }
+    }
+    
+    /**
+     * 健康检查：WebSocket已连接且至少有一个模型不在冷却期
+     */
+    private MetricsHttpServer.Health checkHealth() {
+        boolean connected = botClient != null && botClient.isOpen();
+        Map<String, Object> modelStates = new LinkedHashMap<>();
+        boolean anyModelAvailable = false;
+        for (String modelName : modelManager.listModels()) {
+            boolean open = modelManager.isCircuitOpen(modelName);
+            modelStates.put(modelName, open ? "cooldown" : "available");
+            anyModelAvailable |= !open;
+        }
+        
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("websocket", connected ? "connected" : "disconnected");
+        details.put("models", modelStates);
+        details.put("uptime_seconds", getUptime() / 1000);
+        return new MetricsHttpServer.Health(connected && anyModelAvailable, details);
+    }
+    
     /**
      * 启动GUI界面
      */
     private void startGUI() {
-        // 判断是否启用GUI
-        boolean enableGUI = configLoader.getConfigBoolean("gui.enabled");
+        // 判断是否启用GUI，无界面模式下忽略配置
+        boolean enableGUI = !headless && configLoader.getConfigBoolean("gui.enabled");
         
         if (enableGUI) {
             // 创建并启动GUI
@@ -484,6 +428,11 @@ public class NingmoAIBot {
             }
         }
         
+        // 停止监听配置文件
+        if (configLoader != null) {
+            configLoader.stopWatching();
+        }
+        
         // 保存屏蔽词
         if (filterWordManager != null) {
             try {
@@ -494,34 +443,19 @@ public class NingmoAIBot {
             }
         }
         
-        // 关闭AI服务
-        if (aiService != null) {
-            try {
-                aiService.shutdown();
-                logger.info("AI服务已关闭");
-            } catch (Exception e) {
-                logger.error("关闭AI服务时出错", e);
-            }
-        }
-        
-        // 关闭消息处理器
+        // 关闭控制台命令管理器
         if (consoleCommandManager != null) {
             try {
                 consoleCommandManager.shutdown();
-                logger.info("消息处理器已关闭");
+                logger.info("控制台命令管理器已关闭");
             } catch (Exception e) {
-                logger.error("关闭消息处理器时出错", e);
+                logger.error("关闭控制台命令管理器时出错", e);
             }
         }
         
-        // 关闭WebSocket客户端
-        if (botClient != null) {
-            try {
-                botClient.close();
-                logger.info("WebSocket客户端已关闭");
-            } catch (Exception e) {
-                logger.error("关闭WebSocket客户端时出错", e);
-            }
+        // 关闭WebSocket客户端、消息处理器、AI服务等
+        if (services != null) {
+            services.shutdown();
         }
         
         // 关闭GUI界面
@@ -534,6 +468,15 @@ public class NingmoAIBot {
             }
         }
         
+        // 关闭监控HTTP服务
+        if (metricsServer != null) {
+            try {
+                metricsServer.stop();
+            } catch (Exception e) {
+                logger.error("关闭监控HTTP服务时出错", e);
+            }
+        }
+        
         // 关闭内存监控
         if (memoryMonitor != null) {
             try {
@@ -545,6 +488,38 @@ public class NingmoAIBot {
         }
     }
     
+    /**
+     * 生成AppCDS归档的训练运行：启动完成后等待首次连接（最多3秒）并预热所有模型，然后退出，
+     * JVM退出时把期间加载的类写入-XX:ArchiveClassesAtExit指定的归档文件
+     */
+    private void finishCdsTraining() {
+        try {
+            botClient.getFirstConnect().get(3, TimeUnit.SECONDS);
+        } catch (Exception e) {
+            logger.info("训练运行中未连接到OneBot，继续生成归档");
+        }
+        for (String modelName : modelManager.listModels()) {
+            modelManager.warmUp(modelName);
+        }
+        logger.info("AppCDS训练运行结束，启动耗时: {}", startupTimer.summary());
+        System.exit(0);
+    }
+    
+    /**
+     * 保存数据、黑名单和屏蔽词
+     */
+    private void saveData() {
+        if (dataManager != null) {
+            dataManager.saveData();
+        }
+        if (blacklistManager != null) {
+            blacklistManager.saveBlacklist();
+        }
+        if (filterWordManager != null) {
+            filterWordManager.saveFilterWords();
+        }
+    }
+    
     /**
      * 显示GUI界面
      */
@@ -588,15 +563,14 @@ public class NingmoAIBot {
      * 监控内存使用情况
      */
     private void monitorMemory() {
-        Runtime runtime = Runtime.getRuntime();
-        long maxMemory = runtime.maxMemory() / (1024 * 1024);
-        long totalMemory = runtime.totalMemory() / (1024 * 1024);
-        long freeMemory = runtime.freeMemory() / (1024 * 1024);
-        long usedMemory = totalMemory - freeMemory;
+        // 与/metrics中的jvm_memory_*指标使用同一数据来源
+        MemoryUsage heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long maxMemory = (heap.getMax() > 0 ? heap.getMax() : heap.getCommitted()) / (1024 * 1024);
+        long usedMemory = heap.getUsed() / (1024 * 1024);
         long availableMemory = maxMemory - usedMemory;
         
         // 计算内存使用百分比
-        double memoryUsagePercent = ((double) usedMemory / maxMemory) * 100;
+        double memoryUsagePercent = JvmMetrics.heapUsagePercent();
         
         logger.debug("内存使用情况: 已用 {}MB / 最大 {}MB ({}%)", 
                    usedMemory, maxMemory, String.format("%.1f", memoryUsagePercent));
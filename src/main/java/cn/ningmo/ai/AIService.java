@@ -4,6 +4,10 @@ import cn.ningmo.ai.model.ModelManager;
 import cn.ningmo.ai.persona.PersonaManager;
 import cn.ningmo.config.ConfigLoader;
 import cn.ningmo.config.DataManager;
+import cn.ningmo.metrics.Histogram;
+import cn.ningmo.metrics.MetricsRegistry;
+import cn.ningmo.metrics.trace.TraceContext;
+import cn.ningmo.metrics.trace.Tracer;
 import cn.ningmo.utils.CommonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -22,8 +26,12 @@ public class AIService {
     
     private final ConfigLoader configLoader;
     private final DataManager dataManager;
-    private ModelManager modelManager;
-    private PersonaManager personaManager;
+    private final ModelManager modelManager;
+    private final PersonaManager personaManager;
+    private final MetricsRegistry metrics;
+    // 请求在线程池中排队等待的时间
+    private final Histogram queueWait;
+    private final Tracer tracer;
     
     // 对话历史缓存，使用ConcurrentHashMap保证线程安全
     private final Map<String, List<Map<String, String>>> conversations = new ConcurrentHashMap<>();
@@ -41,14 +49,15 @@ public class AIService {
     // 执行AI请求的线程池，使用有界队列避免积压过多请求
     private final ExecutorService aiExecutor;
     
-    // 限制每个用户的请求频率（毫秒）
-    private final long minRequestInterval;
-    
-    public AIService(ConfigLoader configLoader, DataManager dataManager) {
+    public AIService(ConfigLoader configLoader, DataManager dataManager, PersonaManager personaManager,
+                     ModelManager modelManager, MetricsRegistry metrics, Tracer tracer) {
         this.configLoader = configLoader;
         this.dataManager = dataManager;
-        this.modelManager = new ModelManager(configLoader);
-        this.personaManager = new PersonaManager(configLoader);
+        this.metrics = metrics;
+        this.tracer = tracer;
+        this.queueWait = metrics.histogram("ningmo_ai_queue_wait_seconds");
+        this.modelManager = modelManager;
+        this.personaManager = personaManager;
         
         // 创建AI执行线程池，避免过多线程争抢资源
         int corePoolSize = Math.max(2, Runtime.getRuntime().availableProcessors() / 2);
@@ -63,11 +72,13 @@ public class AIService {
             },
             new ThreadPoolExecutor.CallerRunsPolicy() // 队列满时，在调用线程执行
         );
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) aiExecutor;
+        metrics.gauge("ningmo_ai_queue_depth", () -> pool.getQueue().size());
+        metrics.gauge("ningmo_ai_active_workers", pool::getActiveCount);
+        metrics.gauge("ningmo_conversations", conversations::size);
         
-        // 设置最小请求间隔，默认500毫秒，防止用户过于频繁请求
-        this.minRequestInterval = configLoader.getConfig("ai.min_request_interval", 500L);
-        
-        logger.info("AI服务初始化完成，工作线程数: {}, 最小请求间隔: {}ms", corePoolSize, minRequestInterval);
+        logger.info("AI服务初始化完成，工作线程数: {}, 最小请求间隔: {}ms",
+                  corePoolSize, configLoader.snapshot().minRequestInterval());
         
         // 定期清理缓存
         startCacheCleanupScheduler();
@@ -91,6 +102,18 @@ public class AIService {
      * @return AI回复
      */
     public String chat(String userId, String message, List<String> imageBase64List) {
+        return chat(userId, message, imageBase64List, null);
+    }
+    
+    /**
+     * 处理AI聊天请求（支持图片和附加上下文）
+     * @param userId 用户ID
+     * @param message 消息内容
+     * @param imageBase64List 图片base64编码列表
+     * @param contextBlock 附加上下文（如群成员信息），只随本次请求发送，不写入对话历史
+     * @return AI回复
+     */
+    public String chat(String userId, String message, List<String> imageBase64List, String contextBlock) {
         // 频率限制检查
         if (!checkRequestLimit(userId)) {
             logger.debug("用户{}请求过于频繁", userId);
@@ -113,19 +136,22 @@ public class AIService {
         }
         
         // 创建新的异步请求
-        CompletableFuture<String> future = CompletableFuture.supplyAsync(() -> {
+        long submittedAt = System.nanoTime();
+        CompletableFuture<String> future = CompletableFuture.supplyAsync(TraceContext.wrap(() -> {
+            queueWait.recordNanos(System.nanoTime() - submittedAt);
+            TraceContext.record("ai_queue", submittedAt, null);
             try {
                 // 获取用户设置的个性化模型和人设
                 String modelName = dataManager.getUserModel(userId);
                 String persona = dataManager.getUserPersona(userId);
                 
                 // 获取AI回复
-                return generateAIReply(userId, message, modelName, persona, imageBase64List);
+                return generateAIReply(userId, message, modelName, persona, imageBase64List, contextBlock);
             } catch (Exception e) {
                 logger.error("生成AI回复时出错", e);
                 return "AI服务暂时出现问题，请稍后再试。错误：" + e.getMessage();
             }
-        }, aiExecutor);
+        }), aiExecutor);
         
         // 缓存请求
         pendingRequests.put(requestKey, future);
@@ -163,13 +189,14 @@ public class AIService {
      * 生成AI回复
      */
     private String generateAIReply(String userId, String message, String modelName, String persona) {
-        return generateAIReply(userId, message, modelName, persona, new ArrayList<>());
+        return generateAIReply(userId, message, modelName, persona, new ArrayList<>(), null);
     }
     
     /**
      * 生成AI回复（支持图片）
      */
-    private String generateAIReply(String userId, String message, String modelName, String persona, List<String> imageBase64List) {
+    private String generateAIReply(String userId, String message, String modelName, String persona,
+                                   List<String> imageBase64List, String contextBlock) {
         // 获取对话历史
         List<Map<String, String>> conversation = getOrCreateConversation(userId);
         
@@ -180,13 +207,20 @@ public class AIService {
         conversation.add(userMessage);
         
         // 获取系统提示（人设）
-        String systemPrompt = personaManager.getPersonaPrompt(persona);
+        PersonaManager.Persona personaInfo = personaManager.getPersona(persona);
+        String systemPrompt = personaInfo.prompt();
+        logger.debug("使用人设[{}]，约{} tokens，缓存键: {}", personaInfo.name(), personaInfo.tokenEstimate(), personaInfo.cacheKey());
         if (systemPrompt == null || systemPrompt.isEmpty()) {
             systemPrompt = "你是一个友好、有帮助的AI助手。请用中文回答问题。";
         }
         
+        // 附加上下文跟在人设之后发送，不进入对话历史，避免每轮都重复累积
+        if (contextBlock != null && !contextBlock.isEmpty()) {
+            systemPrompt = systemPrompt + "\n\n" + contextBlock;
+        }
+        
         // 获取人设配置：是否作为系统提示词
-        boolean personaAsSystemPrompt = configLoader.getConfig("ai.persona.as_system_prompt", true);
+        boolean personaAsSystemPrompt = configLoader.snapshot().personaAsSystemPrompt();
         
         // 生成AI回复
         long startTime = System.currentTimeMillis();
@@ -201,7 +235,7 @@ public class AIService {
         conversation.add(assistantMessage);
         
         // 裁剪对话历史，保持在配置的长度以内
-        int maxConversationLength = configLoader.getConfig("ai.max_conversation_length", 20);
+        int maxConversationLength = configLoader.snapshot().maxConversationLength();
         while (conversation.size() > maxConversationLength) {
             conversation.remove(0);
         }
@@ -241,7 +275,7 @@ public class AIService {
         parts.removeIf(String::isEmpty);
         
         // 限制最大段数，避免消息洪水
-        int maxParts = configLoader.getConfig("bot.messages.max_consecutive", 3);
+        int maxParts = configLoader.snapshot().maxConsecutiveMessages();
         if (maxParts > 0 && parts.size() > maxParts) {
             return parts.subList(0, maxParts);
         }
@@ -306,7 +340,8 @@ public class AIService {
         Long lastRequestTime = userLastRequestTime.get(userId);
         
         if (lastRequestTime != null) {
-            if (now - lastRequestTime < minRequestInterval) {
+            // 限制每个用户的请求频率（毫秒），默认500毫秒
+            if (now - lastRequestTime < configLoader.snapshot().minRequestInterval()) {
                 return false;
             }
         }
@@ -370,25 +405,26 @@ public class AIService {
     }
     
     /**
-     * 设置模型管理器
+     * 获取指标注册表，全局只有一个实例
      */
-    public void setModelManager(ModelManager modelManager) {
-        this.modelManager = modelManager;
+    public MetricsRegistry getMetrics() {
+        return metrics;
     }
     
     /**
-     * 获取人设管理器
+     * 获取追踪记录，全局只有一个实例
      */
-    public PersonaManager getPersonaManager() {
-        return personaManager;
+    public Tracer getTracer() {
+        return tracer;
     }
     
     /**
-     * 设置人设管理器
+     * 获取人设管理器
      */
-    public void setPersonaManager(PersonaManager personaManager) {
-        this.personaManager = personaManager;
+    public PersonaManager getPersonaManager() {
+        return personaManager;
     }
+
     
     /**
      * 关闭资源
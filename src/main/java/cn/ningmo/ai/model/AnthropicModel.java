@@ -1,13 +1,12 @@
 package cn.ningmo.ai.model;
 
-import cn.ningmo.ai.response.ResponseParser;
+import cn.ningmo.ai.response.ResponseExtractor;
 import cn.ningmo.config.ConfigLoader;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -24,6 +23,7 @@ public class AnthropicModel implements AIModel {
     private final String description;
     private final ConfigLoader configLoader;
     private final Map<String, Object> modelConfig;
+    private final ResponseExtractor responseExtractor;
     
     private static final HttpClient httpClient = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(30))
@@ -34,6 +34,7 @@ public class AnthropicModel implements AIModel {
         this.name = name;
         this.modelConfig = modelConfig;
         this.description = (String) modelConfig.getOrDefault("description", "Claude AI Assistant");
+        this.responseExtractor = ResponseExtractor.forPath("Anthropic", ResponseExtractor.ANTHROPIC_CONTENT_PATH);
     }
     
     @Override
@@ -47,7 +48,7 @@ public class AnthropicModel implements AIModel {
             String apiKey = getApiKey();
             String apiBaseUrl = getApiBaseUrl();
             
-            JSONObject requestBody = buildRequestBody(systemPrompt, conversation, personaAsSystemPrompt, imageBase64List);
+            ChatRequestWriter requestBody = buildRequestBody(systemPrompt, conversation, personaAsSystemPrompt, imageBase64List);
             
             String endpoint = apiBaseUrl + "/v1/messages";
             HttpRequest request = HttpRequest.newBuilder()
@@ -55,15 +56,15 @@ public class AnthropicModel implements AIModel {
                     .header("Content-Type", "application/json")
                     .header("x-api-key", apiKey)
                     .header("anthropic-version", "2023-06-01")
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
+                    .POST(requestBody.toBodyPublisher())
                     .build();
             
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
             
             if (response.statusCode() == 200) {
-                return ResponseParser.parseResponse(response.body(), "Anthropic");
+                return responseExtractor.extract(response.body());
             } else {
-                logger.error("Claude API调用失败: {}, 状态码: {}", response.body(), response.statusCode());
+                logger.error("Claude API调用失败: {}, 状态码: {}", ResponseExtractor.readBody(response.body()), response.statusCode());
                 return "抱歉，AI响应出错，请稍后再试。错误代码: " + response.statusCode();
             }
         } catch (IOException | InterruptedException e) {
@@ -72,126 +73,26 @@ public class AnthropicModel implements AIModel {
         }
     }
     
-    private JSONObject buildRequestBody(String systemPrompt, List<Map<String, String>> conversation, boolean personaAsSystemPrompt, List<String> imageBase64List) {
-        JSONObject requestBody = new JSONObject();
-        
+    private ChatRequestWriter buildRequestBody(String systemPrompt, List<Map<String, String>> conversation, boolean personaAsSystemPrompt, List<String> imageBase64List) throws IOException {
         // 设置模型名称，例如 "claude-3-opus-20240229"
-        requestBody.put("model", name);
+        ChatRequestWriter requestBody = ChatRequestWriter.create().field("model", name);
         
         // 根据配置决定如何处理人设
         if (personaAsSystemPrompt) {
             // 人设作为系统提示词
-            requestBody.put("system", systemPrompt);
-            
-            // 构建消息数组
-            JSONArray messages = new JSONArray();
-            for (Map<String, String> message : conversation) {
-                JSONObject jsonMessage = new JSONObject();
-                jsonMessage.put("role", message.get("role"));
-                
-                // 检查是否是最后一条用户消息且包含图片
-                boolean isLastUserMessage = message.get("role").equals("user") && 
-                                          conversation.indexOf(message) == conversation.size() - 1;
-                
-                if (isLastUserMessage && !imageBase64List.isEmpty()) {
-                    // 构建包含图片的内容
-                    JSONArray contentArray = new JSONArray();
-                    
-                    // 添加文本内容
-                    JSONObject textContent = new JSONObject();
-                    textContent.put("type", "text");
-                    textContent.put("text", message.get("content"));
-                    contentArray.put(textContent);
-                    
-                    // 添加图片内容
-                    for (String imageBase64 : imageBase64List) {
-                        JSONObject imageContent = new JSONObject();
-                        imageContent.put("type", "image");
-                        
-                        JSONObject imageSource = new JSONObject();
-                        imageSource.put("type", "base64");
-                        imageSource.put("media_type", "image/jpeg");
-                        imageSource.put("data", imageBase64);
-                        imageContent.put("source", imageSource);
-                        
-                        contentArray.put(imageContent);
-                    }
-                    
-                    jsonMessage.put("content", contentArray);
-                } else {
-                    jsonMessage.put("content", message.get("content"));
-                }
-                
-                messages.put(jsonMessage);
-            }
-            requestBody.put("messages", messages);
+            requestBody.field("system", systemPrompt)
+                    .messages(null, null, conversation, imageBase64List, ChatRequestWriter.ImageFormat.ANTHROPIC);
         } else {
-            // 人设作为对话历史的一部分
-            // 构建消息数组，将人设作为第一条用户消息
-            JSONArray messages = new JSONArray();
-            
-            // 添加人设作为第一条用户消息
-            JSONObject personaMessage = new JSONObject();
-            personaMessage.put("role", "user");
-            personaMessage.put("content", systemPrompt);
-            messages.put(personaMessage);
-            
-            // 添加对话历史
-            for (Map<String, String> message : conversation) {
-                JSONObject jsonMessage = new JSONObject();
-                jsonMessage.put("role", message.get("role"));
-                
-                // 检查是否是最后一条用户消息且包含图片
-                boolean isLastUserMessage = message.get("role").equals("user") && 
-                                          conversation.indexOf(message) == conversation.size() - 1;
-                
-                if (isLastUserMessage && !imageBase64List.isEmpty()) {
-                    // 构建包含图片的内容
-                    JSONArray contentArray = new JSONArray();
-                    
-                    // 添加文本内容
-                    JSONObject textContent = new JSONObject();
-                    textContent.put("type", "text");
-                    textContent.put("text", message.get("content"));
-                    contentArray.put(textContent);
-                    
-                    // 添加图片内容
-                    for (String imageBase64 : imageBase64List) {
-                        JSONObject imageContent = new JSONObject();
-                        imageContent.put("type", "image");
-                        
-                        JSONObject imageSource = new JSONObject();
-                        imageSource.put("type", "base64");
-                        imageSource.put("media_type", "image/jpeg");
-                        imageSource.put("data", imageBase64);
-                        imageContent.put("source", imageSource);
-                        
-                        contentArray.put(imageContent);
-                    }
-                    
-                    jsonMessage.put("content", contentArray);
-                } else {
-                    jsonMessage.put("content", message.get("content"));
-                }
-                
-                messages.put(jsonMessage);
-            }
-            requestBody.put("messages", messages);
+            // 人设作为对话历史的一部分，作为第一条用户消息
+            requestBody.messages("user", systemPrompt, conversation, imageBase64List, ChatRequestWriter.ImageFormat.ANTHROPIC);
         }
         
-        // 设置温度参数
-        double temperature = getTemperature();
-        requestBody.put("temperature", temperature);
-        
-        // 设置最大tokens
-        int maxTokens = getMaxTokens();
-        requestBody.put("max_tokens", maxTokens);
-        
-        return requestBody;
+        // 设置温度参数和最大tokens
+        return requestBody
+                .field("temperature", getTemperature())
+                .field("max_tokens", getMaxTokens());
     }
     
-
-    
     private String getApiKey() {
         String apiKey = (String) modelConfig.getOrDefault("api_key", "");
         if (apiKey.isEmpty()) {
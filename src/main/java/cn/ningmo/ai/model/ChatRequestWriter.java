@@ -0,0 +1,236 @@
+package cn.ningmo.ai.model;
+
+import cn.ningmo.utils.ImageNormalizer;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.http.HttpRequest;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 聊天请求体写入器
+ * 使用Jackson流式API直接把请求体写入字节缓冲区，不构建中间JSON树，
+ * 图片base64只按原样写出一次，写完后直接作为BodyPublisher发送
+ */
+public final class ChatRequestWriter {
+    // 共享ObjectMapper仅用于写出配置模板中的任意值
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    // 初始缓冲区大小，普通文本对话基本不需要扩容
+    private static final int INITIAL_BUFFER_SIZE = 4096;
+
+    /**
+     * 图片内容的写出格式
+     */
+    public enum ImageFormat {
+        // OpenAI兼容格式: {"type":"image_url","image_url":{"url":"data:...;base64,..."}}
+        OPENAI,
+        // Anthropic格式: {"type":"image","source":{"type":"base64","media_type":...,"data":...}}
+        ANTHROPIC
+    }
+
+    private final BodyBuffer buffer;
+    private final JsonGenerator generator;
+    private boolean finished;
+
+    private ChatRequestWriter() throws IOException {
+        this.buffer = new BodyBuffer(INITIAL_BUFFER_SIZE);
+        this.generator = objectMapper.getFactory().createGenerator(buffer, JsonEncoding.UTF8);
+        this.generator.writeStartObject();
+    }
+
+    /**
+     * 开始写一个新的请求体（已写出最外层的左花括号）
+     */
+    public static ChatRequestWriter create() throws IOException {
+        return new ChatRequestWriter();
+    }
+
+    public ChatRequestWriter field(String name, String value) throws IOException {
+        generator.writeStringField(name, value);
+        return this;
+    }
+
+    public ChatRequestWriter field(String name, double value) throws IOException {
+        generator.writeNumberField(name, value);
+        return this;
+    }
+
+    public ChatRequestWriter field(String name, int value) throws IOException {
+        generator.writeNumberField(name, value);
+        return this;
+    }
+
+    public ChatRequestWriter field(String name, boolean value) throws IOException {
+        generator.writeBooleanField(name, value);
+        return this;
+    }
+
+    /**
+     * 写出任意值（来自配置文件的Map/List/标量）
+     */
+    public ChatRequestWriter field(String name, Object value) throws IOException {
+        generator.writeFieldName(name);
+        objectMapper.writeValue(generator, value);
+        return this;
+    }
+
+    /**
+     * 写出字符串数组字段，列表为空时不写出
+     */
+    public ChatRequestWriter stringArray(String name, List<?> values) throws IOException {
+        if (values == null || values.isEmpty()) {
+            return this;
+        }
+        generator.writeArrayFieldStart(name);
+        for (Object value : values) {
+            generator.writeString(value.toString());
+        }
+        generator.writeEndArray();
+        return this;
+    }
+
+    /**
+     * 写出messages数组
+     * @param leadingRole 首条消息角色（system或user），为null时不写首条消息
+     * @param leadingContent 首条消息内容，一般是人设
+     * @param conversation 对话历史
+     * @param imageBase64List 图片base64列表，附加到最后一条用户消息
+     * @param imageFormat 图片写出格式
+     */
+    public ChatRequestWriter messages(String leadingRole, String leadingContent,
+                                      List<Map<String, String>> conversation,
+                                      List<String> imageBase64List, ImageFormat imageFormat) throws IOException {
+        return messages(null, leadingRole, leadingContent, conversation, imageBase64List, imageFormat);
+    }
+
+    /**
+     * 写出messages数组，先原样写出配置模板中预置的消息
+     */
+    public ChatRequestWriter messages(List<?> presetMessages, String leadingRole, String leadingContent,
+                                      List<Map<String, String>> conversation,
+                                      List<String> imageBase64List, ImageFormat imageFormat) throws IOException {
+        generator.writeArrayFieldStart("messages");
+
+        if (presetMessages != null) {
+            for (Object preset : presetMessages) {
+                objectMapper.writeValue(generator, preset);
+            }
+        }
+
+        if (leadingRole != null) {
+            generator.writeStartObject();
+            generator.writeStringField("role", leadingRole);
+            generator.writeStringField("content", leadingContent);
+            generator.writeEndObject();
+        }
+
+        boolean hasImages = imageBase64List != null && !imageBase64List.isEmpty();
+        int lastIndex = conversation.size() - 1;
+        int index = 0;
+        for (Iterator<Map<String, String>> it = conversation.iterator(); it.hasNext(); index++) {
+            Map<String, String> message = it.next();
+            String role = message.get("role");
+
+            generator.writeStartObject();
+            generator.writeStringField("role", role);
+
+            // 只有最后一条用户消息携带图片
+            if (hasImages && index == lastIndex && "user".equals(role)) {
+                generator.writeArrayFieldStart("content");
+
+                generator.writeStartObject();
+                generator.writeStringField("type", "text");
+                generator.writeStringField("text", message.get("content"));
+                generator.writeEndObject();
+
+                for (String imageBase64 : imageBase64List) {
+                    writeImage(imageBase64, imageFormat);
+                }
+
+                generator.writeEndArray();
+            } else {
+                generator.writeStringField("content", message.get("content"));
+            }
+
+            generator.writeEndObject();
+        }
+
+        generator.writeEndArray();
+        return this;
+    }
+
+    private void writeImage(String imageBase64, ImageFormat imageFormat) throws IOException {
+        // 按图片数据的真实格式标注类型，而不是一律标注为JPEG
+        String mimeType = ImageNormalizer.sniffMimeTypeFromBase64(imageBase64);
+        generator.writeStartObject();
+        if (imageFormat == ImageFormat.ANTHROPIC) {
+            generator.writeStringField("type", "image");
+            generator.writeObjectFieldStart("source");
+            generator.writeStringField("type", "base64");
+            generator.writeStringField("media_type", mimeType);
+            generator.writeFieldName("data");
+            writeBase64Value("", imageBase64);
+            generator.writeEndObject();
+        } else {
+            generator.writeStringField("type", "image_url");
+            generator.writeObjectFieldStart("image_url");
+            generator.writeFieldName("url");
+            writeBase64Value("data:" + mimeType + ";base64,", imageBase64);
+            generator.writeEndObject();
+        }
+        generator.writeEndObject();
+    }
+
+    /**
+     * 以原始内容写出base64字符串值，避免拼接data URL和转义检查
+     * base64字母表中没有需要JSON转义的字符
+     */
+    private void writeBase64Value(String prefix, String imageBase64) throws IOException {
+        generator.writeRawValue("\"" + prefix);
+        generator.writeRaw(imageBase64);
+        generator.writeRaw('"');
+    }
+
+    /**
+     * 结束请求体并返回可直接发送的BodyPublisher，缓冲区不再复制
+     */
+    public HttpRequest.BodyPublisher toBodyPublisher() throws IOException {
+        finish();
+        return HttpRequest.BodyPublishers.ofByteArray(buffer.array(), 0, buffer.size());
+    }
+
+    /**
+     * 已写出的字节数，用于日志
+     */
+    public int size() throws IOException {
+        generator.flush();
+        return buffer.size();
+    }
+
+    private void finish() throws IOException {
+        if (!finished) {
+            generator.writeEndObject();
+            generator.close();
+            finished = true;
+        }
+    }
+
+    /**
+     * 暴露内部数组的字节缓冲区，避免toByteArray()再复制一次
+     */
+    private static final class BodyBuffer extends ByteArrayOutputStream {
+        BodyBuffer(int size) {
+            super(size);
+        }
+
+        byte[] array() {
+            return buf;
+        }
+    }
+}
@@ -1,13 +1,13 @@
 package cn.ningmo.ai.model;
 
-import cn.ningmo.ai.response.ResponseParser;
+import cn.ningmo.ai.response.ResponseExtractor;
 import cn.ningmo.config.ConfigLoader;
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -25,6 +25,7 @@ public class DeepSeekModel implements AIModel {
     private final String description;
     private final ConfigLoader configLoader;
     private final Map<String, Object> modelConfig;
+    private final ResponseExtractor responseExtractor;
     
     private static final HttpClient httpClient = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(30))
@@ -35,6 +36,7 @@ public class DeepSeekModel implements AIModel {
         this.name = name;
         this.modelConfig = modelConfig;
         this.description = (String) modelConfig.getOrDefault("description", "DeepSeek AI Model");
+        this.responseExtractor = ResponseExtractor.forPath("DeepSeek", ResponseExtractor.OPENAI_CONTENT_PATH);
     }
     
     @Override
@@ -53,34 +55,36 @@ public class DeepSeekModel implements AIModel {
                 return "DeepSeek AI服务暂时不可用，请联系管理员配置API密钥。";
             }
             
-            JSONObject requestBody = buildRequestBody(systemPrompt, conversation, personaAsSystemPrompt, imageBase64List);
-            String requestJson = requestBody.toString(2); // 格式化的JSON
-            logger.debug("DeepSeek API请求体: {}", requestJson);
+            // 设置模型名称 - 将内部模型名称映射到DeepSeek API实际接受的模型名称
+            String apiModelName = mapToAPIModelName(getModelConfigValue("model_name", "deepseek-chat"));
+            logger.debug("使用DeepSeek模型: {}", apiModelName);
+            
+            ChatRequestWriter requestBody = buildRequestBody(apiModelName, systemPrompt, conversation, personaAsSystemPrompt, imageBase64List);
+            logger.debug("DeepSeek API请求体大小: {} 字节", requestBody.size());
             
             String endpoint = apiBaseUrl + "/v1/chat/completions";
             HttpRequest request = HttpRequest.newBuilder()
                     .uri(URI.create(endpoint))
                     .header("Content-Type", "application/json")
                     .header("Authorization", "Bearer " + apiKey)
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
+                    .POST(requestBody.toBodyPublisher())
                     .build();
             
             logger.debug("DeepSeek API请求地址: {}", endpoint);
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-            
-            // 记录完整响应内容用于调试
-            logger.debug("DeepSeek API响应: 状态码={}, 内容={}", response.statusCode(), response.body());
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            logger.debug("DeepSeek API响应: 状态码={}", response.statusCode());
             
             if (response.statusCode() == 200) {
-                return ResponseParser.parseResponse(response.body(), "DeepSeek");
+                return responseExtractor.extract(response.body());
             } else {
                 // 更详细地记录错误信息
-                logger.error("DeepSeek API调用失败: {}, 状态码: {}", response.body(), response.statusCode());
+                String errorBody = ResponseExtractor.readBody(response.body());
+                logger.error("DeepSeek API调用失败: {}, 状态码: {}", errorBody, response.statusCode());
                 
                 // 尝试从错误响应中提取更有用的信息
                 String detailedError = "未知错误";
                 try {
-                    JSONObject errorObj = new JSONObject(response.body());
+                    JSONObject errorObj = new JSONObject(errorBody);
                     if (errorObj.has("error")) {
                         JSONObject error = errorObj.getJSONObject("error");
                         String message = error.optString("message", "未提供错误信息");
@@ -96,27 +100,26 @@ public class DeepSeekModel implements AIModel {
                         
                         // 处理模型不存在的情况，提供更具体的建议
                         if ("Model Not Exist".equals(message) || message.contains("model") && message.contains("exist")) {
-                            String modelName = requestBody.optString("model", "未知");
-                            logger.error("DeepSeek API不支持模型: {}，尝试降级到默认模型", modelName);
+                            logger.error("DeepSeek API不支持模型: {}，尝试降级到默认模型", apiModelName);
                             
                             // 尝试使用fallback模型重试一次
-                            requestBody.put("model", "deepseek-chat");
                             logger.info("尝试使用fallback模型deepseek-chat重试");
+                            ChatRequestWriter fallbackBody = buildRequestBody("deepseek-chat", systemPrompt, conversation, personaAsSystemPrompt, imageBase64List);
                             
                             request = HttpRequest.newBuilder()
                                     .uri(URI.create(endpoint))
                                     .header("Content-Type", "application/json")
                                     .header("Authorization", "Bearer " + apiKey)
-                                    .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
+                                    .POST(fallbackBody.toBodyPublisher())
                                     .build();
                             
-                            response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+                            response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
                             
                             if (response.statusCode() == 200) {
                                 logger.info("使用fallback模型成功");
-                                return ResponseParser.parseResponse(response.body(), "DeepSeek");
+                                return responseExtractor.extract(response.body());
                             } else {
-                                logger.error("使用fallback模型仍然失败: {}", response.body());
+                                logger.error("使用fallback模型仍然失败: {}", ResponseExtractor.readBody(response.body()));
                                 return "DeepSeek API不支持请求的模型，并且降级尝试也失败。请联系管理员配置正确的模型。";
                             }
                         }
@@ -139,161 +142,49 @@ public class DeepSeekModel implements AIModel {
         }
     }
     
-    private JSONObject buildRequestBody(String systemPrompt, List<Map<String, String>> conversation, boolean personaAsSystemPrompt, List<String> imageBase64List) {
-        JSONObject requestBody = new JSONObject();
-        
-        // 设置模型名称 - 修复模型名称映射
+    private ChatRequestWriter buildRequestBody(String apiModelName, String systemPrompt, List<Map<String, String>> conversation, boolean personaAsSystemPrompt, List<String> imageBase64List) throws IOException {
         String modelName = getModelConfigValue("model_name", "deepseek-chat");
-        // 将内部模型名称映射到DeepSeek API实际接受的模型名称
-        String apiModelName = mapToAPIModelName(modelName);
-        requestBody.put("model", apiModelName);
-        logger.debug("使用DeepSeek模型: {}", apiModelName);
-        
-        // 声明变量在外部，避免作用域问题
-        JSONArray messages = new JSONArray();
-        JSONObject systemMessage = null;
+        boolean seriesR = modelName.contains("r1") || modelName.contains("r3");
         
-        // 根据配置决定如何处理人设
-        if (personaAsSystemPrompt) {
-            // 人设作为系统提示词
-            // 添加系统消息
-            systemMessage = new JSONObject();
-            systemMessage.put("role", "system");
-            systemMessage.put("content", systemPrompt);
-            messages.put(systemMessage);
-            
-            // 添加对话历史
-            for (Map<String, String> message : conversation) {
-                JSONObject jsonMessage = new JSONObject();
-                jsonMessage.put("role", message.get("role"));
-                
-                // 检查是否是最后一条用户消息且包含图片
-                boolean isLastUserMessage = message.get("role").equals("user") && 
-                                          conversation.indexOf(message) == conversation.size() - 1;
-                
-                if (isLastUserMessage && !imageBase64List.isEmpty()) {
-                    // 构建包含图片的内容
-                    JSONArray contentArray = new JSONArray();
-                    
-                    // 添加文本内容
-                    JSONObject textContent = new JSONObject();
-                    textContent.put("type", "text");
-                    textContent.put("text", message.get("content"));
-                    contentArray.put(textContent);
-                    
-                    // 添加图片内容
-                    for (String imageBase64 : imageBase64List) {
-                        JSONObject imageContent = new JSONObject();
-                        imageContent.put("type", "image_url");
-                        
-                        JSONObject imageUrl = new JSONObject();
-                        imageUrl.put("url", "data:image/jpeg;base64," + imageBase64);
-                        imageContent.put("image_url", imageUrl);
-                        
-                        contentArray.put(imageContent);
-                    }
-                    
-                    jsonMessage.put("content", contentArray);
-                } else {
-                    jsonMessage.put("content", message.get("content"));
-                }
-                
-                messages.put(jsonMessage);
-            }
-        } else {
-            // 人设作为对话历史的一部分
-            // 添加人设作为第一条用户消息
-            JSONObject personaMessage = new JSONObject();
-            personaMessage.put("role", "user");
-            personaMessage.put("content", systemPrompt);
-            messages.put(personaMessage);
-            
-            // 添加对话历史
-            for (Map<String, String> message : conversation) {
-                JSONObject jsonMessage = new JSONObject();
-                jsonMessage.put("role", message.get("role"));
-                
-                // 检查是否是最后一条用户消息且包含图片
-                boolean isLastUserMessage = message.get("role").equals("user") && 
-                                          conversation.indexOf(message) == conversation.size() - 1;
-                
-                if (isLastUserMessage && !imageBase64List.isEmpty()) {
-                    // 构建包含图片的内容
-                    JSONArray contentArray = new JSONArray();
-                    
-                    // 添加文本内容
-                    JSONObject textContent = new JSONObject();
-                    textContent.put("type", "text");
-                    textContent.put("text", message.get("content"));
-                    contentArray.put(textContent);
-                    
-                    // 添加图片内容
-                    for (String imageBase64 : imageBase64List) {
-                        JSONObject imageContent = new JSONObject();
-                        imageContent.put("type", "image_url");
-                        
-                        JSONObject imageUrl = new JSONObject();
-                        imageUrl.put("url", "data:image/jpeg;base64," + imageBase64);
-                        imageContent.put("image_url", imageUrl);
-                        
-                        contentArray.put(imageContent);
-                    }
-                    
-                    jsonMessage.put("content", contentArray);
-                } else {
-                    jsonMessage.put("content", message.get("content"));
-                }
-                
-                messages.put(jsonMessage);
+        // 如果是R3模型，添加默认语言设置为中文（仅在人设作为系统提示词时）
+        String leadingContent = systemPrompt;
+        if (personaAsSystemPrompt && modelName.contains("r3")) {
+            String language = getModelConfigValue("language", "zh");
+            // 在系统提示中添加语言指令
+            if (!systemPrompt.toLowerCase().contains("use chinese") && 
+                !systemPrompt.toLowerCase().contains("用中文") &&
+                "zh".equals(language)) {
+                logger.debug("为R3模型添加默认中文回复设置");
+                leadingContent = systemPrompt + "\n请用中文回复。";
             }
         }
         
-        requestBody.put("messages", messages);
-        
-        // 设置温度参数
-        double temperature = getTemperature();
-        requestBody.put("temperature", temperature);
-        
-        // 设置最大tokens
-        int maxTokens = getMaxTokens();
-        requestBody.put("max_tokens", maxTokens);
+        // 人设作为系统提示词或第一条用户消息
+        ChatRequestWriter requestBody = ChatRequestWriter.create()
+                .field("model", apiModelName)
+                .messages(personaAsSystemPrompt ? "system" : "user", leadingContent,
+                          conversation, imageBase64List, ChatRequestWriter.ImageFormat.OPENAI)
+                .field("temperature", getTemperature())
+                .field("max_tokens", getMaxTokens());
         
         // 添加DeepSeek特有参数
         
         // 搜索增强功能
         boolean enableSearch = getModelConfigValue("enable_search", false);
         if (enableSearch) {
-            requestBody.put("enable_search", true);
+            requestBody.field("enable_search", true);
         }
         
         // R系列模型特有参数
-        if (modelName.contains("r1") || modelName.contains("r3")) {
+        if (seriesR) {
             // 添加top_p参数 (对R系列模型很有用)
             double topP = getModelConfigValue("top_p", 0.8);
-            requestBody.put("top_p", topP);
+            requestBody.field("top_p", topP);
             
             // 添加停止序列，如果配置了的话
             Object stopSequences = modelConfig.get("stop_sequences");
             if (stopSequences instanceof List) {
-                JSONArray stopArray = new JSONArray();
-                for (Object stop : (List<?>) stopSequences) {
-                    stopArray.put(stop.toString());
-                }
-                if (stopArray.length() > 0) {
-                    requestBody.put("stop", stopArray);
-                }
-            }
-            
-            // 如果是R3模型，添加默认语言设置为中文
-            if (modelName.contains("r3") && systemMessage != null) {
-                String language = getModelConfigValue("language", "zh");
-                // 在系统提示中添加语言指令
-                if (!systemPrompt.toLowerCase().contains("use chinese") && 
-                    !systemPrompt.toLowerCase().contains("用中文") &&
-                    "zh".equals(language)) {
-                    logger.debug("为R3模型添加默认中文回复设置");
-                    systemMessage.put("content", systemPrompt + "\n请用中文回复。");
-                }
+                requestBody.stringArray("stop", (List<?>) stopSequences);
             }
         }
         
@@ -1,13 +1,12 @@
 package cn.ningmo.ai.model;
 
-import cn.ningmo.ai.response.ResponseParser;
+import cn.ningmo.ai.response.ResponseExtractor;
 import cn.ningmo.config.ConfigLoader;
-import org.json.JSONArray;
-import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -25,6 +24,7 @@ public class GenericAPIModel implements AIModel {
     private final String description;
     private final ConfigLoader configLoader;
     private final Map<String, Object> modelConfig;
+    private final ResponseExtractor responseExtractor;
     
     private static final HttpClient httpClient = HttpClient.newBuilder()
             .connectTimeout(Duration.ofSeconds(30))
@@ -35,6 +35,7 @@ public class GenericAPIModel implements AIModel {
         this.name = name;
         this.modelConfig = modelConfig;
         this.description = (String) modelConfig.getOrDefault("description", "通用API模型");
+        this.responseExtractor = ResponseExtractor.forCustomPath("GenericAPI", (String) modelConfig.get("response_content_path"));
     }
     
     @Override
@@ -50,133 +51,21 @@ public class GenericAPIModel implements AIModel {
                 return "模型配置错误：未指定API URL";
             }
             
-            JSONObject requestBody = new JSONObject();
-            
-            // 从模型配置中获取请求数据模板
+            // 从模型配置中获取请求数据模板，先写出模板字段，messages单独处理
             Map<String, Object> requestTemplate = getRequestTemplate();
-            
-            // 将模板应用到请求体
+            ChatRequestWriter requestBody = ChatRequestWriter.create();
             for (Map.Entry<String, Object> entry : requestTemplate.entrySet()) {
-                requestBody.put(entry.getKey(), entry.getValue());
-            }
-            
-            // 添加系统提示和对话历史
-            if (requestBody.has("messages")) {
-                JSONArray messages = requestBody.getJSONArray("messages");
-                
-                // 根据配置决定如何处理人设
-                if (personaAsSystemPrompt) {
-                    // 人设作为系统提示词
-                    JSONObject systemMessage = new JSONObject();
-                    systemMessage.put("role", "system");
-                    systemMessage.put("content", systemPrompt);
-                    messages.put(systemMessage);
-                } else {
-                    // 人设作为对话历史的一部分
-                    JSONObject personaMessage = new JSONObject();
-                    personaMessage.put("role", "user");
-                    personaMessage.put("content", systemPrompt);
-                    messages.put(personaMessage);
-                }
-                
-                // 添加对话历史
-                for (Map<String, String> message : conversation) {
-                    JSONObject jsonMessage = new JSONObject();
-                    jsonMessage.put("role", message.get("role"));
-                    
-                    // 检查是否是最后一条用户消息且包含图片
-                    boolean isLastUserMessage = message.get("role").equals("user") && 
-                                              conversation.indexOf(message) == conversation.size() - 1;
-                    
-                    if (isLastUserMessage && !imageBase64List.isEmpty()) {
-                        // 构建包含图片的内容
-                        JSONArray contentArray = new JSONArray();
-                        
-                        // 添加文本内容
-                        JSONObject textContent = new JSONObject();
-                        textContent.put("type", "text");
-                        textContent.put("text", message.get("content"));
-                        contentArray.put(textContent);
-                        
-                        // 添加图片内容
-                        for (String imageBase64 : imageBase64List) {
-                            JSONObject imageContent = new JSONObject();
-                            imageContent.put("type", "image_url");
-                            
-                            JSONObject imageUrl = new JSONObject();
-                            imageUrl.put("url", "data:image/jpeg;base64," + imageBase64);
-                            imageContent.put("image_url", imageUrl);
-                            
-                            contentArray.put(imageContent);
-                        }
-                        
-                        jsonMessage.put("content", contentArray);
-                    } else {
-                        jsonMessage.put("content", message.get("content"));
-                    }
-                    
-                    messages.put(jsonMessage);
+                if (!"messages".equals(entry.getKey())) {
+                    requestBody.field(entry.getKey(), entry.getValue());
                 }
-            } else {
-                JSONArray messages = new JSONArray();
-                
-                // 根据配置决定如何处理人设
-                if (personaAsSystemPrompt) {
-                    // 人设作为系统提示词
-                    JSONObject systemMessage = new JSONObject();
-                    systemMessage.put("role", "system");
-                    systemMessage.put("content", systemPrompt);
-                    messages.put(systemMessage);
-                } else {
-                    // 人设作为对话历史的一部分
-                    JSONObject personaMessage = new JSONObject();
-                    personaMessage.put("role", "user");
-                    personaMessage.put("content", systemPrompt);
-                    messages.put(personaMessage);
-                }
-                
-                // 添加对话历史
-                for (Map<String, String> message : conversation) {
-                    JSONObject jsonMessage = new JSONObject();
-                    jsonMessage.put("role", message.get("role"));
-                    
-                    // 检查是否是最后一条用户消息且包含图片
-                    boolean isLastUserMessage = message.get("role").equals("user") && 
-                                              conversation.indexOf(message) == conversation.size() - 1;
-                    
-                    if (isLastUserMessage && !imageBase64List.isEmpty()) {
-                        // 构建包含图片的内容
-                        JSONArray contentArray = new JSONArray();
-                        
-                        // 添加文本内容
-                        JSONObject textContent = new JSONObject();
-                        textContent.put("type", "text");
-                        textContent.put("text", message.get("content"));
-                        contentArray.put(textContent);
-                        
-                        // 添加图片内容
-                        for (String imageBase64 : imageBase64List) {
-                            JSONObject imageContent = new JSONObject();
-                            imageContent.put("type", "image_url");
-                            
-                            JSONObject imageUrl = new JSONObject();
-                            imageUrl.put("url", "data:image/jpeg;base64," + imageBase64);
-                            imageContent.put("image_url", imageUrl);
-                            
-                            contentArray.put(imageContent);
-                        }
-                        
-                        jsonMessage.put("content", contentArray);
-                    } else {
-                        jsonMessage.put("content", message.get("content"));
-                    }
-                    
-                    messages.put(jsonMessage);
-                }
-                
-                requestBody.put("messages", messages);
             }
             
+            // 模板中预置的消息保留在最前面，其后是人设和对话历史
+            Object presetMessages = requestTemplate.get("messages");
+            requestBody.messages(presetMessages instanceof List ? (List<?>) presetMessages : null,
+                    personaAsSystemPrompt ? "system" : "user", systemPrompt,
+                    conversation, imageBase64List, ChatRequestWriter.ImageFormat.OPENAI);
+            
             // 获取HTTP请求头
             Map<String, String> headers = getHeaders();
             
@@ -192,18 +81,17 @@ public class GenericAPIModel implements AIModel {
             
             // 添加请求体
             HttpRequest request = requestBuilder
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
+                    .POST(requestBody.toBodyPublisher())
                     .build();
             
             // 发送请求
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
             
             if (response.statusCode() >= 200 && response.statusCode() < 300) {
-                // 如果有自定义解析路径，使用带路径的解析
-                String customPath = (String) modelConfig.get("response_content_path");
-                return ResponseParser.parseResponse(response.body(), "GenericAPI", customPath);
+                // 按自定义解析路径（未配置时为OpenAI兼容路径）流式提取
+                return responseExtractor.extract(response.body());
             } else {
-                logger.error("API调用失败: {}, 状态码: {}", response.body(), response.statusCode());
+                logger.error("API调用失败: {}, 状态码: {}", ResponseExtractor.readBody(response.body()), response.statusCode());
                 return "抱歉，API调用失败，错误代码: " + response.statusCode();
             }
         } catch (IOException | InterruptedException e) {
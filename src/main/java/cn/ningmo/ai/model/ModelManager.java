@@ -1,6 +1,11 @@
 package cn.ningmo.ai.model;
 
 import cn.ningmo.config.ConfigLoader;
+import cn.ningmo.metrics.Counter;
+import cn.ningmo.metrics.Histogram;
+import cn.ningmo.metrics.MetricsRegistry;
+import cn.ningmo.metrics.jfr.ModelAttemptEvent;
+import cn.ningmo.metrics.trace.TraceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -14,8 +19,33 @@ public class ModelManager {
     private static final Logger logger = LoggerFactory.getLogger(ModelManager.class);
     
     private final ConfigLoader configLoader;
+    // 配置中的模型：模型名 -> 类型和配置
+    private final Map<String, ModelSpec> modelSpecs = new ConcurrentHashMap<>();
+    // 已创建的模型实例，首次使用时才创建，避免启动时为用不到的模型创建HTTP客户端
     private final Map<String, AIModel> models = new ConcurrentHashMap<>();
     
+    private static final Set<String> SUPPORTED_TYPES = Set.of("openai", "anthropic", "local", "api", "deepseek");
+    
+    private record ModelSpec(String type, Map<String, Object> config) {
+    }
+    
+    /**
+     * 从配置中读取模型描述，缺省值与各模型实现保持一致
+     */
+    private static String describe(ModelSpec spec) {
+        Object description = spec.config().get("description");
+        if (description != null) {
+            return description.toString();
+        }
+        return switch (spec.type().toLowerCase()) {
+            case "openai" -> "OpenAI模型";
+            case "anthropic" -> "Claude AI Assistant";
+            case "deepseek" -> "DeepSeek AI Model";
+            case "local" -> "本地大语言模型";
+            default -> "通用API模型";
+        };
+    }
+    
     // 跟踪模型失败次数
     private final Map<String, AtomicInteger> modelFailureCount = new ConcurrentHashMap<>();
     // 跟踪模型冷却期，记录模型应该冷却到什么时间点
@@ -29,8 +59,18 @@ public class ModelManager {
     // 最大重试次数
     private static final int MAX_RETRY_COUNT = 2;
     
+    // 指标，按模型名缓存直方图和计数器，避免每次调用都查表
+    private final MetricsRegistry metrics;
+    private final Map<String, Histogram> callLatency = new ConcurrentHashMap<>();
+    private final Map<String, Counter> callErrors = new ConcurrentHashMap<>();
+    
     public ModelManager(ConfigLoader configLoader) {
+        this(configLoader, new MetricsRegistry());
+    }
+    
+    public ModelManager(ConfigLoader configLoader, MetricsRegistry metrics) {
         this.configLoader = configLoader;
+        this.metrics = metrics;
         loadModels();
     }
     
@@ -46,10 +86,16 @@ public class ModelManager {
                     Map<String, Object> modelConfig = (Map<String, Object>) entry.getValue();
                     String type = (String) modelConfig.getOrDefault("type", "openai");
                     
-                    AIModel model = createModel(modelName, type, modelConfig);
-                    if (model != null) {
-                        models.put(modelName, model);
-                        logger.info("加载模型成功: {}, 类型: {}", modelName, type);
+                    if (!SUPPORTED_TYPES.contains(type.toLowerCase())) {
+                        logger.warn("不支持的模型类型: {}", type);
+                    } else {
+                        modelSpecs.put(modelName, new ModelSpec(type, modelConfig));
+                        metrics.gauge("ningmo_model_circuit_open", () -> isCircuitOpen(modelName) ? 1 : 0, "model", modelName);
+                        metrics.gauge("ningmo_model_consecutive_failures", () -> {
+                            AtomicInteger count = modelFailureCount.get(modelName);
+                            return count != null ? count.get() : 0;
+                        }, "model", modelName);
+                        logger.info("加载模型配置: {}, 类型: {}", modelName, type);
                     }
                 }
             } catch (Exception e) {
@@ -58,10 +104,10 @@ public class ModelManager {
         }
         
         // 初次启动时检查至少有一个可用模型
-        if (models.isEmpty()) {
+        if (modelSpecs.isEmpty()) {
             logger.warn("没有成功加载任何模型，系统可能无法正常工作");
         } else {
-            logger.info("共加载了 {} 个模型", models.size());
+            logger.info("共加载了 {} 个模型", modelSpecs.size());
         }
     }
     
@@ -69,6 +115,7 @@ public class ModelManager {
      * 刷新模型列表
      */
     public void refreshModels() {
+        modelSpecs.clear();
         models.clear();
         modelFailureCount.clear();
         modelCooldownUntil.clear();
@@ -165,24 +212,41 @@ public class ModelManager {
                 
                 // 添加超时检测
                 long attemptStart = System.currentTimeMillis();
+                long attemptStartNanos = System.nanoTime();
                 
                 // 调用模型生成回复
                 logger.debug("调用模型 {} 生成回复...", modelName);
-                String result = model.generateReply(systemPrompt, conversation, personaAsSystemPrompt, imageBase64List);
+                ModelAttemptEvent attemptEvent = new ModelAttemptEvent();
+                attemptEvent.begin();
+                String result = null;
+                try {
+                    result = model.generateReply(systemPrompt, conversation, personaAsSystemPrompt, imageBase64List);
+                } finally {
+                    callLatency(model.getName()).recordNanos(System.nanoTime() - attemptStartNanos);
+                    TraceContext.record("model_call", attemptStartNanos,
+                        model.getName() + " 第" + (attempt + 1) + "次" + (isErrorReply(result) ? " 失败" : ""));
+                    if (attemptEvent.shouldCommit()) {
+                        TraceContext trace = TraceContext.current();
+                        if (trace != null) {
+                            attemptEvent.traceId = trace.getTraceId();
+                            attemptEvent.groupId = trace.getGroupId();
+                        }
+                        attemptEvent.model = model.getName();
+                        attemptEvent.modelType = model.getType();
+                        attemptEvent.attempt = attempt + 1;
+                        attemptEvent.success = !isErrorReply(result);
+                        attemptEvent.commit();
+                    }
+                }
                 
                 long attemptDuration = System.currentTimeMillis() - attemptStart;
                 logger.info("模型 {} 响应耗时: {}毫秒", modelName, attemptDuration);
                 
                 // 如果结果为空或包含错误标识，进行重试
-                if (result == null || result.trim().isEmpty() || 
-                    result.contains("服务暂时不可用") || 
-                    result.contains("服务器出现故障") ||
-                    result.contains("请稍后再试") ||
-                    result.contains("API调用失败") ||
-                    result.contains("错误") ||
-                    result.contains("失败")) {
+                if (isErrorReply(result)) {
                     
                     logger.warn("模型 {} 返回错误或空结果: {}", modelName, result);
+                    callErrors(model.getName()).increment();
                     
                     // 增加失败计数
                     incrementModelFailureCount(modelName);
@@ -206,7 +270,7 @@ public class ModelManager {
                     if (attempt < MAX_RETRY_COUNT) {
                         long retryDelay = calculateRetryDelay(attempt);
                         logger.info("将在 {} 毫秒后重试", retryDelay);
-                        try {
+                        try (TraceContext.SpanTimer ignored = TraceContext.span("retry_sleep")) {
                             Thread.sleep(retryDelay);
                         } catch (InterruptedException e) {
                             Thread.currentThread().interrupt();
@@ -228,13 +292,14 @@ public class ModelManager {
             } catch (Exception e) {
                 // 捕获所有异常，增加失败计数
                 logger.error("模型 {} 调用异常: {}", modelName, e.getMessage(), e);
+                callErrors(model.getName()).increment();
                 incrementModelFailureCount(modelName);
                 
                 // 如果不是最后一次尝试，则重试
                 if (attempt < MAX_RETRY_COUNT) {
                     long retryDelay = calculateRetryDelay(attempt);
                     logger.info("将在 {} 毫秒后重试", retryDelay);
-                    try {
+                    try (TraceContext.SpanTimer ignored = TraceContext.span("retry_sleep")) {
                         Thread.sleep(retryDelay);
                     } catch (InterruptedException ie) {
                         Thread.currentThread().interrupt();
@@ -281,23 +346,48 @@ public class ModelManager {
      * 获取模型对象，处理默认模型和备用模型
      */
     private AIModel getModelForName(String modelName) {
-        AIModel model = models.get(modelName);
+        AIModel model = getModel(modelName);
         if (model == null) {
             // 从配置中获取默认模型，如果未配置则使用gpt-3.5-turbo
             String defaultModel = configLoader.getConfigString("ai.default_model", "gpt-3.5-turbo");
             logger.warn("模型不存在: {}, 尝试使用默认模型: {}", modelName, defaultModel);
-            model = models.get(defaultModel);
+            model = getModel(defaultModel);
             
             // 如果默认模型也不存在，尝试使用第一个可用的模型
-            if (model == null && !models.isEmpty()) {
-                String firstModel = models.keySet().iterator().next();
-                logger.warn("默认模型{}不存在，使用第一个可用模型: {}", defaultModel, firstModel);
-                model = models.get(firstModel);
+            if (model == null) {
+                for (String firstModel : modelSpecs.keySet()) {
+                    model = getModel(firstModel);
+                    if (model != null) {
+                        logger.warn("默认模型{}不存在，使用第一个可用模型: {}", defaultModel, firstModel);
+                        break;
+                    }
+                }
             }
         }
         return model;
     }
     
+    /**
+     * 获取模型实例，第一次使用时按配置创建，创建失败时返回null
+     */
+    private AIModel getModel(String modelName) {
+        AIModel model = models.get(modelName);
+        if (model != null) {
+            return model;
+        }
+        ModelSpec spec = modelSpecs.get(modelName);
+        if (spec == null) {
+            return null;
+        }
+        return models.computeIfAbsent(modelName, name -> {
+            AIModel created = createModel(name, spec.type(), spec.config());
+            if (created != null) {
+                logger.info("创建模型实例: {}, 类型: {}", name, spec.type());
+            }
+            return created;
+        });
+    }
+    
     /**
      * 找到一个可用的备用模型
      */
@@ -308,13 +398,13 @@ public class ModelManager {
         // 检查配置的备用模型是否可用且不是当前模型
         if (!configuredFallback.isEmpty() && 
             !configuredFallback.equals(currentModel) && 
-            models.containsKey(configuredFallback) && 
+            modelSpecs.containsKey(configuredFallback) && 
             !isModelInCooldown(configuredFallback)) {
             return configuredFallback;
         }
         
         // 否则，查找第一个不在冷却期的可用模型
-        for (String modelName : models.keySet()) {
+        for (String modelName : modelSpecs.keySet()) {
             if (!modelName.equals(currentModel) && !isModelInCooldown(modelName)) {
                 return modelName;
             }
@@ -322,7 +412,7 @@ public class ModelManager {
         
         // 如果所有模型都不可用，返回默认模型
         String defaultModel = configLoader.getConfigString("ai.default_model", "gpt-3.5-turbo");
-        if (models.containsKey(defaultModel) && !defaultModel.equals(currentModel)) {
+        if (modelSpecs.containsKey(defaultModel) && !defaultModel.equals(currentModel)) {
             return defaultModel;
         }
         
@@ -330,6 +420,29 @@ public class ModelManager {
         return currentModel;
     }
     
+    /**
+     * 模型返回空结果或错误提示时视为失败
+     */
+    private static boolean isErrorReply(String result) {
+        return result == null || result.trim().isEmpty() || 
+            result.contains("服务暂时不可用") || 
+            result.contains("服务器出现故障") ||
+            result.contains("请稍后再试") ||
+            result.contains("API调用失败") ||
+            result.contains("错误") ||
+            result.contains("失败");
+    }
+    
+    private Histogram callLatency(String modelName) {
+        return callLatency.computeIfAbsent(modelName,
+            name -> metrics.histogram("ningmo_model_call_seconds", "model", name));
+    }
+
+    private Counter callErrors(String modelName) {
+        return callErrors.computeIfAbsent(modelName,
+            name -> metrics.counter("ningmo_model_errors", "model", name));
+    }
+
     /**
      * 增加模型失败计数
      */
@@ -381,33 +494,59 @@ public class ModelManager {
         return false;
     }
     
+    /**
+     * 模型是否处于冷却期（熔断打开），只读取状态，不清除过期的冷却记录
+     */
+    public boolean isCircuitOpen(String modelName) {
+        Long cooldownUntil = modelCooldownUntil.get(modelName);
+        return cooldownUntil != null && System.currentTimeMillis() < cooldownUntil;
+    }
+    
+    /**
+     * 模型实例是否已经创建
+     */
+    boolean isInstantiated(String modelName) {
+        return models.containsKey(modelName);
+    }
+    
+    /**
+     * 提前创建模型实例，在后台调用可以避免第一次回复时才初始化HTTP客户端
+     */
+    public void warmUp(String modelName) {
+        long start = System.currentTimeMillis();
+        if (getModel(modelName) != null) {
+            logger.debug("模型 {} 预热完成，耗时 {} ms", modelName, System.currentTimeMillis() - start);
+        }
+    }
+    
     /**
      * 检查模型是否存在
      */
     public boolean hasModel(String modelName) {
-        return models.containsKey(modelName);
+        return modelSpecs.containsKey(modelName);
     }
     
     /**
      * 获取所有模型列表
      */
     public List<String> listModels() {
-        return new ArrayList<>(models.keySet());
+        return new ArrayList<>(modelSpecs.keySet());
     }
     
     /**
      * 获取模型详情
      */
     public Map<String, String> getModelDetails(String modelName) {
-        AIModel model = models.get(modelName);
-        if (model == null) {
+        // 只读取配置，不为了列出模型而创建适配器实例
+        ModelSpec spec = modelSpecs.get(modelName);
+        if (spec == null) {
             return Map.of();
         }
         
         Map<String, String> details = new HashMap<>();
-        details.put("name", model.getName());
-        details.put("type", model.getType());
-        details.put("description", model.getDescription());
+        details.put("name", modelName);
+        details.put("type", spec.type().toLowerCase());
+        details.put("description", describe(spec));
         
         // 添加状态信息
         AtomicInteger failCount = modelFailureCount.get(modelName);
@@ -435,7 +574,7 @@ public class ModelManager {
      * 手动将模型设置为可用状态（解除冷却）
      */
     public boolean resetModelStatus(String modelName) {
-        if (!models.containsKey(modelName)) {
+        if (!modelSpecs.containsKey(modelName)) {
             return false;
         }
         
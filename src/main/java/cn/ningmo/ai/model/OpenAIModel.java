@@ -1,14 +1,13 @@
 package cn.ningmo.ai.model;
 
-import cn.ningmo.ai.response.ResponseParser;
+import cn.ningmo.ai.response.ResponseExtractor;
 import cn.ningmo.config.ConfigLoader;
-import com.fasterxml.jackson.databind.ObjectMapper;
-import org.json.JSONArray;
 import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
@@ -20,12 +19,12 @@ import java.util.ArrayList;
 
 public class OpenAIModel implements AIModel {
     private static final Logger logger = LoggerFactory.getLogger(OpenAIModel.class);
-    private static final ObjectMapper objectMapper = new ObjectMapper();
     
     private final String modelName;
     private final ConfigLoader configLoader;
     private final Map<String, Object> modelConfig;
     private final HttpClient httpClient;
+    private final ResponseExtractor responseExtractor;
     
     // 默认超时设置
     private static final int DEFAULT_CONNECT_TIMEOUT_SECONDS = 30;
@@ -44,6 +43,7 @@ public class OpenAIModel implements AIModel {
         this.httpClient = HttpClient.newBuilder()
                 .connectTimeout(Duration.ofSeconds(connectTimeout))
                 .build();
+        this.responseExtractor = ResponseExtractor.forPath("OpenAI", ResponseExtractor.OPENAI_CONTENT_PATH);
         
         logger.info("初始化OpenAI模型: {}, 连接超时: {}秒, 请求超时: {}秒", 
                     modelName, connectTimeout, requestTimeout);
@@ -68,118 +68,17 @@ public class OpenAIModel implements AIModel {
         logger.info("开始生成AI回复，使用模型: {}, 对话长度: {}, 图片数量: {}", modelName, conversation.size(), imageBase64List.size());
         
         try {
-            // 构建请求体
-            JSONObject requestBody = new JSONObject();
-            
-            // 添加模型名称
-            requestBody.put("model", mapToApiModelName());
-            
-            // 构建消息数组
-            JSONArray messages = new JSONArray();
-            
-            // 根据配置决定如何处理人设
-            if (personaAsSystemPrompt) {
-                // 人设作为系统提示词
-                JSONObject systemMessage = new JSONObject();
-                systemMessage.put("role", "system");
-                systemMessage.put("content", systemPrompt);
-                messages.put(systemMessage);
-                
-                // 添加对话历史
-                for (Map<String, String> message : conversation) {
-                    JSONObject jsonMessage = new JSONObject();
-                    jsonMessage.put("role", message.get("role"));
-                    
-                    // 检查是否是最后一条用户消息且包含图片
-                    boolean isLastUserMessage = message.get("role").equals("user") && 
-                                              conversation.indexOf(message) == conversation.size() - 1;
-                    
-                    if (isLastUserMessage && !imageBase64List.isEmpty()) {
-                        // 构建包含图片的内容
-                        JSONArray contentArray = new JSONArray();
-                        
-                        // 添加文本内容
-                        JSONObject textContent = new JSONObject();
-                        textContent.put("type", "text");
-                        textContent.put("text", message.get("content"));
-                        contentArray.put(textContent);
-                        
-                        // 添加图片内容
-                        for (String imageBase64 : imageBase64List) {
-                            JSONObject imageContent = new JSONObject();
-                            imageContent.put("type", "image_url");
-                            
-                            JSONObject imageUrl = new JSONObject();
-                            imageUrl.put("url", "data:image/jpeg;base64," + imageBase64);
-                            imageContent.put("image_url", imageUrl);
-                            
-                            contentArray.put(imageContent);
-                        }
-                        
-                        jsonMessage.put("content", contentArray);
-                    } else {
-                        jsonMessage.put("content", message.get("content"));
-                    }
-                    
-                    messages.put(jsonMessage);
-                }
-            } else {
-                // 人设作为对话历史的一部分
-                // 添加人设作为第一条用户消息
-                JSONObject personaMessage = new JSONObject();
-                personaMessage.put("role", "user");
-                personaMessage.put("content", systemPrompt);
-                messages.put(personaMessage);
-                
-                // 添加对话历史
-                for (Map<String, String> message : conversation) {
-                    JSONObject jsonMessage = new JSONObject();
-                    jsonMessage.put("role", message.get("role"));
-                    
-                    // 检查是否是最后一条用户消息且包含图片
-                    boolean isLastUserMessage = message.get("role").equals("user") && 
-                                              conversation.indexOf(message) == conversation.size() - 1;
-                    
-                    if (isLastUserMessage && !imageBase64List.isEmpty()) {
-                        // 构建包含图片的内容
-                        JSONArray contentArray = new JSONArray();
-                        
-                        // 添加文本内容
-                        JSONObject textContent = new JSONObject();
-                        textContent.put("type", "text");
-                        textContent.put("text", message.get("content"));
-                        contentArray.put(textContent);
-                        
-                        // 添加图片内容
-                        for (String imageBase64 : imageBase64List) {
-                            JSONObject imageContent = new JSONObject();
-                            imageContent.put("type", "image_url");
-                            
-                            JSONObject imageUrl = new JSONObject();
-                            imageUrl.put("url", "data:image/jpeg;base64," + imageBase64);
-                            imageContent.put("image_url", imageUrl);
-                            
-                            contentArray.put(imageContent);
-                        }
-                        
-                        jsonMessage.put("content", contentArray);
-                    } else {
-                        jsonMessage.put("content", message.get("content"));
-                    }
-                    
-                    messages.put(jsonMessage);
-                }
-            }
-            
-            requestBody.put("messages", messages);
-            
-            // 设置温度参数
+            // 设置温度参数和最大生成Token数
             double temperature = getModelConfigValue("temperature", 0.7);
-            requestBody.put("temperature", temperature);
-            
-            // 设置最大生成Token数
             int maxTokens = getModelConfigValue("max_tokens", 2000);
-            requestBody.put("max_tokens", maxTokens);
+            
+            // 流式写出请求体，人设作为系统提示词或第一条用户消息
+            ChatRequestWriter requestBody = ChatRequestWriter.create()
+                    .field("model", mapToApiModelName())
+                    .messages(personaAsSystemPrompt ? "system" : "user", systemPrompt,
+                              conversation, imageBase64List, ChatRequestWriter.ImageFormat.OPENAI)
+                    .field("temperature", temperature)
+                    .field("max_tokens", maxTokens);
             
             // 记录请求的基本信息
             logger.debug("API请求: 模型={}, 温度={}, 最大Token={}", 
@@ -207,13 +106,13 @@ public class OpenAIModel implements AIModel {
                     .uri(URI.create(completeUrl))
                     .header("Content-Type", "application/json")
                     .header("Authorization", "Bearer " + apiKey)
-                    .POST(HttpRequest.BodyPublishers.ofString(requestBody.toString()))
+                    .POST(requestBody.toBodyPublisher())
                     .timeout(Duration.ofSeconds(requestTimeout))
                     .build();
             
             // 发送请求
             logger.debug("发送API请求...");
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<InputStream> response = httpClient.send(request, HttpResponse.BodyHandlers.ofInputStream());
             
             // 记录响应时间
             long responseTime = System.currentTimeMillis() - startTime;
@@ -221,7 +120,7 @@ public class OpenAIModel implements AIModel {
             
             // 处理响应
             if (response.statusCode() == 200) {
-                String content = ResponseParser.parseResponse(response.body(), "OpenAI");
+                String content = responseExtractor.extract(response.body());
                 
                 // 记录成功
                 long totalTime = System.currentTimeMillis() - startTime;
@@ -229,12 +128,14 @@ public class OpenAIModel implements AIModel {
                 
                 return content;
             } else {
+                String errorBody = ResponseExtractor.readBody(response.body());
+                
                 // 记录不同的错误状态码
                 String errorMessage = "OpenAI API调用失败，状态码: " + response.statusCode();
                 
                 // 尝试从响应中提取更详细的错误信息
                 try {
-                    JSONObject errorJson = new JSONObject(response.body());
+                    JSONObject errorJson = new JSONObject(errorBody);
                     if (errorJson.has("error")) {
                         JSONObject error = errorJson.getJSONObject("error");
                         String message = error.optString("message", "未知错误");
@@ -243,7 +144,7 @@ public class OpenAIModel implements AIModel {
                     }
                 } catch (Exception e) {
                     // 如果解析失败，使用原始响应体
-                    errorMessage += ", 响应: " + response.body();
+                    errorMessage += ", 响应: " + errorBody;
                 }
                 
                 // 针对不同状态码给出更具体的错误信息
@@ -2,6 +2,7 @@ package cn.ningmo.ai.persona;
 
 import cn.ningmo.config.ConfigLoader;
 import cn.ningmo.utils.CommonUtils;
+import cn.ningmo.utils.FileWatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -11,29 +12,74 @@ import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+/**
+ * 人设管理器
+ * 整个程序共享一个实例。人设保存在不可变的Map中，读取无需加锁；
+ * 人设目录发生变化时重新加载并整体替换，修改文件后一秒内生效
+ */
 public class PersonaManager {
     private static final Logger logger = LoggerFactory.getLogger(PersonaManager.class);
     
+    private static final String DEFAULT_PERSONA = "你是一个有用的AI助手，请用中文回答问题。";
+    
+    // 添加关于多段消息和艾特群友的附加说明
+    private static final String SPECIAL_INSTRUCTIONS = 
+        "\n\n特殊指令说明：\n" +
+        "1. 如果你想发送多条消息，请在消息之间使用 \\n---\\n 作为分隔符。系统会将你的回复拆分成多条单独发送。\n" +
+        "2. 如果你认为某个问题不需要回复，可以回复 [NO_RESPONSE] 表示不发送任何消息。\n" +
+        "3. 如果你想艾特(提及)群里的某个成员，可以使用 [CQ:at,qq=成员QQ号] 格式。例如：[CQ:at,qq=123456789] 你好！\n" +
+        "4. 当前对话的群成员列表可能会在系统指令的末尾提供，你可以从中选择需要艾特的成员。\n" +
+        "5. 重要：请不要艾特机器人自己，这可能导致消息循环和系统问题。";
+    
+    // 合并编辑器保存时的连续事件
+    private static final long RELOAD_DEBOUNCE_MS = 200;
+    
     private final ConfigLoader configLoader;
-    private final Map<String, String> personas;
+    // 人设名称 -> 人设，每次加载生成新的不可变Map
+    private volatile Map<String, Persona> personas = Map.of();
     private final String personaDir = "r"; // 人设文件目录
+    private final FileWatcher watcher;
+    
+    /**
+     * 加载后的人设，提示词、token估算和缓存键都在加载时算好
+     * @param name 人设名称
+     * @param content 人设文件内容
+     * @param prompt 完整的系统提示词（人设内容加特殊指令说明）
+     * @param tokenEstimate 提示词的估算token数
+     * @param cacheKey 提示词内容的摘要，提示词不变时保持不变，可用作前缀缓存的键
+     */
+    public record Persona(String name, String content, String prompt, int tokenEstimate, String cacheKey) {
+        static Persona of(String name, String content) {
+            String prompt = content + SPECIAL_INSTRUCTIONS;
+            return new Persona(name, content, prompt, CommonUtils.estimateTokens(prompt), digest(prompt));
+        }
+    }
     
     public PersonaManager(ConfigLoader configLoader) {
         this.configLoader = configLoader;
-        this.personas = new HashMap<>();
         
         // 确保人设目录存在
         ensurePersonaDirectoryExists();
         
         // 初始化人设（仅从目录加载）
         initPersonas();
+        
+        // 监听人设目录，文件变化后自动重新加载
+        this.watcher = new FileWatcher(Paths.get(personaDir), path -> path.toString().endsWith(".md"),
+                                       RELOAD_DEBOUNCE_MS, this::reloadFromWatcher, "Persona-Watcher");
+        if (!watcher.start()) {
+            logger.warn("无法监听人设目录，修改人设后需要手动刷新");
+        }
     }
     
     /**
@@ -87,30 +133,30 @@ public class PersonaManager {
         }
     }
     
-    private void initPersonas() {
+    private synchronized void initPersonas() {
         // 从r目录加载人设文件
-        loadPersonasFromFiles();
+        Map<String, Persona> loaded = loadPersonasFromFiles();
         
         // 确保至少有默认人设
-        ensureDefaultPersona();
+        ensureDefaultPersona(loaded);
         
-        logger.info("已加载{}个人设", personas.size());
+        personas = Map.copyOf(loaded);
+        logger.info("已加载{}个人设", loaded.size());
     }
     
     /**
      * 确保默认人设存在
      */
-    private void ensureDefaultPersona() {
-        if (!personas.containsKey("default")) {
+    private void ensureDefaultPersona(Map<String, Persona> loaded) {
+        if (!loaded.containsKey("default")) {
             // 如果文件中没有加载到默认人设，则添加一个内存中的默认人设
-            personas.put("default", "你是一个有用的AI助手，请用中文回答问题。");
+            loaded.put("default", Persona.of("default", DEFAULT_PERSONA));
             logger.warn("未找到默认人设文件，使用内存中的默认人设");
             
             // 尝试创建默认人设文件
             try {
                 Path defaultPath = Paths.get(personaDir, "default.md");
-                Files.write(defaultPath, 
-                        personas.get("default").getBytes(StandardCharsets.UTF_8));
+                Files.write(defaultPath, DEFAULT_PERSONA.getBytes(StandardCharsets.UTF_8));
                 logger.info("已自动创建默认人设文件");
             } catch (IOException e) {
                 logger.error("创建默认人设文件失败", e);
@@ -121,7 +167,8 @@ public class PersonaManager {
     /**
      * 从r目录加载人设文件
      */
-    private void loadPersonasFromFiles() {
+    private Map<String, Persona> loadPersonasFromFiles() {
+        Map<String, Persona> loaded = new HashMap<>();
         Path dirPath = Paths.get(personaDir);
         
         try (Stream<Path> pathStream = Files.list(dirPath)) {
@@ -135,7 +182,7 @@ public class PersonaManager {
                 
                 try {
                     String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
-                    personas.put(personaName, content.trim());
+                    loaded.put(personaName, Persona.of(personaName, content.trim()));
                     logger.debug("从文件加载人设: {}", personaName);
                 } catch (IOException e) {
                     logger.error("读取人设文件失败: {}", file, e);
@@ -144,17 +191,29 @@ public class PersonaManager {
         } catch (IOException e) {
             logger.error("扫描人设目录失败", e);
         }
+        return loaded;
+    }
+    
+    private void reloadFromWatcher() {
+        initPersonas();
+        logger.info("检测到人设文件变化，已重新加载，当前共有{}个人设", personas.size());
     }
     
     /**
      * 刷新人设列表（重新加载所有人设文件）
      */
     public void refreshPersonas() {
-        personas.clear();
         initPersonas();
         logger.info("已刷新人设，当前共有{}个人设", personas.size());
     }
     
+    /**
+     * 停止监听人设目录
+     */
+    public void shutdown() {
+        watcher.stop();
+    }
+    
     /**
      * 获取所有可用人设的列表
      */
@@ -170,58 +229,37 @@ public class PersonaManager {
             return true;
         }
         
-        // 如果内存中没有，尝试从文件读取
+        // 文件刚创建、监听还没来得及重新加载时，直接刷新一次
         Path personaPath = Paths.get(personaDir, personaName + ".md");
         if (Files.exists(personaPath)) {
-            try {
-                String content = new String(Files.readAllBytes(personaPath), StandardCharsets.UTF_8);
-                personas.put(personaName, content.trim());
-                return true;
-            } catch (IOException e) {
-                logger.error("读取人设文件失败: {}", personaPath, e);
-            }
+            initPersonas();
+            return personas.containsKey(personaName);
         }
         
         return false;
     }
     
     /**
-     * 获取人设提示词
+     * 获取人设，不存在时返回默认人设
      */
-    public String getPersonaPrompt(String personaName) {
-        String basePrompt;
-        
-        // 如果人设不存在于内存中，尝试从文件读取
-        if (!personas.containsKey(personaName)) {
-            Path personaPath = Paths.get(personaDir, personaName + ".md");
-            if (Files.exists(personaPath)) {
-                try {
-                    String content = new String(Files.readAllBytes(personaPath), StandardCharsets.UTF_8);
-                    personas.put(personaName, content.trim());
-                    basePrompt = content.trim();
-                } catch (IOException e) {
-                    logger.error("读取人设文件失败: {}", personaPath, e);
-                    logger.warn("人设{}不存在，使用默认人设", personaName);
-                    basePrompt = personas.getOrDefault("default", "你是一个有用的AI助手，请用中文回答问题。");
-                }
-            } else {
-                logger.warn("人设{}不存在，使用默认人设", personaName);
-                basePrompt = personas.getOrDefault("default", "你是一个有用的AI助手，请用中文回答问题。");
+    public Persona getPersona(String personaName) {
+        Map<String, Persona> current = personas;
+        Persona persona = current.get(personaName);
+        if (persona == null) {
+            logger.warn("人设{}不存在，使用默认人设", personaName);
+            persona = current.get("default");
+            if (persona == null) {
+                persona = Persona.of("default", DEFAULT_PERSONA);
             }
-        } else {
-            basePrompt = personas.get(personaName);
         }
-        
-        // 添加关于多段消息和艾特群友的附加说明
-        String specialInstructions = 
-            "\n\n特殊指令说明：\n" +
-            "1. 如果你想发送多条消息，请在消息之间使用 \\n---\\n 作为分隔符。系统会将你的回复拆分成多条单独发送。\n" +
-            "2. 如果你认为某个问题不需要回复，可以回复 [NO_RESPONSE] 表示不发送任何消息。\n" +
-            "3. 如果你想艾特(提及)群里的某个成员，可以使用 [CQ:at,qq=成员QQ号] 格式。例如：[CQ:at,qq=123456789] 你好！\n" +
-            "4. 当前对话的群成员列表可能会在系统指令的末尾提供，你可以从中选择需要艾特的成员。\n" +
-            "5. 重要：请不要艾特机器人自己，这可能导致消息循环和系统问题。";
-        
-        return basePrompt + specialInstructions;
+        return persona;
+    }
+    
+    /**
+     * 获取人设提示词
+     */
+    public String getPersonaPrompt(String personaName) {
+        return getPersona(personaName).prompt();
     }
     
     /**
@@ -240,7 +278,7 @@ public class PersonaManager {
         Path personaPath = Paths.get(personaDir, personaName + ".md");
         try {
             Files.write(personaPath, content.getBytes(StandardCharsets.UTF_8));
-            personas.put(personaName, content);
+            updatePersonas(personaName, Persona.of(personaName, content.trim()));
             logger.info("创建人设成功: {}", personaName);
             return true;
         } catch (IOException e) {
@@ -265,7 +303,7 @@ public class PersonaManager {
         try {
             boolean deleted = Files.deleteIfExists(personaPath);
             if (deleted) {
-                personas.remove(personaName);
+                updatePersonas(personaName, null);
                 logger.info("删除人设成功: {}", personaName);
                 return true;
             } else {
@@ -277,4 +315,28 @@ public class PersonaManager {
             return false;
         }
     }
-} 
\ No newline at end of file
+    
+    /**
+     * 写时复制地修改一个人设，不等文件监听触发
+     */
+    private synchronized void updatePersonas(String personaName, Persona persona) {
+        Map<String, Persona> updated = new HashMap<>(personas);
+        if (persona != null) {
+            updated.put(personaName, persona);
+        } else {
+            updated.remove(personaName);
+        }
+        personas = Map.copyOf(updated);
+    }
+    
+    private static String digest(String text) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            byte[] hash = digest.digest(text.getBytes(StandardCharsets.UTF_8));
+            // 前16个字节足够区分不同的提示词
+            return HexFormat.of().formatHex(hash, 0, 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package cn.ningmo.ai.response;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 流式响应内容提取器
+ * 每个模型按已知路径创建一次，直接从响应流中取出目标字段，不构建完整JSON树；
+ * 只有路径未命中（错误响应、格式不符、非JSON）时才交给ResponseParser逐个格式尝试。
+ * 不是JSON对象的响应直接交给回退解析；JSON对象在读取过程中最多保留前64KB供回退解析使用，
+ * 错误响应和其他格式的响应都远小于这个大小
+ */
+public class ResponseExtractor {
+    private static final Logger logger = LoggerFactory.getLogger(ResponseExtractor.class);
+    // 关闭解析器时不关闭响应流，命中后还需要把剩余内容读完
+    private static final JsonFactory jsonFactory = new JsonFactory()
+            .disable(JsonParser.Feature.AUTO_CLOSE_SOURCE);
+    // 回退解析最多使用的响应字节数，超过时不再保留
+    private static final int MAX_RECORDED_BYTES = 64 * 1024;
+
+    /** OpenAI兼容格式的内容路径 */
+    public static final String OPENAI_CONTENT_PATH = "choices.0.message.content";
+    /** Anthropic格式的内容路径 */
+    public static final String ANTHROPIC_CONTENT_PATH = "content.0.text";
+
+    private final String modelName;
+    private final String path;
+    private final String[] pathParts;
+    private final int[] pathIndexes;
+    // 自定义路径在回退解析时也传给ResponseParser
+    private final String customPath;
+
+    private ResponseExtractor(String modelName, String path, String customPath) {
+        this.modelName = modelName;
+        this.path = path;
+        this.customPath = customPath;
+
+        // 同时支持 "choices.0.message.content" 和 "choices[0].message.content"
+        String normalized = path.trim().replace("[", ".").replace("]", "");
+        this.pathParts = normalized.split("\\.");
+        this.pathIndexes = new int[pathParts.length];
+        for (int i = 0; i < pathParts.length; i++) {
+            pathIndexes[i] = parseIndex(pathParts[i]);
+        }
+    }
+
+    /**
+     * 按标准格式路径创建提取器
+     */
+    public static ResponseExtractor forPath(String modelName, String path) {
+        return new ResponseExtractor(modelName, path, null);
+    }
+
+    /**
+     * 按配置的自定义路径创建提取器，未配置时使用OpenAI兼容路径
+     */
+    public static ResponseExtractor forCustomPath(String modelName, String customPath) {
+        if (customPath == null || customPath.trim().isEmpty()) {
+            return forPath(modelName, OPENAI_CONTENT_PATH);
+        }
+        return new ResponseExtractor(modelName, customPath, customPath);
+    }
+
+    /**
+     * 从响应流中提取内容
+     * @param body 响应体输入流，方法返回前会被关闭
+     * @return 解析后的内容，失败时返回与ResponseParser一致的错误信息
+     */
+    public String extract(InputStream body) {
+        try (PushbackInputStream input = new PushbackInputStream(body, 1)) {
+            // 根据第一个非空白字符判断：不是JSON对象时不需要流式提取，直接整体交给回退解析
+            int first;
+            do {
+                first = input.read();
+            } while (first == ' ' || first == '\t' || first == '\r' || first == '\n');
+            if (first != '{') {
+                String text = "";
+                if (first >= 0) {
+                    input.unread(first);
+                    text = new String(input.readAllBytes(), StandardCharsets.UTF_8);
+                }
+                logger.debug("{}模型响应不是JSON对象，使用通用解析", modelName);
+                return ResponseParser.parseResponse(text, modelName, customPath);
+            }
+            input.unread(first);
+            return extractObject(new RecordingInputStream(input, MAX_RECORDED_BYTES));
+        } catch (IOException e) {
+            logger.error("读取{}模型响应失败", modelName, e);
+            return String.format("解析%s模型响应时出错: %s", modelName, e.getMessage());
+        }
+    }
+
+    /**
+     * 流式提取JSON对象中的目标字段，未命中时用记录下来的内容回退解析
+     */
+    private String extractObject(RecordingInputStream recording) throws IOException {
+        String content = null;
+        try (JsonParser parser = jsonFactory.createParser(recording)) {
+            content = extractByPath(parser);
+        } catch (IOException e) {
+            // 非JSON或被截断的响应交给回退解析
+            logger.debug("{}模型响应流式提取失败: {}", modelName, e.getMessage());
+        }
+
+        if (content != null) {
+            // 命中后丢弃剩余内容，让连接可以复用
+            recording.stopRecording();
+            recording.drain();
+            logger.debug("{}模型按路径 {} 提取内容成功，长度: {}", modelName, path, content.length());
+            return content.trim().isEmpty() ? "[NO_RESPONSE]" : content.trim();
+        }
+
+        // 未命中：读完剩余内容，按原有方式逐个格式尝试
+        recording.drain();
+        if (recording.overflowed()) {
+            logger.warn("{}模型响应超过{}KB且路径 {} 未命中，无法回退解析", modelName, MAX_RECORDED_BYTES / 1024, path);
+            return String.format("解析%s模型响应时出错: 响应过大且不符合预期格式", modelName);
+        }
+        logger.debug("{}模型路径 {} 未命中，回退到通用解析", modelName, path);
+        return ResponseParser.parseResponse(recording.recorded(), modelName, customPath);
+    }
+
+    /**
+     * 沿路径前进，只读取到目标字段为止
+     * @return 目标字段的文本，未命中返回null
+     */
+    private String extractByPath(JsonParser parser) throws IOException {
+        JsonToken token = parser.nextToken();
+        if (token != JsonToken.START_OBJECT) {
+            return null;
+        }
+
+        for (int depth = 0; depth < pathParts.length; depth++) {
+            if (token == JsonToken.START_OBJECT) {
+                if (!seekField(parser, pathParts[depth], depth == 0)) {
+                    return null;
+                }
+            } else if (token == JsonToken.START_ARRAY) {
+                if (pathIndexes[depth] < 0 || !seekElement(parser, pathIndexes[depth])) {
+                    return null;
+                }
+            } else {
+                return null;
+            }
+            token = parser.currentToken();
+        }
+
+        if (token == null || token.isStructStart() || token == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        return parser.getText();
+    }
+
+    /**
+     * 在当前对象中查找字段，找到时解析器停在字段值上
+     */
+    private boolean seekField(JsonParser parser, String name, boolean topLevel) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String fieldName = parser.currentName();
+            parser.nextToken();
+            if (name.equals(fieldName)) {
+                return true;
+            }
+            if (topLevel && "error".equals(fieldName)) {
+                // 错误响应交给ResponseParser生成错误信息
+                return false;
+            }
+            parser.skipChildren();
+        }
+        return false;
+    }
+
+    /**
+     * 在当前数组中跳到指定下标，找到时解析器停在该元素上
+     */
+    private boolean seekElement(JsonParser parser, int index) throws IOException {
+        int current = 0;
+        JsonToken token;
+        while ((token = parser.nextToken()) != JsonToken.END_ARRAY && token != null) {
+            if (current == index) {
+                return true;
+            }
+            parser.skipChildren();
+            current++;
+        }
+        return false;
+    }
+
+    private static int parseIndex(String part) {
+        try {
+            return Integer.parseInt(part);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 读取完整响应体为字符串，用于错误响应等非热点路径
+     */
+    public static String readBody(InputStream body) throws IOException {
+        try (body) {
+            return new String(body.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * 记录已读取字节的输入流，未命中时用于回退解析
+     * 超过上限后丢弃已记录的内容并停止记录
+     */
+    private static final class RecordingInputStream extends FilterInputStream {
+        private final int limit;
+        private ByteArrayOutputStream recorded = new ByteArrayOutputStream(1024);
+        private boolean recording = true;
+        private boolean overflowed;
+
+        RecordingInputStream(InputStream in, int limit) {
+            super(in);
+            this.limit = limit;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (recording && b >= 0) {
+                if (recorded.size() >= limit) {
+                    overflowed = true;
+                    stopRecording();
+                } else {
+                    recorded.write(b);
+                }
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            int n = super.read(b, off, len);
+            if (recording && n > 0) {
+                record(b, off, n);
+            }
+            return n;
+        }
+
+        private void record(byte[] b, int off, int len) {
+            if (recorded.size() + len > limit) {
+                overflowed = true;
+                stopRecording();
+                return;
+            }
+            recorded.write(b, off, len);
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            // 跳过的内容也要记录，这里按读取处理
+            return Math.max(0, read(new byte[(int) Math.min(n, 8192)]));
+        }
+
+        /**
+         * 读完剩余内容
+         */
+        void drain() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) >= 0) {
+                // 继续读取
+            }
+        }
+
+        void stopRecording() {
+            recording = false;
+            recorded = new ByteArrayOutputStream(0);
+        }
+
+        boolean overflowed() {
+            return overflowed;
+        }
+
+        String recorded() {
+            return recorded.toString(StandardCharsets.UTF_8);
+        }
+    }
+}
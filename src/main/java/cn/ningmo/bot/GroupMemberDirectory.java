@@ -0,0 +1,466 @@
+package cn.ningmo.bot;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
+
+/**
+ * 群成员目录
+ * 每个群首次使用时批量拉取一次成员列表（同一个群同时只发一次请求），
+ * 之后由入群、退群、群名片变更通知和消息中的发送者信息增量更新；过期后在后台刷新，期间继续使用旧数据。
+ * 没有实际变化的通知不生成新版本；加载期间收到的通知在新列表发布时重新应用，不会被覆盖
+ */
+public class GroupMemberDirectory {
+    private static final Logger logger = LoggerFactory.getLogger(GroupMemberDirectory.class);
+
+    // 加载失败后的重试间隔，避免每条消息都请求一次
+    private static final long RETRY_BACKOFF_MS = 60000;
+
+    /**
+     * OneBot API调用
+     */
+    @FunctionalInterface
+    public interface ApiCaller {
+        /**
+         * @param action API动作
+         * @param params 参数
+         * @return 完整的响应（包含status、retcode、data）
+         */
+        CompletableFuture<JSONObject> call(String action, JSONObject params);
+    }
+
+    /**
+     * 紧凑的群成员记录
+     */
+    public record Member(long userId, String nickname, String card, String role) {
+
+        /**
+         * 群名片优先，没有群名片时使用昵称
+         */
+        public String displayName() {
+            return card.isEmpty() ? nickname : card;
+        }
+
+        public boolean isAdmin() {
+            return "owner".equals(role) || "admin".equals(role);
+        }
+
+        Member withCard(String newCard) {
+            return new Member(userId, nickname, newCard, role);
+        }
+
+        Member withRole(String newRole) {
+            return new Member(userId, nickname, card, newRole);
+        }
+
+        static Member fromJson(JSONObject json) {
+            return new Member(json.optLong("user_id"),
+                            json.optString("nickname", ""),
+                            json.optString("card", ""),
+                            json.optString("role", "member"));
+        }
+    }
+
+    /**
+     * 某个群的成员快照，创建后不再修改，每次变更都生成新版本
+     */
+    public static final class Roster {
+        private final Map<Long, Member> members;
+        private final long version;
+        private final long loadedAt;
+        private final long expiresAt;
+        // 兼容旧接口的Map列表视图，按需生成一次
+        private volatile List<Map<String, String>> mapView;
+        // @解析索引，每个版本只构建一次
+        private volatile MentionIndex mentionIndex;
+
+        private Roster(Map<Long, Member> members, long version, long loadedAt, long expiresAt) {
+            this.members = members;
+            this.version = version;
+            this.loadedAt = loadedAt;
+            this.expiresAt = expiresAt;
+        }
+
+        public Member get(long userId) {
+            return members.get(userId);
+        }
+
+        public Iterable<Member> members() {
+            return members.values();
+        }
+
+        public int size() {
+            return members.size();
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public long getLoadedAt() {
+            return loadedAt;
+        }
+
+        /**
+         * 获取该版本的@解析索引，首次使用时构建
+         */
+        public MentionIndex getMentionIndex() {
+            MentionIndex index = mentionIndex;
+            if (index == null) {
+                index = MentionIndex.build(this);
+                mentionIndex = index;
+            }
+            return index;
+        }
+
+        List<Map<String, String>> asMapList() {
+            List<Map<String, String>> view = mapView;
+            if (view == null) {
+                List<Map<String, String>> list = new ArrayList<>(members.size());
+                for (Member member : members.values()) {
+                    Map<String, String> map = new HashMap<>(8);
+                    map.put("user_id", String.valueOf(member.userId()));
+                    map.put("nickname", member.nickname());
+                    map.put("card", member.card());
+                    map.put("role", member.role());
+                    list.add(Collections.unmodifiableMap(map));
+                }
+                view = Collections.unmodifiableList(list);
+                mapView = view;
+            }
+            return view;
+        }
+    }
+
+    private final ApiCaller apiCaller;
+    private volatile long ttlMillis;
+    private volatile long loadTimeoutMs;
+
+    private final Map<String, Roster> rosters = new ConcurrentHashMap<>();
+    // 正在加载的群，保证同一个群同时只有一个批量请求
+    private final Map<String, CompletableFuture<Roster>> loading = new ConcurrentHashMap<>();
+    // 群ID -> 最近一次加载失败的时间
+    private final Map<String, Long> failedAt = new ConcurrentHashMap<>();
+    // 群ID -> 加载期间收到的增量变更，发布新列表时重新应用；只在持有this锁时访问
+    private final Map<String, List<MemberChange>> changesDuringLoad = new HashMap<>();
+    // 全局递增的版本号，任何群的成员变化都会得到更大的版本
+    private final AtomicLong versionCounter = new AtomicLong();
+    // 解析大群成员列表不占用WebSocket线程；虚拟线程不会阻止JVM退出，无需关闭
+    private final ExecutorService parseExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    public GroupMemberDirectory(ApiCaller apiCaller, long ttlMillis, long loadTimeoutMs) {
+        this.apiCaller = apiCaller;
+        this.ttlMillis = ttlMillis;
+        this.loadTimeoutMs = loadTimeoutMs;
+    }
+
+    /**
+     * 修改缓存有效期和首次加载的等待时间，配置重载时调用；已缓存的成员列表到期后按新的有效期刷新
+     */
+    public void setTimeouts(long ttlMillis, long loadTimeoutMs) {
+        this.ttlMillis = ttlMillis;
+        this.loadTimeoutMs = loadTimeoutMs;
+    }
+
+    /**
+     * 获取群成员快照
+     * 首次使用时等待批量加载完成（最多等待加载超时时间），已过期时后台刷新并立即返回旧数据
+     * @param groupId 群ID
+     * @return 成员快照，加载失败返回null
+     */
+    public Roster getRoster(String groupId) {
+        Roster roster = rosters.get(groupId);
+        if (roster != null) {
+            if (System.currentTimeMillis() >= roster.expiresAt) {
+                load(groupId);
+            }
+            return roster;
+        }
+
+        Long lastFailure = failedAt.get(groupId);
+        if (lastFailure != null && System.currentTimeMillis() - lastFailure < RETRY_BACKOFF_MS) {
+            return null;
+        }
+
+        try {
+            return load(groupId).get(loadTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (Exception e) {
+            logger.warn("获取群 {} 成员列表失败: {}", groupId, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 获取群成员列表（兼容旧的Map格式：user_id、nickname、card、role）
+     */
+    public List<Map<String, String>> getMembers(String groupId) {
+        Roster roster = getRoster(groupId);
+        return roster != null ? roster.asMapList() : Collections.emptyList();
+    }
+
+    /**
+     * 只查已加载的数据，不触发任何API请求
+     * @return 群成员，群未加载或成员不存在时返回null
+     */
+    public Member peekMember(String groupId, long userId) {
+        Roster roster = rosters.get(groupId);
+        return roster != null ? roster.get(userId) : null;
+    }
+
+    /**
+     * 批量加载群成员列表，已有加载请求时复用同一个请求
+     */
+    private CompletableFuture<Roster> load(String groupId) {
+        CompletableFuture<Roster> existing = loading.get(groupId);
+        if (existing != null) {
+            return existing;
+        }
+        CompletableFuture<Roster> created = new CompletableFuture<>();
+        existing = loading.putIfAbsent(groupId, created);
+        if (existing != null) {
+            return existing;
+        }
+
+        long startTime = System.currentTimeMillis();
+        CompletableFuture<JSONObject> request;
+        try {
+            request = apiCaller.call("get_group_member_list",
+                                     new JSONObject().put("group_id", Long.parseLong(groupId)));
+        } catch (RuntimeException e) {
+            request = CompletableFuture.failedFuture(e);
+        }
+        request
+            .thenApplyAsync(response -> buildRoster(groupId, response), parseExecutor)
+            .whenComplete((loaded, error) -> {
+                if (error != null) {
+                    synchronized (this) {
+                        changesDuringLoad.remove(groupId);
+                        loading.remove(groupId, created);
+                    }
+                    logger.warn("加载群 {} 成员列表失败: {}", groupId, error.getMessage());
+                    failedAt.put(groupId, System.currentTimeMillis());
+                    created.completeExceptionally(error);
+                    return;
+                }
+                Roster roster = publish(groupId, loaded, created);
+                if (roster == null) {
+                    // 加载期间机器人已离开该群，结果不再发布
+                    logger.info("群 {} 成员列表加载完成时机器人已离开该群，丢弃加载结果", groupId);
+                    created.complete(loaded);
+                    return;
+                }
+                failedAt.remove(groupId);
+                logger.info("已加载群 {} 成员列表，共 {} 人，耗时 {}ms",
+                          groupId, roster.size(), System.currentTimeMillis() - startTime);
+                created.complete(roster);
+            });
+        return created;
+    }
+
+    /**
+     * 发布新加载的成员列表，先补上加载期间收到的增量变更
+     * 与update在同一把锁内进行，之后的变更会直接应用到新列表上
+     * @return 发布的成员列表；加载已被取消（机器人离开该群）时返回null
+     */
+    private synchronized Roster publish(String groupId, Roster loaded, CompletableFuture<Roster> loadFuture) {
+        if (!loading.remove(groupId, loadFuture)) {
+            return null;
+        }
+        Roster roster = loaded;
+        List<MemberChange> changes = changesDuringLoad.remove(groupId);
+        if (changes != null) {
+            for (MemberChange change : changes) {
+                roster = apply(roster, change);
+            }
+            logger.debug("群 {} 成员列表加载期间收到 {} 条变更，已重新应用", groupId, changes.size());
+        }
+        rosters.put(groupId, roster);
+        return roster;
+    }
+
+    private Roster buildRoster(String groupId, JSONObject response) {
+        JSONArray data = response.optJSONArray("data");
+        if (data == null) {
+            throw new IllegalStateException("群 " + groupId + " 成员列表响应无效: retcode="
+                                            + response.optInt("retcode", -1));
+        }
+        Map<Long, Member> members = new HashMap<>(data.length() * 4 / 3 + 1);
+        for (int i = 0; i < data.length(); i++) {
+            JSONObject item = data.optJSONObject(i);
+            if (item != null && item.has("user_id")) {
+                Member member = Member.fromJson(item);
+                members.put(member.userId(), member);
+            }
+        }
+        return newRoster(members, System.currentTimeMillis());
+    }
+
+    /**
+     * 过期时间在TTL基础上加减10%的随机抖动，避免大量群在同一时刻刷新
+     */
+    private Roster newRoster(Map<Long, Member> members, long loadedAt) {
+        long ttlBase = ttlMillis;
+        long jitter = ttlBase / 10;
+        long ttl = ttlBase + (jitter > 0 ? ThreadLocalRandom.current().nextLong(-jitter, jitter + 1) : 0);
+        return new Roster(Collections.unmodifiableMap(members), versionCounter.incrementAndGet(), loadedAt, loadedAt + ttl);
+    }
+
+    /**
+     * 对单个成员的增量变更
+     * @param change 输入当前成员（不存在时为null），返回变更后的成员，返回null表示移除
+     */
+    private record MemberChange(long userId, UnaryOperator<Member> change) {
+    }
+
+    /**
+     * 修改某个群的一个成员，群未加载时忽略（首次使用时会完整加载）；
+     * 正在加载时同时记下变更，加载完成后重新应用
+     */
+    private synchronized void update(String groupId, long userId, UnaryOperator<Member> change) {
+        MemberChange memberChange = new MemberChange(userId, change);
+        if (loading.containsKey(groupId)) {
+            changesDuringLoad.computeIfAbsent(groupId, k -> new ArrayList<>()).add(memberChange);
+        }
+        Roster roster = rosters.get(groupId);
+        if (roster == null) {
+            return;
+        }
+        Roster updated = apply(roster, memberChange);
+        if (updated != roster) {
+            rosters.put(groupId, updated);
+        }
+    }
+
+    /**
+     * 写时复制地应用一次变更，成员没有变化时返回原快照，不生成新版本
+     */
+    private Roster apply(Roster roster, MemberChange memberChange) {
+        Member current = roster.get(memberChange.userId());
+        Member next = memberChange.change().apply(current);
+        if (Objects.equals(current, next)) {
+            return roster;
+        }
+        Map<Long, Member> copy = new HashMap<>(roster.members);
+        if (next == null) {
+            copy.remove(memberChange.userId());
+        } else {
+            copy.put(memberChange.userId(), next);
+        }
+        // 增量更新不推迟过期时间，到期后仍会完整刷新一次以纠正遗漏的通知
+        return new Roster(Collections.unmodifiableMap(copy), versionCounter.incrementAndGet(),
+                          roster.loadedAt, roster.expiresAt);
+    }
+
+    /**
+     * 新成员入群，先以空昵称加入，再异步补全成员信息
+     */
+    public void onMemberIncrease(String groupId, long userId) {
+        if (!rosters.containsKey(groupId) && !loading.containsKey(groupId)) {
+            return;
+        }
+        update(groupId, userId, current -> current != null ? current : new Member(userId, "", "", "member"));
+        logger.debug("群 {} 新成员入群: {}", groupId, userId);
+
+        JSONObject params = new JSONObject()
+            .put("group_id", Long.parseLong(groupId))
+            .put("user_id", userId)
+            .put("no_cache", true);
+        apiCaller.call("get_group_member_info", params).whenComplete((response, error) -> {
+            JSONObject data = response != null ? response.optJSONObject("data") : null;
+            if (data == null) {
+                logger.debug("补全群 {} 新成员 {} 信息失败", groupId, userId);
+                return;
+            }
+            Member member = Member.fromJson(data);
+            update(groupId, userId, current -> current != null ? member : null);
+        });
+    }
+
+    /**
+     * 成员退群或被踢出；机器人自己离开时丢弃整个群的数据
+     */
+    public void onMemberDecrease(String groupId, long userId, boolean isSelf) {
+        if (isSelf) {
+            synchronized (this) {
+                // 同时取消进行中的加载，加载完成时不会再发布这个群的成员列表
+                rosters.remove(groupId);
+                loading.remove(groupId);
+                changesDuringLoad.remove(groupId);
+            }
+            logger.info("机器人已离开群 {}，清除该群成员数据", groupId);
+            return;
+        }
+        update(groupId, userId, current -> null);
+        logger.debug("群 {} 成员离开: {}", groupId, userId);
+    }
+
+    /**
+     * 群名片变更
+     */
+    public void onCardChange(String groupId, long userId, String newCard) {
+        String card = newCard != null ? newCard : "";
+        update(groupId, userId, current -> current != null ? current.withCard(card) : null);
+        logger.debug("群 {} 成员 {} 修改群名片: {}", groupId, userId, card);
+    }
+
+    /**
+     * 群管理员变动
+     */
+    public void onRoleChange(String groupId, long userId, String role) {
+        update(groupId, userId, current -> current != null ? current.withRole(role) : null);
+    }
+
+    /**
+     * 用群消息中携带的发送者信息更新成员，补上遗漏入群通知的成员；
+     * 发送者信息中缺少的字段保留原值，信息没有变化时不生成新版本
+     * @param sender 消息事件的sender字段
+     */
+    public void onSenderInfo(String groupId, JSONObject sender) {
+        long userId = sender.optLong("user_id", 0);
+        if (userId <= 0 || !rosters.containsKey(groupId)) {
+            return;
+        }
+        update(groupId, userId, current -> new Member(userId,
+            senderField(sender, "nickname", current != null ? current.nickname() : ""),
+            sender.optString("card", current != null ? current.card() : ""),
+            senderField(sender, "role", current != null ? current.role() : "member")));
+    }
+
+    /**
+     * 部分实现在sender中给出空的昵称或角色，视为缺少该字段
+     */
+    private static String senderField(JSONObject sender, String key, String fallback) {
+        String value = sender.optString(key, "");
+        return value.isEmpty() ? fallback : value;
+    }
+
+    /**
+     * 使某个群的数据失效，下次使用时重新加载
+     */
+    public void invalidate(String groupId) {
+        rosters.remove(groupId);
+    }
+
+    public int getLoadedGroupCount() {
+        return rosters.size();
+    }
+}
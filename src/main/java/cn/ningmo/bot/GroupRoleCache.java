@@ -0,0 +1,130 @@
+package cn.ningmo.bot;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 群成员角色缓存
+ * 角色主要来自群消息事件中的sender.role和管理员变动通知，不需要额外请求；
+ * 缓存未命中时先查已加载的群成员列表，仍然没有才调用接口查询
+ */
+public class GroupRoleCache {
+    private static final Logger logger = LoggerFactory.getLogger(GroupRoleCache.class);
+
+    /**
+     * 通过接口查询群成员角色
+     */
+    @FunctionalInterface
+    public interface RoleFetcher {
+        /**
+         * @return 角色（owner/admin/member），查询失败返回null
+         */
+        String fetchRole(String groupId, long userId);
+    }
+
+    private final GroupMemberDirectory memberDirectory;
+    private final RoleFetcher roleFetcher;
+    private volatile long ttlMillis;
+
+    // 群ID -> (QQ号 -> 角色)
+    private final Map<String, Map<Long, CachedRole>> roles = new ConcurrentHashMap<>();
+
+    /**
+     * @param memberDirectory 群成员列表，缓存未命中时优先从这里读取
+     * @param roleFetcher 接口查询，只在成员列表中也没有时使用
+     * @param ttlMillis 缓存有效期（毫秒），防止遗漏通知后角色一直不更新
+     */
+    public GroupRoleCache(GroupMemberDirectory memberDirectory, RoleFetcher roleFetcher, long ttlMillis) {
+        this.memberDirectory = memberDirectory;
+        this.roleFetcher = roleFetcher;
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 修改缓存有效期，配置重载时调用；只影响之后记录的角色
+     */
+    public void setTtlMillis(long ttlMillis) {
+        this.ttlMillis = ttlMillis;
+    }
+
+    /**
+     * 记录事件中携带的角色
+     */
+    public void recordRole(String groupId, long userId, String role) {
+        if (role == null || role.isEmpty() || userId <= 0) {
+            return;
+        }
+        Map<Long, CachedRole> groupRoles = roles.computeIfAbsent(groupId, k -> new ConcurrentHashMap<>());
+        CachedRole cached = groupRoles.get(userId);
+        long now = System.currentTimeMillis();
+        // 角色没变时只在快过期时刷新时间，避免每条消息都分配新对象
+        if (cached != null && cached.role.equals(role) && cached.expiresAt - now > ttlMillis / 2) {
+            return;
+        }
+        groupRoles.put(userId, new CachedRole(role, now + ttlMillis));
+    }
+
+    /**
+     * 群管理员变动通知
+     * @param isSet 设置为管理员时为true，取消管理员时为false
+     */
+    public void onAdminChange(String groupId, long userId, boolean isSet) {
+        String role = isSet ? "admin" : "member";
+        recordRole(groupId, userId, role);
+        memberDirectory.onRoleChange(groupId, userId, role);
+        logger.debug("群 {} 成员 {} 的角色变为: {}", groupId, userId, role);
+    }
+
+    /**
+     * 成员离开群，机器人自己离开时清除整个群
+     */
+    public void onMemberDecrease(String groupId, long userId, boolean isSelf) {
+        if (isSelf) {
+            roles.remove(groupId);
+            return;
+        }
+        Map<Long, CachedRole> groupRoles = roles.get(groupId);
+        if (groupRoles != null) {
+            groupRoles.remove(userId);
+        }
+    }
+
+    /**
+     * 获取成员角色
+     * @return 角色（owner/admin/member），无法获取时返回null
+     */
+    public String getRole(String groupId, long userId) {
+        Map<Long, CachedRole> groupRoles = roles.get(groupId);
+        CachedRole cached = groupRoles != null ? groupRoles.get(userId) : null;
+        if (cached != null && cached.expiresAt > System.currentTimeMillis()) {
+            return cached.role;
+        }
+
+        GroupMemberDirectory.Member member = memberDirectory.peekMember(groupId, userId);
+        if (member != null && !member.role().isEmpty()) {
+            recordRole(groupId, userId, member.role());
+            return member.role();
+        }
+
+        logger.debug("群 {} 成员 {} 的角色未缓存，通过接口查询", groupId, userId);
+        String role = roleFetcher.fetchRole(groupId, userId);
+        if (role != null) {
+            recordRole(groupId, userId, role);
+        }
+        return role;
+    }
+
+    /**
+     * 判断成员是否为群主或管理员
+     */
+    public boolean isAdmin(String groupId, long userId) {
+        String role = getRole(groupId, userId);
+        return "owner".equals(role) || "admin".equals(role);
+    }
+
+    private record CachedRole(String role, long expiresAt) {
+    }
+}
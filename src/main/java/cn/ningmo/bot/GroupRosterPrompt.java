@@ -0,0 +1,218 @@
+package cn.ningmo.bot;
+
+import cn.ningmo.utils.CommonUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 群成员提示词片段
+ * 记录每个群最近发言的成员，只把这些成员提供给AI；
+ * 超出token上限时优先保留最近发言的成员；
+ * 生成的片段按群缓存，成员列表版本和最近发言成员集合都没变时直接复用，
+ * 被截断的片段还要求发言先后顺序没变
+ */
+public class GroupRosterPrompt {
+    private static final Logger logger = LoggerFactory.getLogger(GroupRosterPrompt.class);
+
+    private static final String HEADER =
+        "### 群成员信息 ###\n"
+        + "现在我将向你提供当前群中最近发言的成员信息，如果你需要在回复中提及某个成员，请直接使用以下格式：\n"
+        + "1. @用户名(QQ号) - 例如：@张三(123456789) - 系统会自动转换为正确的艾特格式\n"
+        + "2. [CQ:at,qq=QQ号] - 例如：[CQ:at,qq=123456789] - 这是最终的艾特格式\n\n"
+        + "请根据用户问题的上下文，决定是否需要艾特特定成员。以下是成员列表：\n\n";
+
+    private static final String FOOTER =
+        "\n重要说明：\n"
+        + "1. 请根据上下文适当选择是否要艾特成员，不要过度艾特\n"
+        + "2. 如果问题不针对特定成员，则无需艾特任何人\n"
+        + "3. 要艾特成员，请使用上方提供的成员实际QQ号，不要使用示例QQ号(123456789)\n"
+        + "4. 禁止艾特机器人自己，避免消息循环\n";
+
+    private static final int HEADER_FOOTER_TOKENS = CommonUtils.estimateTokens(HEADER) + CommonUtils.estimateTokens(FOOTER);
+
+    private volatile int maxMembers;
+    private volatile int maxTokens;
+
+    // 群ID -> 最近发言成员
+    private final Map<String, RecentSpeakers> recentSpeakers = new ConcurrentHashMap<>();
+    // 群ID -> 已生成的片段
+    private final Map<String, Fragment> fragments = new ConcurrentHashMap<>();
+
+    public GroupRosterPrompt(int maxMembers, int maxTokens) {
+        this.maxMembers = maxMembers;
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * 修改成员数和token上限，配置重载时调用；已生成的片段全部作废
+     */
+    public void setLimits(int maxMembers, int maxTokens) {
+        if (maxMembers == this.maxMembers && maxTokens == this.maxTokens) {
+            return;
+        }
+        this.maxMembers = maxMembers;
+        this.maxTokens = maxTokens;
+        recentSpeakers.values().forEach(speakers -> speakers.setCapacity(maxMembers));
+        fragments.clear();
+    }
+
+    /**
+     * 记录一次群内发言
+     */
+    public void recordSpeaker(String groupId, long userId) {
+        recentSpeakers.computeIfAbsent(groupId, k -> new RecentSpeakers(maxMembers)).record(userId);
+    }
+
+    /**
+     * 获取群成员提示词片段
+     * @param groupId 群ID
+     * @param roster 当前的成员快照
+     * @param excludeId 不需要提供给AI的QQ号（机器人自己），不排除时传0
+     * @return 提示词片段，没有可提供的成员时返回空字符串
+     */
+    public String getFragment(String groupId, GroupMemberDirectory.Roster roster, long excludeId) {
+        RecentSpeakers speakers = recentSpeakers.get(groupId);
+        long generation = speakers != null ? speakers.generation() : 0;
+        long orderGeneration = speakers != null ? speakers.orderGeneration() : 0;
+
+        Fragment cached = fragments.get(groupId);
+        if (cached != null && cached.rosterVersion == roster.getVersion()
+                && cached.speakerGeneration == generation && cached.excludeId == excludeId
+                && (!cached.truncated || cached.orderGeneration == orderGeneration)) {
+            return cached.text;
+        }
+
+        Fragment fragment = build(roster, speakers, excludeId, generation, orderGeneration);
+        fragments.put(groupId, fragment);
+        return fragment.text;
+    }
+
+    private Fragment build(GroupMemberDirectory.Roster roster, RecentSpeakers speakers, long excludeId,
+                           long generation, long orderGeneration) {
+        // 最近发言的成员排在前面，截断时先舍弃最久没发言的
+        Map<Long, GroupMemberDirectory.Member> selected = new LinkedHashMap<>();
+        if (speakers != null) {
+            List<Long> recent = speakers.snapshot();
+            Collections.reverse(recent);
+            for (long userId : recent) {
+                GroupMemberDirectory.Member member = roster.get(userId);
+                if (member != null) {
+                    selected.put(userId, member);
+                }
+            }
+        }
+        if (roster.size() <= maxMembers) {
+            // 小群提供全部成员，没发言过的排在最后
+            for (GroupMemberDirectory.Member member : roster.members()) {
+                selected.putIfAbsent(member.userId(), member);
+            }
+        }
+        selected.values().removeIf(member -> member.userId() == excludeId || member.displayName().isEmpty());
+        if (selected.isEmpty()) {
+            return new Fragment(roster.getVersion(), generation, orderGeneration, excludeId, false, "");
+        }
+
+        List<GroupMemberDirectory.Member> kept = new ArrayList<>();
+        int tokens = HEADER_FOOTER_TOKENS;
+        for (GroupMemberDirectory.Member member : selected.values()) {
+            int lineTokens = CommonUtils.estimateTokens(line(member));
+            if (tokens + lineTokens > maxTokens) {
+                break;
+            }
+            kept.add(member);
+            tokens += lineTokens;
+        }
+        boolean truncated = kept.size() < selected.size();
+
+        // 保留下来的成员按名称排序，保持稳定顺序
+        kept.sort(Comparator.comparing(GroupMemberDirectory.Member::displayName));
+
+        StringBuilder sb = new StringBuilder(HEADER);
+        for (GroupMemberDirectory.Member member : kept) {
+            sb.append(line(member));
+        }
+        if (kept.size() < roster.size() - (roster.get(excludeId) != null ? 1 : 0)) {
+            sb.append("（群内还有其他成员未列出）\n");
+        }
+        sb.append(FOOTER);
+
+        logger.debug("生成群成员提示词片段: 成员列表版本 {}, 列出 {} 人, 约 {} tokens",
+                   roster.getVersion(), kept.size(), tokens);
+        return new Fragment(roster.getVersion(), generation, orderGeneration, excludeId, truncated, sb.toString());
+    }
+
+    private static String line(GroupMemberDirectory.Member member) {
+        return "- " + member.displayName() + " (QQ: " + member.userId() + ")\n";
+    }
+
+    private record Fragment(long rosterVersion, long speakerGeneration, long orderGeneration, long excludeId,
+                            boolean truncated, String text) {
+    }
+
+    /**
+     * 最近发言的成员集合，只有集合成员变化时才增加代数，顺序变化不影响未截断的片段；
+     * 顺序代数在每次发言时增加，用于判断截断过的片段是否需要重新生成
+     */
+    private static final class RecentSpeakers {
+        private int capacity;
+        // 按发言先后排列，最后一个是最近发言的
+        private final LinkedHashSet<Long> speakers = new LinkedHashSet<>();
+        private long generation;
+        private long orderGeneration;
+
+        RecentSpeakers(int capacity) {
+            this.capacity = capacity;
+        }
+
+        synchronized void setCapacity(int capacity) {
+            this.capacity = capacity;
+            boolean removed = false;
+            Iterator<Long> oldest = speakers.iterator();
+            while (speakers.size() > capacity && oldest.hasNext()) {
+                oldest.next();
+                oldest.remove();
+                removed = true;
+            }
+            if (removed) {
+                generation++;
+            }
+        }
+
+        synchronized void record(long userId) {
+            orderGeneration++;
+            if (speakers.remove(userId)) {
+                speakers.add(userId);
+                return;
+            }
+            speakers.add(userId);
+            if (speakers.size() > capacity) {
+                Iterator<Long> oldest = speakers.iterator();
+                oldest.next();
+                oldest.remove();
+            }
+            generation++;
+        }
+
+        synchronized long generation() {
+            return generation;
+        }
+
+        synchronized long orderGeneration() {
+            return orderGeneration;
+        }
+
+        synchronized List<Long> snapshot() {
+            return new ArrayList<>(speakers);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package cn.ningmo.bot;
+
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 群成员@解析索引
+ * 由某个版本的成员快照构建一次，之后只读：
+ * 名称精确匹配用哈希表，名称出现在@文本中用规范化名称的字典树，
+ * @文本是名称的一部分用二元组倒排索引找候选，每次查询只与@文本长度有关
+ */
+public final class MentionIndex {
+
+    // 小写名称 -> QQ号，与原来的成员映射表一致（群名片和昵称都可以精确匹配）
+    private final Map<String, Long> exactNames;
+    // QQ号 -> 显示名称
+    private final Map<Long, String> displayNames;
+    // 规范化名称的字典树
+    private final TrieNode trieRoot = new TrieNode();
+    // 二元组 -> 名称编号列表
+    private final Map<String, int[]> bigramIndex;
+    // 名称编号 -> 规范化名称 / QQ号
+    private final String[] normalizedNames;
+    private final long[] nameOwners;
+    // 所有成员QQ号（已排序），用于判断成员和随机选择
+    private final long[] memberIds;
+
+    private MentionIndex(Iterable<GroupMemberDirectory.Member> members, int sizeHint) {
+        exactNames = new HashMap<>(sizeHint * 2);
+        displayNames = new HashMap<>(sizeHint * 4 / 3 + 1);
+        List<String> names = new ArrayList<>(sizeHint * 2);
+        List<Long> owners = new ArrayList<>(sizeHint * 2);
+        long[] ids = new long[sizeHint];
+        int count = 0;
+
+        for (GroupMemberDirectory.Member member : members) {
+            if (count == ids.length) {
+                ids = Arrays.copyOf(ids, count * 2 + 1);
+            }
+            ids[count++] = member.userId();
+
+            String displayName = member.displayName();
+            if (displayName.isEmpty()) {
+                continue;
+            }
+            displayNames.put(member.userId(), displayName);
+            addName(displayName, member.userId(), names, owners);
+            // 同时添加昵称，以防AI使用本名而非群名片
+            if (!member.nickname().isEmpty() && !member.nickname().equals(displayName)) {
+                addName(member.nickname(), member.userId(), names, owners);
+            }
+        }
+
+        memberIds = Arrays.copyOf(ids, count);
+        Arrays.sort(memberIds);
+        normalizedNames = names.toArray(new String[0]);
+        nameOwners = new long[owners.size()];
+        for (int i = 0; i < nameOwners.length; i++) {
+            nameOwners[i] = owners.get(i);
+        }
+        bigramIndex = buildBigramIndex(normalizedNames);
+    }
+
+    /**
+     * 根据成员快照构建索引
+     */
+    public static MentionIndex build(GroupMemberDirectory.Roster roster) {
+        return new MentionIndex(roster.members(), Math.max(roster.size(), 1));
+    }
+
+    private void addName(String name, long userId, List<String> names, List<Long> owners) {
+        exactNames.put(name.toLowerCase(), userId);
+
+        String normalized = normalize(name);
+        if (normalized.isEmpty()) {
+            return;
+        }
+        names.add(normalized);
+        owners.add(userId);
+
+        TrieNode node = trieRoot;
+        for (int i = 0; i < normalized.length(); i++) {
+            node = node.child(normalized.charAt(i), true);
+        }
+        if (node.userId == 0) {
+            node.userId = userId;
+        }
+    }
+
+    private static Map<String, int[]> buildBigramIndex(String[] names) {
+        Map<String, List<Integer>> postings = new HashMap<>();
+        for (int id = 0; id < names.length; id++) {
+            String name = names[id];
+            for (int i = 0; i + 1 < name.length(); i++) {
+                List<Integer> list = postings.computeIfAbsent(name.substring(i, i + 2), k -> new ArrayList<>(2));
+                // 同一名称中重复的二元组只记录一次
+                if (list.isEmpty() || list.get(list.size() - 1) != id) {
+                    list.add(id);
+                }
+            }
+        }
+        Map<String, int[]> index = new HashMap<>(postings.size() * 4 / 3 + 1);
+        for (Map.Entry<String, List<Integer>> entry : postings.entrySet()) {
+            List<Integer> list = entry.getValue();
+            int[] ids = new int[list.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = list.get(i);
+            }
+            index.put(entry.getKey(), ids);
+        }
+        return index;
+    }
+
+    /**
+     * 名称规范化：全角转半角、转小写、去掉空白
+     */
+    static String normalize(String text) {
+        String folded = Normalizer.normalize(text, Normalizer.Form.NFKC).toLowerCase();
+        StringBuilder sb = new StringBuilder(folded.length());
+        for (int i = 0; i < folded.length(); i++) {
+            char c = folded.charAt(i);
+            if (!Character.isWhitespace(c)) {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+
+    public boolean isMember(long userId) {
+        return Arrays.binarySearch(memberIds, userId) >= 0;
+    }
+
+    public String getDisplayName(long userId) {
+        return displayNames.get(userId);
+    }
+
+    public int size() {
+        return memberIds.length;
+    }
+
+    /**
+     * 精确匹配名称（忽略大小写）
+     * @return QQ号，未找到返回0
+     */
+    public long findExact(String name) {
+        Long userId = exactNames.get(name.toLowerCase());
+        return userId != null ? userId : 0;
+    }
+
+    /**
+     * 模糊匹配，评分规则与原来的逐个比较一致：
+     * 名称包含@文本得分为文本长度的2倍，@文本包含名称得分为名称长度，取最高分且要求大于1
+     * @return QQ号，未找到返回0
+     */
+    public long findBest(String input) {
+        String normalized = normalize(input);
+        if (normalized.isEmpty()) {
+            return 0;
+        }
+
+        long bestId = 0;
+        int bestScore = 1;
+
+        // 名称包含@文本：用二元组索引找候选，候选中取最短的名称
+        long containing = findContaining(normalized);
+        if (containing != 0 && normalized.length() * 2 > bestScore) {
+            bestId = containing;
+            bestScore = normalized.length() * 2;
+        }
+
+        // @文本包含名称：从每个位置沿字典树向下走，取最长的名称
+        for (int start = 0; start < normalized.length(); start++) {
+            TrieNode node = trieRoot;
+            for (int i = start; i < normalized.length(); i++) {
+                node = node.child(normalized.charAt(i), false);
+                if (node == null) {
+                    break;
+                }
+                int length = i - start + 1;
+                if (node.userId != 0 && length > bestScore) {
+                    bestId = node.userId;
+                    bestScore = length;
+                }
+            }
+        }
+        return bestId;
+    }
+
+    /**
+     * 查找名称中包含指定文本的成员，多个候选时取名称最短（最接近）的
+     * @param text 文本，至少两个字符才使用索引
+     * @return QQ号，未找到返回0
+     */
+    public long findContaining(String text) {
+        String normalized = normalize(text);
+        if (normalized.length() < 2) {
+            return 0;
+        }
+
+        // 选择倒排列表最短的二元组作为候选来源
+        int[] candidates = null;
+        for (int i = 0; i + 1 < normalized.length(); i++) {
+            int[] postings = bigramIndex.get(normalized.substring(i, i + 2));
+            if (postings == null) {
+                return 0;
+            }
+            if (candidates == null || postings.length < candidates.length) {
+                candidates = postings;
+            }
+        }
+
+        long bestId = 0;
+        int bestLength = Integer.MAX_VALUE;
+        for (int id : candidates) {
+            String name = normalizedNames[id];
+            if (name.length() < bestLength && name.contains(normalized)) {
+                bestId = nameOwners[id];
+                bestLength = name.length();
+            }
+        }
+        return bestId;
+    }
+
+    /**
+     * 随机选择一个成员
+     * @param excludeId 需要排除的QQ号（机器人自己）
+     * @return QQ号，没有可选成员返回0
+     */
+    public long randomMember(long excludeId) {
+        int available = memberIds.length;
+        for (long id : memberIds) {
+            if (id == excludeId) {
+                available--;
+            }
+        }
+        if (available <= 0) {
+            return 0;
+        }
+        int target = ThreadLocalRandom.current().nextInt(available);
+        for (long id : memberIds) {
+            if (id != excludeId && target-- == 0) {
+                return id;
+            }
+        }
+        return 0;
+    }
+
+    private static final class TrieNode {
+        private Map<Character, TrieNode> children;
+        // 以此节点结尾的名称所属成员，0表示不是名称结尾
+        private long userId;
+
+        TrieNode child(char c, boolean create) {
+            if (children == null) {
+                if (!create) {
+                    return null;
+                }
+                children = new HashMap<>(4);
+            }
+            TrieNode node = children.get(c);
+            if (node == null && create) {
+                node = new TrieNode();
+                children.put(c, node);
+            }
+            return node;
+        }
+    }
+}
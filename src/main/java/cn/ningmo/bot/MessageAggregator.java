@@ -0,0 +1,146 @@
+package cn.ningmo.bot;
+
+import cn.ningmo.utils.TimerWheel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 连续消息合并
+ * 同一个用户在同一个会话中短时间内连续发送的多条消息合并成一次AI请求：
+ * 每来一条消息重新计时，静默超过窗口时间（或从第一条消息起超过最长等待时间）后一起交给回调。
+ * 等待中的窗口挂在时间轮上，不占用睡眠线程
+ */
+public class MessageAggregator {
+    private static final Logger logger = LoggerFactory.getLogger(MessageAggregator.class);
+
+    /**
+     * 合并后的消息
+     * @param key 会话键
+     * @param content 合并后的内容，多条消息以换行分隔
+     * @param messageCount 合并的消息数
+     * @param atSender 其中任意一条消息需要@发送者时为true
+     */
+    public record Batch(String key, String content, int messageCount, boolean atSender) {
+    }
+
+    /**
+     * 窗口结束后的回调，在时间轮线程中执行，应尽快返回
+     */
+    @FunctionalInterface
+    public interface BatchHandler {
+        void onBatch(Batch batch);
+    }
+
+    private final TimerWheel timerWheel;
+    private volatile long windowMs;
+    private volatile long maxWaitMs;
+    private final Map<String, Pending> pending = new ConcurrentHashMap<>();
+
+    /**
+     * @param timerWheel 时间轮
+     * @param windowMs 合并窗口（毫秒），最后一条消息之后静默这么久才发送
+     * @param maxWaitMs 从第一条消息起最长等待时间（毫秒），避免一直有新消息时迟迟不回复
+     */
+    public MessageAggregator(TimerWheel timerWheel, long windowMs, long maxWaitMs) {
+        this.timerWheel = timerWheel;
+        setWindow(windowMs, maxWaitMs);
+    }
+
+    /**
+     * 修改合并窗口，配置重载时调用；只影响之后开始的窗口
+     */
+    public void setWindow(long windowMs, long maxWaitMs) {
+        this.windowMs = windowMs;
+        this.maxWaitMs = Math.max(windowMs, maxWaitMs);
+    }
+
+    /**
+     * 提交一条消息
+     * @param key 会话键，例如"群ID:QQ号"
+     * @param content 消息内容
+     * @param atSender 是否需要@发送者
+     * @param handler 窗口结束后的回调，同一窗口内以第一条消息提交的回调为准
+     */
+    public void submit(String key, String content, boolean atSender, BatchHandler handler) {
+        long now = System.currentTimeMillis();
+        long window = windowMs;
+        long maxWait = maxWaitMs;
+        boolean[] created = new boolean[1];
+        pending.compute(key, (k, existing) -> {
+            if (existing == null) {
+                created[0] = true;
+                return new Pending(content, atSender, now, now + window, handler);
+            }
+            existing.contents.add(content);
+            existing.atSender |= atSender;
+            // 只推迟截止时间，不重新挂定时任务，到期检查时再补挂剩余时间
+            existing.deadline = Math.min(now + window, existing.firstAt + maxWait);
+            return existing;
+        });
+        if (created[0]) {
+            timerWheel.schedule(() -> onTimeout(key), window);
+        } else {
+            logger.debug("会话 {} 的连续消息已合并，等待窗口结束", key);
+        }
+    }
+
+    private void onTimeout(String key) {
+        long now = System.currentTimeMillis();
+        long[] remaining = new long[1];
+        Pending[] ready = new Pending[1];
+        pending.computeIfPresent(key, (k, existing) -> {
+            if (existing.deadline > now) {
+                remaining[0] = existing.deadline - now;
+                return existing;
+            }
+            ready[0] = existing;
+            return null;
+        });
+
+        if (ready[0] == null) {
+            if (remaining[0] > 0) {
+                timerWheel.schedule(() -> onTimeout(key), remaining[0]);
+            }
+            return;
+        }
+
+        Pending batch = ready[0];
+        if (batch.contents.size() > 1) {
+            logger.info("会话 {} 合并了 {} 条连续消息", key, batch.contents.size());
+        }
+        try {
+            batch.handler.onBatch(new Batch(key, String.join("\n", batch.contents), batch.contents.size(), batch.atSender));
+        } catch (Exception e) {
+            logger.error("处理合并消息时出错: {}", key, e);
+        }
+    }
+
+    /**
+     * 等待中的会话数
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    // 只在ConcurrentHashMap.compute中修改
+    private static final class Pending {
+        private final List<String> contents = new ArrayList<>(4);
+        private final long firstAt;
+        private final BatchHandler handler;
+        private boolean atSender;
+        private long deadline;
+
+        Pending(String content, boolean atSender, long firstAt, long deadline, BatchHandler handler) {
+            this.contents.add(content);
+            this.handler = handler;
+            this.atSender = atSender;
+            this.firstAt = firstAt;
+            this.deadline = deadline;
+        }
+    }
+}
@@ -0,0 +1,174 @@
+package cn.ningmo.bot;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * 消息去重过滤器
+ * 按时间分成若干个桶组成环，每个桶是固定大小的开放寻址long数组，
+ * 插入用CAS完成，不加锁；桶过期后整体替换为新桶，内存占用固定。
+ * 消息ID在窗口期内（最少 (桶数-1)×桶时长）都能被识别为重复
+ */
+public class MessageDeduplicator {
+    // 存储时翻转符号位，使0可以作为空槽标记
+    private static final long EMPTY = 0L;
+    // 单个桶内最多探测的槽数，超过后放弃记录
+    private static final int MAX_PROBES = 32;
+
+    private final AtomicReferenceArray<Bucket> ring;
+    private final int bucketCount;
+    private final int bucketCapacity;
+    private final long bucketMillis;
+    private final LongSupplier clock;
+
+    /**
+     * @param windowMillis 去重窗口（毫秒）
+     * @param bucketCount 桶数量，至少为2
+     * @param bucketCapacity 每个桶的槽数，会向上取整为2的幂，应大于一个桶时长内的消息数的两倍
+     */
+    public MessageDeduplicator(long windowMillis, int bucketCount, int bucketCapacity) {
+        this(windowMillis, bucketCount, bucketCapacity, System::currentTimeMillis);
+    }
+
+    MessageDeduplicator(long windowMillis, int bucketCount, int bucketCapacity, LongSupplier clock) {
+        if (bucketCount < 2) {
+            throw new IllegalArgumentException("桶数量至少为2: " + bucketCount);
+        }
+        this.bucketCount = bucketCount;
+        this.bucketCapacity = Math.max(Integer.highestOneBit(Math.max(bucketCapacity, 2) - 1) << 1, MAX_PROBES);
+        // 当前桶之外的桶覆盖整个窗口
+        this.bucketMillis = Math.max(1, (windowMillis + bucketCount - 2) / (bucketCount - 1));
+        this.clock = clock;
+        this.ring = new AtomicReferenceArray<>(bucketCount);
+    }
+
+    /**
+     * 检查并记录消息ID
+     * @return 窗口期内第一次出现返回true，重复返回false
+     */
+    public boolean tryMark(long messageId) {
+        long key = messageId ^ Long.MIN_VALUE;
+        if (key == EMPTY) {
+            key = 1;
+        }
+
+        long epoch = clock.getAsLong() / bucketMillis;
+        int slot = (int) Math.floorMod(epoch, (long) bucketCount);
+        Bucket current = currentBucket(slot, epoch);
+
+        // 先查看窗口内的旧桶
+        long oldestEpoch = epoch - (bucketCount - 1);
+        for (int k = 1; k < bucketCount; k++) {
+            Bucket bucket = ring.get(Math.floorMod(slot - k, bucketCount));
+            if (bucket != null && bucket != current && bucket.epoch >= oldestEpoch && bucket.contains(key)) {
+                return false;
+            }
+        }
+        return current.insert(key);
+    }
+
+    /**
+     * 检查并记录消息ID，非数字的ID按64位哈希处理
+     * @return 窗口期内第一次出现返回true，重复返回false
+     */
+    public boolean tryMark(String messageId) {
+        return tryMark(toKey(messageId));
+    }
+
+    private static long toKey(String messageId) {
+        // OneBot的message_id通常是整数，直接解析避免字符串哈希冲突
+        int length = messageId.length();
+        if (length > 0 && length <= 18) {
+            long value = 0;
+            int start = messageId.charAt(0) == '-' ? 1 : 0;
+            boolean numeric = start < length;
+            for (int i = start; i < length && numeric; i++) {
+                char c = messageId.charAt(i);
+                if (c < '0' || c > '9') {
+                    numeric = false;
+                } else {
+                    value = value * 10 + (c - '0');
+                }
+            }
+            if (numeric) {
+                return start == 1 ? -value : value;
+            }
+        }
+        long h = 1125899906842597L;
+        for (int i = 0; i < length; i++) {
+            h = 31 * h + messageId.charAt(i);
+        }
+        return mix(h);
+    }
+
+    private Bucket currentBucket(int slot, long epoch) {
+        while (true) {
+            Bucket bucket = ring.get(slot);
+            // 线程在取时间后被挂起时，桶可能已经轮换到更新的时段，直接使用即可
+            if (bucket != null && bucket.epoch >= epoch) {
+                return bucket;
+            }
+            Bucket fresh = new Bucket(epoch, bucketCapacity);
+            if (ring.compareAndSet(slot, bucket, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Bucket {
+        private final long epoch;
+        private final AtomicLongArray slots;
+        private final int mask;
+
+        Bucket(long epoch, int capacity) {
+            this.epoch = epoch;
+            this.slots = new AtomicLongArray(capacity);
+            this.mask = capacity - 1;
+        }
+
+        boolean contains(long key) {
+            int i = (int) mix(key) & mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                long value = slots.get(i);
+                if (value == key) {
+                    return true;
+                }
+                if (value == EMPTY) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            return false;
+        }
+
+        /**
+         * @return 新插入返回true，已存在返回false；桶已满时不记录，按新消息处理
+         */
+        boolean insert(long key) {
+            int i = (int) mix(key) & mask;
+            for (int probe = 0; probe < MAX_PROBES; probe++) {
+                long value = slots.get(i);
+                if (value == EMPTY) {
+                    if (slots.compareAndSet(i, EMPTY, key)) {
+                        return true;
+                    }
+                    // 其他线程抢先写入了这个槽，重新检查是否是同一个ID
+                    value = slots.get(i);
+                }
+                if (value == key) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            return true;
+        }
+    }
+}
@@ -1,20 +1,26 @@
 package cn.ningmo.bot;
 
 import cn.ningmo.ai.AIService;
+import cn.ningmo.bot.record.EventRecorder;
 import cn.ningmo.config.BlacklistManager;
 import cn.ningmo.config.ConfigLoader;
 import cn.ningmo.config.DataManager;
 import cn.ningmo.config.FilterWordManager;
+import cn.ningmo.metrics.Counter;
+import cn.ningmo.metrics.Histogram;
+import cn.ningmo.metrics.MetricsRegistry;
+import cn.ningmo.metrics.jfr.OutboundSendEvent;
+import cn.ningmo.metrics.trace.TraceContext;
 import cn.ningmo.utils.CommonUtils;
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
 import org.json.JSONObject;
-import org.json.JSONArray;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.file.Paths;
 import java.util.Timer;
 import java.util.TimerTask;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -26,6 +32,8 @@ import java.util.HashMap;
 import java.util.function.Consumer;
 import java.util.Deque;
 import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 public class OneBotClient extends WebSocketClient {
     private static final Logger logger = LoggerFactory.getLogger(OneBotClient.class);
@@ -48,10 +56,18 @@ public class OneBotClient extends WebSocketClient {
     // 最大单条消息长度
     private static final int MAX_MESSAGE_LENGTH = 3000;
     
-    // 群成员信息缓存
-    private final Map<String, List<Map<String, String>>> groupMembersCache = new ConcurrentHashMap<>();
+    // 群成员目录
+    private final GroupMemberDirectory memberDirectory;
+    private final GroupRoleCache roleCache;
+    
+    // 等待响应的API请求：echo -> 响应
+    private final Map<String, CompletableFuture<JSONObject>> pendingApiCalls = new ConcurrentHashMap<>();
+    // API请求默认超时时间（毫秒）
+    private static final long API_TIMEOUT_MS = 10000;
     
     private final long startupTime = System.currentTimeMillis();
+    // 首次连接成功时完成，用于统计启动耗时
+    private final CompletableFuture<Void> firstConnect = new CompletableFuture<>();
     
     // 消息发送频率限制 - 时间窗口内允许的最大消息数
     private static final int MAX_MESSAGES_PER_WINDOW = 10;
@@ -61,19 +77,67 @@ public class OneBotClient extends WebSocketClient {
     // 存储每个目标的消息发送记录
     private final Map<String, Deque<Long>> messageSendTimes = new ConcurrentHashMap<>();
     
-    public OneBotClient(String serverUri, ConfigLoader configLoader, DataManager dataManager, BlacklistManager blacklistManager, FilterWordManager filterWordManager) {
+    // 指标
+    private final MetricsRegistry metrics;
+    private final Histogram decodeLatency;
+    private final Histogram sendLatency;
+    private final Map<String, Counter> eventCounters = new ConcurrentHashMap<>();
+    
+    // 入站事件录制，未开启时为null
+    private final EventRecorder recorder;
+    
+    public OneBotClient(String serverUri, ConfigLoader configLoader, DataManager dataManager, AIService aiService, BlacklistManager blacklistManager, FilterWordManager filterWordManager) {
         super(createURI(serverUri), createHeaders(configLoader));
         this.configLoader = configLoader;
         this.dataManager = dataManager;
         this.blacklistManager = blacklistManager;
         this.filterWordManager = filterWordManager;
-        this.aiService = new AIService(configLoader, dataManager);
-        this.messageHandler = new MessageHandler(this, configLoader, dataManager, aiService, blacklistManager, filterWordManager);
+        this.aiService = aiService;
+        this.metrics = aiService.getMetrics();
+        this.decodeLatency = metrics.histogram("ningmo_event_decode_seconds");
+        this.sendLatency = metrics.histogram("ningmo_send_seconds");
+        this.memberDirectory = new GroupMemberDirectory(
+            (action, params) -> callApi(action, params, API_TIMEOUT_MS),
+            memberDirectoryTtlMillis(configLoader),
+            configLoader.getConfigInt("bot.member_directory.load_timeout_ms", 3000));
+        this.roleCache = new GroupRoleCache(memberDirectory, this::fetchGroupRole, memberDirectoryTtlMillis(configLoader));
+        // 连接地址、访问令牌和事件录制设置只在启动时读取，见ConfigLoader.RESTART_REQUIRED_KEYS
+        configLoader.addReloadListener(snapshot -> {
+            memberDirectory.setTimeouts(memberDirectoryTtlMillis(configLoader),
+                configLoader.getConfigInt("bot.member_directory.load_timeout_ms", 3000));
+            roleCache.setTtlMillis(memberDirectoryTtlMillis(configLoader));
+        });
+        metrics.gauge("ningmo_pending_api_calls", pendingApiCalls::size);
+        metrics.gauge("ningmo_member_directory_groups", memberDirectory::getLoadedGroupCount);
+        metrics.gauge("ningmo_websocket_connected", () -> isOpen() ? 1 : 0);
+        this.recorder = createRecorder(configLoader);
+        if (recorder != null) {
+            metrics.gauge("ningmo_recorder_events", recorder::getRecorded);
+            metrics.gauge("ningmo_recorder_dropped", recorder::getDropped);
+        }
         
         // 设置连接超时
         this.setConnectionLostTimeout(60); // 60秒
     }
     
+    private static long memberDirectoryTtlMillis(ConfigLoader configLoader) {
+        return TimeUnit.MINUTES.toMillis(configLoader.getConfigInt("bot.member_directory.ttl_minutes", 30));
+    }
+    
+    /**
+     * 按配置创建事件录制器
+     */
+    private static EventRecorder createRecorder(ConfigLoader configLoader) {
+        if (!configLoader.getConfigBoolean("bot.record.enabled", false)) {
+            return null;
+        }
+        return new EventRecorder(
+            Paths.get(configLoader.getConfigString("bot.record.dir", "data/record")),
+            configLoader.getConfigInt("bot.record.max_file_mb", 64) * 1024L * 1024L,
+            configLoader.getConfigInt("bot.record.max_files", 20),
+            configLoader.getConfigInt("bot.record.buffer_size", 8192));
+    }
+    
     private static URI createURI(String serverUri) {
         try {
             return new URI(serverUri);
@@ -117,6 +181,7 @@ public class OneBotClient extends WebSocketClient {
         
         // 停止重连定时器
         stopReconnectTimer();
+        firstConnect.complete(null);
         
         // 发送获取机器人信息的请求
         sendGetLoginInfo();
@@ -137,7 +202,12 @@ public class OneBotClient extends WebSocketClient {
                 return;
             }
             
+            if (recorder != null) {
+                recorder.record(message);
+            }
+            
             // 解析JSON消息
+            long decodeStart = System.nanoTime();
             JSONObject json = new JSONObject(message);
             
             // 处理心跳响应 - 冗余检查，保证兼容性
@@ -146,10 +216,25 @@ public class OneBotClient extends WebSocketClient {
                 return;
             }
             
+            // API响应没有post_type，按echo交给等待中的请求
+            if (!json.has("post_type")) {
+                String echo = json.optString("echo", null);
+                if (echo != null) {
+                    CompletableFuture<JSONObject> pending = pendingApiCalls.remove(echo);
+                    if (pending != null) {
+                        pending.complete(json);
+                    }
+                }
+                return;
+            }
+            
             // 异步处理消息，避免阻塞WebSocket线程
             if (json.has("post_type")) {
                 // 创建消息的副本，避免线程间共享可变对象
                 final JSONObject jsonCopy = new JSONObject(json.toString());
+                decodeLatency.recordNanos(System.nanoTime() - decodeStart);
+                eventCounters.computeIfAbsent(json.optString("post_type"),
+                    type -> metrics.counter("ningmo_events", "type", type)).increment();
                 
                 // 使用虚拟线程池处理消息
                 final Thread virtualThread = Thread.ofVirtual()
@@ -165,6 +250,9 @@ public class OneBotClient extends WebSocketClient {
                                 case "meta_event":
                                     handleMetaEvent(jsonCopy);
                                     break;
+                                case "notice":
+                                    handleNotice(jsonCopy);
+                                    break;
                                 default:
                                     // 记录其他类型的事件
                                     logger.debug("收到其他类型事件: {}", postType);
@@ -188,6 +276,9 @@ public class OneBotClient extends WebSocketClient {
         // 停止心跳
         stopHeartbeat();
         
+        // 连接已断开，等待中的API请求不会再收到响应
+        failPendingApiCalls("WebSocket连接已关闭");
+        
         // 尝试重新连接
         if (!isReconnecting) {
             startReconnectTimer();
@@ -360,7 +451,18 @@ public class OneBotClient extends WebSocketClient {
         jsonObject.put("params", params);
         jsonObject.put("echo", "send_group_msg_" + messageIdCounter.incrementAndGet());
         
+        long sendStart = System.nanoTime();
+        OutboundSendEvent sendEvent = new OutboundSendEvent();
+        sendEvent.begin();
         send(jsonObject.toString());
+        sendLatency.recordNanos(System.nanoTime() - sendStart);
+        TraceContext.record("send", sendStart, message.length() + " 字");
+        if (sendEvent.shouldCommit()) {
+            sendEvent.messageType = "group";
+            sendEvent.target = groupId;
+            sendEvent.length = message.length();
+            sendEvent.commit();
+        }
         logger.debug("发送群消息: groupId={}, message={}", groupId, CommonUtils.truncateText(message, 100));
     }
     
@@ -414,14 +516,25 @@ public class OneBotClient extends WebSocketClient {
         jsonObject.put("params", params);
         jsonObject.put("echo", "send_private_msg_" + messageIdCounter.incrementAndGet());
         
+        long sendStart = System.nanoTime();
+        OutboundSendEvent sendEvent = new OutboundSendEvent();
+        sendEvent.begin();
         send(jsonObject.toString());
+        sendLatency.recordNanos(System.nanoTime() - sendStart);
+        TraceContext.record("send", sendStart, message.length() + " 字");
+        if (sendEvent.shouldCommit()) {
+            sendEvent.messageType = "private";
+            sendEvent.target = userId;
+            sendEvent.length = message.length();
+            sendEvent.commit();
+        }
         logger.debug("发送私聊消息: userId={}, message={}", userId, CommonUtils.truncateText(message, 100));
     }
     
     /**
      * 将长消息分割成多段
      */
-    private List<String> splitMessage(String message) {
+    static List<String> splitMessage(String message) {
         List<String> segments = new ArrayList<>();
         
         // 尝试在段落或句子处分割消息
@@ -454,7 +567,7 @@ public class OneBotClient extends WebSocketClient {
     /**
      * 查找最后一个句子分隔符的位置
      */
-    private int findLastSentenceBreak(String message, int startIndex, int endIndex) {
+    private static int findLastSentenceBreak(String message, int startIndex, int endIndex) {
         // 常见的句子分隔符
         String[] separators = {"。", "！", "？", "…", ".", "!", "?"};
         
@@ -488,49 +601,77 @@ public class OneBotClient extends WebSocketClient {
     }
     
     /**
-     * 获取群成员列表
+     * 调用OneBot API并异步等待响应
+     * @param action API动作
+     * @param params 参数
+     * @param timeoutMs 超时时间(毫秒)
+     * @return 完整的响应对象，超时或连接断开时异常完成
      */
-    public void getGroupMemberList(String groupId) {
+    public CompletableFuture<JSONObject> callApi(String action, JSONObject params, long timeoutMs) {
+        CompletableFuture<JSONObject> future = new CompletableFuture<>();
+        if (!isOpen()) {
+            future.completeExceptionally(new IllegalStateException("WebSocket连接未建立，无法调用API: " + action));
+            return future;
+        }
+        
+        String echo = "api_" + action + "_" + messageIdCounter.incrementAndGet();
+        pendingApiCalls.put(echo, future);
+        future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+              .whenComplete((result, error) -> pendingApiCalls.remove(echo));
+        
+        JSONObject request = new JSONObject();
+        request.put("action", action);
+        request.put("params", params);
+        request.put("echo", echo);
+        
         try {
-            JSONObject request = new JSONObject();
-            request.put("action", "get_group_member_list");
-            request.put("params", new JSONObject().put("group_id", Long.parseLong(groupId)));
-            request.put("echo", "get_group_member_list:" + groupId);
-            
             send(request.toString());
-            logger.debug("已发送获取群 {} 成员列表请求", groupId);
+            logger.debug("发送API请求: {}, echo: {}", action, echo);
         } catch (Exception e) {
-            logger.error("发送获取群成员列表请求失败", e);
+            future.completeExceptionally(e);
         }
+        return future;
     }
     
-    // 解析并缓存群成员信息
-    private void parseAndCacheGroupMembers(String groupId, JSONArray members) {
-        try {
-            List<Map<String, String>> memberList = new ArrayList<>();
-            
-            for (int i = 0; i < members.length(); i++) {
-                JSONObject member = members.getJSONObject(i);
-                Map<String, String> memberInfo = new HashMap<>();
-                
-                memberInfo.put("user_id", CommonUtils.safeGetString(member, "user_id"));
-                memberInfo.put("nickname", CommonUtils.safeGetString(member, "nickname"));
-                memberInfo.put("card", CommonUtils.safeGetString(member, "card"));  // 群名片
-                memberInfo.put("role", CommonUtils.safeGetString(member, "role"));  // 角色: owner, admin, member
-                
-                memberList.add(memberInfo);
+    private void failPendingApiCalls(String reason) {
+        for (String echo : pendingApiCalls.keySet()) {
+            CompletableFuture<JSONObject> pending = pendingApiCalls.remove(echo);
+            if (pending != null) {
+                pending.completeExceptionally(new IllegalStateException(reason));
             }
-            
-            groupMembersCache.put(groupId, memberList);
-            logger.debug("已缓存群 {} 的成员列表，共 {} 人", groupId, memberList.size());
-        } catch (Exception e) {
-            logger.error("解析群成员信息失败", e);
         }
     }
     
-    // 添加获取群成员列表的方法
+    /**
+     * 获取群成员列表，数据来自群成员目录，首次使用时会批量加载
+     * @param groupId 群ID
+     * @return 群成员列表（user_id、nickname、card、role），加载失败返回空列表
+     */
     public List<Map<String, String>> getGroupMembers(String groupId) {
-        return groupMembersCache.getOrDefault(groupId, new ArrayList<>());
+        return memberDirectory.getMembers(groupId);
+    }
+    
+    /**
+     * 获取群成员目录
+     */
+    public GroupMemberDirectory getMemberDirectory() {
+        return memberDirectory;
+    }
+    
+    /**
+     * 获取群成员角色缓存
+     */
+    public GroupRoleCache getRoleCache() {
+        return roleCache;
+    }
+    
+    /**
+     * 通过接口查询群成员角色，供角色缓存未命中时使用
+     * @return 角色，查询失败返回null
+     */
+    private String fetchGroupRole(String groupId, long userId) {
+        JSONObject memberInfo = getGroupMemberInfoSync(groupId, String.valueOf(userId));
+        return memberInfo != null ? memberInfo.optString("role", "member") : null;
     }
     
     /**
@@ -547,11 +688,10 @@ public class OneBotClient extends WebSocketClient {
             params.put("user_id", userId);
             params.put("no_cache", true);
             
-            String echo = "get_group_member_info_sync_" + System.currentTimeMillis();
-            JSONObject result = sendApiRequestSync("get_group_member_info", params, echo, 3000);
+            JSONObject result = sendApiRequestSync("get_group_member_info", params, 3000);
             
             if (result != null && result.has("data")) {
-                return result.getJSONObject("data");
+                return result.optJSONObject("data");
             }
             return null;
         } catch (Exception e) {
@@ -564,102 +704,20 @@ public class OneBotClient extends WebSocketClient {
      * 发送同步API请求并等待响应
      * @param action API动作
      * @param params 参数
-     * @param echo 请求标识
      * @param timeoutMs 超时时间(毫秒)
      * @return 响应对象，如果超时或失败则返回null
      */
-    private JSONObject sendApiRequestSync(String action, JSONObject params, String echo, long timeoutMs) {
+    private JSONObject sendApiRequestSync(String action, JSONObject params, long timeoutMs) {
         try {
-            final JSONObject[] response = {null};
-            final Object lock = new Object();
-            
-            // 创建临时的消息监听器
-            Runnable messageCallback = () -> {
-                // 在指定时间内接收消息，寻找匹配的echo
-                long endTime = System.currentTimeMillis() + timeoutMs;
-                while (System.currentTimeMillis() < endTime) {
-                    try {
-                        synchronized (lock) {
-                            // 如果已经收到响应，退出循环
-                            if (response[0] != null) {
-                                break;
-                            }
-                            // 等待一小段时间
-                            lock.wait(100);
-                        }
-                    } catch (InterruptedException e) {
-                        logger.warn("等待API响应被中断", e);
-                        Thread.currentThread().interrupt();
-                        return;
-                    }
-                }
-            };
-
-            // 添加一个临时监听器用于此次请求
-            Thread listenerThread = new Thread(messageCallback);
-            listenerThread.setDaemon(true); // 设置为守护线程，不阻止JVM退出
-            
-            // 发送请求
-            JSONObject request = new JSONObject();
-            request.put("action", action);
-            request.put("params", params);
-            request.put("echo", echo);
-            
-            String requestJson = request.toString();
-            if (isOpen()) {
-                // 在发送请求前启动监听线程
-                listenerThread.start();
-                
-                // 发送请求
-                send(requestJson);
-                logger.debug("发送同步API请求: {}, echo: {}", action, echo);
-                
-                // 等待响应到达
-                try {
-                    listenerThread.join(timeoutMs);
-                } catch (InterruptedException e) {
-                    logger.warn("等待响应线程被中断", e);
-                    Thread.currentThread().interrupt();
-                }
-                
-                if (response[0] == null) {
-                    logger.warn("API请求超时: {}, echo: {}", action, echo);
-                }
-            } else {
-                logger.error("WebSocket连接未建立，无法发送同步请求: {}", action);
-                return null;
-            }
-            
-            return response[0];
-        } catch (Exception e) {
-            logger.error("发送同步API请求失败: {}", action, e);
+            return callApi(action, params, timeoutMs).get();
+        } catch (InterruptedException e) {
+            logger.warn("等待API响应被中断: {}", action);
+            Thread.currentThread().interrupt();
             return null;
-        }
-    }
-    
-    /**
-     * 处理接收到的消息，用于监听API响应
-     * 
-     * @param message 接收到的消息
-     * @param echo 请求标识
-     * @param response 响应容器
-     * @param lock 同步锁
-     * @return 是否是匹配的响应
-     */
-    private boolean handleApiResponse(String message, String echo, JSONObject[] response, Object lock) {
-        try {
-            JSONObject json = new JSONObject(message);
-            if (json.has("echo") && json.getString("echo").equals(echo)) {
-                synchronized (lock) {
-                    response[0] = json;
-                    lock.notify();
-                    return true;
-                }
-            }
         } catch (Exception e) {
-            // 忽略非JSON消息
+            logger.warn("API请求失败: {}, {}", action, e.getCause() != null ? e.getCause().toString() : e.getMessage());
+            return null;
         }
-        return false;
     }
     
     /**
@@ -670,6 +728,13 @@ public class OneBotClient extends WebSocketClient {
         return startupTime;
     }
     
+    /**
+     * 首次连接成功时完成，重连不会再次触发
+     */
+    public CompletableFuture<Void> getFirstConnect() {
+        return firstConnect;
+    }
+    
     @Override
     public void close() {
         // 停止定时器
@@ -680,6 +745,17 @@ public class OneBotClient extends WebSocketClient {
         super.close();
     }
     
+    /**
+     * 进程退出时关闭客户端：断开连接并停止事件录制
+     * 不能放在close()中，Java-WebSocket的reconnect()也会调用close()，会让录制在第一次重连时停止
+     */
+    public void shutdown() {
+        close();
+        if (recorder != null) {
+            recorder.close();
+        }
+    }
+    
     /**
      * 处理元事件消息
      * @param metaEvent 元事件消息
@@ -714,7 +790,47 @@ public class OneBotClient extends WebSocketClient {
     }
     
     /**
-     * 设置消息处理器
+     * 处理通知事件，目前用于增量更新群成员目录
+     * @param notice 通知事件
+     */
+    private void handleNotice(JSONObject notice) {
+        String noticeType = notice.optString("notice_type", "");
+        String groupId = notice.has("group_id") ? String.valueOf(notice.optLong("group_id")) : null;
+        long userId = notice.optLong("user_id");
+        if (groupId == null || userId == 0) {
+            logger.debug("收到通知事件: {}", noticeType);
+            return;
+        }
+        
+        switch (noticeType) {
+            case "group_increase":
+                memberDirectory.onMemberIncrease(groupId, userId);
+                break;
+                
+            case "group_decrease":
+                // sub_type为kick_me时是机器人自己被踢出
+                boolean isSelf = "kick_me".equals(notice.optString("sub_type"))
+                    || userId == notice.optLong("self_id", -1);
+                memberDirectory.onMemberDecrease(groupId, userId, isSelf);
+                roleCache.onMemberDecrease(groupId, userId, isSelf);
+                break;
+                
+            case "group_admin":
+                roleCache.onAdminChange(groupId, userId, "set".equals(notice.optString("sub_type")));
+                break;
+                
+            case "group_card":
+                memberDirectory.onCardChange(groupId, userId, notice.optString("card_new", ""));
+                break;
+                
+            default:
+                logger.debug("收到未处理的通知类型: {}", noticeType);
+                break;
+        }
+    }
+    
+    /**
+     * 设置消息处理器，消息处理器依赖客户端发送消息，需要在连接之前设置
      * @param messageHandler 消息处理器
      */
     public void setMessageHandler(MessageHandler messageHandler) {
@@ -0,0 +1,21 @@
+package cn.ningmo.bot.command;
+
+/**
+ * 命令参数解析器
+ * 输入为命令名之后的文本（已去掉首尾空白），返回解析结果，参数不合法时返回null
+ */
+@FunctionalInterface
+public interface ArgParser {
+
+    /**
+     * 不带参数的命令，命令名之后不能有其他内容
+     */
+    ArgParser NONE = text -> text.isEmpty() ? "" : null;
+
+    /**
+     * 必须带非空文本参数
+     */
+    ArgParser TEXT = text -> text.isEmpty() ? null : text;
+
+    Object parse(String text);
+}
@@ -0,0 +1,81 @@
+package cn.ningmo.bot.command;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * 聊天命令
+ * 命令的元数据（名称、别名、权限、可用场景、参数解析器、帮助信息）和执行逻辑
+ */
+public class ChatCommand {
+    private final String name;
+    private final List<String> aliases;
+    private final CommandPermission permission;
+    private final CommandScope scope;
+    private final ArgParser argParser;
+    private final String usage;
+    private final String description;
+    private final Consumer<CommandContext> executor;
+
+    /**
+     * 构造函数
+     * @param name 命令名称（不含斜杠）
+     * @param aliases 别名列表
+     * @param permission 所需权限
+     * @param scope 可用场景
+     * @param argParser 参数解析器，不带参数的命令使用 {@link ArgParser#NONE}
+     * @param usage 命令用法，参数不合法时提示给用户
+     * @param description 命令描述
+     * @param executor 命令执行器
+     */
+    public ChatCommand(String name, List<String> aliases, CommandPermission permission, CommandScope scope,
+                       ArgParser argParser, String usage, String description, Consumer<CommandContext> executor) {
+        this.name = name;
+        this.aliases = List.copyOf(aliases);
+        this.permission = permission;
+        this.scope = scope;
+        this.argParser = argParser;
+        this.usage = usage;
+        this.description = description;
+        this.executor = executor;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getAliases() {
+        return aliases;
+    }
+
+    public CommandPermission getPermission() {
+        return permission;
+    }
+
+    public CommandScope getScope() {
+        return scope;
+    }
+
+    public ArgParser getArgParser() {
+        return argParser;
+    }
+
+    /**
+     * 命令名之后是否可以跟参数
+     */
+    public boolean takesArgs() {
+        return argParser != ArgParser.NONE;
+    }
+
+    public String getUsage() {
+        return usage;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public void execute(CommandContext context) {
+        executor.accept(context);
+    }
+}
@@ -0,0 +1,28 @@
+package cn.ningmo.bot.command;
+
+import java.util.function.Consumer;
+
+/**
+ * 命令执行上下文
+ * @param groupId 群ID，私聊时为null
+ * @param userId 发送命令的用户
+ * @param arg 参数解析器的解析结果
+ * @param replier 回复方式，群聊回复到群，私聊回复给用户
+ */
+public record CommandContext(String groupId, String userId, Object arg, Consumer<String> replier) {
+
+    public boolean isGroup() {
+        return groupId != null;
+    }
+
+    public void reply(String message) {
+        replier.accept(message);
+    }
+
+    /**
+     * 获取文本参数
+     */
+    public String text() {
+        return String.valueOf(arg);
+    }
+}
@@ -0,0 +1,13 @@
+package cn.ningmo.bot.command;
+
+/**
+ * 命令所需权限
+ */
+public enum CommandPermission {
+    /** 所有人可用 */
+    EVERYONE,
+    /** 群主、群管理员或机器人管理员可用；私聊中只有机器人管理员可用 */
+    GROUP_ADMIN,
+    /** 只有配置文件中的机器人管理员可用 */
+    BOT_ADMIN
+}
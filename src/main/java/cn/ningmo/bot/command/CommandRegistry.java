@@ -0,0 +1,84 @@
+package cn.ningmo.bot.command;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 命令注册表
+ * 命令名和别名按字符（忽略大小写）存入字典树，分发时沿输入向下走一次，
+ * 取能匹配上的最长命令名，耗时只与命令文本长度有关，与注册的命令数量无关
+ */
+public class CommandRegistry {
+    private final Node root = new Node();
+    private final List<ChatCommand> commands = new ArrayList<>();
+
+    /**
+     * 命令匹配结果
+     * @param command 匹配到的命令
+     * @param args 命令名之后的文本（已去掉首尾空白）
+     */
+    public record Match(ChatCommand command, String args) {
+    }
+
+    /**
+     * 注册命令，名称或别名与已有命令冲突时抛出异常
+     */
+    public void register(ChatCommand command) {
+        insert(command.getName(), command);
+        for (String alias : command.getAliases()) {
+            insert(alias, command);
+        }
+        commands.add(command);
+    }
+
+    private void insert(String name, ChatCommand command) {
+        Node node = root;
+        for (int i = 0; i < name.length(); i++) {
+            node = node.children.computeIfAbsent(Character.toLowerCase(name.charAt(i)), k -> new Node());
+        }
+        if (node.command != null) {
+            throw new IllegalArgumentException("命令名称重复: " + name);
+        }
+        node.command = command;
+    }
+
+    /**
+     * 查找命令
+     * @param text 命令文本（不含斜杠）
+     * @return 匹配结果，没有匹配的命令时返回null
+     */
+    public Match find(String text) {
+        String input = text.trim();
+        ChatCommand best = null;
+        int bestLength = 0;
+
+        Node node = root;
+        for (int i = 0; i < input.length(); i++) {
+            node = node.children.get(Character.toLowerCase(input.charAt(i)));
+            if (node == null) {
+                break;
+            }
+            // 不带参数的命令只有完整匹配时才算数，例如"开启屏蔽"不会被当成"开启"
+            if (node.command != null && (node.command.takesArgs() || i == input.length() - 1)) {
+                best = node.command;
+                bestLength = i + 1;
+            }
+        }
+        return best != null ? new Match(best, input.substring(bestLength).trim()) : null;
+    }
+
+    /**
+     * 按注册顺序返回所有命令
+     */
+    public List<ChatCommand> getCommands() {
+        return Collections.unmodifiableList(commands);
+    }
+
+    private static final class Node {
+        private final Map<Character, Node> children = new HashMap<>(4);
+        private ChatCommand command;
+    }
+}
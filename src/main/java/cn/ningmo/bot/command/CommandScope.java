@@ -0,0 +1,14 @@
+package cn.ningmo.bot.command;
+
+/**
+ * 命令可用的场景
+ */
+public enum CommandScope {
+    GROUP,
+    PRIVATE,
+    ALL;
+
+    public boolean includes(boolean isGroup) {
+        return this == ALL || (this == GROUP) == isGroup;
+    }
+}
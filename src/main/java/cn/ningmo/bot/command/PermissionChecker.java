@@ -0,0 +1,70 @@
+package cn.ningmo.bot.command;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * 命令权限检查
+ * 只有需要管理员权限的命令才会查询群角色，角色的缓存由查询方负责
+ */
+public class PermissionChecker {
+    private static final Logger logger = LoggerFactory.getLogger(PermissionChecker.class);
+
+    /**
+     * 查询群成员角色
+     */
+    @FunctionalInterface
+    public interface RoleLookup {
+        /**
+         * @return 角色（owner/admin/member），查询失败返回null
+         */
+        String getRole(String groupId, String userId);
+    }
+
+    private final Supplier<List<String>> botAdmins;
+    private final RoleLookup roleLookup;
+
+    /**
+     * @param botAdmins 机器人管理员列表
+     * @param roleLookup 群角色查询
+     */
+    public PermissionChecker(Supplier<List<String>> botAdmins, RoleLookup roleLookup) {
+        this.botAdmins = botAdmins;
+        this.roleLookup = roleLookup;
+    }
+
+    /**
+     * 检查用户是否有执行命令的权限
+     * @param groupId 群ID，私聊时为null
+     */
+    public boolean isAllowed(CommandPermission permission, String groupId, String userId) {
+        switch (permission) {
+            case EVERYONE:
+                return true;
+            case BOT_ADMIN:
+                return isBotAdmin(userId);
+            case GROUP_ADMIN:
+            default:
+                if (isBotAdmin(userId)) {
+                    return true;
+                }
+                return groupId != null && isGroupAdmin(groupId, userId);
+        }
+    }
+
+    public boolean isBotAdmin(String userId) {
+        return botAdmins.get().contains(userId);
+    }
+
+    private boolean isGroupAdmin(String groupId, String userId) {
+        String role = roleLookup.getRole(groupId, userId);
+        if (role == null) {
+            logger.debug("无法获取用户 {} 在群 {} 的角色", userId, groupId);
+            return false;
+        }
+        return "owner".equals(role) || "admin".equals(role);
+    }
+}
@@ -0,0 +1,124 @@
+package cn.ningmo.bot.record;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * 事件录制文件读取器
+ * 可以读取单个录制文件，也可以按时间顺序读取目录中的所有录制文件。
+ * 进程异常退出时文件末尾可能不完整，读到不完整的记录时视为该文件结束。
+ */
+public class EventLogReader implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(EventLogReader.class);
+
+    // 单条记录的长度上限，超过说明文件已损坏
+    private static final int MAX_FRAME_BYTES = 64 * 1024 * 1024;
+
+    /**
+     * 一条录制记录
+     * @param timeNanos 录制时刻，为录制器启动时间加上单调时钟的偏移（纳秒）
+     * @param frame 原始帧内容
+     */
+    public record Entry(long timeNanos, String frame) {
+    }
+
+    private final Iterator<Path> files;
+    private DataInputStream input;
+    private Path current;
+    private long baseNanos;
+
+    /**
+     * @param path 录制文件或录制目录
+     */
+    public EventLogReader(Path path) throws IOException {
+        List<Path> list = Files.isDirectory(path) ? EventRecorder.listFiles(path) : List.of(path);
+        if (list.isEmpty()) {
+            throw new IOException("目录中没有事件录制文件: " + path);
+        }
+        this.files = list.iterator();
+    }
+
+    /**
+     * 读取下一条记录
+     * @return 下一条记录，全部读完时返回null
+     */
+    public Entry next() throws IOException {
+        while (true) {
+            if (input == null) {
+                if (!files.hasNext()) {
+                    return null;
+                }
+                open(files.next());
+                if (input == null) {
+                    continue;
+                }
+            }
+            try {
+                long nanos = input.readLong();
+                int length = input.readInt();
+                if (length < 0 || length > MAX_FRAME_BYTES) {
+                    throw new IOException("记录长度异常: " + length);
+                }
+                byte[] bytes = new byte[length];
+                input.readFully(bytes);
+                return new Entry(baseNanos + nanos, new String(bytes, StandardCharsets.UTF_8));
+            } catch (EOFException e) {
+                closeCurrent();
+            } catch (IOException e) {
+                logger.warn("事件录制文件 {} 已损坏，跳过剩余部分: {}", current, e.getMessage());
+                closeCurrent();
+            }
+        }
+    }
+
+    private void open(Path file) {
+        current = file;
+        InputStream raw = null;
+        try {
+            raw = Files.newInputStream(file);
+            DataInputStream stream = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(raw, 64 * 1024), 64 * 1024));
+            if (stream.readInt() != EventRecorder.MAGIC) {
+                throw new IOException("不是事件录制文件");
+            }
+            int version = stream.readInt();
+            if (version != EventRecorder.VERSION) {
+                throw new IOException("不支持的版本: " + version);
+            }
+            baseNanos = stream.readLong() * 1_000_000L;
+            input = stream;
+        } catch (IOException e) {
+            logger.warn("无法读取事件录制文件 {}: {}", file, e.getMessage());
+            if (raw != null) {
+                try {
+                    raw.close();
+                } catch (IOException ignored) {
+                }
+            }
+        }
+    }
+
+    private void closeCurrent() throws IOException {
+        if (input != null) {
+            input.close();
+            input = null;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closeCurrent();
+    }
+}
@@ -0,0 +1,264 @@
+package cn.ningmo.bot.record;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 入站事件录制器
+ * WebSocket读取线程把原始帧和单调时间戳放进无锁环形缓冲区后立即返回，
+ * 由单独的写入线程以gzip压缩写入磁盘。单个文件写满后切换到新文件，超过保留数量时删除最早的文件。
+ * 缓冲区满时丢弃新事件并计数，不会阻塞消息处理。
+ *
+ * 文件格式：文件头为魔数、版本号和录制器启动时的时间戳（毫秒），
+ * 之后每条记录为相对启动时刻的纳秒数、UTF-8字节长度和帧内容。
+ * 同一次运行录制的多个文件使用同一个起点，时间戳在文件之间连续递增。
+ *
+ * record只允许一个线程调用（WebSocket的读取线程），写入线程是唯一的消费者。
+ */
+public class EventRecorder implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(EventRecorder.class);
+
+    static final int MAGIC = 0x4E4D5243; // "NMRC"
+    static final int VERSION = 1;
+    public static final String FILE_SUFFIX = ".nmrec.gz";
+
+    // 缓冲区为空时写入线程的等待时间
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    // 有未刷新数据时最长间隔多久刷新到磁盘，进程异常退出时最多丢失这段时间的记录
+    private static final long FLUSH_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final DateTimeFormatter FILE_TIME = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private final Path directory;
+    private final long maxFileBytes;
+    private final int maxFiles;
+
+    // 环形缓冲区，容量为2的幂
+    private final int mask;
+    private final long[] timestamps;
+    private final String[] frames;
+    // 下一个写入位置，只由录制线程修改
+    private final AtomicLong tail = new AtomicLong();
+    // 下一个读取位置，只由写入线程修改
+    private final AtomicLong head = new AtomicLong();
+
+    private final long baseNanos = System.nanoTime();
+    private final long baseEpochMillis = System.currentTimeMillis();
+    private final LongAdder recorded = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+
+    private final Thread writer;
+    private volatile boolean running = true;
+
+    // 以下字段只由写入线程访问
+    private DataOutputStream output;
+    private long fileBytes;
+    private int fileIndex;
+    private boolean dirty;
+    // 写入失败后只记录一次错误日志，直到重新写入成功，避免磁盘满时刷屏
+    private boolean failing;
+
+    /**
+     * @param directory 录制文件目录
+     * @param maxFileBytes 单个文件写入的原始数据上限（字节），超过后切换到新文件
+     * @param maxFiles 最多保留的文件数
+     * @param bufferSize 环形缓冲区容量（条），向上取为2的幂
+     */
+    public EventRecorder(Path directory, long maxFileBytes, int maxFiles, int bufferSize) {
+        this.directory = directory;
+        this.maxFileBytes = maxFileBytes;
+        this.maxFiles = Math.max(1, maxFiles);
+        int capacity = Integer.highestOneBit(Math.max(2, bufferSize) * 2 - 1);
+        this.mask = capacity - 1;
+        this.timestamps = new long[capacity];
+        this.frames = new String[capacity];
+        this.writer = new Thread(this::runWriter, "event-recorder");
+        this.writer.setDaemon(true);
+        this.writer.start();
+        logger.info("事件录制已开启，目录: {}", directory.toAbsolutePath());
+    }
+
+    /**
+     * 录制一帧，缓冲区满时丢弃
+     */
+    public void record(String frame) {
+        long t = tail.get();
+        if (t - head.get() >= frames.length) {
+            dropped.increment();
+            return;
+        }
+        int slot = (int) t & mask;
+        timestamps[slot] = System.nanoTime() - baseNanos;
+        frames[slot] = frame;
+        // 发布：写入线程读到新的tail后才能看到槽位内容
+        tail.lazySet(t + 1);
+    }
+
+    public long getRecorded() {
+        return recorded.sum();
+    }
+
+    public long getDropped() {
+        return dropped.sum();
+    }
+
+    /**
+     * 缓冲区中尚未写入磁盘的条数
+     */
+    public long getPending() {
+        return tail.get() - head.get();
+    }
+
+    /**
+     * 停止录制，写完缓冲区中剩余的记录后关闭文件
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(writer);
+        try {
+            writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("事件录制已停止，共录制 {} 条，丢弃 {} 条", getRecorded(), getDropped());
+    }
+
+    private void runWriter() {
+        long lastFlush = System.nanoTime();
+        try {
+            while (running || head.get() < tail.get()) {
+                long h = head.get();
+                long t = tail.get();
+                if (h == t) {
+                    if (dirty && System.nanoTime() - lastFlush >= FLUSH_INTERVAL_NANOS) {
+                        flush();
+                        lastFlush = System.nanoTime();
+                    }
+                    LockSupport.parkNanos(POLL_NANOS);
+                    continue;
+                }
+                for (; h < t; h++) {
+                    int slot = (int) h & mask;
+                    write(timestamps[slot], frames[slot]);
+                    frames[slot] = null;
+                    head.lazySet(h + 1);
+                }
+            }
+        } finally {
+            closeFile();
+        }
+    }
+
+    private void write(long nanos, String frame) {
+        try {
+            if (output == null || fileBytes >= maxFileBytes) {
+                rotate();
+            }
+            byte[] bytes = frame.getBytes(StandardCharsets.UTF_8);
+            output.writeLong(nanos);
+            output.writeInt(bytes.length);
+            output.write(bytes);
+            fileBytes += 12 + bytes.length;
+            dirty = true;
+            failing = false;
+            recorded.increment();
+        } catch (IOException e) {
+            // 丢弃这一条，下一条换新文件重试
+            if (!failing) {
+                logger.error("写入事件录制文件失败: {}", e.getMessage());
+                failing = true;
+            }
+            dropped.increment();
+            closeFile();
+        }
+    }
+
+    private void flush() {
+        try {
+            output.flush();
+            dirty = false;
+        } catch (IOException e) {
+            logger.error("刷新事件录制文件失败: {}", e.getMessage());
+            closeFile();
+        }
+    }
+
+    private void rotate() throws IOException {
+        closeFile();
+        Files.createDirectories(directory);
+        Path file;
+        do {
+            file = directory.resolve(String.format("events-%s-%04d%s",
+                LocalDateTime.now().format(FILE_TIME), ++fileIndex, FILE_SUFFIX));
+        } while (Files.exists(file));
+
+        // syncFlush使定时刷新后已写入的记录可以被完整解压
+        output = new DataOutputStream(new BufferedOutputStream(
+            new GZIPOutputStream(Files.newOutputStream(file), 64 * 1024, true), 64 * 1024));
+        output.writeInt(MAGIC);
+        output.writeInt(VERSION);
+        output.writeLong(baseEpochMillis);
+        fileBytes = 16;
+        logger.debug("新建事件录制文件: {}", file);
+        deleteOldFiles();
+    }
+
+    private void closeFile() {
+        if (output == null) {
+            return;
+        }
+        try {
+            output.close();
+        } catch (IOException e) {
+            logger.warn("关闭事件录制文件失败: {}", e.getMessage());
+        }
+        output = null;
+        dirty = false;
+    }
+
+    private void deleteOldFiles() {
+        List<Path> files = listFiles(directory);
+        for (int i = 0; i < files.size() - maxFiles; i++) {
+            try {
+                Files.deleteIfExists(files.get(i));
+                logger.debug("删除过期的事件录制文件: {}", files.get(i));
+            } catch (IOException e) {
+                logger.warn("删除事件录制文件失败: {}", files.get(i), e);
+            }
+        }
+    }
+
+    /**
+     * 目录中的录制文件，文件名包含创建时间和序号，按文件名排序即按时间排序
+     */
+    static List<Path> listFiles(Path directory) {
+        List<Path> files = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return files;
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+            stream.forEach(files::add);
+        } catch (IOException e) {
+            logger.warn("读取事件录制目录失败: {}", directory, e);
+        }
+        files.sort(null);
+        return files;
+    }
+}
@@ -1,163 +1,362 @@
 package cn.ningmo.config;
 
+import cn.ningmo.metrics.jfr.PersistFlushEvent;
 import cn.ningmo.utils.CommonUtils;
+import cn.ningmo.utils.LongHashSet;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.Yaml;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 /**
  * 黑名单管理器
  * 管理被禁止使用AI服务的用户列表
+ *
+ * 黑名单以long形式保存在开放寻址哈希集合中，修改时复制一份再整体发布，读取不加锁。
+ * 单个添加/移除只追加一行到变更日志，保存时才重写YAML文件并清空日志
  */
 public class BlacklistManager {
     private static final Logger logger = LoggerFactory.getLogger(BlacklistManager.class);
-    private static final String DATA_DIR = "data";
-    private static final String BLACKLIST_FILE = DATA_DIR + "/blacklist.yml";
-    
-    private final Set<String> blacklistedUsers;
+    private static final String DEFAULT_DATA_DIR = "data";
+    private static final String BLACKLIST_FILE_NAME = "blacklist.yml";
+    private static final String CHANGE_LOG_FILE_NAME = "blacklist.log";
+    // 变更日志超过这个行数时合并到YAML文件
+    private static final int COMPACT_THRESHOLD = 1000;
+
+    private final Path blacklistFile;
+    private final Path changeLogFile;
     private final ConfigLoader configLoader;
-    
+
+    private volatile LongHashSet blacklistedUsers = new LongHashSet();
+    // 写操作互斥，读操作直接读取已发布的集合
+    private final Object writeLock = new Object();
+    private int changeLogLines;
+
     public BlacklistManager(ConfigLoader configLoader) {
+        this(configLoader, Paths.get(DEFAULT_DATA_DIR));
+    }
+
+    public BlacklistManager(ConfigLoader configLoader, Path dataDir) {
         this.configLoader = configLoader;
-        this.blacklistedUsers = Collections.newSetFromMap(new ConcurrentHashMap<>());
-        
+        this.blacklistFile = dataDir.resolve(BLACKLIST_FILE_NAME);
+        this.changeLogFile = dataDir.resolve(CHANGE_LOG_FILE_NAME);
+
         // 确保data目录存在
-        CommonUtils.ensureDirectoryExists(DATA_DIR);
-        
+        CommonUtils.ensureDirectoryExists(dataDir.toString());
+
         // 加载黑名单数据
         loadBlacklist();
     }
-    
+
     /**
-     * 加载黑名单数据
+     * 加载黑名单数据，先读取YAML文件，再重放变更日志
      */
     @SuppressWarnings("unchecked")
     private void loadBlacklist() {
-        File blacklistFile = new File(BLACKLIST_FILE);
-        
+        LongHashSet loaded = new LongHashSet();
+
         // 如果黑名单文件不存在，创建一个空文件
-        if (!blacklistFile.exists()) {
+        if (!Files.exists(blacklistFile)) {
             createEmptyBlacklistFile();
-            return;
-        }
-        
-        // 加载黑名单文件
-        try (InputStream input = new FileInputStream(BLACKLIST_FILE)) {
-            Yaml yaml = new Yaml();
-            Map<String, Object> data = yaml.load(input);
-            
-            if (data == null) {
-                logger.warn("黑名单文件为空，使用空黑名单");
-                return;
+        } else {
+            // 加载黑名单文件
+            try (InputStream input = Files.newInputStream(blacklistFile)) {
+                Yaml yaml = new Yaml();
+                Map<String, Object> data = yaml.load(input);
+
+                if (data == null) {
+                    logger.warn("黑名单文件为空，使用空黑名单");
+                } else if (data.get("blacklist") instanceof List) {
+                    List<Object> blacklist = (List<Object>) data.get("blacklist");
+                    loaded = new LongHashSet(blacklist.size());
+                    for (Object item : blacklist) {
+                        long userId = parseUserId(String.valueOf(item));
+                        if (userId > 0) {
+                            loaded.add(userId);
+                        } else {
+                            logger.warn("忽略无效的黑名单条目: {}", item);
+                        }
+                    }
+                }
+            } catch (IOException e) {
+                logger.error("加载黑名单文件失败", e);
             }
-            
-            if (data.containsKey("blacklist") && data.get("blacklist") instanceof List) {
-                List<Object> blacklist = (List<Object>) data.get("blacklist");
-                for (Object item : blacklist) {
-                    blacklistedUsers.add(String.valueOf(item));
+        }
+
+        int replayed = replayChangeLog(loaded);
+        blacklistedUsers = loaded;
+        logger.info("已加载{}个黑名单用户", loaded.size());
+
+        // 上次退出前未合并的变更，合并后清空日志
+        if (replayed > 0) {
+            logger.info("已重放{}条黑名单变更记录", replayed);
+            saveBlacklist();
+        }
+    }
+
+    /**
+     * 重放变更日志，每行为"+QQ号"或"-QQ号"
+     * @return 重放的记录数
+     */
+    private int replayChangeLog(LongHashSet target) {
+        if (!Files.exists(changeLogFile)) {
+            return 0;
+        }
+        int count = 0;
+        try (BufferedReader reader = Files.newBufferedReader(changeLogFile, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.length() < 2) {
+                    continue;
+                }
+                long userId = parseUserId(line.substring(1));
+                if (userId <= 0) {
+                    // 进程退出时可能只写了半行
+                    logger.warn("忽略无效的黑名单变更记录: {}", line);
+                    continue;
+                }
+                if (line.charAt(0) == '+') {
+                    target.add(userId);
+                    count++;
+                } else if (line.charAt(0) == '-') {
+                    target.remove(userId);
+                    count++;
                 }
-                logger.info("已加载{}个黑名单用户", blacklistedUsers.size());
             }
         } catch (IOException e) {
-            logger.error("加载黑名单文件失败", e);
+            logger.error("读取黑名单变更日志失败", e);
         }
+        return count;
     }
-    
+
     /**
      * 创建空的黑名单文件
      */
     private void createEmptyBlacklistFile() {
         try {
-            Map<String, Object> data = new HashMap<>();
-            data.put("blacklist", new ArrayList<>());
-            
-            DumperOptions options = new DumperOptions();
-            options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-            options.setPrettyFlow(true);
-            
-            Yaml yaml = new Yaml(options);
-            try (Writer writer = new FileWriter(BLACKLIST_FILE)) {
-                yaml.dump(data, writer);
-            }
+            writeBlacklistFile(new long[0]);
             logger.info("已创建空黑名单文件");
         } catch (IOException e) {
             logger.error("创建黑名单文件失败", e);
         }
     }
-    
+
     /**
-     * 保存黑名单数据
+     * 保存黑名单数据，重写YAML文件并清空变更日志
      */
     public void saveBlacklist() {
-        try {
-            Map<String, Object> data = new HashMap<>();
-            data.put("blacklist", new ArrayList<>(blacklistedUsers));
-            
-            DumperOptions options = new DumperOptions();
-            options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
-            options.setPrettyFlow(true);
-            
-            Yaml yaml = new Yaml(options);
-            try (Writer writer = new FileWriter(BLACKLIST_FILE)) {
-                yaml.dump(data, writer);
+        synchronized (writeLock) {
+            LongHashSet current = blacklistedUsers;
+            try {
+                writeBlacklistFile(current.toSortedArray());
+                Files.deleteIfExists(changeLogFile);
+                changeLogLines = 0;
+                logger.info("黑名单保存成功，共{}个用户", current.size());
+            } catch (IOException e) {
+                logger.error("保存黑名单失败", e);
             }
-            logger.info("黑名单保存成功，共{}个用户", blacklistedUsers.size());
+        }
+    }
+
+    private void writeBlacklistFile(long[] userIds) throws IOException {
+        PersistFlushEvent event = new PersistFlushEvent();
+        event.begin();
+        List<Long> list = new ArrayList<>(userIds.length);
+        for (long userId : userIds) {
+            list.add(userId);
+        }
+        Map<String, Object> data = new HashMap<>();
+        data.put("blacklist", list);
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        options.setPrettyFlow(true);
+
+        // 先写临时文件再替换，避免写到一半时退出导致黑名单丢失
+        Path tempFile = blacklistFile.resolveSibling(BLACKLIST_FILE_NAME + ".tmp");
+        Yaml yaml = new Yaml(options);
+        try (Writer writer = Files.newBufferedWriter(tempFile, StandardCharsets.UTF_8)) {
+            yaml.dump(data, writer);
+        }
+        Files.move(tempFile, blacklistFile, StandardCopyOption.REPLACE_EXISTING);
+        if (event.shouldCommit()) {
+            event.file = blacklistFile.toString();
+            event.entries = userIds.length;
+            event.commit();
+        }
+    }
+
+    /**
+     * 追加一条变更记录，日志过长时合并到YAML文件
+     */
+    private void appendChange(char op, long userId) {
+        try {
+            Files.writeString(changeLogFile, op + Long.toString(userId) + "\n", StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            changeLogLines++;
         } catch (IOException e) {
-            logger.error("保存黑名单失败", e);
+            logger.error("写入黑名单变更日志失败，改为保存整个黑名单", e);
+            saveBlacklist();
+            return;
+        }
+        if (changeLogLines >= COMPACT_THRESHOLD) {
+            saveBlacklist();
         }
     }
-    
+
+    private static long parseUserId(String userId) {
+        if (userId == null) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(userId.trim());
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
     /**
      * 检查用户是否在黑名单中
      * @param userId 用户QQ号
      * @return 是否在黑名单中
      */
-    public boolean isUserBlacklisted(String userId) {
+    public boolean isUserBlacklisted(long userId) {
         return blacklistedUsers.contains(userId);
     }
-    
+
+    /**
+     * 检查用户是否在黑名单中
+     * @param userId 用户QQ号
+     * @return 是否在黑名单中
+     */
+    public boolean isUserBlacklisted(String userId) {
+        long id = parseUserId(userId);
+        return id > 0 && blacklistedUsers.contains(id);
+    }
+
     /**
      * 将用户添加到黑名单
      * @param userId 用户QQ号
      * @return 是否成功添加（用户不在黑名单中时才返回true）
      */
     public boolean addToBlacklist(String userId) {
-        if (blacklistedUsers.add(userId)) {
-            logger.info("用户{}已添加到黑名单", userId);
-            saveBlacklist();
-            return true;
+        long id = parseUserId(userId);
+        if (id <= 0) {
+            logger.warn("无效的QQ号，无法添加到黑名单: {}", userId);
+            return false;
         }
-        return false;
+        synchronized (writeLock) {
+            if (blacklistedUsers.contains(id)) {
+                return false;
+            }
+            LongHashSet updated = blacklistedUsers.copy();
+            updated.add(id);
+            blacklistedUsers = updated;
+            appendChange('+', id);
+        }
+        logger.info("用户{}已添加到黑名单", id);
+        return true;
     }
-    
+
     /**
      * 将用户从黑名单中移除
      * @param userId 用户QQ号
      * @return 是否成功移除（用户在黑名单中时才返回true）
      */
     public boolean removeFromBlacklist(String userId) {
-        if (blacklistedUsers.remove(userId)) {
-            logger.info("用户{}已从黑名单中移除", userId);
-            saveBlacklist();
-            return true;
+        long id = parseUserId(userId);
+        if (id <= 0) {
+            return false;
+        }
+        synchronized (writeLock) {
+            if (!blacklistedUsers.contains(id)) {
+                return false;
+            }
+            LongHashSet updated = blacklistedUsers.copy();
+            updated.remove(id);
+            blacklistedUsers = updated;
+            appendChange('-', id);
+        }
+        logger.info("用户{}已从黑名单中移除", id);
+        return true;
+    }
+
+    /**
+     * 从文本文件批量导入黑名单
+     * 每行可以有多个QQ号，以空白、逗号或分号分隔，#开头的行为注释。全部导入后只保存一次
+     * @param file 导入的文件
+     * @return 新加入黑名单的用户数
+     */
+    public int importFromFile(Path file) throws IOException {
+        LongHashSet imported = new LongHashSet();
+        int invalid = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                for (String token : line.split("[\\s,;，；]+")) {
+                    if (token.isEmpty()) {
+                        continue;
+                    }
+                    long id = parseUserId(token);
+                    if (id > 0) {
+                        imported.add(id);
+                    } else {
+                        invalid++;
+                    }
+                }
+            }
         }
-        return false;
+
+        int added = 0;
+        synchronized (writeLock) {
+            LongHashSet current = blacklistedUsers;
+            LongHashSet updated = current.copy();
+            for (long id : imported.toSortedArray()) {
+                if (updated.add(id)) {
+                    added++;
+                }
+            }
+            if (added > 0) {
+                blacklistedUsers = updated;
+                saveBlacklist();
+            }
+        }
+        logger.info("从{}导入黑名单: 新增{}个用户，重复{}个，无效条目{}个",
+                   file, added, imported.size() - added, invalid);
+        return added;
     }
-    
+
+    /**
+     * 获取黑名单用户数
+     */
+    public int getBlacklistSize() {
+        return blacklistedUsers.size();
+    }
+
     /**
      * 获取所有黑名单用户
-     * @return 黑名单用户列表
+     * @return 黑名单用户列表（按QQ号升序）
      */
     public List<String> getBlacklistedUsers() {
-        return new ArrayList<>(blacklistedUsers);
+        long[] userIds = blacklistedUsers.toSortedArray();
+        List<String> result = new ArrayList<>(userIds.length);
+        for (long userId : userIds) {
+            result.add(Long.toString(userId));
+        }
+        return result;
     }
-} 
\ No newline at end of file
+}
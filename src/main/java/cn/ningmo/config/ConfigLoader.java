@@ -1,5 +1,6 @@
 package cn.ningmo.config;
 
+import cn.ningmo.utils.FileWatcher;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.Yaml;
@@ -11,15 +12,52 @@ import java.nio.file.Paths;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
 
 public class ConfigLoader {
     private static final Logger logger = LoggerFactory.getLogger(ConfigLoader.class);
     private static final String CONFIG_FILE = "config.yml";
     
-    private Map<String, Object> config;
+    // 编辑器保存文件时可能连续触发多次修改事件，合并这段时间内的事件
+    private static final long RELOAD_DEBOUNCE_MS = 500;
+    
+    /**
+     * 只在启动时读取一次的配置项（含其下所有子项），热重载后需要重启才能生效。
+     * 其余配置项每次使用时从快照读取，或由组件注册重载回调自行刷新
+     */
+    public static final List<String> RESTART_REQUIRED_KEYS = List.of(
+        "bot.ws_url", "bot.access_token", "bot.record",
+        "ai.models", "ai.openai", "ai.anthropic", "ai.deepseek", "ai.local",
+        "ai.image.memory_cache_mb", "ai.image.disk_cache_mb", "ai.image.disk_cache_dir",
+        "gui", "monitoring", "logging");
+    
+    // 当前配置快照，重载时整体替换
+    private volatile ConfigSnapshot snapshot;
+    
+    // 配置重载后的回调
+    private final List<Consumer<ConfigSnapshot>> reloadListeners = new CopyOnWriteArrayList<>();
+    
+    private FileWatcher configWatcher;
     
     public ConfigLoader() {
-        this.config = new HashMap<>();
+        this.snapshot = ConfigSnapshot.from(new HashMap<>());
+    }
+    
+    /**
+     * 直接使用给定的配置内容，不读写config.yml，用于测试和压测
+     * @param raw 与config.yml结构相同的配置
+     */
+    public ConfigLoader(Map<String, Object> raw) {
+        this.snapshot = ConfigSnapshot.from(raw);
+    }
+    
+    /**
+     * 获取当前配置快照
+     */
+    public ConfigSnapshot snapshot() {
+        return snapshot;
     }
     
     public void loadConfig() {
@@ -31,9 +69,11 @@ public class ConfigLoader {
         }
         
         // 加载配置文件
-        try (InputStream input = new FileInputStream(CONFIG_FILE)) {
-            Yaml yaml = new Yaml();
-            config = yaml.load(input);
+        try {
+            snapshot = readSnapshot(configPath);
+            for (String error : snapshot.validate()) {
+                logger.warn("配置项有误: {}", error);
+            }
             logger.info("配置文件加载成功");
         } catch (IOException e) {
             logger.error("配置文件加载失败", e);
@@ -66,20 +106,103 @@ public class ConfigLoader {
         }
     }
     
-    @SuppressWarnings("unchecked")
-    public <T> T getConfig(String key, T defaultValue) {
-        String[] keys = key.split("\\.");
-        Map<String, Object> current = config;
+    private static ConfigSnapshot readSnapshot(Path configPath) throws IOException {
+        try (InputStream input = Files.newInputStream(configPath)) {
+            Map<String, Object> raw = new Yaml().load(input);
+            return ConfigSnapshot.from(raw);
+        }
+    }
+    
+    /**
+     * 监听配置文件变化，修改后自动重新加载
+     * 新配置解析或校验失败时保留当前配置
+     */
+    public synchronized void startWatching() {
+        if (configWatcher != null) {
+            return;
+        }
+        Path configPath = Paths.get(CONFIG_FILE).toAbsolutePath();
+        Path fileName = configPath.getFileName();
+        configWatcher = new FileWatcher(configPath.getParent(), fileName::equals,
+                                        RELOAD_DEBOUNCE_MS, () -> reload(configPath), "Config-Watcher");
+        if (configWatcher.start()) {
+            logger.info("已开始监听配置文件变化: {}", configPath);
+        } else {
+            logger.warn("无法监听配置文件变化，热重载不可用");
+        }
+    }
+    
+    /**
+     * 重新加载配置文件，校验通过后原子替换当前快照
+     * @return 是否已应用新配置
+     */
+    public boolean reload() {
+        return reload(Paths.get(CONFIG_FILE));
+    }
+    
+    private boolean reload(Path configPath) {
+        ConfigSnapshot loaded;
+        try {
+            loaded = readSnapshot(configPath);
+        } catch (Exception e) {
+            logger.error("重新加载配置文件失败，继续使用当前配置: {}", e.getMessage());
+            return false;
+        }
         
-        for (int i = 0; i < keys.length - 1; i++) {
-            Object value = current.get(keys[i]);
-            if (!(value instanceof Map)) {
-                return defaultValue;
-            }
-            current = (Map<String, Object>) value;
+        List<String> errors = loaded.validate();
+        if (!errors.isEmpty()) {
+            logger.error("新配置校验失败，继续使用当前配置: {}", errors);
+            return false;
         }
         
-        Object value = current.get(keys[keys.length - 1]);
+        ConfigSnapshot previous = snapshot;
+        snapshot = loaded;
+        logger.info("配置文件已重新加载");
+        List<String> needRestart = changedKeys(previous, loaded, RESTART_REQUIRED_KEYS);
+        if (!needRestart.isEmpty()) {
+            logger.warn("以下配置项的修改需要重启后才能生效: {}", needRestart);
+        }
+        for (Consumer<ConfigSnapshot> listener : reloadListeners) {
+            try {
+                listener.accept(loaded);
+            } catch (Exception e) {
+                logger.error("执行配置重载回调时出错", e);
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * 注册配置重载回调
+     * 在构造时缓存了配置的组件通过回调刷新自己的设置，回调执行时snapshot()和getConfig已经返回新配置
+     */
+    public void addReloadListener(Consumer<ConfigSnapshot> listener) {
+        reloadListeners.add(listener);
+    }
+    
+    /**
+     * 两个快照之间值不同的配置项
+     */
+    static List<String> changedKeys(ConfigSnapshot before, ConfigSnapshot after, List<String> keys) {
+        return keys.stream()
+            .filter(key -> !Objects.equals(before.get(key), after.get(key)))
+            .toList();
+    }
+    
+    /**
+     * 停止监听配置文件
+     */
+    public synchronized void stopWatching() {
+        if (configWatcher != null) {
+            configWatcher.stop();
+            configWatcher = null;
+        }
+    }
+    
+    @SuppressWarnings("unchecked")
+    public <T> T getConfig(String key, T defaultValue) {
+        // 快照中已展开为点分路径，一次查找即可
+        Object value = snapshot.get(key);
         if (value == null) {
             return defaultValue;
         }
@@ -0,0 +1,192 @@
+package cn.ningmo.config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 配置快照
+ * 配置文件加载时解析一次，之后只读。消息处理热路径上用到的配置项解析为类型化字段，
+ * 其余配置项展开成"a.b.c"形式的扁平表，查询时只需一次哈希查找
+ *
+ * @param raw 原始配置（YAML解析结果）
+ * @param flat 扁平化的配置表，键为点分路径，包含中间节点
+ */
+public record ConfigSnapshot(
+        Map<String, Object> raw,
+        Map<String, Object> flat,
+        // bot
+        String wsUrl,
+        String selfId,
+        long selfIdValue,
+        String botName,
+        // 机器人名称和所有昵称，用于不@时触发对话
+        List<String> botNames,
+        List<String> admins,
+        boolean alwaysAtSender,
+        boolean enablePrivateMessage,
+        int maxConsecutiveMessages,
+        // ai
+        String defaultModel,
+        int maxConversationLength,
+        long minRequestInterval,
+        boolean personaAsSystemPrompt,
+        boolean includeGroupMembers,
+        boolean filterSelfAt,
+        // filter
+        boolean filterEnabled,
+        String filterReplyMessage) {
+
+    /**
+     * 从YAML解析结果构建快照
+     */
+    public static ConfigSnapshot from(Map<String, Object> raw) {
+        Map<String, Object> source = raw != null ? raw : Collections.emptyMap();
+        Map<String, Object> flat = new HashMap<>();
+        flatten("", source, flat);
+
+        String selfId = string(flat, "bot.self_id", "").trim();
+        return new ConfigSnapshot(
+            source,
+            Collections.unmodifiableMap(flat),
+            string(flat, "bot.ws_url", ""),
+            selfId,
+            parseLong(selfId, -1),
+            string(flat, "bot.name", "").trim(),
+            botNames(string(flat, "bot.name", "").trim(), string(flat, "bot.nicknames", "").trim()),
+            stringList(flat.get("bot.admins")),
+            bool(flat, "bot.always_at_sender", false),
+            bool(flat, "bot.enable_private_message", false),
+            integer(flat, "bot.messages.max_consecutive", 3),
+            string(flat, "ai.default_model", "gpt-3.5-turbo"),
+            integer(flat, "ai.max_conversation_length", 20),
+            integer(flat, "ai.min_request_interval", 500),
+            bool(flat, "ai.persona.as_system_prompt", true),
+            bool(flat, "ai.include_group_members", false),
+            bool(flat, "ai.filter_self_at", false),
+            bool(flat, "filter.enabled", true),
+            string(flat, "filter.reply_message", "您的消息包含屏蔽词，已被拦截"));
+    }
+
+    /**
+     * 校验配置，热重载时有错误的配置不会生效
+     * @return 错误信息列表，为空表示校验通过
+     */
+    public List<String> validate() {
+        List<String> errors = new ArrayList<>();
+        if (!(raw.get("bot") instanceof Map)) {
+            errors.add("缺少bot配置节");
+        }
+        if (!wsUrl.startsWith("ws://") && !wsUrl.startsWith("wss://")) {
+            errors.add("bot.ws_url必须以ws://或wss://开头: " + wsUrl);
+        }
+        if (!selfId.isEmpty() && selfIdValue < 0) {
+            errors.add("bot.self_id必须是QQ号: " + selfId);
+        }
+        Object admins = flat.get("bot.admins");
+        if (admins != null && !(admins instanceof List)) {
+            errors.add("bot.admins必须是列表");
+        }
+        checkNumber(errors, "bot.messages.max_consecutive");
+        checkNumber(errors, "ai.max_conversation_length");
+        checkNumber(errors, "ai.min_request_interval");
+        if (maxConversationLength <= 0) {
+            errors.add("ai.max_conversation_length必须大于0: " + maxConversationLength);
+        }
+        Object models = flat.get("ai.models");
+        if (models != null && !(models instanceof Map)) {
+            errors.add("ai.models必须是映射");
+        }
+        return errors;
+    }
+
+    private void checkNumber(List<String> errors, String key) {
+        Object value = flat.get(key);
+        if (value != null && !(value instanceof Number)) {
+            errors.add(key + "必须是数字: " + value);
+        }
+    }
+
+    /**
+     * 按点分路径读取配置值
+     */
+    public Object get(String key) {
+        return flat.get(key);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static void flatten(String prefix, Map<String, Object> map, Map<String, Object> flat) {
+        for (Map.Entry<String, Object> entry : map.entrySet()) {
+            String key = prefix + entry.getKey();
+            Object value = entry.getValue();
+            flat.put(key, value);
+            if (value instanceof Map) {
+                flatten(key + ".", (Map<String, Object>) value, flat);
+            }
+        }
+    }
+
+    private static String string(Map<String, Object> flat, String key, String defaultValue) {
+        Object value = flat.get(key);
+        return value != null ? value.toString() : defaultValue;
+    }
+
+    private static boolean bool(Map<String, Object> flat, String key, boolean defaultValue) {
+        Object value = flat.get(key);
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        if (value instanceof String) {
+            return Boolean.parseBoolean((String) value);
+        }
+        return defaultValue;
+    }
+
+    private static int integer(Map<String, Object> flat, String key, int defaultValue) {
+        Object value = flat.get(key);
+        if (value instanceof Number) {
+            return ((Number) value).intValue();
+        }
+        return value instanceof String ? (int) parseLong((String) value, defaultValue) : defaultValue;
+    }
+
+    private static long parseLong(String value, long defaultValue) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * 合并机器人名称和昵称，昵称以逗号或分号分隔
+     */
+    private static List<String> botNames(String botName, String botNicknames) {
+        List<String> names = new ArrayList<>();
+        if (!botName.isEmpty()) {
+            names.add(botName);
+        }
+        for (String nick : botNicknames.split("[,;]")) {
+            String trimmedNick = nick.trim();
+            if (!trimmedNick.isEmpty()) {
+                names.add(trimmedNick);
+            }
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    private static List<String> stringList(Object value) {
+        if (!(value instanceof List)) {
+            return Collections.emptyList();
+        }
+        List<String> result = new ArrayList<>();
+        for (Object item : (List<?>) value) {
+            if (item != null) {
+                result.add(item.toString());
+            }
+        }
+        return Collections.unmodifiableList(result);
+    }
+}
@@ -1,5 +1,6 @@
 package cn.ningmo.config;
 
+import cn.ningmo.metrics.jfr.PersistFlushEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.yaml.snakeyaml.DumperOptions;
@@ -118,6 +119,8 @@ public class DataManager {
     public synchronized void saveData() {
         // 使用临时文件，避免保存失败导致数据丢失
         String tempFileName = DATA_FILE + ".temp";
+        PersistFlushEvent event = new PersistFlushEvent();
+        event.begin();
         try {
             DumperOptions options = new DumperOptions();
             options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
@@ -154,6 +157,11 @@ public class DataManager {
         } catch (IOException e) {
             logger.error("保存数据失败", e);
         } finally {
+            if (event.shouldCommit()) {
+                event.file = DATA_FILE;
+                event.entries = data.size();
+                event.commit();
+            }
             // 清理临时文件
             try {
                 File tempFile = new File(tempFileName);
@@ -295,7 +303,7 @@ public class DataManager {
         return userData.computeIfAbsent(userId, k -> {
             Map<String, Object> defaultUserData = new HashMap<>();
             // 从配置文件获取默认模型，而不是硬编码
-            String defaultModel = configLoader.getConfigString("ai.default_model", "gpt-3.5-turbo");
+            String defaultModel = configLoader.snapshot().defaultModel();
             defaultUserData.put("model", defaultModel);
             defaultUserData.put("persona", "default");
             defaultUserData.put("conversation", new HashMap<>());
@@ -332,7 +340,7 @@ public class DataManager {
             return privateMessageEnabled;
         }
         // 否则使用配置文件中的默认值
-        return configLoader.getConfig("bot.enable_private_message", false);
+        return configLoader.snapshot().enablePrivateMessage();
     }
     
     public void setPrivateMessageEnabled(boolean enabled) {
@@ -1,5 +1,6 @@
 package cn.ningmo.config;
 
+import cn.ningmo.metrics.jfr.PersistFlushEvent;
 import cn.ningmo.utils.CommonUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -108,6 +109,8 @@ public class FilterWordManager {
      * 保存屏蔽词数据
      */
     public void saveFilterWords() {
+        PersistFlushEvent event = new PersistFlushEvent();
+        event.begin();
         try {
             Map<String, Object> data = new HashMap<>();
             data.put("filter_words", new ArrayList<>(filterWords));
@@ -123,6 +126,12 @@ public class FilterWordManager {
             logger.info("屏蔽词列表保存成功，共{}个词语", filterWords.size());
         } catch (IOException e) {
             logger.error("保存屏蔽词列表失败", e);
+        } finally {
+            if (event.shouldCommit()) {
+                event.file = FILTER_WORDS_FILE;
+                event.entries = filterWords.size();
+                event.commit();
+            }
         }
     }
     
@@ -218,7 +227,7 @@ public class FilterWordManager {
      * @return 是否启用
      */
     public boolean isFilterEnabled() {
-        return configLoader.getConfig("filter.enabled", true);
+        return configLoader.snapshot().filterEnabled();
     }
     
     /**
@@ -226,6 +235,6 @@ public class FilterWordManager {
      * @return 回复消息
      */
     public String getFilterReplyMessage() {
-        return configLoader.getConfigString("filter.reply_message", "您的消息包含屏蔽词，已被拦截");
+        return configLoader.snapshot().filterReplyMessage();
     }
 } 
\ No newline at end of file
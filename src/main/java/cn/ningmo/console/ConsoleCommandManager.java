@@ -8,10 +8,22 @@ import cn.ningmo.config.BlacklistManager;
 import cn.ningmo.config.ConfigLoader;
 import cn.ningmo.config.DataManager;
 import cn.ningmo.config.FilterWordManager;
+import cn.ningmo.metrics.jfr.JfrRecorder;
+import cn.ningmo.metrics.trace.TraceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.time.Duration;
 
 import java.util.Arrays;
+import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +53,8 @@ public class ConsoleCommandManager {
     
     private final Map<String, ConsoleCommand> commandMap = new HashMap<>();
     
+    private final JfrRecorder jfrRecorder = new JfrRecorder();
+    
     public ConsoleCommandManager(OneBotClient botClient, ConfigLoader configLoader, DataManager dataManager, 
                                AIService aiService, BlacklistManager blacklistManager, FilterWordManager filterWordManager,
                                ModelManager modelManager, PersonaManager personaManager) {
@@ -187,10 +201,11 @@ public class ConsoleCommandManager {
             "黑名单管理",
             "blacklist list - 列出所有黑名单用户\n" +
             "blacklist add <QQ号> - 添加用户到黑名单\n" +
-            "blacklist remove <QQ号> - 从黑名单中移除用户",
+            "blacklist remove <QQ号> - 从黑名单中移除用户\n" +
+            "blacklist import <文件路径> - 从文本文件批量导入QQ号",
             (args) -> {
                 if (args.length == 0) {
-                    System.out.println("请指定操作: list, add, remove");
+                    System.out.println("请指定操作: list, add, remove, import");
                     return true;
                 }
                 
@@ -200,7 +215,7 @@ public class ConsoleCommandManager {
                         for (String userId : blacklistManager.getBlacklistedUsers()) {
                             System.out.println("  " + userId);
                         }
-                        if (blacklistManager.getBlacklistedUsers().isEmpty()) {
+                        if (blacklistManager.getBlacklistSize() == 0) {
                             System.out.println("  黑名单为空");
                         }
                         break;
@@ -228,6 +243,19 @@ public class ConsoleCommandManager {
                             System.out.println("用户 " + removeUserId + " 不在黑名单中");
                         }
                         break;
+                    case "import":
+                        if (args.length < 2) {
+                            System.out.println("请指定导入文件路径");
+                            return true;
+                        }
+                        try {
+                            int added = blacklistManager.importFromFile(Paths.get(args[1]));
+                            System.out.println("导入完成，新增 " + added + " 个用户，当前黑名单共 "
+                                + blacklistManager.getBlacklistSize() + " 个用户");
+                        } catch (IOException e) {
+                            System.out.println("导入失败: " + e.getMessage());
+                        }
+                        break;
                     default:
                         System.out.println("未知操作: " + args[0]);
                         break;
@@ -384,6 +412,129 @@ public class ConsoleCommandManager {
             }
         ));
         
+        // 指标命令
+        commandMap.put("metrics", new ConsoleCommand(
+            "显示消息处理各阶段的耗时统计",
+            "metrics - 显示各阶段的p50/p95/p99耗时和计数\n" +
+            "metrics export <文件路径> - 以OpenMetrics文本格式导出指标",
+            (args) -> {
+                if (args.length == 0) {
+                    System.out.print(aiService.getMetrics().report());
+                    return true;
+                }
+                if (!"export".equalsIgnoreCase(args[0]) || args.length < 2) {
+                    System.out.println("用法: metrics export <文件路径>");
+                    return true;
+                }
+                Path target = Paths.get(args[1]);
+                try (Writer writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8)) {
+                    aiService.getMetrics().writeOpenMetrics(writer);
+                    System.out.println("指标已导出到: " + target.toAbsolutePath());
+                } catch (IOException e) {
+                    System.out.println("导出失败: " + e.getMessage());
+                }
+                return true;
+            }
+        ));
+        
+        // 追踪命令
+        commandMap.put("trace", new ConsoleCommand(
+            "查看消息的处理过程",
+            "trace <消息ID> - 显示该消息各阶段的耗时\n" +
+            "trace recent [数量] - 列出最近处理的消息，默认10条\n" +
+            "trace slow [数量] - 列出耗时最长的消息，默认10条",
+            (args) -> {
+                if (args.length == 0) {
+                    System.out.println("请指定消息ID，或使用 trace recent / trace slow");
+                    return true;
+                }
+                String op = args[0].toLowerCase();
+                if (op.equals("recent") || op.equals("slow")) {
+                    int limit;
+                    try {
+                        limit = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+                    } catch (NumberFormatException e) {
+                        System.out.println("数量必须是整数: " + args[1]);
+                        return true;
+                    }
+                    List<TraceContext> traces = op.equals("recent")
+                        ? aiService.getTracer().recent(limit)
+                        : aiService.getTracer().slowest(limit);
+                    if (traces.isEmpty()) {
+                        System.out.println("暂无追踪记录");
+                    }
+                    for (TraceContext trace : traces) {
+                        System.out.printf("  %-20s %-8s %8.1fms  群%s 用户%s  %d个阶段%n",
+                            trace.getTraceId(), trace.getKind(), trace.getDurationNanos() / 1_000_000.0,
+                            trace.getGroupId() != null ? trace.getGroupId() : "-", trace.getUserId(),
+                            trace.getSpans().size());
+                    }
+                    return true;
+                }
+                TraceContext trace = aiService.getTracer().find(args[0]);
+                if (trace == null) {
+                    System.out.println("找不到消息 " + args[0] + " 的追踪记录，可能已被新消息覆盖");
+                } else {
+                    System.out.print(trace.format());
+                }
+                return true;
+            }
+        ));
+        
+        // JFR录制命令
+        commandMap.put("jfr", new ConsoleCommand(
+            "JFR性能录制",
+            "jfr start [保留分钟数] - 开始录制，默认保留最近30分钟\n" +
+            "jfr stop [文件路径] - 停止录制并保存，默认保存到logs目录\n" +
+            "jfr status - 查看录制状态",
+            (args) -> {
+                if (args.length == 0) {
+                    System.out.println("请指定操作: start, stop, status");
+                    return true;
+                }
+                try {
+                    switch (args[0].toLowerCase()) {
+                        case "start":
+                            long minutes = args.length > 1 ? Long.parseLong(args[1]) : 30;
+                            if (minutes <= 0) {
+                                System.out.println("保留分钟数必须大于0: " + minutes);
+                                break;
+                            }
+                            if (jfrRecorder.start(Duration.ofMinutes(minutes))) {
+                                System.out.println("JFR录制已开始，最多保留最近 " + minutes + " 分钟");
+                            } else {
+                                System.out.println("JFR录制已在进行中");
+                            }
+                            break;
+                        case "stop":
+                            Path target = args.length > 1 ? Paths.get(args[1])
+                                : Paths.get("logs", "ningmo-" + new SimpleDateFormat("yyyyMMdd_HHmmss").format(new Date()) + ".jfr");
+                            if (jfrRecorder.stop(target)) {
+                                System.out.println("JFR录制已保存到: " + target.toAbsolutePath());
+                                System.out.println("可使用 JDK Mission Control 或 jfr print --events cn.ningmo.AiRequest 查看");
+                            } else {
+                                System.out.println("当前没有进行中的JFR录制");
+                            }
+                            break;
+                        case "status":
+                            Duration elapsed = jfrRecorder.getElapsed();
+                            System.out.println(elapsed != null
+                                ? "JFR录制中，已录制 " + elapsed.toSeconds() + " 秒"
+                                : "当前没有进行中的JFR录制");
+                            break;
+                        default:
+                            System.out.println("未知操作: " + args[0]);
+                            break;
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println("保留分钟数必须是整数: " + args[1]);
+                } catch (IOException | ParseException e) {
+                    System.out.println("JFR操作失败: " + e.getMessage());
+                }
+                return true;
+            }
+        ));
+        
         // 模型相关命令 
         commandMap.put("models", new ConsoleCommand(
             "列出所有可用的AI模型",
@@ -527,6 +678,11 @@ public class ConsoleCommandManager {
             while (running) {
                 try {
                     System.out.print("> ");
+                    // 标准输入已关闭（后台运行、容器中没有终端）时退出，避免反复读取失败
+                    if (!scanner.hasNextLine()) {
+                        logger.info("标准输入已关闭，控制台命令模式退出");
+                        break;
+                    }
                     String input = scanner.nextLine().trim();
                     
                     if (input.isEmpty()) {
@@ -626,5 +782,14 @@ public class ConsoleCommandManager {
         logger.info("关闭控制台命令处理线程");
         running = false;
         executor.shutdown();
+        
+        // 退出时保存未停止的JFR录制，避免数据丢失
+        if (jfrRecorder.isRecording()) {
+            try {
+                jfrRecorder.stop(Paths.get("logs", "ningmo-exit.jfr"));
+            } catch (IOException e) {
+                logger.error("保存JFR录制失败", e);
+            }
+        }
     }
 } 
\ No newline at end of file
@@ -75,6 +75,7 @@ public class BotGUI {
     private FilterWordPanel filterWordPanel;
     private ModelPanel modelPanel;
     private PersonaPanel personaPanel;
+    private MetricsPanel metricsPanel;
     private ConsolePanel consolePanel;
     
     // 日志队列
@@ -431,6 +432,9 @@ public class BotGUI {
         personaPanel = createPersonaPanel();
         tabbedPane.addTab("人设管理", null, new JPanel(), "管理AI人设");
         
+        // 性能指标面板在打开时才创建
+        tabbedPane.addTab("性能指标", null, new JPanel(), "查看消息处理各阶段耗时");
+        
         // 获取控制台命令管理器
         ConsoleCommandManager consoleCommandManager = new ConsoleCommandManager(
             botClient, configLoader, dataManager, aiService, 
@@ -488,6 +492,7 @@ public class BotGUI {
                  (currentComponent instanceof FilterWordPanel) || 
                  (currentComponent instanceof ModelPanel) || 
                  (currentComponent instanceof PersonaPanel) || 
+                 (currentComponent instanceof MetricsPanel) || 
                  (currentComponent instanceof ConsolePanel))) {
                 // 已经加载了实际内容，只需要更新数据
                 updateVisiblePanelOnly(tabTitle);
@@ -545,6 +550,13 @@ public class BotGUI {
                     panelToLoad = personaPanel;
                     break;
                     
+                case "性能指标":
+                    if (metricsPanel == null) {
+                        metricsPanel = new MetricsPanel(aiService.getMetrics());
+                    }
+                    panelToLoad = metricsPanel;
+                    break;
+                    
                 case "控制台":
                     // 控制台面板已在创建时加载
                     if (consolePanel == null) {
@@ -735,6 +747,15 @@ public class BotGUI {
                         }
                     }
                     break;
+                case "性能指标":
+                    if (metricsPanel != null) {
+                        try {
+                            metricsPanel.updateData();
+                        } catch (Exception e) {
+                            logger.error("更新性能指标面板出错", e);
+                        }
+                    }
+                    break;
             }
         } catch (Exception e) {
             logger.error("更新可见面板时出错", e);
@@ -0,0 +1,97 @@
+package cn.ningmo.gui;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import java.awt.*;
+
+/**
+ * 桌面环境相关功能：系统托盘图标和错误对话框
+ * 所有AWT/Swing调用都集中在这里，无界面模式下不会加载这个类
+ */
+public final class DesktopSupport {
+    private static final Logger logger = LoggerFactory.getLogger(DesktopSupport.class);
+
+    private DesktopSupport() {
+    }
+
+    /**
+     * 添加系统托盘图标（如果支持）
+     * @param onShow 点击"显示界面"或双击图标时执行
+     * @param onExit 点击"退出"时执行
+     */
+    public static void installTrayIcon(Runnable onShow, Runnable onExit) {
+        if (!SystemTray.isSupported()) {
+            return;
+        }
+        try {
+            SystemTray tray = SystemTray.getSystemTray();
+            
+            // 创建默认图标
+            Image image = Toolkit.getDefaultToolkit().createImage(DesktopSupport.class.getResource("/icon.png"));
+            if (image == null) {
+                // 如果找不到图标，使用默认的Java咖啡杯图标
+                image = Toolkit.getDefaultToolkit().createImage(DesktopSupport.class.getResource("/java.png"));
+                if (image == null) {
+                    logger.warn("无法加载系统托盘图标");
+                    return;
+                }
+            }
+            
+            // 创建托盘图标
+            TrayIcon trayIcon = new TrayIcon(image, "柠檬AI机器人");
+            trayIcon.setImageAutoSize(true);
+            
+            // 创建弹出菜单
+            PopupMenu popup = new PopupMenu();
+            
+            MenuItem showItem = new MenuItem("显示界面");
+            showItem.addActionListener(e -> onShow.run());
+            popup.add(showItem);
+            
+            MenuItem exitItem = new MenuItem("退出");
+            exitItem.addActionListener(e -> onExit.run());
+            popup.add(exitItem);
+            
+            trayIcon.setPopupMenu(popup);
+            
+            // 双击托盘图标打开界面
+            trayIcon.addActionListener(e -> onShow.run());
+            
+            tray.add(trayIcon);
+        } catch (Exception e) {
+            logger.error("设置系统托盘图标失败", e);
+        }
+    }
+    
+    /**
+     * 显示错误对话框，没有图形环境时输出到标准错误
+     */
+    public static void showErrorDialog(String message, Throwable throwable) {
+        if (GraphicsEnvironment.isHeadless()) {
+            System.err.println(message);
+            throwable.printStackTrace();
+            return;
+        }
+        SwingUtilities.invokeLater(() -> {
+            StringBuilder detailMessage = new StringBuilder(message + "\n\n");
+            
+            // 添加异常堆栈
+            StackTraceElement[] stackTraces = throwable.getStackTrace();
+            for (int i = 0; i < Math.min(10, stackTraces.length); i++) {
+                detailMessage.append(stackTraces[i].toString()).append("\n");
+            }
+            if (stackTraces.length > 10) {
+                detailMessage.append("...(更多堆栈信息请查看日志)");
+            }
+            
+            JOptionPane.showMessageDialog(
+                null,
+                detailMessage.toString(),
+                "程序错误",
+                JOptionPane.ERROR_MESSAGE
+            );
+        });
+    }
+}
@@ -0,0 +1,102 @@
+package cn.ningmo.gui;
+
+import cn.ningmo.metrics.Histogram;
+import cn.ningmo.metrics.MetricsRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.swing.*;
+import javax.swing.table.DefaultTableModel;
+import java.awt.*;
+import java.util.Map;
+
+/**
+ * 性能指标面板
+ */
+public class MetricsPanel extends JPanel {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsPanel.class);
+    
+    private final MetricsRegistry metrics;
+    
+    private JTable metricsTable;
+    private DefaultTableModel tableModel;
+    
+    /**
+     * 构造函数
+     */
+    public MetricsPanel(MetricsRegistry metrics) {
+        this.metrics = metrics;
+        
+        initUI();
+        updateData();
+    }
+    
+    /**
+     * 初始化UI
+     */
+    private void initUI() {
+        setLayout(new BorderLayout());
+        
+        // 创建表格
+        String[] columnNames = {"阶段", "次数", "p50(ms)", "p95(ms)", "p99(ms)", "最大(ms)"};
+        tableModel = new DefaultTableModel(columnNames, 0) {
+            @Override
+            public boolean isCellEditable(int row, int column) {
+                return false;
+            }
+        };
+        metricsTable = new JTable(tableModel);
+        
+        // 设置表格列宽
+        metricsTable.getColumnModel().getColumn(0).setPreferredWidth(320);
+        for (int i = 1; i < columnNames.length; i++) {
+            metricsTable.getColumnModel().getColumn(i).setPreferredWidth(80);
+        }
+        
+        // 添加表格到滚动面板
+        JScrollPane scrollPane = new JScrollPane(metricsTable);
+        add(scrollPane, BorderLayout.CENTER);
+        
+        // 创建操作面板
+        JPanel controlPanel = new JPanel();
+        controlPanel.setLayout(new FlowLayout(FlowLayout.LEFT));
+        
+        // 添加刷新按钮
+        JButton refreshButton = new JButton("刷新");
+        refreshButton.addActionListener(e -> updateData());
+        controlPanel.add(refreshButton);
+        
+        // 添加提示标签
+        JLabel tipLabel = new JLabel("提示: 计数器和导出功能请在控制台使用 metrics 命令");
+        controlPanel.add(tipLabel);
+        
+        // 添加操作面板
+        add(controlPanel, BorderLayout.SOUTH);
+    }
+    
+    /**
+     * 更新数据
+     */
+    public void updateData() {
+        // 清空表格
+        tableModel.setRowCount(0);
+        
+        for (Map.Entry<MetricsRegistry.MetricId, Histogram.Snapshot> entry : metrics.histogramSnapshots().entrySet()) {
+            Histogram.Snapshot snapshot = entry.getValue();
+            Object[] row = {
+                entry.getKey().name() + entry.getKey().labelText(),
+                snapshot.getCount(),
+                formatMillis(snapshot.getPercentile(50)),
+                formatMillis(snapshot.getPercentile(95)),
+                formatMillis(snapshot.getPercentile(99)),
+                formatMillis(snapshot.getMax())
+            };
+            tableModel.addRow(row);
+        }
+        logger.debug("性能指标面板已刷新，共 {} 项", tableModel.getRowCount());
+    }
+    
+    private static String formatMillis(long micros) {
+        return String.format("%.1f", micros / 1000.0);
+    }
+}
@@ -91,7 +91,7 @@ public class PersonaPanel extends JPanel {
             }
             
             String personaName = (String) tableModel.getValueAt(selectedRow, 0);
-            String content = personaManager.getPersonaPrompt(personaName);
+            String content = personaManager.getPersona(personaName).content();
             
             personaNameField.setText(personaName);
             personaContentArea.setText(content);
@@ -232,7 +232,7 @@ public class PersonaPanel extends JPanel {
      */
     public void viewPersona(int row) {
         String personaName = (String) tableModel.getValueAt(row, 0);
-        String content = personaManager.getPersonaPrompt(personaName);
+        String content = personaManager.getPersona(personaName).content();
         
         personaNameField.setText(personaName);
         personaContentArea.setText(content);
@@ -0,0 +1,22 @@
+package cn.ningmo.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 只增不减的计数器
+ */
+public final class Counter {
+    private final LongAdder value = new LongAdder();
+
+    public void increment() {
+        value.increment();
+    }
+
+    public void add(long amount) {
+        value.add(amount);
+    }
+
+    public long get() {
+        return value.sum();
+    }
+}
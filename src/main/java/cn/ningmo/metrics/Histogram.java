@@ -0,0 +1,139 @@
+package cn.ningmo.metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 对数线性延迟直方图（与HdrHistogram的分桶方式相同）
+ * 以微秒为单位，小于64微秒的值每个值一个桶，之后每翻一倍分成32个桶，相对误差不超过约3%。
+ * 记录只做几次位运算和原子自增，不分配对象
+ */
+public final class Histogram {
+    // 每组的子桶位数
+    private static final int SUB_BITS = 6;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_SUB_COUNT = SUB_COUNT >> 1;
+    // 最大可记录约2^40微秒（约12天），更大的值记入最后一个桶
+    private static final int MAX_SHIFT = 40 - SUB_BITS + 1;
+    private static final int BUCKET_COUNT = SUB_COUNT + MAX_SHIFT * HALF_SUB_COUNT;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * 记录一次耗时
+     * @param nanos 纳秒
+     */
+    public void recordNanos(long nanos) {
+        record(TimeUnit.NANOSECONDS.toMicros(nanos));
+    }
+
+    /**
+     * 记录一个值
+     * @param micros 微秒，负数按0处理
+     */
+    public void record(long micros) {
+        long value = Math.max(0, micros);
+        buckets.incrementAndGet(bucketIndex(value));
+        count.increment();
+        sum.add(value);
+        long currentMax;
+        while (value > (currentMax = max.get()) && !max.compareAndSet(currentMax, value)) {
+            // 重试
+        }
+    }
+
+    static int bucketIndex(long value) {
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BITS + 1;
+        if (shift > MAX_SHIFT) {
+            return BUCKET_COUNT - 1;
+        }
+        return SUB_COUNT + (shift - 1) * HALF_SUB_COUNT + (int) (value >>> shift) - HALF_SUB_COUNT;
+    }
+
+    /**
+     * 桶的代表值（桶内区间的中点）
+     */
+    static long bucketValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_COUNT) / HALF_SUB_COUNT + 1;
+        long sub = (index - SUB_COUNT) % HALF_SUB_COUNT + HALF_SUB_COUNT;
+        long lower = sub << shift;
+        return lower + ((1L << shift) >> 1);
+    }
+
+    /**
+     * 获取当前数据的快照
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts[i] = buckets.get(i);
+            total += counts[i];
+        }
+        return new Snapshot(counts, total, sum.sum(), max.get());
+    }
+
+    /**
+     * 直方图快照，值的单位为微秒
+     */
+    public static final class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * 百分位数
+         * @param percentile 0到100之间
+         * @return 微秒，没有数据时返回0
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percentile / 100.0 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(bucketValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package cn.ningmo.metrics;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+
+/**
+ * JVM运行状态指标：堆和非堆内存、线程数、GC次数和耗时
+ */
+public final class JvmMetrics {
+
+    private JvmMetrics() {
+    }
+
+    /**
+     * 把JVM指标注册为仪表和计数器，读取时才查询MXBean
+     */
+    public static void register(MetricsRegistry registry) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        registry.gauge("jvm_memory_used_bytes", () -> memory.getHeapMemoryUsage().getUsed(), "area", "heap");
+        registry.gauge("jvm_memory_committed_bytes", () -> memory.getHeapMemoryUsage().getCommitted(), "area", "heap");
+        registry.gauge("jvm_memory_max_bytes", () -> memory.getHeapMemoryUsage().getMax(), "area", "heap");
+        registry.gauge("jvm_memory_used_bytes", () -> memory.getNonHeapMemoryUsage().getUsed(), "area", "nonheap");
+        registry.gauge("jvm_memory_committed_bytes", () -> memory.getNonHeapMemoryUsage().getCommitted(), "area", "nonheap");
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        registry.gauge("jvm_threads_live", threads::getThreadCount);
+
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            // 次数和耗时只增不减，按计数器导出为jvm_gc_collections_total和jvm_gc_collection_seconds_total
+            registry.counterFunction("jvm_gc_collections", gc::getCollectionCount, "gc", gc.getName());
+            registry.counterFunction("jvm_gc_collection_seconds", () -> gc.getCollectionTime() / 1000.0, "gc", gc.getName());
+        }
+    }
+
+    /**
+     * 堆内存使用率（0-100），最大值未知时按已提交内存计算
+     */
+    public static double heapUsagePercent() {
+        var heap = ManagementFactory.getMemoryMXBean().getHeapMemoryUsage();
+        long max = heap.getMax() > 0 ? heap.getMax() : heap.getCommitted();
+        return max > 0 ? (double) heap.getUsed() / max * 100 : 0;
+    }
+}
@@ -0,0 +1,113 @@
+package cn.ningmo.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
+
+/**
+ * 内置监控HTTP服务
+ * /metrics 以OpenMetrics文本格式输出所有指标，/health 返回连接和模型状态，
+ * 基于JDK自带的HttpServer，不引入额外依赖
+ */
+public class MetricsHttpServer {
+    private static final Logger logger = LoggerFactory.getLogger(MetricsHttpServer.class);
+
+    private static final String OPENMETRICS_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    private static final String TEXT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    /**
+     * 健康状态
+     * @param healthy 是否健康，不健康时返回503
+     * @param details 详细信息，原样输出为JSON
+     */
+    public record Health(boolean healthy, Map<String, Object> details) {
+    }
+
+    private final MetricsRegistry registry;
+    private final Supplier<Health> healthCheck;
+    private final HttpServer server;
+
+    /**
+     * @param registry 指标注册表
+     * @param healthCheck 健康检查，每次请求/health时调用
+     * @param host 监听地址
+     * @param port 监听端口，0表示随机端口
+     */
+    public MetricsHttpServer(MetricsRegistry registry, Supplier<Health> healthCheck, String host, int port) throws IOException {
+        this.registry = registry;
+        this.healthCheck = healthCheck;
+        this.server = HttpServer.create(new InetSocketAddress(host, port), 0);
+        server.createContext("/metrics", this::handleMetrics);
+        server.createContext("/health", this::handleHealth);
+        // 抓取请求很少，一个虚拟线程处理一个请求即可
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public void start() {
+        server.start();
+        logger.info("监控HTTP服务已启动: http://{}:{}/metrics", server.getAddress().getHostString(), getPort());
+    }
+
+    public void stop() {
+        server.stop(0);
+        logger.info("监控HTTP服务已停止");
+    }
+
+    /**
+     * 实际监听的端口
+     */
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            // 旧版Prometheus不接受OpenMetrics时按文本格式返回，内容相同
+            String accept = exchange.getRequestHeaders().getFirst("Accept");
+            boolean openMetrics = accept == null || accept.contains("application/openmetrics-text");
+            exchange.getResponseHeaders().set("Content-Type", openMetrics ? OPENMETRICS_TYPE : TEXT_TYPE);
+            exchange.sendResponseHeaders(200, 0);
+            try (Writer writer = new OutputStreamWriter(exchange.getResponseBody(), StandardCharsets.UTF_8)) {
+                registry.writeOpenMetrics(writer);
+            }
+        } catch (IOException e) {
+            logger.debug("输出指标时连接中断: {}", e.getMessage());
+        }
+    }
+
+    private void handleHealth(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            Health health;
+            try {
+                health = healthCheck.get();
+            } catch (RuntimeException e) {
+                logger.warn("健康检查出错", e);
+                health = new Health(false, Map.of("error", String.valueOf(e.getMessage())));
+            }
+            JSONObject body = new JSONObject(health.details());
+            body.put("status", health.healthy() ? "UP" : "DOWN");
+            byte[] bytes = body.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(health.healthy() ? 200 : 503, bytes.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(bytes);
+            }
+        }
+    }
+}
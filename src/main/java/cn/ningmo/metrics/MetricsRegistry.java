@@ -0,0 +1,231 @@
+package cn.ningmo.metrics;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.DoubleSupplier;
+import java.util.function.LongSupplier;
+
+/**
+ * 进程内指标注册表
+ * 保存计数器、仪表和延迟直方图，可以输出为控制台报表或OpenMetrics文本格式。
+ * 热路径上应把获取到的指标对象保存在字段中，避免每次都查表
+ */
+public class MetricsRegistry {
+
+    /**
+     * 指标标识
+     * @param name 指标名称，使用OpenMetrics命名规则（小写字母和下划线）
+     * @param labels 标签，按键值交替排列
+     */
+    public record MetricId(String name, List<String> labels) {
+
+        static MetricId of(String name, String... labels) {
+            if (labels.length % 2 != 0) {
+                throw new IllegalArgumentException("标签必须成对出现: " + Arrays.toString(labels));
+            }
+            return new MetricId(name, List.of(labels));
+        }
+
+        /**
+         * 标签的OpenMetrics格式，例如{model="gpt-4"}，没有标签时返回空字符串
+         */
+        public String labelText() {
+            if (labels.isEmpty()) {
+                return "";
+            }
+            StringBuilder sb = new StringBuilder("{");
+            for (int i = 0; i < labels.size(); i += 2) {
+                if (i > 0) {
+                    sb.append(',');
+                }
+                sb.append(labels.get(i)).append("=\"")
+                  .append(labels.get(i + 1).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n"))
+                  .append('"');
+            }
+            return sb.append('}').toString();
+        }
+
+        String displayName() {
+            return name + labelText();
+        }
+    }
+
+    private final Map<MetricId, Counter> counters = new ConcurrentHashMap<>();
+    private final Map<MetricId, LongSupplier> gauges = new ConcurrentHashMap<>();
+    // 由外部维护的单调递增值（例如GC次数），读取时调用supplier，按计数器导出
+    private final Map<MetricId, DoubleSupplier> counterFunctions = new ConcurrentHashMap<>();
+    private final Map<MetricId, Histogram> histograms = new ConcurrentHashMap<>();
+
+    /**
+     * 获取或创建计数器
+     */
+    public Counter counter(String name, String... labels) {
+        return counters.computeIfAbsent(MetricId.of(name, labels), k -> new Counter());
+    }
+
+    /**
+     * 注册仪表，读取时调用supplier获取当前值；同名仪表会被替换
+     */
+    public void gauge(String name, LongSupplier supplier, String... labels) {
+        gauges.put(MetricId.of(name, labels), supplier);
+    }
+
+    /**
+     * 注册由外部维护的计数器，读取时调用supplier获取当前值，supplier的返回值必须只增不减；同名计数器会被替换
+     * 值可以带小数，例如以秒为单位的累计耗时
+     */
+    public void counterFunction(String name, DoubleSupplier supplier, String... labels) {
+        counterFunctions.put(MetricId.of(name, labels), supplier);
+    }
+
+    /**
+     * 获取或创建延迟直方图
+     */
+    public Histogram histogram(String name, String... labels) {
+        return histograms.computeIfAbsent(MetricId.of(name, labels), k -> new Histogram());
+    }
+
+    /**
+     * 所有直方图的快照，按名称排序
+     */
+    public Map<MetricId, Histogram.Snapshot> histogramSnapshots() {
+        Map<MetricId, Histogram.Snapshot> result = new java.util.TreeMap<>(ID_ORDER);
+        histograms.forEach((id, histogram) -> result.put(id, histogram.snapshot()));
+        return result;
+    }
+
+    private static final Comparator<MetricId> ID_ORDER =
+        Comparator.comparing(MetricId::name).thenComparing(id -> String.join(",", id.labels()));
+
+    private static <T> List<Map.Entry<MetricId, T>> sorted(Map<MetricId, T> map) {
+        List<Map.Entry<MetricId, T>> entries = new ArrayList<>(map.entrySet());
+        entries.sort(Map.Entry.comparingByKey(ID_ORDER));
+        return entries;
+    }
+
+    /**
+     * 计数器和外部维护的计数器合在一起，导出时同名的放在同一个TYPE下
+     */
+    private Map<MetricId, DoubleSupplier> allCounters() {
+        Map<MetricId, DoubleSupplier> all = new java.util.HashMap<>(counterFunctions);
+        counters.forEach((id, counter) -> all.put(id, counter::get));
+        return all;
+    }
+
+    private static long readGauge(LongSupplier supplier) {
+        try {
+            return supplier.getAsLong();
+        } catch (RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static String readCounter(DoubleSupplier supplier) {
+        double value;
+        try {
+            value = supplier.getAsDouble();
+        } catch (RuntimeException e) {
+            return "-1";
+        }
+        // 整数值按整数输出，保持原有计数器的格式
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return BigDecimal.valueOf(value).toPlainString();
+    }
+
+    /**
+     * 生成便于阅读的报表，延迟以毫秒显示
+     */
+    public String report() {
+        StringBuilder sb = new StringBuilder();
+        List<Map.Entry<MetricId, Histogram>> histogramEntries = sorted(histograms);
+        if (!histogramEntries.isEmpty()) {
+            sb.append("延迟统计（毫秒）:\n");
+            sb.append(String.format(Locale.ROOT, "  %-48s %8s %9s %9s %9s %9s%n", "指标", "次数", "p50", "p95", "p99", "最大"));
+            for (Map.Entry<MetricId, Histogram> entry : histogramEntries) {
+                Histogram.Snapshot s = entry.getValue().snapshot();
+                sb.append(String.format(Locale.ROOT, "  %-48s %8d %9.1f %9.1f %9.1f %9.1f%n",
+                    entry.getKey().displayName(), s.getCount(),
+                    s.getPercentile(50) / 1000.0, s.getPercentile(95) / 1000.0,
+                    s.getPercentile(99) / 1000.0, s.getMax() / 1000.0));
+            }
+        }
+        List<Map.Entry<MetricId, DoubleSupplier>> counterEntries = sorted(allCounters());
+        if (!counterEntries.isEmpty()) {
+            sb.append("计数:\n");
+            for (Map.Entry<MetricId, DoubleSupplier> entry : counterEntries) {
+                sb.append(String.format(Locale.ROOT, "  %-48s %s%n", entry.getKey().displayName(), readCounter(entry.getValue())));
+            }
+        }
+        List<Map.Entry<MetricId, LongSupplier>> gaugeEntries = sorted(gauges);
+        if (!gaugeEntries.isEmpty()) {
+            sb.append("当前值:\n");
+            for (Map.Entry<MetricId, LongSupplier> entry : gaugeEntries) {
+                sb.append(String.format(Locale.ROOT, "  %-48s %d%n", entry.getKey().displayName(), readGauge(entry.getValue())));
+            }
+        }
+        return sb.length() == 0 ? "暂无指标数据\n" : sb.toString();
+    }
+
+    /**
+     * 以OpenMetrics文本格式输出所有指标
+     * 直方图输出为summary（p50/p95/p99、总次数和总耗时），单位为秒
+     */
+    public void writeOpenMetrics(Appendable out) throws IOException {
+        String lastName = null;
+        for (Map.Entry<MetricId, DoubleSupplier> entry : sorted(allCounters())) {
+            MetricId id = entry.getKey();
+            if (!id.name().equals(lastName)) {
+                out.append("# TYPE ").append(id.name()).append(" counter\n");
+                lastName = id.name();
+            }
+            out.append(id.name()).append("_total").append(id.labelText()).append(' ')
+               .append(readCounter(entry.getValue())).append('\n');
+        }
+        for (Map.Entry<MetricId, LongSupplier> entry : sorted(gauges)) {
+            MetricId id = entry.getKey();
+            if (!id.name().equals(lastName)) {
+                out.append("# TYPE ").append(id.name()).append(" gauge\n");
+                lastName = id.name();
+            }
+            out.append(id.name()).append(id.labelText()).append(' ')
+               .append(Long.toString(readGauge(entry.getValue()))).append('\n');
+        }
+        for (Map.Entry<MetricId, Histogram> entry : sorted(histograms)) {
+            MetricId id = entry.getKey();
+            Histogram.Snapshot s = entry.getValue().snapshot();
+            if (!id.name().equals(lastName)) {
+                out.append("# TYPE ").append(id.name()).append(" summary\n");
+                out.append("# UNIT ").append(id.name()).append(" seconds\n");
+                lastName = id.name();
+            }
+            for (double quantile : new double[]{0.5, 0.95, 0.99}) {
+                out.append(id.name()).append(withQuantile(id, quantile)).append(' ')
+                   .append(seconds(s.getPercentile(quantile * 100))).append('\n');
+            }
+            out.append(id.name()).append("_count").append(id.labelText()).append(' ')
+               .append(Long.toString(s.getCount())).append('\n');
+            out.append(id.name()).append("_sum").append(id.labelText()).append(' ')
+               .append(seconds(s.getSum())).append('\n');
+        }
+        out.append("# EOF\n");
+    }
+
+    private static String withQuantile(MetricId id, double quantile) {
+        String labels = id.labelText();
+        String q = "quantile=\"" + quantile + "\"";
+        return labels.isEmpty() ? "{" + q + "}" : labels.substring(0, labels.length() - 1) + "," + q + "}";
+    }
+
+    private static String seconds(long micros) {
+        return String.format(Locale.ROOT, "%.6f", micros / 1_000_000.0);
+    }
+}
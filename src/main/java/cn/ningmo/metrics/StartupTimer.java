@@ -0,0 +1,57 @@
+package cn.ningmo.metrics;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 启动阶段计时
+ * 按顺序记录每个阶段结束的时间点，启动完成后输出一行汇总，
+ * 用来比较不同启动方式（无界面模式、AppCDS归档等）的效果
+ */
+public class StartupTimer {
+    private final long begin = System.nanoTime();
+    private final Optional<Instant> processStart = ProcessHandle.current().info().startInstant();
+    private final Instant created = Instant.now();
+    private long last = begin;
+    // 阶段名 -> 耗时（纳秒），按记录顺序
+    private final Map<String, Long> phases = new LinkedHashMap<>();
+
+    /**
+     * 结束当前阶段，耗时从上一个阶段结束时算起
+     */
+    public synchronized void mark(String phase) {
+        long now = System.nanoTime();
+        phases.merge(phase, now - last, Long::sum);
+        last = now;
+    }
+
+    public synchronized Map<String, Long> getPhaseMillis() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        phases.forEach((phase, nanos) -> result.put(phase, TimeUnit.NANOSECONDS.toMillis(nanos)));
+        return result;
+    }
+
+    /**
+     * 从进程启动到现在的毫秒数，无法获取进程启动时间时从创建计时器时算起
+     */
+    public long sinceProcessStartMillis() {
+        long sinceCreated = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - begin);
+        return processStart.map(start -> Duration.between(start, created).toMillis() + sinceCreated).orElse(sinceCreated);
+    }
+
+    /**
+     * 汇总，例如"JVM启动 180ms，配置加载 45ms，服务初始化 310ms，合计 535ms"
+     */
+    public synchronized String summary() {
+        StringBuilder sb = new StringBuilder();
+        processStart.ifPresent(start ->
+            sb.append("JVM启动 ").append(Duration.between(start, created).toMillis()).append("ms，"));
+        phases.forEach((phase, nanos) ->
+            sb.append(phase).append(' ').append(TimeUnit.NANOSECONDS.toMillis(nanos)).append("ms，"));
+        return sb.append("合计 ").append(sinceProcessStartMillis()).append("ms").toString();
+    }
+}
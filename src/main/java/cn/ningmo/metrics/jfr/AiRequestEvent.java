@@ -0,0 +1,37 @@
+package cn.ningmo.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 一次AI回复的完整过程，从开始处理到拿到模型回复
+ */
+@Name("cn.ningmo.AiRequest")
+@Label("AI请求")
+@Category({"Ningmo", "AI"})
+@Description("从开始处理消息到拿到AI回复，包括图片获取、排队和模型调用")
+public class AiRequestEvent extends Event {
+    @Label("追踪ID")
+    public String traceId;
+
+    @Label("消息类型")
+    public String messageType;
+
+    @Label("群号")
+    public String groupId;
+
+    @Label("用户")
+    public String userId;
+
+    @Label("模型")
+    public String model;
+
+    @Label("图片数")
+    public int imageCount;
+
+    @Label("回复长度")
+    public int replyLength;
+}
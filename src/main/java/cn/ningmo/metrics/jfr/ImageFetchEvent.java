@@ -0,0 +1,25 @@
+package cn.ningmo.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 获取一条消息中的所有图片
+ */
+@Name("cn.ningmo.ImageFetch")
+@Label("图片获取")
+@Category({"Ningmo", "AI"})
+@Description("获取一条消息中的所有图片，包括缓存查找、下载和压缩")
+public class ImageFetchEvent extends Event {
+    @Label("模型")
+    public String model;
+
+    @Label("图片数")
+    public int imageCount;
+
+    @Label("成功数")
+    public int successCount;
+}
@@ -0,0 +1,35 @@
+package cn.ningmo.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 一次模型调用，重试时每次尝试单独记录，两次尝试之间的空隙即为重试等待
+ * 追踪ID与所属的AI请求事件相同，可以据此把多次尝试归到同一条消息
+ */
+@Name("cn.ningmo.ModelAttempt")
+@Label("模型调用")
+@Category({"Ningmo", "AI"})
+@Description("一次模型HTTP调用，重试时每次尝试单独记录")
+public class ModelAttemptEvent extends Event {
+    @Label("追踪ID")
+    public String traceId;
+
+    @Label("群号")
+    public String groupId;
+
+    @Label("模型")
+    public String model;
+
+    @Label("模型类型")
+    public String modelType;
+
+    @Label("第几次尝试")
+    public int attempt;
+
+    @Label("是否成功")
+    public boolean success;
+}
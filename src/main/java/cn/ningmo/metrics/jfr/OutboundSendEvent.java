@@ -0,0 +1,25 @@
+package cn.ningmo.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 向OneBot发送一条消息
+ */
+@Name("cn.ningmo.OutboundSend")
+@Label("发送消息")
+@Category({"Ningmo", "OneBot"})
+@Description("序列化并写入WebSocket的一条消息，分段发送时每段单独记录")
+public class OutboundSendEvent extends Event {
+    @Label("消息类型")
+    public String messageType;
+
+    @Label("目标")
+    public String target;
+
+    @Label("长度")
+    public int length;
+}
@@ -0,0 +1,22 @@
+package cn.ningmo.metrics.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * 数据写入磁盘
+ */
+@Name("cn.ningmo.PersistFlush")
+@Label("数据保存")
+@Category({"Ningmo", "存储"})
+@Description("把数据、黑名单或屏蔽词写入磁盘")
+public class PersistFlushEvent extends Event {
+    @Label("文件")
+    public String file;
+
+    @Label("条目数")
+    public int entries;
+}
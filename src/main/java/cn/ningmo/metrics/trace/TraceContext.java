@@ -0,0 +1,259 @@
+package cn.ningmo.metrics.trace;
+
+import org.slf4j.MDC;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * 单个入站事件的追踪上下文
+ * 追踪ID优先使用QQ消息的message_id，处理过程中各阶段的耗时记录为span。
+ * 上下文绑定在当前线程上并写入日志MDC（键为traceId），切换线程时用wrap显式传递
+ */
+public final class TraceContext {
+    /**
+     * 日志MDC中的键
+     */
+    public static final String MDC_KEY = "traceId";
+
+    // 单个事件最多记录的span数，防止异常情况下无限增长
+    private static final int MAX_SPANS = 64;
+
+    private static final ThreadLocal<TraceContext> CURRENT = new ThreadLocal<>();
+
+    /**
+     * 一个阶段的耗时记录
+     * @param name 阶段名称
+     * @param startOffsetNanos 相对于事件开始的偏移（纳秒）
+     * @param durationNanos 耗时（纳秒）
+     * @param detail 附加信息，可为null
+     * @param thread 执行线程名称
+     */
+    public record Span(String name, long startOffsetNanos, long durationNanos, String detail, String thread) {
+    }
+
+    /**
+     * 计时中的span，close时记录，可用于try-with-resources
+     */
+    public interface SpanTimer extends AutoCloseable {
+        /**
+         * 设置附加信息
+         */
+        void detail(String detail);
+
+        @Override
+        void close();
+    }
+
+    /**
+     * 线程绑定，close时恢复之前的上下文
+     */
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    private static final SpanTimer NOOP_TIMER = new SpanTimer() {
+        @Override
+        public void detail(String detail) {
+        }
+
+        @Override
+        public void close() {
+        }
+    };
+
+    private final String traceId;
+    private final String kind;
+    private final String groupId;
+    private final String userId;
+    private final long startMillis;
+    private final long startNanos;
+    private final List<Span> spans = new ArrayList<>();
+    private volatile long endNanos;
+
+    TraceContext(String traceId, String kind, String groupId, String userId) {
+        this.traceId = traceId;
+        this.kind = kind;
+        this.groupId = groupId;
+        this.userId = userId;
+        this.startMillis = System.currentTimeMillis();
+        this.startNanos = System.nanoTime();
+        this.endNanos = startNanos;
+    }
+
+    /**
+     * 当前线程绑定的上下文，没有时返回null
+     */
+    public static TraceContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * 绑定到当前线程并写入MDC
+     */
+    public Scope attach() {
+        TraceContext previous = CURRENT.get();
+        CURRENT.set(this);
+        MDC.put(MDC_KEY, traceId);
+        return () -> {
+            if (previous != null) {
+                CURRENT.set(previous);
+                MDC.put(MDC_KEY, previous.traceId);
+            } else {
+                CURRENT.remove();
+                MDC.remove(MDC_KEY);
+            }
+        };
+    }
+
+    /**
+     * 把当前线程的上下文带到任务执行的线程
+     */
+    public static Runnable wrap(Runnable task) {
+        TraceContext context = current();
+        return context != null ? context.bind(task) : task;
+    }
+
+    /**
+     * 让任务在本上下文中执行，用于在没有绑定上下文的线程（例如定时器回调）中提交任务
+     */
+    public Runnable bind(Runnable task) {
+        return () -> {
+            try (Scope ignored = attach()) {
+                task.run();
+            }
+        };
+    }
+
+    /**
+     * 把当前线程的上下文带到任务执行的线程
+     */
+    public static <T> Supplier<T> wrap(Supplier<T> task) {
+        TraceContext context = current();
+        if (context == null) {
+            return task;
+        }
+        return () -> {
+            try (Scope ignored = context.attach()) {
+                return task.get();
+            }
+        };
+    }
+
+    /**
+     * 在当前上下文中开始一个span，没有上下文时返回空操作
+     */
+    public static SpanTimer span(String name) {
+        TraceContext context = current();
+        if (context == null) {
+            return NOOP_TIMER;
+        }
+        long start = System.nanoTime();
+        return new SpanTimer() {
+            private String detail;
+
+            @Override
+            public void detail(String detail) {
+                this.detail = detail;
+            }
+
+            @Override
+            public void close() {
+                context.addSpan(name, start, System.nanoTime() - start, detail);
+            }
+        };
+    }
+
+    /**
+     * 在当前上下文中记录一个已结束的span，适合已经自行计时的地方
+     * @param startNanos 开始时的System.nanoTime()
+     */
+    public static void record(String name, long startNanos, String detail) {
+        TraceContext context = current();
+        if (context != null) {
+            context.addSpan(name, startNanos, System.nanoTime() - startNanos, detail);
+        }
+    }
+
+    /**
+     * 记录一个span
+     * @param startNanos 开始时的System.nanoTime()
+     */
+    public void addSpan(String name, long startNanos, long durationNanos, String detail) {
+        synchronized (spans) {
+            if (spans.size() >= MAX_SPANS) {
+                return;
+            }
+            spans.add(new Span(name, startNanos - this.startNanos, durationNanos, detail, Thread.currentThread().getName()));
+            long end = startNanos + durationNanos;
+            if (end > endNanos) {
+                endNanos = end;
+            }
+        }
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getKind() {
+        return kind;
+    }
+
+    public String getGroupId() {
+        return groupId;
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * 从事件开始到最后一个span结束的时间（纳秒）
+     */
+    public long getDurationNanos() {
+        return endNanos - startNanos;
+    }
+
+    public List<Span> getSpans() {
+        synchronized (spans) {
+            return new ArrayList<>(spans);
+        }
+    }
+
+    /**
+     * 输出为便于阅读的时间线
+     */
+    public String format() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(String.format(Locale.ROOT, "追踪 %s (%s", traceId, kind));
+        if (groupId != null) {
+            sb.append(" 群").append(groupId);
+        }
+        if (userId != null) {
+            sb.append(" 用户").append(userId);
+        }
+        sb.append(String.format(Locale.ROOT, ") 开始于 %tT.%<tL，总耗时 %.1fms%n", startMillis, millis(getDurationNanos())));
+        for (Span span : getSpans()) {
+            sb.append(String.format(Locale.ROOT, "  +%9.1fms %-16s %9.1fms  [%s]",
+                millis(span.startOffsetNanos()), span.name(), millis(span.durationNanos()), span.thread()));
+            if (span.detail() != null) {
+                sb.append(' ').append(span.detail());
+            }
+            sb.append('\n');
+        }
+        return sb.toString();
+    }
+
+    private static double millis(long nanos) {
+        return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+}
@@ -0,0 +1,83 @@
+package cn.ningmo.metrics.trace;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 追踪记录
+ * 创建追踪上下文并保存在固定大小的环形缓冲中，新事件覆盖最旧的事件，
+ * 处理中的事件也在环中，可以随时查看已完成的阶段
+ */
+public class Tracer {
+    private final AtomicReferenceArray<TraceContext> ring;
+    private final AtomicLong cursor = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @param capacity 保留的最近事件数
+     */
+    public Tracer(int capacity) {
+        this.ring = new AtomicReferenceArray<>(Math.max(1, capacity));
+    }
+
+    /**
+     * 开始追踪一个入站事件
+     * @param messageId QQ消息的message_id，为空时自动生成追踪ID
+     * @param kind 事件类型，例如group/private
+     * @param groupId 群号，私聊为null
+     * @param userId 发送者QQ号
+     */
+    public TraceContext begin(String messageId, String kind, String groupId, String userId) {
+        String traceId = messageId != null && !messageId.isEmpty() ? messageId : "t" + sequence.incrementAndGet();
+        TraceContext context = new TraceContext(traceId, kind, groupId, userId);
+        int slot = (int) (cursor.getAndIncrement() % ring.length());
+        ring.set(slot, context);
+        return context;
+    }
+
+    /**
+     * 按追踪ID查找，同一ID出现多次时返回最新的
+     */
+    public TraceContext find(String traceId) {
+        TraceContext found = null;
+        for (TraceContext context : snapshot()) {
+            if (context.getTraceId().equals(traceId)
+                && (found == null || context.getStartMillis() >= found.getStartMillis())) {
+                found = context;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 最近的事件，最新的在前
+     */
+    public List<TraceContext> recent(int limit) {
+        List<TraceContext> all = snapshot();
+        all.sort(Comparator.comparingLong(TraceContext::getStartMillis).reversed());
+        return all.subList(0, Math.min(limit, all.size()));
+    }
+
+    /**
+     * 耗时最长的事件，最慢的在前
+     */
+    public List<TraceContext> slowest(int limit) {
+        List<TraceContext> all = snapshot();
+        all.sort(Comparator.comparingLong(TraceContext::getDurationNanos).reversed());
+        return all.subList(0, Math.min(limit, all.size()));
+    }
+
+    private List<TraceContext> snapshot() {
+        List<TraceContext> list = new ArrayList<>(ring.length());
+        for (int i = 0; i < ring.length(); i++) {
+            TraceContext context = ring.get(i);
+            if (context != null) {
+                list.add(context);
+            }
+        }
+        return list;
+    }
+}
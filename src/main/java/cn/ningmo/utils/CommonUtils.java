@@ -100,6 +100,25 @@ public class CommonUtils {
         return text.substring(0, maxLength) + "...";
     }
     
+    /**
+     * 粗略估算文本的token数：汉字按1个计，其他字符按4个字符1个计
+     */
+    public static int estimateTokens(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int cjk = 0;
+        int other = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (Character.UnicodeScript.of(text.charAt(i)) == Character.UnicodeScript.HAN) {
+                cjk++;
+            } else {
+                other++;
+            }
+        }
+        return cjk + (other + 3) / 4;
+    }
+    
     /**
      * 判断字符串是否为空或null
      */
@@ -202,6 +221,35 @@ public class CommonUtils {
         return null;
     }
     
+    /**
+     * 从图片CQ码中提取file参数（QQ图片的文件标识，同一图片保持不变）
+     * @param imageCQCode 图片CQ码
+     * @return file参数，如果不存在返回null
+     */
+    public static String extractImageFileIdFromCQCode(String imageCQCode) {
+        Pattern filePattern = Pattern.compile("file=([^,\\]]+)");
+        Matcher fileMatcher = filePattern.matcher(imageCQCode);
+        if (fileMatcher.find()) {
+            return fileMatcher.group(1);
+        }
+        return null;
+    }
+    
+    /**
+     * 还原CQ码参数中的转义字符
+     * @param value CQ码参数值
+     * @return 还原后的值
+     */
+    public static String unescapeCQParam(String value) {
+        if (value == null || value.indexOf('&') < 0) {
+            return value;
+        }
+        return value.replace("&#44;", ",")
+                    .replace("&#91;", "[")
+                    .replace("&#93;", "]")
+                    .replace("&amp;", "&");
+    }
+    
     /**
      * 下载图片并转换为base64编码
      * @param imageUrl 图片URL
@@ -0,0 +1,128 @@
+package cn.ningmo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+
+/**
+ * 目录变化监听
+ * 基于WatchService监听一个目录，符合条件的文件发生变化后合并一段时间内的后续事件，
+ * 再在监听线程中执行一次回调
+ */
+public class FileWatcher {
+    private static final Logger logger = LoggerFactory.getLogger(FileWatcher.class);
+
+    private final Path directory;
+    private final Predicate<Path> fileFilter;
+    private final long debounceMs;
+    private final Runnable onChange;
+    private final String threadName;
+
+    private WatchService watchService;
+
+    /**
+     * @param directory 监听的目录
+     * @param fileFilter 文件名过滤条件，参数为相对于目录的文件名
+     * @param debounceMs 合并事件的时间窗口（毫秒）
+     * @param onChange 变化后的回调
+     * @param threadName 监听线程名称
+     */
+    public FileWatcher(Path directory, Predicate<Path> fileFilter, long debounceMs, Runnable onChange, String threadName) {
+        this.directory = directory.toAbsolutePath();
+        this.fileFilter = fileFilter;
+        this.debounceMs = debounceMs;
+        this.onChange = onChange;
+        this.threadName = threadName;
+    }
+
+    /**
+     * 开始监听
+     * @return 是否成功开始监听
+     */
+    public synchronized boolean start() {
+        if (watchService != null) {
+            return true;
+        }
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            logger.warn("无法监听目录变化: {}", directory, e);
+            watchService = null;
+            return false;
+        }
+
+        WatchService service = watchService;
+        Thread watcher = new Thread(() -> watchLoop(service), threadName);
+        watcher.setDaemon(true);
+        watcher.start();
+        logger.debug("开始监听目录变化: {}", directory);
+        return true;
+    }
+
+    private void watchLoop(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                boolean changed = matches(key);
+                key.reset();
+                if (!changed) {
+                    continue;
+                }
+
+                // 编辑器保存文件时可能连续触发多次事件，等待写入完成并吞掉这段时间内的后续事件
+                WatchKey next;
+                while ((next = service.poll(debounceMs, TimeUnit.MILLISECONDS)) != null) {
+                    next.pollEvents();
+                    next.reset();
+                }
+
+                try {
+                    onChange.run();
+                } catch (Exception e) {
+                    logger.error("处理目录变化时出错: {}", directory, e);
+                }
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            logger.debug("目录监听已停止: {}", directory);
+        }
+    }
+
+    boolean matches(WatchKey key) {
+        boolean found = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            // 事件溢出时无法知道哪些文件变了，按有变化处理，让回调重新读取
+            if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                found = true;
+            } else if (event.context() instanceof Path && fileFilter.test((Path) event.context())) {
+                found = true;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * 停止监听
+     */
+    public synchronized void stop() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                logger.debug("关闭目录监听失败: {}", directory, e);
+            }
+            watchService = null;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package cn.ningmo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 图片磁盘缓存
+ * 以图片来源标识的SHA-256作为文件名，保存已经规范化的图片数据；
+ * 按字节预算以最近访问时间淘汰。
+ * 读取时直接读入堆数组而不使用内存映射：映射在GC前不会释放，Windows上会导致文件无法删除或替换
+ */
+public class ImageDiskCache {
+    private static final Logger logger = LoggerFactory.getLogger(ImageDiskCache.class);
+    private static final String FILE_SUFFIX = ".img";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    private final Path directory;
+    private final long maxBytes;
+
+    // 文件名(SHA-256) -> 缓存条目，启动时扫描目录重建
+    private final Map<String, CacheEntry> index = new ConcurrentHashMap<>();
+    private long totalBytes;
+
+    public ImageDiskCache(Path directory, long maxBytes) {
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        rebuildIndex();
+    }
+
+    /**
+     * 扫描缓存目录重建索引，只读取文件属性，不读取文件内容；
+     * 同时删除上次写入中途退出留下的临时文件，它们不在索引中，不会被淘汰
+     */
+    private synchronized void rebuildIndex() {
+        long startTime = System.currentTimeMillis();
+        index.clear();
+        totalBytes = 0;
+        try {
+            Files.createDirectories(directory);
+            int staleTempFiles = 0;
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + TEMP_SUFFIX)) {
+                for (Path file : stream) {
+                    try {
+                        Files.deleteIfExists(file);
+                        staleTempFiles++;
+                    } catch (IOException e) {
+                        logger.warn("删除残留的图片缓存临时文件失败: {}", file, e);
+                    }
+                }
+            }
+            if (staleTempFiles > 0) {
+                logger.info("已删除 {} 个残留的图片缓存临时文件", staleTempFiles);
+            }
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*" + FILE_SUFFIX)) {
+                for (Path file : stream) {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    String name = file.getFileName().toString();
+                    String hash = name.substring(0, name.length() - FILE_SUFFIX.length());
+                    index.put(hash, new CacheEntry(attributes.size(), attributes.lastModifiedTime().toMillis()));
+                    totalBytes += attributes.size();
+                }
+            }
+            logger.info("图片磁盘缓存索引重建完成: {} 个文件, {} KB, 耗时 {}ms",
+                       index.size(), totalBytes / 1024, System.currentTimeMillis() - startTime);
+            evictIfNeeded();
+        } catch (IOException e) {
+            logger.error("重建图片磁盘缓存索引失败: {}", directory, e);
+        }
+    }
+
+    /**
+     * 读取缓存的图片并编码为base64
+     * @param key 图片来源标识
+     * @return base64编码的图片数据，未命中返回null
+     */
+    public String getBase64(String key) {
+        String hash = hash(key);
+        CacheEntry entry = index.get(hash);
+        if (entry == null) {
+            return null;
+        }
+
+        Path file = fileOf(hash);
+        try {
+            // 缓存的都是压缩后的小图片，整体读入后文件句柄立即释放
+            byte[] data = Files.readAllBytes(file);
+            entry.lastAccess = System.currentTimeMillis();
+            touch(file, entry.lastAccess);
+            return java.util.Base64.getEncoder().encodeToString(data);
+        } catch (IOException e) {
+            // 文件被外部删除或损坏，移出索引
+            logger.warn("读取图片磁盘缓存失败，移除该条目: {}", file, e);
+            remove(hash);
+            return null;
+        }
+    }
+
+    /**
+     * 写入图片数据，先写临时文件再原子替换
+     * @param key 图片来源标识
+     * @param data 规范化后的图片数据
+     */
+    public void put(String key, byte[] data) {
+        if (data.length > maxBytes) {
+            return;
+        }
+        String hash = hash(key);
+        Path file = fileOf(hash);
+        Path tempFile = directory.resolve(hash + TEMP_SUFFIX);
+        try {
+            Files.write(tempFile, data);
+            Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            logger.warn("写入图片磁盘缓存失败: {}", file, e);
+            try {
+                Files.deleteIfExists(tempFile);
+            } catch (IOException ignored) {
+                // 忽略清理失败
+            }
+            return;
+        }
+
+        synchronized (this) {
+            CacheEntry previous = index.put(hash, new CacheEntry(data.length, System.currentTimeMillis()));
+            if (previous != null) {
+                totalBytes -= previous.size;
+            }
+            totalBytes += data.length;
+            evictIfNeeded();
+        }
+    }
+
+    /**
+     * 超出预算时按最近访问时间淘汰，一次淘汰到预算的90%以免频繁触发
+     */
+    private synchronized void evictIfNeeded() {
+        if (totalBytes <= maxBytes) {
+            return;
+        }
+        long target = maxBytes / 10 * 9;
+        List<Map.Entry<String, CacheEntry>> entries = new ArrayList<>(index.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().lastAccess));
+
+        int evicted = 0;
+        for (Map.Entry<String, CacheEntry> entry : entries) {
+            if (totalBytes <= target) {
+                break;
+            }
+            remove(entry.getKey());
+            evicted++;
+        }
+        logger.debug("图片磁盘缓存淘汰 {} 个文件，当前 {} KB", evicted, totalBytes / 1024);
+    }
+
+    private synchronized void remove(String hash) {
+        CacheEntry entry = index.remove(hash);
+        if (entry != null) {
+            totalBytes -= entry.size;
+        }
+        try {
+            Files.deleteIfExists(fileOf(hash));
+        } catch (IOException e) {
+            logger.warn("删除图片磁盘缓存文件失败: {}", hash, e);
+        }
+    }
+
+    /**
+     * 更新文件修改时间作为访问时间，重启后仍能按LRU淘汰
+     */
+    private void touch(Path file, long time) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(time));
+        } catch (IOException e) {
+            logger.debug("更新缓存文件访问时间失败: {}", file);
+        }
+    }
+
+    private Path fileOf(String hash) {
+        return directory.resolve(hash + FILE_SUFFIX);
+    }
+
+    private static String hash(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256不可用", e);
+        }
+    }
+
+    public int size() {
+        return index.size();
+    }
+
+    public synchronized long getTotalBytes() {
+        return totalBytes;
+    }
+
+    private static class CacheEntry {
+        final long size;
+        volatile long lastAccess;
+
+        CacheEntry(long size, long lastAccess) {
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+}
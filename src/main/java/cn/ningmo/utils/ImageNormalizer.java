@@ -0,0 +1,269 @@
+package cn.ningmo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import javax.imageio.stream.ImageInputStream;
+import javax.imageio.stream.ImageOutputStream;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * 图片规范化工具类
+ * 根据文件头识别真实格式，按最长边等比缩小并重新压缩为JPEG，动图只取第一帧，
+ * 减小发送给模型的图片体积。
+ * 解码前先读取图片头中的尺寸，像素数超过上限的图片直接拒绝，防止声明超大尺寸的小文件耗尽内存
+ */
+public class ImageNormalizer {
+    private static final Logger logger = LoggerFactory.getLogger(ImageNormalizer.class);
+
+    public static final String MIME_JPEG = "image/jpeg";
+    public static final String MIME_PNG = "image/png";
+    public static final String MIME_GIF = "image/gif";
+    public static final String MIME_WEBP = "image/webp";
+    public static final String MIME_BMP = "image/bmp";
+
+    public static final long DEFAULT_MAX_PIXELS = 50_000_000L;
+
+    private final int defaultMaxEdge;
+    private final float jpegQuality;
+    private final long maxPixels;
+
+    public ImageNormalizer(int defaultMaxEdge, float jpegQuality) {
+        this(defaultMaxEdge, jpegQuality, DEFAULT_MAX_PIXELS);
+    }
+
+    /**
+     * @param maxPixels 允许解码的最大像素数（宽x高），超过的图片直接拒绝
+     */
+    public ImageNormalizer(int defaultMaxEdge, float jpegQuality, long maxPixels) {
+        this.defaultMaxEdge = defaultMaxEdge;
+        this.jpegQuality = jpegQuality;
+        this.maxPixels = maxPixels;
+    }
+
+    /**
+     * 根据文件头识别图片格式
+     * @param data 图片数据
+     * @return MIME类型，无法识别返回null
+     */
+    public static String sniffMimeType(byte[] data) {
+        if (data == null || data.length < 4) {
+            return null;
+        }
+        if ((data[0] & 0xFF) == 0xFF && (data[1] & 0xFF) == 0xD8 && (data[2] & 0xFF) == 0xFF) {
+            return MIME_JPEG;
+        }
+        if ((data[0] & 0xFF) == 0x89 && data[1] == 'P' && data[2] == 'N' && data[3] == 'G') {
+            return MIME_PNG;
+        }
+        if (data[0] == 'G' && data[1] == 'I' && data[2] == 'F' && data[3] == '8') {
+            return MIME_GIF;
+        }
+        if (data.length >= 12 && data[0] == 'R' && data[1] == 'I' && data[2] == 'F' && data[3] == 'F'
+                && data[8] == 'W' && data[9] == 'E' && data[10] == 'B' && data[11] == 'P') {
+            return MIME_WEBP;
+        }
+        if (data[0] == 'B' && data[1] == 'M') {
+            return MIME_BMP;
+        }
+        return null;
+    }
+
+    /**
+     * 根据base64编码的文件头识别图片格式，用于请求体中标注正确的MIME类型
+     * @param imageBase64 base64编码的图片数据
+     * @return MIME类型，无法识别时返回image/jpeg
+     */
+    public static String sniffMimeTypeFromBase64(String imageBase64) {
+        if (imageBase64 == null) {
+            return MIME_JPEG;
+        }
+        // 16个base64字符对应12个字节，足够识别所有支持的格式
+        int length = Math.min(imageBase64.length(), 16) & ~3;
+        try {
+            byte[] header = java.util.Base64.getDecoder().decode(imageBase64.substring(0, length));
+            String mimeType = sniffMimeType(header);
+            return mimeType != null ? mimeType : MIME_JPEG;
+        } catch (IllegalArgumentException e) {
+            return MIME_JPEG;
+        }
+    }
+
+    /**
+     * 规范化图片
+     * @param data 原始图片数据
+     * @param maxEdge 最长边像素，小于等于0时使用默认值
+     * @return 规范化后的图片，不是可识别的图片或像素数超过上限时返回null
+     */
+    public NormalizedImage normalize(byte[] data, int maxEdge) {
+        String mimeType = sniffMimeType(data);
+        if (mimeType == null) {
+            logger.warn("无法识别图片格式，文件头不是已知的图片类型");
+            return null;
+        }
+
+        int edgeLimit = maxEdge > 0 ? maxEdge : defaultMaxEdge;
+
+        int width;
+        int height;
+        BufferedImage image;
+        try (ImageInputStream input = ImageIO.createImageInputStream(new ByteArrayInputStream(data))) {
+            Iterator<ImageReader> readers = input != null ? ImageIO.getImageReaders(input) : null;
+            if (readers == null || !readers.hasNext()) {
+                // JDK不支持解码的格式（如WebP）按原图发送，但标注真实类型
+                logger.debug("图片格式{}无法解码，按原图发送 ({} bytes)", mimeType, data.length);
+                return new NormalizedImage(data, mimeType);
+            }
+            ImageReader reader = readers.next();
+            try {
+                reader.setInput(input, true, true);
+                // 只读取图片头，还没有分配像素内存
+                width = reader.getWidth(0);
+                height = reader.getHeight(0);
+                if ((long) width * height > maxPixels) {
+                    logger.warn("图片尺寸{}x{}超过{}像素的上限，拒绝处理 ({} bytes)", width, height, maxPixels, data.length);
+                    return null;
+                }
+
+                // 尺寸合适的JPEG不再解码和重新压缩，避免画质二次损失
+                if (Math.max(width, height) <= edgeLimit && MIME_JPEG.equals(mimeType)) {
+                    return new NormalizedImage(data, mimeType);
+                }
+
+                // 大图解码时隔行隔列采样，解码结果仍不小于最长边限制的两倍，再由resize平滑缩小
+                ImageReadParam param = reader.getDefaultReadParam();
+                int subsampling = Math.max(width, height) / (edgeLimit * 2);
+                if (subsampling > 1) {
+                    param.setSourceSubsampling(subsampling, subsampling, 0, 0);
+                }
+                // GIF动图只读取第一帧
+                image = reader.read(0, param);
+            } finally {
+                reader.dispose();
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("图片解码失败，按原图发送: {}", e.getMessage());
+            return new NormalizedImage(data, mimeType);
+        }
+
+        boolean needResize = Math.max(image.getWidth(), image.getHeight()) > edgeLimit;
+
+        try {
+            BufferedImage target = needResize ? resize(image, edgeLimit) : flatten(image);
+            byte[] jpeg = encodeJpeg(target);
+
+            // 没有缩放且压缩后反而更大时保留原图
+            if (!needResize && jpeg.length >= data.length) {
+                return new NormalizedImage(data, mimeType);
+            }
+
+            logger.debug("图片规范化完成: {} {}x{} {} bytes -> image/jpeg {}x{} {} bytes",
+                       mimeType, width, height, data.length, target.getWidth(), target.getHeight(), jpeg.length);
+            return new NormalizedImage(jpeg, MIME_JPEG);
+        } catch (IOException e) {
+            logger.warn("图片重新压缩失败，按原图发送: {}", e.getMessage());
+            return new NormalizedImage(data, mimeType);
+        }
+    }
+
+    /**
+     * 等比缩小到最长边不超过限制，每次最多缩小一半以保证画质
+     */
+    private BufferedImage resize(BufferedImage source, int edgeLimit) {
+        int width = source.getWidth();
+        int height = source.getHeight();
+        double scale = (double) edgeLimit / Math.max(width, height);
+        int targetWidth = Math.max(1, (int) Math.round(width * scale));
+        int targetHeight = Math.max(1, (int) Math.round(height * scale));
+
+        BufferedImage current = flatten(source);
+        while (current.getWidth() > targetWidth || current.getHeight() > targetHeight) {
+            int nextWidth = Math.max(targetWidth, current.getWidth() / 2);
+            int nextHeight = Math.max(targetHeight, current.getHeight() / 2);
+
+            BufferedImage next = new BufferedImage(nextWidth, nextHeight, BufferedImage.TYPE_INT_RGB);
+            Graphics2D graphics = next.createGraphics();
+            try {
+                graphics.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                graphics.setRenderingHint(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
+                graphics.drawImage(current, 0, 0, nextWidth, nextHeight, null);
+            } finally {
+                graphics.dispose();
+            }
+            current = next;
+        }
+        return current;
+    }
+
+    /**
+     * 转换为不带透明通道的RGB图片，透明区域填充白色
+     */
+    private BufferedImage flatten(BufferedImage source) {
+        if (source.getType() == BufferedImage.TYPE_INT_RGB) {
+            return source;
+        }
+        BufferedImage rgb = new BufferedImage(source.getWidth(), source.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D graphics = rgb.createGraphics();
+        try {
+            graphics.setColor(Color.WHITE);
+            graphics.fillRect(0, 0, source.getWidth(), source.getHeight());
+            graphics.drawImage(source, 0, 0, null);
+        } finally {
+            graphics.dispose();
+        }
+        return rgb;
+    }
+
+    private byte[] encodeJpeg(BufferedImage image) throws IOException {
+        Iterator<ImageWriter> writers = ImageIO.getImageWritersByFormatName("jpeg");
+        if (!writers.hasNext()) {
+            throw new IOException("没有可用的JPEG编码器");
+        }
+        ImageWriter writer = writers.next();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        try (ImageOutputStream imageOutput = ImageIO.createImageOutputStream(output)) {
+            writer.setOutput(imageOutput);
+            ImageWriteParam param = writer.getDefaultWriteParam();
+            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+            param.setCompressionQuality(jpegQuality);
+            writer.write(null, new IIOImage(image, null, null), param);
+        } finally {
+            writer.dispose();
+        }
+        return output.toByteArray();
+    }
+
+    /**
+     * 规范化后的图片
+     */
+    public static class NormalizedImage {
+        private final byte[] data;
+        private final String mimeType;
+
+        public NormalizedImage(byte[] data, String mimeType) {
+            this.data = data;
+            this.mimeType = mimeType;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public String getMimeType() {
+            return mimeType;
+        }
+    }
+}
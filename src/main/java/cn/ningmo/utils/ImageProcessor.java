@@ -1,17 +1,38 @@
 package cn.ningmo.utils;
 
 import cn.ningmo.config.ConfigLoader;
+import cn.ningmo.metrics.Counter;
+import cn.ningmo.metrics.Histogram;
+import cn.ningmo.metrics.MetricsRegistry;
+import cn.ningmo.metrics.jfr.ImageFetchEvent;
+import cn.ningmo.metrics.trace.TraceContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.URL;
-import java.net.URLConnection;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 图片处理工具类
@@ -21,21 +42,91 @@ public class ImageProcessor {
     private static final Logger logger = LoggerFactory.getLogger(ImageProcessor.class);
     
     private final ConfigLoader configLoader;
-    private final boolean imageEnabled;
-    private final int maxSizeMB;
-    private final int timeoutSeconds;
-    private final List<String> supportedFormats;
+    // 以下设置在配置重载时刷新，缓存大小和目录需要重启才能生效
+    private volatile boolean imageEnabled;
+    private volatile int maxSizeMB;
+    private volatile int timeoutSeconds;
+    private volatile List<String> supportedFormats;
+    private volatile long maxSizeBytes;
+    
+    // 发送给模型前的缩放和重新压缩
+    private volatile boolean normalizeEnabled;
+    private volatile int defaultMaxEdge;
+    private volatile float jpegQuality;
+    private volatile long maxPixels;
+    // 第一次需要缩放图片时才创建，在此之前不会加载ImageIO和java.awt.image；设置变化后重新创建
+    private volatile ImageNormalizer normalizer;
+    
+    // 下载在虚拟线程上并行进行
+    private final ExecutorService fetchExecutor;
+    // 第一次下载图片时才创建，创建HttpClient需要初始化SSL，会拖慢启动
+    private volatile HttpClient httpClient;
+    
+    // 内存缓存：CQ码file标识（没有时用URL）+最长边 -> base64，避免表情包等重复图片反复下载
+    private final ImageMemoryCache memoryCache;
+    // 磁盘缓存：保存规范化后的图片，重启后重复图片也不必重新下载，未启用时为null
+    private final ImageDiskCache diskCache;
+    // 正在下载的图片，相同图片同时出现时只下载一次
+    private final Map<String, CompletableFuture<String>> inFlight = new ConcurrentHashMap<>();
+    // 一条消息中所有图片的获取耗时（含缓存命中）
+    private final Histogram fetchLatency;
+    // 缓存命中统计，命中率 = 命中数 / 总数
+    private final Counter memoryCacheHits;
+    private final Counter diskCacheHits;
+    private final Counter cacheMisses;
     
     public ImageProcessor(ConfigLoader configLoader) {
+        this(configLoader, new MetricsRegistry());
+    }
+    
+    public ImageProcessor(ConfigLoader configLoader, MetricsRegistry metrics) {
         this.configLoader = configLoader;
+        this.fetchLatency = metrics.histogram("ningmo_image_fetch_seconds");
+        this.memoryCacheHits = metrics.counter("ningmo_image_cache_lookups", "result", "memory_hit");
+        this.diskCacheHits = metrics.counter("ningmo_image_cache_lookups", "result", "disk_hit");
+        this.cacheMisses = metrics.counter("ningmo_image_cache_lookups", "result", "miss");
+        loadSettings();
+        configLoader.addReloadListener(snapshot -> {
+            loadSettings();
+            logger.info("图片处理设置已重新加载: enabled={}, maxSize={}MB, timeout={}s, 压缩={}, 最长边={}px",
+                       imageEnabled, maxSizeMB, timeoutSeconds, normalizeEnabled, defaultMaxEdge);
+        });
+        
+        int memoryCacheMB = configLoader.getConfigInt("ai.image.memory_cache_mb", 32);
+        this.memoryCache = new ImageMemoryCache((long) memoryCacheMB * 1024 * 1024);
+        
+        int diskCacheMB = configLoader.getConfigInt("ai.image.disk_cache_mb", 256);
+        if (normalizeEnabled && diskCacheMB > 0) {
+            String diskCacheDir = configLoader.getConfigString("ai.image.disk_cache_dir", "data/image_cache");
+            this.diskCache = new ImageDiskCache(Paths.get(diskCacheDir), (long) diskCacheMB * 1024 * 1024);
+        } else {
+            this.diskCache = null;
+        }
+        
+        this.fetchExecutor = Executors.newVirtualThreadPerTaskExecutor();
+        
+        logger.info("图片处理器初始化完成: enabled={}, maxSize={}MB, timeout={}s, 内存缓存={}MB, 压缩={}, 最长边={}px", 
+                   imageEnabled, maxSizeMB, timeoutSeconds, memoryCacheMB, normalizeEnabled, defaultMaxEdge);
+    }
+    
+    /**
+     * 读取可以热重载的设置，构造时和配置重载后调用
+     */
+    private void loadSettings() {
         this.imageEnabled = configLoader.getConfigBoolean("ai.image.enabled", true);
         this.maxSizeMB = configLoader.getConfigInt("ai.image.max_size_mb", 10);
         this.timeoutSeconds = configLoader.getConfigInt("ai.image.timeout_seconds", 30);
         this.supportedFormats = configLoader.getConfigList("ai.image.supported_formats", 
             List.of("image/jpeg", "image/png", "image/gif", "image/webp"));
+        this.maxSizeBytes = (long) maxSizeMB * 1024 * 1024;
         
-        logger.info("图片处理器初始化完成: enabled={}, maxSize={}MB, timeout={}s", 
-                   imageEnabled, maxSizeMB, timeoutSeconds);
+        this.normalizeEnabled = configLoader.getConfigBoolean("ai.image.normalize", true);
+        this.defaultMaxEdge = configLoader.getConfigInt("ai.image.max_edge", 1568);
+        Object quality = configLoader.getConfig("ai.image.jpeg_quality", null);
+        this.jpegQuality = quality instanceof Number ? ((Number) quality).floatValue() : 0.85f;
+        Object pixels = configLoader.getConfig("ai.image.max_pixels", null);
+        this.maxPixels = pixels instanceof Number ? ((Number) pixels).longValue() : ImageNormalizer.DEFAULT_MAX_PIXELS;
+        this.normalizer = null;
     }
     
     /**
@@ -44,6 +135,16 @@ public class ImageProcessor {
      * @return 处理结果
      */
     public ImageProcessResult processImages(String message) {
+        return processImages(message, null);
+    }
+    
+    /**
+     * 处理消息中的图片，按模型配置的最长边缩放
+     * @param message 原始消息
+     * @param modelName 将要使用的模型名称，可为null
+     * @return 处理结果
+     */
+    public ImageProcessResult processImages(String message, String modelName) {
         if (!imageEnabled) {
             logger.debug("图片处理功能已禁用");
             return new ImageProcessResult(new ArrayList<>(), 0, "图片处理功能已禁用");
@@ -63,9 +164,16 @@ public class ImageProcessor {
         }
         
         logger.info("提取到 {} 个图片CQ码", imageCQCodes.size());
+        int maxEdge = getMaxEdge(modelName);
         int successCount = 0;
         int invalidCQCount = 0;
+        long fetchStart = System.nanoTime();
+        ImageFetchEvent fetchEvent = new ImageFetchEvent();
+        fetchEvent.begin();
         
+        // 先为所有图片发起下载（命中缓存的直接完成），再统一等待
+        List<String> imageUrls = new ArrayList<>();
+        List<CompletableFuture<String>> downloads = new ArrayList<>();
         for (String imageCQCode : imageCQCodes) {
             String imageUrl = CommonUtils.extractImageUrlFromCQCode(imageCQCode);
             if (imageUrl == null) {
@@ -74,8 +182,20 @@ public class ImageProcessor {
                 continue;
             }
             
-            logger.debug("开始下载图片: {}", imageUrl);
-            String imageBase64 = downloadAndEncodeImage(imageUrl);
+            imageUrl = CommonUtils.unescapeCQParam(imageUrl);
+            String fileId = CommonUtils.extractImageFileIdFromCQCode(imageCQCode);
+            // 同一图片按不同最长边缩放的结果分开缓存
+            String cacheKey = (fileId != null ? fileId : imageUrl) + "@" + maxEdge;
+            
+            imageUrls.add(imageUrl);
+            downloads.add(fetchImage(cacheKey, imageUrl, maxEdge));
+        }
+        
+        // 所有图片共享同一个超时时间，而不是每张图片单独计时
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(timeoutSeconds);
+        for (int i = 0; i < downloads.size(); i++) {
+            String imageUrl = imageUrls.get(i);
+            String imageBase64 = awaitDownload(downloads.get(i), imageUrl, deadline);
             if (imageBase64 != null) {
                 imageBase64List.add(imageBase64);
                 successCount++;
@@ -85,6 +205,15 @@ public class ImageProcessor {
             }
         }
         
+        fetchLatency.recordNanos(System.nanoTime() - fetchStart);
+        TraceContext.record("image_fetch", fetchStart, successCount + "/" + imageCQCodes.size() + " 张");
+        if (fetchEvent.shouldCommit()) {
+            fetchEvent.model = modelName;
+            fetchEvent.imageCount = imageCQCodes.size();
+            fetchEvent.successCount = successCount;
+            fetchEvent.commit();
+        }
+        
         String errorMessage = null;
         if (invalidCQCount == imageCQCodes.size()) {
             // 所有CQ码都无法提取URL
@@ -99,52 +228,219 @@ public class ImageProcessor {
     }
     
     /**
-     * 下载并编码图片
+     * 获取图片，优先使用缓存，同一图片的并发请求共享一次下载
+     * @param cacheKey 缓存键
      * @param imageUrl 图片URL
-     * @return base64编码的图片数据，如果失败返回null
+     * @return 完成时为base64编码的图片数据，失败为null
      */
-    private String downloadAndEncodeImage(String imageUrl) {
+    private CompletableFuture<String> fetchImage(String cacheKey, String imageUrl, int maxEdge) {
+        String cached = memoryCache.get(cacheKey);
+        if (cached != null) {
+            memoryCacheHits.increment();
+            logger.debug("图片命中内存缓存: {}", cacheKey);
+            return CompletableFuture.completedFuture(cached);
+        }
+        
+        CompletableFuture<String> download = new CompletableFuture<>();
+        CompletableFuture<String> existing = inFlight.putIfAbsent(cacheKey, download);
+        if (existing != null) {
+            logger.debug("图片正在下载，复用已有请求: {}", cacheKey);
+            return existing;
+        }
+        
+        loadImage(cacheKey, imageUrl, maxEdge).whenComplete((imageBase64, error) -> {
+            String result = error == null ? imageBase64 : null;
+            if (error != null) {
+                logger.error("下载图片失败: {}", imageUrl, error);
+            }
+            if (result != null) {
+                memoryCache.put(cacheKey, result);
+            }
+            inFlight.remove(cacheKey, download);
+            download.complete(result);
+        });
+        return download;
+    }
+    
+    /**
+     * 先查磁盘缓存，未命中再下载
+     */
+    private CompletableFuture<String> loadImage(String cacheKey, String imageUrl, int maxEdge) {
+        if (diskCache == null) {
+            cacheMisses.increment();
+            return downloadAndEncodeImage(imageUrl, cacheKey, maxEdge);
+        }
+        return CompletableFuture.supplyAsync(() -> diskCache.getBase64(cacheKey), fetchExecutor)
+                .thenCompose(cached -> {
+                    if (cached != null) {
+                        diskCacheHits.increment();
+                        logger.debug("图片命中磁盘缓存: {}", cacheKey);
+                        return CompletableFuture.completedFuture(cached);
+                    }
+                    cacheMisses.increment();
+                    return downloadAndEncodeImage(imageUrl, cacheKey, maxEdge);
+                });
+    }
+    
+    /**
+     * 等待下载完成，超过截止时间视为失败
+     */
+    private String awaitDownload(CompletableFuture<String> download, String imageUrl, long deadline) {
+        try {
+            long remaining = Math.max(0, deadline - System.nanoTime());
+            return download.get(remaining, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            logger.warn("下载图片超时: {} (超时: {}s)", imageUrl, timeoutSeconds);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            logger.error("处理图片时发生未知错误: {}", imageUrl, e.getCause());
+            return null;
+        }
+    }
+    
+    /**
+     * 异步下载并编码图片
+     * @param imageUrl 图片URL
+     * @param cacheKey 缓存键，规范化后的图片以此写入磁盘缓存
+     * @param maxEdge 图片最长边像素
+     * @return 完成时为base64编码的图片数据，如果失败为null
+     */
+    private CompletableFuture<String> downloadAndEncodeImage(String imageUrl, String cacheKey, int maxEdge) {
+        HttpRequest request;
         try {
-            URL url = new URL(imageUrl);
-            URLConnection connection = url.openConnection();
-            connection.setConnectTimeout(timeoutSeconds * 1000);
-            connection.setReadTimeout(timeoutSeconds * 1000);
+            request = HttpRequest.newBuilder()
+                    .uri(URI.create(imageUrl))
+                    .timeout(Duration.ofSeconds(timeoutSeconds))
+                    .GET()
+                    .build();
+        } catch (IllegalArgumentException e) {
+            logger.warn("图片URL无效: {}", imageUrl);
+            return CompletableFuture.completedFuture(null);
+        }
+        
+        return httpClient().sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                .thenApplyAsync(response -> readAndEncode(imageUrl, cacheKey, response, maxEdge), fetchExecutor);
+    }
+    
+    /**
+     * 读取响应并编码，超过大小限制立即中止
+     * 开启压缩时先读出原始字节缩放后再编码，否则边读边进行base64编码
+     */
+    private String readAndEncode(String imageUrl, String cacheKey, HttpResponse<InputStream> response, int maxEdge) {
+        try (InputStream inputStream = response.body()) {
+            if (response.statusCode() != 200) {
+                logger.warn("下载图片失败: {} (状态码: {})", imageUrl, response.statusCode());
+                return null;
+            }
             
             // 检查内容类型
-            String contentType = connection.getContentType();
+            String contentType = response.headers().firstValue("Content-Type").orElse(null);
             if (contentType != null && !isSupportedFormat(contentType)) {
                 // 特殊处理QQ图片URL，它们可能返回JSON而不是直接的图片
                 if (imageUrl.contains("multimedia.nt.qq.com.cn") && contentType.contains("application/json")) {
-                    logger.info("检测到QQ图片URL，尝试从JSON响应中提取图片数据: {}", imageUrl);
-                    // 这里可以添加从JSON响应中提取图片URL的逻辑
-                    // 暂时跳过，因为需要解析JSON响应
-                    logger.warn("QQ图片URL需要特殊处理，暂时跳过: {}", imageUrl);
-                    return null;
+                    logger.warn("QQ图片URL返回JSON而不是图片数据，暂时跳过: {}", imageUrl);
                 } else {
                     logger.warn("不支持的图片格式: {} (Content-Type: {})", imageUrl, contentType);
-                    return null;
                 }
+                return null;
+            }
+            
+            // 根据Content-Length提前判断大小
+            long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1L);
+            if (contentLength > maxSizeBytes) {
+                logger.warn("图片过大，跳过处理: {} ({} bytes, 限制: {}MB)", 
+                          imageUrl, contentLength, maxSizeMB);
+                return null;
             }
             
-            try (InputStream inputStream = connection.getInputStream()) {
-                byte[] imageBytes = inputStream.readAllBytes();
-                
-                // 检查图片大小
-                if (imageBytes.length > maxSizeMB * 1024 * 1024) {
-                    logger.warn("图片过大，跳过处理: {} ({} bytes, 限制: {}MB)", 
-                              imageUrl, imageBytes.length, maxSizeMB);
+            if (normalizeEnabled) {
+                byte[] imageBytes = readCapped(imageUrl, inputStream, contentLength);
+                if (imageBytes == null) {
                     return null;
                 }
-                
-                return java.util.Base64.getEncoder().encodeToString(imageBytes);
+                ImageNormalizer.NormalizedImage normalized = normalizer().normalize(imageBytes, maxEdge);
+                if (normalized == null) {
+                    logger.warn("下载内容不是有效的图片或尺寸超出限制: {}", imageUrl);
+                    return null;
+                }
+                if (diskCache != null) {
+                    diskCache.put(cacheKey, normalized.getData());
+                }
+                return Base64.getEncoder().encodeToString(normalized.getData());
             }
+            
+            int estimatedSize = contentLength > 0 ? (int) ((contentLength + 2) / 3 * 4) : 64 * 1024;
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(estimatedSize);
+            long total = 0;
+            try (OutputStream base64Stream = Base64.getEncoder().wrap(encoded)) {
+                byte[] buffer = new byte[8192];
+                int read;
+                while ((read = inputStream.read(buffer)) > 0) {
+                    total += read;
+                    // 没有Content-Length或长度不准确时，按实际读取的字节数中止
+                    if (total > maxSizeBytes) {
+                        logger.warn("图片过大，跳过处理: {} (已超过 {}MB)", imageUrl, maxSizeMB);
+                        return null;
+                    }
+                    base64Stream.write(buffer, 0, read);
+                }
+            }
+            
+            if (total == 0) {
+                logger.warn("图片内容为空: {}", imageUrl);
+                return null;
+            }
+            
+            // base64只含ASCII字符
+            return encoded.toString(StandardCharsets.ISO_8859_1);
         } catch (IOException e) {
             logger.error("下载图片失败: {}", imageUrl, e);
             return null;
-        } catch (Exception e) {
-            logger.error("处理图片时发生未知错误: {}", imageUrl, e);
+        }
+    }
+    
+    /**
+     * 读取原始图片字节，超过大小限制立即中止
+     * @return 图片字节，超限或为空时返回null
+     */
+    private byte[] readCapped(String imageUrl, InputStream inputStream, long contentLength) throws IOException {
+        ByteArrayOutputStream output = new ByteArrayOutputStream(contentLength > 0 ? (int) contentLength : 64 * 1024);
+        byte[] buffer = new byte[8192];
+        long total = 0;
+        int read;
+        while ((read = inputStream.read(buffer)) > 0) {
+            total += read;
+            if (total > maxSizeBytes) {
+                logger.warn("图片过大，跳过处理: {} (已超过 {}MB)", imageUrl, maxSizeMB);
+                return null;
+            }
+            output.write(buffer, 0, read);
+        }
+        if (total == 0) {
+            logger.warn("图片内容为空: {}", imageUrl);
             return null;
         }
+        return output.toByteArray();
+    }
+    
+    /**
+     * 获取模型的图片最长边配置，模型未单独配置时使用全局配置
+     */
+    private int getMaxEdge(String modelName) {
+        if (modelName != null && !modelName.isEmpty()) {
+            // 模型名可能包含"."（如gpt-3.5-turbo），不能直接拼接配置路径
+            Object modelConfig = configLoader.getConfigMap("ai.models").get(modelName);
+            if (modelConfig instanceof Map) {
+                Object value = ((Map<?, ?>) modelConfig).get("image_max_edge");
+                if (value instanceof Number) {
+                    return ((Number) value).intValue();
+                }
+            }
+        }
+        return defaultMaxEdge;
     }
     
     /**
@@ -166,6 +462,87 @@ public class ImageProcessor {
         return false;
     }
     
+    private HttpClient httpClient() {
+        HttpClient result = httpClient;
+        if (result == null) {
+            synchronized (this) {
+                result = httpClient;
+                if (result == null) {
+                    result = HttpClient.newBuilder()
+                            .connectTimeout(Duration.ofSeconds(timeoutSeconds))
+                            .followRedirects(HttpClient.Redirect.NORMAL)
+                            .executor(fetchExecutor)
+                            .build();
+                    httpClient = result;
+                }
+            }
+        }
+        return result;
+    }
+    
+    private ImageNormalizer normalizer() {
+        ImageNormalizer result = normalizer;
+        if (result == null) {
+            synchronized (this) {
+                result = normalizer;
+                if (result == null) {
+                    result = new ImageNormalizer(defaultMaxEdge, jpegQuality, maxPixels);
+                    normalizer = result;
+                }
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * 关闭下载线程池
+     */
+    public void shutdown() {
+        fetchExecutor.shutdownNow();
+        memoryCache.clear();
+    }
+    
+    /**
+     * 按字节预算淘汰的LRU内存缓存
+     */
+    private static class ImageMemoryCache {
+        private final long maxBytes;
+        private final LinkedHashMap<String, String> entries = new LinkedHashMap<>(64, 0.75f, true);
+        private long currentBytes;
+        
+        ImageMemoryCache(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+        
+        synchronized String get(String key) {
+            return entries.get(key);
+        }
+        
+        synchronized void put(String key, String value) {
+            if (value.length() > maxBytes) {
+                return;
+            }
+            String previous = entries.put(key, value);
+            if (previous != null) {
+                currentBytes -= previous.length();
+            }
+            currentBytes += value.length();
+            
+            // 淘汰最久未使用的图片
+            Iterator<Map.Entry<String, String>> iterator = entries.entrySet().iterator();
+            while (currentBytes > maxBytes && iterator.hasNext()) {
+                Map.Entry<String, String> eldest = iterator.next();
+                currentBytes -= eldest.getValue().length();
+                iterator.remove();
+            }
+        }
+        
+        synchronized void clear() {
+            entries.clear();
+            currentBytes = 0;
+        }
+    }
+    
     /**
      * 图片处理结果
      */
@@ -0,0 +1,185 @@
+package cn.ningmo.utils;
+
+import java.util.Arrays;
+
+/**
+ * long类型的开放寻址哈希集合
+ * 键直接存放在long数组中（线性探测），没有装箱和额外的节点对象，每个元素只占十几个字节。
+ * 本身不是线程安全的，多线程读取时应在修改完成后整体发布（写时复制）
+ */
+public final class LongHashSet {
+    private static final long EMPTY = 0L;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private long[] table;
+    private int size;
+    // 0作为空槽标记，集合中是否包含0单独记录
+    private boolean containsZero;
+
+    public LongHashSet() {
+        this(16);
+    }
+
+    public LongHashSet(int expectedSize) {
+        table = new long[capacityFor(expectedSize)];
+    }
+
+    private LongHashSet(long[] table, int size, boolean containsZero) {
+        this.table = table;
+        this.size = size;
+        this.containsZero = containsZero;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        long needed = (long) Math.ceil(Math.max(expectedSize, 4) / (double) LOAD_FACTOR);
+        int capacity = Integer.highestOneBit((int) Math.min(needed, 1 << 30));
+        return capacity < needed ? capacity << 1 : capacity;
+    }
+
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    public boolean contains(long key) {
+        if (key == EMPTY) {
+            return containsZero;
+        }
+        long[] t = table;
+        int mask = t.length - 1;
+        int i = mix(key) & mask;
+        long current;
+        while ((current = t[i]) != EMPTY) {
+            if (current == key) {
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * @return 是否新加入
+     */
+    public boolean add(long key) {
+        if (key == EMPTY) {
+            if (containsZero) {
+                return false;
+            }
+            containsZero = true;
+            size++;
+            return true;
+        }
+        int mask = table.length - 1;
+        int i = mix(key) & mask;
+        long current;
+        while ((current = table[i]) != EMPTY) {
+            if (current == key) {
+                return false;
+            }
+            i = (i + 1) & mask;
+        }
+        table[i] = key;
+        size++;
+        if (size > table.length * LOAD_FACTOR) {
+            rehash(table.length << 1);
+        }
+        return true;
+    }
+
+    /**
+     * @return 是否移除成功
+     */
+    public boolean remove(long key) {
+        if (key == EMPTY) {
+            if (!containsZero) {
+                return false;
+            }
+            containsZero = false;
+            size--;
+            return true;
+        }
+        int mask = table.length - 1;
+        int i = mix(key) & mask;
+        long current;
+        while ((current = table[i]) != EMPTY) {
+            if (current == key) {
+                shiftBack(i, mask);
+                size--;
+                return true;
+            }
+            i = (i + 1) & mask;
+        }
+        return false;
+    }
+
+    /**
+     * 删除后把同一探测链上的后续元素前移，避免使用墓碑标记
+     */
+    private void shiftBack(int gap, int mask) {
+        int i = gap;
+        while (true) {
+            i = (i + 1) & mask;
+            long current = table[i];
+            if (current == EMPTY) {
+                break;
+            }
+            int home = mix(current) & mask;
+            // 元素的理想位置不在(gap, i]之间时，可以移到空出的位置
+            boolean movable = gap <= i ? (home <= gap || home > i) : (home <= gap && home > i);
+            if (movable) {
+                table[gap] = current;
+                gap = i;
+            }
+        }
+        table[gap] = EMPTY;
+    }
+
+    private void rehash(int newCapacity) {
+        long[] old = table;
+        table = new long[newCapacity];
+        int mask = newCapacity - 1;
+        for (long key : old) {
+            if (key != EMPTY) {
+                int i = mix(key) & mask;
+                while (table[i] != EMPTY) {
+                    i = (i + 1) & mask;
+                }
+                table[i] = key;
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 复制一份独立的集合，用于写时复制
+     */
+    public LongHashSet copy() {
+        return new LongHashSet(table.clone(), size, containsZero);
+    }
+
+    /**
+     * @return 按升序排列的全部元素
+     */
+    public long[] toSortedArray() {
+        long[] result = new long[size];
+        int n = 0;
+        if (containsZero) {
+            result[n++] = EMPTY;
+        }
+        for (long key : table) {
+            if (key != EMPTY) {
+                result[n++] = key;
+            }
+        }
+        Arrays.sort(result);
+        return result;
+    }
+}
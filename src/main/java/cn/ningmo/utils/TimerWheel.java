@@ -0,0 +1,150 @@
+package cn.ningmo.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 时间轮定时器
+ * 一个线程按固定刻度转动，到期的任务在该线程中执行。
+ * 提交任务只是入队，不加锁；大量短期定时任务不需要各占一个睡眠线程或堆节点。
+ * 精度为一个刻度，任务应当很快返回，耗时的工作请转交给其他线程池
+ */
+public class TimerWheel {
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+
+    private final long tickNanos;
+    private final List<Timeout>[] buckets;
+    private final int mask;
+    private final Queue<Timeout> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final long startTime;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    /**
+     * 已提交的定时任务
+     */
+    public static final class Timeout {
+        private final Runnable task;
+        // 相对于时间轮启动的到期时间（纳秒）
+        private final long deadline;
+        private long remainingRounds;
+        private volatile boolean cancelled;
+
+        private Timeout(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 取消任务，已经执行的任务取消无效
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * @param tickMs 刻度（毫秒）
+     * @param wheelSize 槽数，会向上取整为2的幂
+     * @param threadName 时间轮线程名称
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public TimerWheel(long tickMs, int wheelSize, String threadName) {
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMs));
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        this.buckets = new List[size];
+        for (int i = 0; i < size; i++) {
+            buckets[i] = new ArrayList<>();
+        }
+        this.mask = size - 1;
+        this.startTime = System.nanoTime();
+
+        this.worker = new Thread(this::run, threadName);
+        worker.setDaemon(true);
+        worker.start();
+    }
+
+    /**
+     * 提交定时任务
+     * @param task 到期后执行的任务
+     * @param delayMs 延迟（毫秒）
+     */
+    public Timeout schedule(Runnable task, long delayMs) {
+        long deadline = System.nanoTime() - startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMs));
+        Timeout timeout = new Timeout(task, deadline);
+        newTimeouts.add(timeout);
+        return timeout;
+    }
+
+    private void run() {
+        long tick = 0;
+        while (running) {
+            long nextTick = tickNanos * (tick + 1);
+            long sleepNanos = nextTick - (System.nanoTime() - startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    break;
+                }
+            }
+            transferNewTimeouts(tick);
+            expire(buckets[(int) (tick & mask)], System.nanoTime() - startTime);
+            tick++;
+        }
+        logger.debug("时间轮已停止: {}", worker.getName());
+    }
+
+    /**
+     * 把新提交的任务放入对应的槽，已经过期的任务放到当前槽
+     */
+    private void transferNewTimeouts(long currentTick) {
+        Timeout timeout;
+        while ((timeout = newTimeouts.poll()) != null) {
+            if (timeout.cancelled) {
+                continue;
+            }
+            long ticks = Math.max(timeout.deadline / tickNanos, currentTick);
+            timeout.remainingRounds = (ticks - currentTick) / buckets.length;
+            buckets[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(List<Timeout> bucket, long now) {
+        Iterator<Timeout> it = bucket.iterator();
+        while (it.hasNext()) {
+            Timeout timeout = it.next();
+            if (timeout.cancelled) {
+                it.remove();
+            } else if (timeout.remainingRounds <= 0 && timeout.deadline <= now) {
+                it.remove();
+                try {
+                    timeout.task.run();
+                } catch (Exception e) {
+                    logger.error("执行定时任务时出错", e);
+                }
+            } else if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+            }
+        }
+    }
+
+    /**
+     * 停止时间轮，未到期的任务不再执行
+     */
+    public void stop() {
+        running = false;
+        worker.interrupt();
+    }
+}
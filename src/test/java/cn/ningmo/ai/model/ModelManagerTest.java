@@ -0,0 +1,98 @@
+package cn.ningmo.ai.model;
+
+import cn.ningmo.config.ConfigLoader;
+import cn.ningmo.sim.MockModelServer;
+import cn.ningmo.sim.MockModelServer.Scenario;
+import cn.ningmo.sim.MockModelServer.Step;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.Yaml;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模型管理器测试类，模型接口由模拟模型服务提供
+ */
+public class ModelManagerTest {
+
+    private MockModelServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockModelServer(0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private ModelManager createManager(String fallbackModel) {
+        String yaml = "ai:\n"
+            + "  default_model: primary\n"
+            + "  fallback_model: " + fallbackModel + "\n"
+            + "  models:\n"
+            + "    primary:\n"
+            + "      type: openai\n"
+            + "      api_base_url: " + server.getBaseUrl() + "\n"
+            + "      api_key: mock\n"
+            + "      model_name: primary\n"
+            + "    backup:\n"
+            + "      type: anthropic\n"
+            + "      api_base_url: " + server.getBaseUrl() + "\n"
+            + "      api_key: mock\n"
+            + "      model_name: backup\n";
+        Map<String, Object> raw = new Yaml().load(yaml);
+        return new ModelManager(new ConfigLoader(raw));
+    }
+
+    private static List<Map<String, String>> conversation(String text) {
+        return List.of(Map.of("role", "user", "content", text));
+    }
+
+    @Test
+    void testRetryRecoversAfterServerError() {
+        server.setScenario("primary", Scenario.of(Step.status(503, 1), Step.ok()));
+        ModelManager manager = createManager("backup");
+
+        String reply = manager.generateReply("primary", "人设", conversation("你好"), true);
+
+        assertEquals("收到：你好", reply);
+        // 第一次503，重试一次成功，没有切换到备用模型
+        assertEquals(Map.of("/v1/chat/completions", 2L), server.getRequestsByPath());
+        assertFalse(manager.isCircuitOpen("primary"));
+    }
+
+    @Test
+    void testFallbackAfterRetriesExhausted() {
+        server.setScenario("primary", Scenario.of(Step.rateLimited(1, 0)));
+        ModelManager manager = createManager("backup");
+
+        String reply = manager.generateReply("primary", "人设", conversation("在吗"), true);
+
+        // 首次请求加两次重试都返回429后，改用Anthropic格式的备用模型
+        assertEquals("收到：在吗", reply);
+        assertEquals(Map.of("/v1/chat/completions", 3L, "/v1/messages", 1L), server.getRequestsByPath());
+    }
+
+    @Test
+    void testModelDetailsDoNotCreateInstances() {
+        ModelManager manager = createManager("backup");
+
+        Map<String, String> primary = manager.getModelDetails("primary");
+        Map<String, String> backup = manager.getModelDetails("backup");
+
+        // 详情只来自配置，列出模型不会创建适配器
+        assertEquals("openai", primary.get("type"));
+        assertEquals("OpenAI模型", primary.get("description"));
+        assertEquals("anthropic", backup.get("type"));
+        assertEquals("backup", backup.get("name"));
+        assertFalse(manager.isInstantiated("primary"));
+        assertFalse(manager.isInstantiated("backup"));
+        assertTrue(manager.getModelDetails("missing").isEmpty());
+    }
+}
@@ -0,0 +1,75 @@
+package cn.ningmo.ai.response;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 流式响应提取器测试类
+ */
+public class ResponseExtractorTest {
+
+    private static InputStream stream(String body) {
+        return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testExtractOpenAIContent() {
+        ResponseExtractor extractor = ResponseExtractor.forPath("OpenAI", ResponseExtractor.OPENAI_CONTENT_PATH);
+        String body = "{\"id\":\"x\",\"choices\":[{\"index\":0,\"message\":{\"role\":\"assistant\","
+                + "\"reasoning_content\":\"想一想\",\"content\":\" 你好 \"}}],\"usage\":{\"total_tokens\":3}}";
+        assertEquals("你好", extractor.extract(stream(body)));
+    }
+
+    @Test
+    void testExtractAnthropicContent() {
+        ResponseExtractor extractor = ResponseExtractor.forPath("Anthropic", ResponseExtractor.ANTHROPIC_CONTENT_PATH);
+        String body = "{\"content\":[{\"type\":\"text\",\"text\":\"hello\"}],\"stop_reason\":\"end_turn\"}";
+        assertEquals("hello", extractor.extract(stream(body)));
+    }
+
+    @Test
+    void testExtractCustomBracketPath() {
+        ResponseExtractor extractor = ResponseExtractor.forCustomPath("GenericAPI", "data.items[1].text");
+        String body = "{\"data\":{\"items\":[{\"text\":\"a\"},{\"text\":\"b\"}]}}";
+        assertEquals("b", extractor.extract(stream(body)));
+    }
+
+    @Test
+    void testEmptyContentMeansNoResponse() {
+        ResponseExtractor extractor = ResponseExtractor.forPath("OpenAI", ResponseExtractor.OPENAI_CONTENT_PATH);
+        String body = "{\"choices\":[{\"message\":{\"content\":\"\"}}]}";
+        assertEquals("[NO_RESPONSE]", extractor.extract(stream(body)));
+    }
+
+    @Test
+    void testMissFallsBackToStandardFormats() {
+        ResponseExtractor extractor = ResponseExtractor.forPath("OpenAI", ResponseExtractor.OPENAI_CONTENT_PATH);
+        // Ollama格式
+        assertEquals("ollama", extractor.extract(stream("{\"model\":\"m\",\"response\":\"ollama\"}")));
+        // 非JSON纯文本
+        assertEquals("plain text", extractor.extract(stream("plain text")));
+        assertEquals("你好", extractor.extract(stream("\n 你好")));
+    }
+
+    @Test
+    void testErrorResponseFallsBackToErrorMessage() {
+        ResponseExtractor extractor = ResponseExtractor.forPath("OpenAI", ResponseExtractor.OPENAI_CONTENT_PATH);
+        String body = "{\"error\":{\"message\":\"bad\",\"type\":\"invalid\"},\"choices\":[]}";
+        assertEquals("API返回错误: bad (类型: invalid)", extractor.extract(stream(body)));
+    }
+
+    @Test
+    void testOversizedMissDoesNotBufferWholeBody() {
+        ResponseExtractor extractor = ResponseExtractor.forPath("OpenAI", ResponseExtractor.OPENAI_CONTENT_PATH);
+        String body = "{\"padding\":\"" + "x".repeat(200_000) + "\",\"response\":\"late\"}";
+        assertEquals("解析OpenAI模型响应时出错: 响应过大且不符合预期格式", extractor.extract(stream(body)));
+
+        // 命中路径时响应大小不受限制
+        String large = "{\"choices\":[{\"message\":{\"content\":\"ok\"}}],\"padding\":\"" + "x".repeat(200_000) + "\"}";
+        assertEquals("ok", extractor.extract(stream(large)));
+    }
+}
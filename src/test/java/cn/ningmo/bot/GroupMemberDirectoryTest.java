@@ -0,0 +1,142 @@
+package cn.ningmo.bot;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 群成员目录测试类
+ */
+public class GroupMemberDirectoryTest {
+
+    private static JSONObject memberListResponse() {
+        JSONArray data = new JSONArray()
+            .put(new JSONObject().put("user_id", 10001).put("nickname", "张三").put("card", "").put("role", "owner"))
+            .put(new JSONObject().put("user_id", 10002).put("nickname", "李四").put("card", "小李").put("role", "member"));
+        return new JSONObject().put("status", "ok").put("retcode", 0).put("data", data);
+    }
+
+    @Test
+    void testConcurrentFirstUseSharesOneRequest() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<JSONObject> response = new CompletableFuture<>();
+        GroupMemberDirectory directory = new GroupMemberDirectory((action, params) -> {
+            calls.incrementAndGet();
+            return response;
+        }, 60000, 3000);
+
+        CompletableFuture<List<Map<String, String>>> first = CompletableFuture.supplyAsync(() -> directory.getMembers("123"));
+        CompletableFuture<List<Map<String, String>>> second = CompletableFuture.supplyAsync(() -> directory.getMembers("123"));
+        Thread.sleep(100);
+        response.complete(memberListResponse());
+
+        assertEquals(2, first.get().size());
+        assertEquals(2, second.get().size());
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void testNoticesUpdateLoadedRoster() {
+        GroupMemberDirectory directory = new GroupMemberDirectory(
+            (action, params) -> "get_group_member_list".equals(action)
+                ? CompletableFuture.completedFuture(memberListResponse())
+                : new CompletableFuture<>(), 60000, 3000);
+
+        long initialVersion = directory.getRoster("123").getVersion();
+
+        directory.onCardChange("123", 10001, "群主");
+        directory.onMemberDecrease("123", 10002, false);
+        directory.onMemberIncrease("123", 10003);
+
+        GroupMemberDirectory.Roster roster = directory.getRoster("123");
+        assertEquals("群主", roster.get(10001).displayName());
+        assertNull(roster.get(10002));
+        assertNotNull(roster.get(10003));
+        assertTrue(roster.getVersion() > initialVersion);
+
+        directory.onMemberDecrease("123", 99999, true);
+        assertNull(directory.peekMember("123", 10001));
+    }
+
+    @Test
+    void testFailedLoadReturnsEmptyList() {
+        GroupMemberDirectory directory = new GroupMemberDirectory(
+            (action, params) -> CompletableFuture.completedFuture(new JSONObject().put("status", "failed").put("retcode", 100)),
+            60000, 3000);
+
+        assertTrue(directory.getMembers("123").isEmpty());
+    }
+
+    @Test
+    void testUnchangedNoticeKeepsVersion() {
+        GroupMemberDirectory directory = new GroupMemberDirectory(
+            (action, params) -> CompletableFuture.completedFuture(memberListResponse()), 60000, 3000);
+        GroupMemberDirectory.Roster roster = directory.getRoster("123");
+
+        // 未缓存成员的名片变更、不存在成员的退群、相同的发送者信息都不生成新版本
+        directory.onCardChange("123", 99999, "路人");
+        directory.onMemberDecrease("123", 99999, false);
+        directory.onSenderInfo("123", new JSONObject().put("user_id", 10002).put("nickname", "李四").put("card", "小李").put("role", "member"));
+        assertSame(roster, directory.getRoster("123"));
+
+        // 发送者信息补上遗漏入群通知的成员
+        directory.onSenderInfo("123", new JSONObject().put("user_id", 10003).put("nickname", "王五").put("card", ""));
+        assertEquals("王五", directory.getRoster("123").get(10003).displayName());
+    }
+
+    @Test
+    void testNoticeDuringRefreshIsAppliedToNewRoster() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<JSONObject> refresh = new CompletableFuture<>();
+        GroupMemberDirectory directory = new GroupMemberDirectory((action, params) -> {
+            if (!"get_group_member_list".equals(action)) {
+                return new CompletableFuture<>();
+            }
+            return calls.incrementAndGet() == 1 ? CompletableFuture.completedFuture(memberListResponse()) : refresh;
+        }, 0, 3000);
+
+        // 第一次加载的列表立即过期，之后的列表有效期改为1分钟
+        directory.getRoster("123");
+        directory.setTimeouts(60000, 3000);
+        // 过期后在后台刷新
+        directory.getRoster("123");
+        assertEquals(2, calls.get());
+
+        directory.onCardChange("123", 10002, "新名片");
+        directory.onMemberDecrease("123", 10001, false);
+        long versionBeforeRefresh = directory.getRoster("123").getVersion();
+        // 刷新结果是收到通知之前的数据
+        refresh.complete(memberListResponse());
+
+        GroupMemberDirectory.Roster roster = directory.getRoster("123");
+        for (int i = 0; i < 100 && roster.getVersion() == versionBeforeRefresh; i++) {
+            Thread.sleep(20);
+            roster = directory.getRoster("123");
+        }
+        assertNotEquals(versionBeforeRefresh, roster.getVersion());
+        assertEquals(2, calls.get());
+        assertNull(roster.get(10001));
+        assertEquals("新名片", roster.get(10002).displayName());
+    }
+
+    @Test
+    void testLoadCompletingAfterSelfLeaveIsNotPublished() throws Exception {
+        CompletableFuture<JSONObject> response = new CompletableFuture<>();
+        GroupMemberDirectory directory = new GroupMemberDirectory((action, params) -> response, 60000, 50);
+
+        // 首次加载等待超时，请求仍在进行中
+        assertNull(directory.getRoster("123"));
+        directory.onMemberDecrease("123", 3436464181L, true);
+        response.complete(memberListResponse());
+
+        Thread.sleep(200);
+        assertEquals(0, directory.getLoadedGroupCount());
+        assertNull(directory.peekMember("123", 10001));
+    }
+}
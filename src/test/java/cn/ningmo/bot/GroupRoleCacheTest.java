@@ -0,0 +1,48 @@
+package cn.ningmo.bot;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 群成员角色缓存测试类
+ */
+public class GroupRoleCacheTest {
+
+    @Test
+    void testEventsAndMemberListAvoidApiCalls() {
+        JSONArray data = new JSONArray()
+            .put(new JSONObject().put("user_id", 10001).put("nickname", "张三").put("card", "").put("role", "owner"));
+        JSONObject response = new JSONObject().put("retcode", 0).put("data", data);
+        GroupMemberDirectory directory = new GroupMemberDirectory(
+            (action, params) -> CompletableFuture.completedFuture(response), 60000, 3000);
+        directory.getRoster("123");
+
+        AtomicInteger fetches = new AtomicInteger();
+        GroupRoleCache cache = new GroupRoleCache(directory, (groupId, userId) -> {
+            fetches.incrementAndGet();
+            return "member";
+        }, 60000);
+
+        // 来自成员列表
+        assertTrue(cache.isAdmin("123", 10001));
+        // 来自消息事件的sender.role
+        cache.recordRole("123", 10002, "admin");
+        assertTrue(cache.isAdmin("123", 10002));
+        assertEquals(0, fetches.get());
+
+        // 管理员变动通知同时更新成员列表
+        cache.onAdminChange("123", 10001, false);
+        assertFalse(cache.isAdmin("123", 10001));
+        assertEquals("member", directory.peekMember("123", 10001).role());
+
+        // 未命中时才调用接口，结果会被缓存
+        assertFalse(cache.isAdmin("123", 10003));
+        assertFalse(cache.isAdmin("123", 10003));
+        assertEquals(1, fetches.get());
+    }
+}
@@ -0,0 +1,100 @@
+package cn.ningmo.bot;
+
+import cn.ningmo.utils.CommonUtils;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 群成员提示词片段测试类
+ */
+public class GroupRosterPromptTest {
+
+    private static GroupMemberDirectory.Roster roster(int size) {
+        JSONArray data = new JSONArray();
+        for (int i = 1; i <= size; i++) {
+            data.put(new JSONObject().put("user_id", 10000 + i).put("nickname", "成员" + i).put("card", ""));
+        }
+        JSONObject response = new JSONObject().put("retcode", 0).put("data", data);
+        return new GroupMemberDirectory((action, params) -> CompletableFuture.completedFuture(response), 60000, 3000)
+            .getRoster("123");
+    }
+
+    @Test
+    void testLargeGroupListsOnlyRecentSpeakers() {
+        GroupRosterPrompt prompt = new GroupRosterPrompt(3, 1500);
+        GroupMemberDirectory.Roster roster = roster(100);
+        for (long userId = 10001; userId <= 10005; userId++) {
+            prompt.recordSpeaker("123", userId);
+        }
+
+        String fragment = prompt.getFragment("123", roster, 0);
+        assertFalse(fragment.contains("QQ: 10002)"));
+        assertTrue(fragment.contains("QQ: 10003)"));
+        assertTrue(fragment.contains("QQ: 10005)"));
+        assertTrue(fragment.contains("未列出"));
+    }
+
+    @Test
+    void testFragmentIsReusedUntilSpeakerSetChanges() {
+        GroupRosterPrompt prompt = new GroupRosterPrompt(3, 1500);
+        GroupMemberDirectory.Roster roster = roster(100);
+        prompt.recordSpeaker("123", 10001);
+        prompt.recordSpeaker("123", 10002);
+
+        String first = prompt.getFragment("123", roster, 0);
+        // 已在集合中的成员再次发言不改变片段
+        prompt.recordSpeaker("123", 10001);
+        assertSame(first, prompt.getFragment("123", roster, 0));
+
+        prompt.recordSpeaker("123", 10003);
+        assertNotSame(first, prompt.getFragment("123", roster, 0));
+    }
+
+    @Test
+    void testTokenCapTruncatesList() {
+        GroupRosterPrompt prompt = new GroupRosterPrompt(100, 300);
+        String fragment = prompt.getFragment("123", roster(100), 10001);
+
+        assertFalse(fragment.contains("QQ: 10001)"));
+        assertTrue(CommonUtils.estimateTokens(fragment) <= 320);
+        assertTrue(fragment.contains("未列出"));
+    }
+
+    @Test
+    void testTokenCapKeepsMostRecentSpeakers() {
+        GroupRosterPrompt prompt = new GroupRosterPrompt(100, 300);
+        GroupMemberDirectory.Roster roster = roster(100);
+        // 名称靠后的成员最近发言过，截断时应保留他们而不是名称靠前的成员
+        prompt.recordSpeaker("123", 10099);
+        prompt.recordSpeaker("123", 10098);
+
+        String fragment = prompt.getFragment("123", roster, 0);
+        assertTrue(fragment.contains("QQ: 10099)"));
+        assertTrue(fragment.contains("QQ: 10098)"));
+        assertTrue(fragment.indexOf("QQ: 10098)") < fragment.indexOf("QQ: 10099)"));
+
+        // 截断时发言顺序变化也要重新生成
+        prompt.recordSpeaker("123", 10050);
+        assertTrue(prompt.getFragment("123", roster, 0).contains("QQ: 10050)"));
+    }
+
+    @Test
+    void testSetLimitsRebuildsFragment() {
+        GroupRosterPrompt prompt = new GroupRosterPrompt(3, 1500);
+        GroupMemberDirectory.Roster roster = roster(100);
+        for (long userId = 10001; userId <= 10003; userId++) {
+            prompt.recordSpeaker("123", userId);
+        }
+        assertTrue(prompt.getFragment("123", roster, 0).contains("QQ: 10001)"));
+
+        // 调小成员上限后最早发言的成员被移出
+        prompt.setLimits(2, 1500);
+        String fragment = prompt.getFragment("123", roster, 0);
+        assertFalse(fragment.contains("QQ: 10001)"));
+        assertTrue(fragment.contains("QQ: 10003)"));
+    }
+}
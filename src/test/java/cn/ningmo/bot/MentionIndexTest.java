@@ -0,0 +1,65 @@
+package cn.ningmo.bot;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 群成员@解析索引测试类
+ */
+public class MentionIndexTest {
+
+    private MentionIndex index;
+
+    @BeforeEach
+    void setUp() {
+        JSONArray data = new JSONArray()
+            .put(member(10001, "Alice", ""))
+            .put(member(10002, "李四", "小李"))
+            .put(member(10003, "梦泽星河", ""))
+            .put(member(10004, "ＢＯＢ", ""));
+        JSONObject response = new JSONObject().put("retcode", 0).put("data", data);
+        GroupMemberDirectory directory = new GroupMemberDirectory(
+            (action, params) -> CompletableFuture.completedFuture(response), 60000, 3000);
+        index = directory.getRoster("123").getMentionIndex();
+    }
+
+    private static JSONObject member(long userId, String nickname, String card) {
+        return new JSONObject().put("user_id", userId).put("nickname", nickname).put("card", card).put("role", "member");
+    }
+
+    @Test
+    void testExactMatchUsesCardAndNickname() {
+        assertEquals(10001, index.findExact("alice"));
+        assertEquals(10002, index.findExact("小李"));
+        assertEquals(10002, index.findExact("李四"));
+        assertEquals(0, index.findExact("王五"));
+    }
+
+    @Test
+    void testNameFollowedByTextMatchesLongestName() {
+        // 中文回复里@后面常常紧跟正文
+        assertEquals(10002, index.findBest("小李你好"));
+        assertEquals(10004, index.findBest("bob，早上好"));
+    }
+
+    @Test
+    void testPartialNameMatchesViaBigrams() {
+        assertEquals(10003, index.findBest("星河"));
+        assertEquals(10003, index.findContaining("梦泽"));
+        assertEquals(0, index.findBest("完全无关"));
+    }
+
+    @Test
+    void testRandomMemberExcludesSelf() {
+        for (int i = 0; i < 20; i++) {
+            long id = index.randomMember(10001);
+            assertNotEquals(10001, id);
+            assertTrue(index.isMember(id));
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package cn.ningmo.bot;
+
+import cn.ningmo.utils.TimerWheel;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 连续消息合并测试类
+ */
+public class MessageAggregatorTest {
+
+    private final TimerWheel timerWheel = new TimerWheel(10, 64, "Test-Wheel");
+    private final BlockingQueue<MessageAggregator.Batch> batches = new LinkedBlockingQueue<>();
+
+    @AfterEach
+    void tearDown() {
+        timerWheel.stop();
+    }
+
+    @Test
+    void testBurstIsMergedIntoOneBatch() throws Exception {
+        MessageAggregator aggregator = new MessageAggregator(timerWheel, 200, 2000);
+        aggregator.submit("group:1:100", "我想问", false, batches::add);
+        Thread.sleep(50);
+        aggregator.submit("group:1:100", "明天天气", true, batches::add);
+        aggregator.submit("group:1:200", "另一个人", false, batches::add);
+        Thread.sleep(50);
+        aggregator.submit("group:1:100", "怎么样", false, batches::add);
+
+        MessageAggregator.Batch first = batches.poll(2, TimeUnit.SECONDS);
+        MessageAggregator.Batch second = batches.poll(2, TimeUnit.SECONDS);
+        assertNotNull(first);
+        assertNotNull(second);
+        MessageAggregator.Batch merged = first.key().equals("group:1:100") ? first : second;
+        assertEquals("我想问\n明天天气\n怎么样", merged.content());
+        assertEquals(3, merged.messageCount());
+        assertTrue(merged.atSender());
+        assertNull(batches.poll(300, TimeUnit.MILLISECONDS));
+        assertEquals(0, aggregator.getPendingCount());
+    }
+
+    @Test
+    void testMaxWaitLimitsContinuousBurst() throws Exception {
+        MessageAggregator aggregator = new MessageAggregator(timerWheel, 150, 400);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 10; i++) {
+            aggregator.submit("private:100", "消息" + i, false, batches::add);
+            Thread.sleep(100);
+        }
+        MessageAggregator.Batch batch = batches.poll(2, TimeUnit.SECONDS);
+        assertNotNull(batch);
+        assertTrue(batch.messageCount() < 10);
+        assertTrue(System.currentTimeMillis() - start < 1500);
+    }
+}
@@ -0,0 +1,60 @@
+package cn.ningmo.bot;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 消息去重过滤器测试类
+ */
+public class MessageDeduplicatorTest {
+
+    @Test
+    void testDuplicateWithinWindowAndExpiry() {
+        AtomicLong now = new AtomicLong(1_000_000);
+        MessageDeduplicator dedup = new MessageDeduplicator(5000, 6, 64, now::get);
+
+        assertTrue(dedup.tryMark("12345"));
+        assertFalse(dedup.tryMark("12345"));
+        assertTrue(dedup.tryMark("-12345"));
+        assertTrue(dedup.tryMark("abc-def"));
+        assertFalse(dedup.tryMark("abc-def"));
+
+        // 跨桶后仍在窗口内
+        now.addAndGet(4000);
+        assertFalse(dedup.tryMark(12345));
+
+        // 超过窗口后视为新消息
+        now.addAndGet(7000);
+        assertTrue(dedup.tryMark(12345));
+    }
+
+    @Test
+    void testConcurrentMarkAcceptsEachIdOnce() throws Exception {
+        MessageDeduplicator dedup = new MessageDeduplicator(60000, 6, 8192, () -> 0L);
+        AtomicInteger accepted = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        for (int t = 0; t < 8; t++) {
+            pool.submit(() -> {
+                start.await();
+                for (long id = 0; id < 2000; id++) {
+                    if (dedup.tryMark(id)) {
+                        accepted.incrementAndGet();
+                    }
+                }
+                return null;
+            });
+        }
+        start.countDown();
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+        assertEquals(2000, accepted.get());
+    }
+}
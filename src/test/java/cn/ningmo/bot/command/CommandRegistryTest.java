@@ -0,0 +1,70 @@
+package cn.ningmo.bot.command;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 命令注册表与权限检查测试类
+ */
+public class CommandRegistryTest {
+
+    private CommandRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        registry = new CommandRegistry();
+        registry.register(command("开启", List.of(), ArgParser.NONE));
+        registry.register(command("开启屏蔽", List.of(), ArgParser.NONE));
+        registry.register(command("拉黑", List.of(), ArgParser.TEXT));
+        registry.register(command("帮助", List.of("help"), ArgParser.NONE));
+    }
+
+    private static ChatCommand command(String name, List<String> aliases, ArgParser parser) {
+        return new ChatCommand(name, aliases, CommandPermission.EVERYONE, CommandScope.ALL,
+                               parser, "/" + name, name, ctx -> { });
+    }
+
+    @Test
+    void testLongestMatchAndExactCommands() {
+        assertEquals("开启", registry.find("开启").command().getName());
+        assertEquals("开启屏蔽", registry.find("开启屏蔽 ").command().getName());
+        // 不带参数的命令后面跟了其他内容，不算匹配
+        assertNull(registry.find("开启一下"));
+        assertNull(registry.find("未知命令"));
+        assertEquals("帮助", registry.find("HELP").command().getName());
+    }
+
+    @Test
+    void testArgsFollowCommandName() {
+        CommandRegistry.Match match = registry.find("拉黑  123456 ");
+        assertEquals("拉黑", match.command().getName());
+        assertEquals("123456", match.args());
+        assertNull(match.command().getArgParser().parse(registry.find("拉黑").args()));
+        assertThrows(IllegalArgumentException.class, () -> registry.register(command("Help", List.of(), ArgParser.NONE)));
+    }
+
+    @Test
+    void testRoleLookupOnlyForAdminCommands() {
+        AtomicInteger lookups = new AtomicInteger();
+        PermissionChecker checker = new PermissionChecker(() -> List.of("10000"), (groupId, userId) -> {
+            lookups.incrementAndGet();
+            return "20001".equals(userId) ? "admin" : "member";
+        });
+
+        assertTrue(checker.isAllowed(CommandPermission.EVERYONE, "1", "20002"));
+        assertTrue(checker.isAllowed(CommandPermission.GROUP_ADMIN, "1", "10000"));
+        assertEquals(0, lookups.get());
+
+        assertTrue(checker.isAllowed(CommandPermission.GROUP_ADMIN, "1", "20001"));
+        assertFalse(checker.isAllowed(CommandPermission.GROUP_ADMIN, "1", "20002"));
+        assertEquals(2, lookups.get());
+
+        // 私聊中群管理员权限只认机器人管理员
+        assertFalse(checker.isAllowed(CommandPermission.GROUP_ADMIN, null, "20001"));
+        assertFalse(checker.isAllowed(CommandPermission.BOT_ADMIN, "1", "20001"));
+    }
+}
@@ -0,0 +1,101 @@
+package cn.ningmo.bot.record;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 事件录制测试类
+ */
+public class EventRecorderTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static List<EventLogReader.Entry> readAll(Path path) throws Exception {
+        List<EventLogReader.Entry> entries = new ArrayList<>();
+        try (EventLogReader reader = new EventLogReader(path)) {
+            EventLogReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                entries.add(entry);
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    void testRecordAndReadBackAcrossRotatedFiles() throws Exception {
+        // 每个文件只容纳几条记录，强制轮转并只保留最新的3个文件
+        EventRecorder recorder = new EventRecorder(tempDir, 200, 3, 64);
+        int total = 0;
+        for (int i = 0; i < 40; i++) {
+            recorder.record("{\"post_type\":\"message\",\"raw_message\":\"消息" + i + "\"}");
+            total++;
+            if (i % 8 == 7) {
+                // 等写入线程追上，避免测试依赖缓冲区容量
+                while (recorder.getPending() > 0) {
+                    Thread.sleep(1);
+                }
+            }
+        }
+        recorder.close();
+
+        assertEquals(total, recorder.getRecorded());
+        assertEquals(0, recorder.getDropped());
+        assertEquals(3, EventRecorder.listFiles(tempDir).size());
+
+        List<EventLogReader.Entry> entries = readAll(tempDir);
+        assertFalse(entries.isEmpty());
+        assertTrue(entries.size() < total);
+        // 保留的是最新的记录，顺序和时间戳都递增
+        assertTrue(entries.get(entries.size() - 1).frame().contains("消息39"));
+        for (int i = 1; i < entries.size(); i++) {
+            assertTrue(entries.get(i).timeNanos() >= entries.get(i - 1).timeNanos());
+            int previous = Integer.parseInt(entries.get(i - 1).frame().replaceAll("\\D", ""));
+            int current = Integer.parseInt(entries.get(i).frame().replaceAll("\\D", ""));
+            assertEquals(previous + 1, current);
+        }
+    }
+
+    @Test
+    void testTruncatedFileIsReadUpToLastCompleteRecord() throws Exception {
+        EventRecorder recorder = new EventRecorder(tempDir, 1024 * 1024, 5, 256);
+        for (int i = 0; i < 100; i++) {
+            recorder.record("{\"seq\":" + i + "}");
+        }
+        recorder.close();
+
+        Path file = EventRecorder.listFiles(tempDir).get(0);
+        byte[] bytes = Files.readAllBytes(file);
+        Path truncated = tempDir.resolve("truncated" + EventRecorder.FILE_SUFFIX);
+        Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 20));
+
+        List<EventLogReader.Entry> complete = readAll(file);
+        assertEquals(100, complete.size());
+        List<EventLogReader.Entry> partial = readAll(truncated);
+        assertTrue(partial.size() <= 100);
+        for (int i = 0; i < partial.size(); i++) {
+            assertEquals("{\"seq\":" + i + "}", partial.get(i).frame());
+        }
+    }
+
+    @Test
+    void testFullBufferDropsInsteadOfBlocking() throws Exception {
+        // 目录位置是一个普通文件，写入线程无法创建录制文件
+        Path blocked = tempDir.resolve("blocked");
+        Files.writeString(blocked, "x");
+        EventRecorder recorder = new EventRecorder(blocked.resolve("record"), 1024, 1, 4);
+        for (int i = 0; i < 1000; i++) {
+            recorder.record("{}");
+        }
+        recorder.close();
+        assertEquals(0, recorder.getRecorded());
+        assertEquals(1000, recorder.getDropped());
+    }
+}
@@ -0,0 +1,50 @@
+package cn.ningmo.config;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * 黑名单管理器测试类
+ */
+public class BlacklistManagerTest {
+
+    @TempDir
+    Path dataDir;
+
+    @Test
+    void testChangesSurviveRestartThroughChangeLog() {
+        BlacklistManager manager = new BlacklistManager(null, dataDir);
+        assertTrue(manager.addToBlacklist("10001"));
+        assertTrue(manager.addToBlacklist("10002"));
+        assertFalse(manager.addToBlacklist("10001"));
+        assertTrue(manager.removeFromBlacklist("10002"));
+        assertFalse(manager.addToBlacklist("不是QQ号"));
+        assertTrue(Files.exists(dataDir.resolve("blacklist.log")));
+
+        // 未调用saveBlacklist，重新加载时从变更日志恢复
+        BlacklistManager reloaded = new BlacklistManager(null, dataDir);
+        assertTrue(reloaded.isUserBlacklisted(10001L));
+        assertTrue(reloaded.isUserBlacklisted("10001"));
+        assertFalse(reloaded.isUserBlacklisted(10002L));
+        assertFalse(Files.exists(dataDir.resolve("blacklist.log")));
+    }
+
+    @Test
+    void testImportFromFile() throws Exception {
+        BlacklistManager manager = new BlacklistManager(null, dataDir);
+        manager.addToBlacklist("10001");
+
+        Path file = dataDir.resolve("spam.txt");
+        Files.writeString(file, "# 垃圾账号\n10001, 10002;10003\n10004 abc\n\n10002\n");
+        assertEquals(3, manager.importFromFile(file));
+        assertEquals(List.of("10001", "10002", "10003", "10004"), manager.getBlacklistedUsers());
+
+        BlacklistManager reloaded = new BlacklistManager(null, dataDir);
+        assertEquals(4, reloaded.getBlacklistSize());
+    }
+}
@@ -0,0 +1,67 @@
+package cn.ningmo.config;
+
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.Yaml;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 配置快照测试类
+ */
+public class ConfigSnapshotTest {
+
+    private static ConfigSnapshot parse(String yaml) {
+        Map<String, Object> raw = new Yaml().load(yaml);
+        return ConfigSnapshot.from(raw);
+    }
+
+    @Test
+    void testTypedFieldsAndFlatLookup() {
+        ConfigSnapshot snapshot = parse(
+            "bot:\n"
+            + "  ws_url: \"ws://127.0.0.1:3001\"\n"
+            + "  self_id: \"3436464181\"\n"
+            + "  name: 柠枺\n"
+            + "  nicknames: \"小柠, 柠檬;\"\n"
+            + "  admins:\n"
+            + "    - 3829965348\n"
+            + "ai:\n"
+            + "  max_conversation_length: 10\n"
+            + "  image:\n"
+            + "    max_edge: 1024\n");
+
+        assertEquals(3436464181L, snapshot.selfIdValue());
+        assertEquals(List.of("柠枺", "小柠", "柠檬"), snapshot.botNames());
+        // 未加引号的QQ号会被解析为数字，统一转成字符串
+        assertEquals(List.of("3829965348"), snapshot.admins());
+        assertEquals(10, snapshot.maxConversationLength());
+        assertEquals(1024, snapshot.get("ai.image.max_edge"));
+        assertTrue(snapshot.get("ai.image") instanceof Map);
+        assertTrue(snapshot.validate().isEmpty());
+    }
+
+    @Test
+    void testValidationRejectsBrokenConfig() {
+        ConfigSnapshot snapshot = parse(
+            "bot:\n"
+            + "  ws_url: \"http://127.0.0.1:3001\"\n"
+            + "  self_id: \"abc\"\n"
+            + "ai:\n"
+            + "  max_conversation_length: \"很多\"\n");
+
+        List<String> errors = snapshot.validate();
+        assertEquals(3, errors.size());
+        assertTrue(errors.get(0).contains("bot.ws_url"));
+    }
+
+    @Test
+    void testRestartRequiredKeysDetectNestedChanges() {
+        ConfigSnapshot before = parse("bot:\n  ws_url: \"ws://a\"\n  record:\n    enabled: false\nai:\n  default_model: a\n");
+        ConfigSnapshot after = parse("bot:\n  ws_url: \"ws://a\"\n  record:\n    enabled: true\nai:\n  default_model: b\n");
+
+        // default_model每次使用时读取，不需要重启
+        assertEquals(List.of("bot.record"), ConfigLoader.changedKeys(before, after, ConfigLoader.RESTART_REQUIRED_KEYS));
+    }
+}
@@ -0,0 +1,51 @@
+package cn.ningmo.metrics;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 监控HTTP服务测试类
+ */
+public class MetricsHttpServerTest {
+
+    @Test
+    void testMetricsAndHealthEndpoints() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("ningmo_events", "type", "message").add(5);
+        AtomicBoolean connected = new AtomicBoolean(true);
+        MetricsHttpServer server = new MetricsHttpServer(registry,
+            () -> new MetricsHttpServer.Health(connected.get(), Map.of("websocket", connected.get() ? "connected" : "disconnected")),
+            "127.0.0.1", 0);
+        server.start();
+        try {
+            HttpClient client = HttpClient.newHttpClient();
+            String base = "http://127.0.0.1:" + server.getPort();
+
+            HttpResponse<String> metrics = client.send(HttpRequest.newBuilder(URI.create(base + "/metrics")).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, metrics.statusCode());
+            assertTrue(metrics.headers().firstValue("Content-Type").orElse("").startsWith("application/openmetrics-text"));
+            assertTrue(metrics.body().contains("ningmo_events_total{type=\"message\"} 5"));
+
+            HttpResponse<String> health = client.send(HttpRequest.newBuilder(URI.create(base + "/health")).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals(200, health.statusCode());
+            assertTrue(health.body().contains("\"status\":\"UP\""));
+
+            connected.set(false);
+            health = client.send(HttpRequest.newBuilder(URI.create(base + "/health")).build(),
+                HttpResponse.BodyHandlers.ofString());
+            assertEquals(503, health.statusCode());
+            assertTrue(health.body().contains("\"status\":\"DOWN\""));
+        } finally {
+            server.stop();
+        }
+    }
+}
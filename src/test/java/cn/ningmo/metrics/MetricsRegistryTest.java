@@ -0,0 +1,77 @@
+package cn.ningmo.metrics;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 指标注册表测试类
+ */
+public class MetricsRegistryTest {
+
+    @Test
+    void testHistogramPercentilesWithinRelativeError() {
+        Histogram histogram = new Histogram();
+        Random random = new Random(7);
+        long[] values = new long[10000];
+        for (int i = 0; i < values.length; i++) {
+            // 覆盖几微秒到几十秒的范围
+            values[i] = (long) Math.pow(10, random.nextDouble() * 7.5);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(values.length, snapshot.getCount());
+        assertEquals(values[values.length - 1], snapshot.getMax());
+        for (double p : new double[]{50, 95, 99}) {
+            long expected = values[(int) Math.ceil(p / 100 * values.length) - 1];
+            long actual = snapshot.getPercentile(p);
+            assertTrue(Math.abs(actual - expected) <= Math.max(1, expected * 0.04),
+                "p" + p + " 期望 " + expected + " 实际 " + actual);
+        }
+    }
+
+    @Test
+    void testOpenMetricsOutput() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("ningmo_model_errors", "model", "gpt").add(3);
+        registry.gauge("ningmo_pending_api_calls", () -> 2);
+        registry.histogram("ningmo_model_call_seconds", "model", "gpt").record(1_500_000);
+        // 同名同标签返回同一个实例
+        assertSame(registry.counter("ningmo_model_errors", "model", "gpt"),
+            registry.counter("ningmo_model_errors", "model", "gpt"));
+
+        StringBuilder out = new StringBuilder();
+        registry.writeOpenMetrics(out);
+        String text = out.toString();
+        assertTrue(text.contains("# TYPE ningmo_model_errors counter\nningmo_model_errors_total{model=\"gpt\"} 3\n"));
+        assertTrue(text.contains("ningmo_pending_api_calls 2\n"));
+        assertTrue(text.contains("ningmo_model_call_seconds_count{model=\"gpt\"} 1\n"));
+        String quantileLine = "ningmo_model_call_seconds{model=\"gpt\",quantile=\"0.5\"} ";
+        int start = text.indexOf(quantileLine) + quantileLine.length();
+        double median = Double.parseDouble(text.substring(start, text.indexOf('\n', start)));
+        assertEquals(1.5, median, 1.5 * 0.04);
+        assertTrue(text.endsWith("# EOF\n"));
+        assertTrue(registry.report().contains("ningmo_model_call_seconds{model=\"gpt\"}"));
+    }
+
+    @Test
+    void testGcMetricsAreExportedAsCounters() throws Exception {
+        MetricsRegistry registry = new MetricsRegistry();
+        JvmMetrics.register(registry);
+        registry.counterFunction("ningmo_busy_seconds", () -> 1.25);
+
+        StringBuilder out = new StringBuilder();
+        registry.writeOpenMetrics(out);
+        String text = out.toString();
+        assertTrue(text.contains("# TYPE jvm_gc_collections counter\njvm_gc_collections_total{gc="));
+        assertTrue(text.contains("# TYPE jvm_gc_collection_seconds counter\njvm_gc_collection_seconds_total{gc="));
+        assertFalse(text.contains("# TYPE jvm_gc_collections gauge"));
+        // 带小数的计数器按小数输出，整数值仍按整数输出
+        assertTrue(text.contains("ningmo_busy_seconds_total 1.25\n"));
+        assertTrue(text.contains("# TYPE jvm_threads_live gauge\n"));
+    }
+}
@@ -0,0 +1,32 @@
+package cn.ningmo.metrics;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 启动计时测试类
+ */
+public class StartupTimerTest {
+
+    @Test
+    void testPhasesKeepOrderAndMergeRepeatedNames() throws Exception {
+        StartupTimer timer = new StartupTimer();
+        timer.mark("配置加载");
+        Thread.sleep(20);
+        timer.mark("服务初始化");
+        timer.mark("配置加载");
+
+        Map<String, Long> phases = timer.getPhaseMillis();
+        assertEquals(List.of("配置加载", "服务初始化"), List.copyOf(phases.keySet()));
+        assertTrue(phases.get("服务初始化") >= 20);
+        assertTrue(timer.sinceProcessStartMillis() >= phases.get("服务初始化"));
+
+        String summary = timer.summary();
+        assertTrue(summary.contains("服务初始化 "));
+        assertTrue(summary.endsWith("ms"));
+        assertTrue(summary.contains("合计 "));
+    }
+}
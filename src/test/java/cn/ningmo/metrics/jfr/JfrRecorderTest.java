@@ -0,0 +1,55 @@
+package cn.ningmo.metrics.jfr;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * JFR录制测试类
+ */
+public class JfrRecorderTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void testCustomEventsAreRecorded() throws Exception {
+        JfrRecorder recorder = new JfrRecorder();
+        assertTrue(recorder.start(Duration.ofMinutes(1)));
+        assertFalse(recorder.start(Duration.ofMinutes(1)));
+
+        ModelAttemptEvent event = new ModelAttemptEvent();
+        event.begin();
+        event.traceId = "msg-42";
+        event.model = "test-model";
+        event.attempt = 2;
+        event.success = true;
+        event.commit();
+
+        Path file = tempDir.resolve("test.jfr");
+        assertTrue(recorder.stop(file));
+        assertFalse(recorder.isRecording());
+
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file).stream()
+            .filter(e -> e.getEventType().getName().equals("cn.ningmo.ModelAttempt"))
+            .toList();
+        assertEquals(1, events.size());
+        assertEquals("test-model", events.get(0).getString("model"));
+        assertEquals(2, events.get(0).getInt("attempt"));
+        assertEquals("msg-42", events.get(0).getString("traceId"));
+    }
+
+    @Test
+    void testNonPositiveMaxAgeIsRejected() {
+        JfrRecorder recorder = new JfrRecorder();
+        assertThrows(IllegalArgumentException.class, () -> recorder.start(Duration.ofMinutes(-5)));
+        assertThrows(IllegalArgumentException.class, () -> recorder.start(Duration.ZERO));
+        assertFalse(recorder.isRecording());
+    }
+}
@@ -0,0 +1,51 @@
+package cn.ningmo.metrics.trace;
+
+import org.junit.jupiter.api.Test;
+import org.slf4j.MDC;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 追踪记录测试类
+ */
+public class TracerTest {
+
+    @Test
+    void testContextPropagatesAcrossThreads() throws Exception {
+        Tracer tracer = new Tracer(8);
+        TraceContext trace = tracer.begin("12345", "group", "100", "200");
+        String mdcInTask;
+        try (TraceContext.Scope ignored = trace.attach()) {
+            try (TraceContext.SpanTimer span = TraceContext.span("filter_check")) {
+                span.detail("命中");
+            }
+            mdcInTask = CompletableFuture.supplyAsync(TraceContext.wrap(() -> {
+                TraceContext.record("model_call", System.nanoTime(), "gpt");
+                return MDC.get(TraceContext.MDC_KEY);
+            })).get();
+        }
+
+        assertEquals("12345", mdcInTask);
+        assertNull(TraceContext.current());
+        assertNull(MDC.get(TraceContext.MDC_KEY));
+        assertSame(trace, tracer.find("12345"));
+        assertEquals(2, trace.getSpans().size());
+        assertTrue(trace.format().contains("filter_check"));
+        // 没有上下文时记录span不报错
+        TraceContext.record("send", System.nanoTime(), null);
+    }
+
+    @Test
+    void testRingKeepsMostRecentTraces() {
+        Tracer tracer = new Tracer(4);
+        for (int i = 0; i < 10; i++) {
+            tracer.begin(String.valueOf(i), "private", null, "1");
+        }
+        assertNull(tracer.find("5"));
+        assertNotNull(tracer.find("6"));
+        assertEquals(4, tracer.recent(10).size());
+        // 没有消息ID时自动生成
+        assertTrue(tracer.begin("", "private", null, "1").getTraceId().startsWith("t"));
+    }
+}
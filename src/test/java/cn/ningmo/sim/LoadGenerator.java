@@ -0,0 +1,365 @@
+package cn.ningmo.sim;
+
+import cn.ningmo.NingmoAIBot;
+import cn.ningmo.bot.record.EventLogReader;
+import cn.ningmo.bot.record.EventRecorder;
+import cn.ningmo.metrics.Histogram;
+import org.json.JSONObject;
+import org.yaml.snakeyaml.DumperOptions;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 端到端压测
+ * 在当前工作目录生成压测用的config.yml和data.yml，启动模拟模型服务和OneBot模拟器，
+ * 再在同一进程中启动机器人连接模拟器，按固定速率推送事件，统计从发出事件到收到回复的延迟和吞吐。
+ * 不需要网络和真实QQ账号，同样的参数每次生成同样的事件序列。
+ *
+ * 会覆盖当前目录下的config.yml和data.yml，请在单独的目录中运行：
+ * mvn -B -Ploadtest -DskipTests verify -Dload.args="--rate 50 --duration 60"
+ *
+ * 参数：
+ *   --rate 每秒事件数，默认20
+ *   --duration 推送时长（秒），默认30
+ *   --groups 群数，默认100（机器人每个群10秒内最多发10条消息，速率高时要相应增加群数）
+ *   --users 用户数，默认500
+ *   --members 每个群的成员数，默认50
+ *   --private-ratio 私聊消息比例（0-1），默认0
+ *   --model-latency 模型基础延迟（毫秒），默认800
+ *   --model-jitter 模型随机附加延迟（毫秒），默认400
+ *   --model-error-rate 模型返回500的比例（0-1），默认0
+ *   --model-scenario 模拟模型服务的场景文件，格式见MockModelServer，指定后忽略上面三个模型参数
+ *   --debounce 连续消息合并窗口（毫秒），默认0
+ *   --drain 推送结束后等待剩余回复的最长时间（秒），默认30
+ *   --replay 用录制的事件代替合成事件，可以是每行一个OneBot事件JSON的文本文件（按--rate循环推送），
+ *            也可以是机器人录制的事件文件或录制目录（bot.record，按录制时的时间间隔推送一遍）
+ *   --speed 回放录制文件的速度，1为原速，N为N倍速，max为不等待，默认1
+ *
+ * 回放时机器人QQ号取自录制事件的self_id，录制中出现的群都会开启AI，模型调用由模拟模型服务应答。
+ */
+public class LoadGenerator {
+
+    private static final long SELF_ID = 3436464181L;
+    private static final long GROUP_BASE = 700000000L;
+    private static final long USER_BASE = 100000000L;
+    // 写在生成的config.yml开头，用来确认不会覆盖真实配置
+    private static final String CONFIG_MARKER = "# 压测生成的配置文件";
+    // 回放录制文件时压缩过长的空闲间隔（例如机器人重启或深夜），避免原速回放长时间没有事件
+    private static final long MAX_REPLAY_GAP_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private static final String[] QUESTIONS = {
+        "今天天气怎么样", "推荐一部电影吧", "晚饭吃什么好", "帮我翻译一下 hello world",
+        "讲个笑话", "周末去哪里玩", "这个问题怎么解决", "你觉得呢"
+    };
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parseArgs(args);
+        double rate = Double.parseDouble(options.getOrDefault("rate", "20"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int groups = Integer.parseInt(options.getOrDefault("groups", "100"));
+        int users = Integer.parseInt(options.getOrDefault("users", "500"));
+        int members = Integer.parseInt(options.getOrDefault("members", "50"));
+        double privateRatio = Double.parseDouble(options.getOrDefault("private-ratio", "0"));
+        long modelLatency = Long.parseLong(options.getOrDefault("model-latency", "800"));
+        long modelJitter = Long.parseLong(options.getOrDefault("model-jitter", "400"));
+        double modelErrorRate = Double.parseDouble(options.getOrDefault("model-error-rate", "0"));
+        long debounce = Long.parseLong(options.getOrDefault("debounce", "0"));
+        int drain = Integer.parseInt(options.getOrDefault("drain", "30"));
+        Path replay = options.containsKey("replay") ? Paths.get(options.get("replay")) : null;
+        boolean recording = replay != null && isRecording(replay);
+        List<JSONObject> recorded = replay != null && !recording ? readEvents(replay) : null;
+        String speed = options.getOrDefault("speed", "1");
+
+        Path configFile = Paths.get("config.yml");
+        if (Files.exists(configFile) && !Files.readString(configFile, StandardCharsets.UTF_8).startsWith(CONFIG_MARKER)) {
+            System.out.println("当前目录下已有config.yml，为避免覆盖真实配置，请在单独的目录中运行压测");
+            System.exit(2);
+        }
+
+        MockModelServer model = new MockModelServer(0);
+        if (options.containsKey("model-scenario")) {
+            try (InputStream input = Files.newInputStream(Paths.get(options.get("model-scenario")))) {
+                MockModelServer.loadScenarios(model, new Yaml().load(input));
+            }
+        } else {
+            model.setScenario(MockModelServer.Scenario.of(
+                MockModelServer.Step.latency(modelLatency, modelJitter).withErrorRate(modelErrorRate)));
+        }
+        model.start();
+
+        Set<Long> groupIds = new LinkedHashSet<>();
+        for (int i = 0; i < groups; i++) {
+            groupIds.add(GROUP_BASE + i);
+        }
+        long selfId = SELF_ID;
+        if (recorded != null) {
+            for (JSONObject event : recorded) {
+                selfId = collectGroupAndSelfId(event, groupIds, selfId);
+            }
+        }
+        if (recording) {
+            // 先扫描一遍录制文件收集群号和机器人QQ号，回放时再流式读取，不把整个录制读进内存
+            long count = 0;
+            try (EventLogReader reader = new EventLogReader(replay)) {
+                EventLogReader.Entry entry;
+                while ((entry = reader.next()) != null) {
+                    JSONObject event = messageEvent(entry.frame());
+                    if (event != null) {
+                        selfId = collectGroupAndSelfId(event, groupIds, selfId);
+                        count++;
+                    }
+                }
+            }
+            System.out.printf("录制文件中共有 %d 条消息事件%n", count);
+        }
+
+        OneBotSimulator simulator = new OneBotSimulator(0, selfId, members);
+        simulator.startAndWait();
+        writeConfig(configFile, simulator.getPort(), model.getBaseUrl(), selfId, debounce, privateRatio > 0 || replay != null);
+        writeData(Paths.get("data.yml"), groupIds);
+
+        long startupBegin = System.nanoTime();
+        new NingmoAIBot(true).start();
+        if (!simulator.awaitConnection(30, TimeUnit.SECONDS)) {
+            System.out.println("机器人30秒内没有连接到模拟器");
+            System.exit(1);
+        }
+        System.out.printf("机器人启动并连接耗时 %d ms%n", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startupBegin));
+        // 等待登录信息和首批接口调用完成
+        Thread.sleep(1000);
+
+        // 开环推送：按计划时间发送，不等待上一条的回复，避免协调遗漏掩盖排队延迟
+        Random random = new Random(42);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        long total = recording ? 0 : (long) (rate * duration);
+        long sendFailures = 0;
+        long begin = System.nanoTime();
+        if (recording) {
+            sendFailures = replayRecording(simulator, replay, speed, begin);
+        }
+        for (long i = 0; i < total; i++) {
+            long due = begin + i * intervalNanos;
+            long wait = due - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            try {
+                if (recorded != null) {
+                    simulator.sendRecordedEvent(recorded.get((int) (i % recorded.size())));
+                } else if (random.nextDouble() < privateRatio) {
+                    simulator.sendPrivateMessage(USER_BASE + random.nextInt(users), question(random));
+                } else {
+                    simulator.sendGroupMessage(GROUP_BASE + random.nextInt(groups), USER_BASE + random.nextInt(users), question(random));
+                }
+            } catch (IllegalStateException e) {
+                sendFailures++;
+            }
+        }
+        long sendElapsed = System.nanoTime() - begin;
+
+        long drainDeadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drain);
+        while (simulator.getPendingCount() > 0 && System.nanoTime() < drainDeadline) {
+            Thread.sleep(100);
+        }
+
+        String target = recording ? "回放速度: " + ("max".equals(speed) ? "不限" : speed + "x")
+            : String.format("目标速率: %.1f 条/秒", rate);
+        printReport(simulator, model, target, begin, sendElapsed, sendFailures);
+        simulator.stop(1000);
+        model.stop();
+        System.exit(0);
+    }
+
+    private static String question(Random random) {
+        return QUESTIONS[random.nextInt(QUESTIONS.length)];
+    }
+
+    /**
+     * 按录制时的时间间隔推送录制文件中的消息事件
+     * @param speed 1为原速，N为N倍速，max为不等待
+     * @return 推送失败的事件数
+     */
+    private static long replayRecording(OneBotSimulator simulator, Path path, String speed, long begin) throws IOException {
+        double factor = "max".equals(speed) ? 0 : Double.parseDouble(speed);
+        long sendFailures = 0;
+        long previousTime = -1;
+        long offset = 0;
+        try (EventLogReader reader = new EventLogReader(path)) {
+            EventLogReader.Entry entry;
+            while ((entry = reader.next()) != null) {
+                JSONObject event = messageEvent(entry.frame());
+                if (event == null) {
+                    continue;
+                }
+                if (factor > 0) {
+                    if (previousTime >= 0) {
+                        offset += Math.min(Math.max(entry.timeNanos() - previousTime, 0), MAX_REPLAY_GAP_NANOS);
+                    }
+                    previousTime = entry.timeNanos();
+                    long wait = begin + (long) (offset / factor) - System.nanoTime();
+                    if (wait > 0) {
+                        LockSupport.parkNanos(wait);
+                    }
+                }
+                try {
+                    simulator.sendRecordedEvent(event);
+                } catch (IllegalStateException e) {
+                    sendFailures++;
+                }
+            }
+        }
+        return sendFailures;
+    }
+
+    /**
+     * 录制事件中的群都要开启AI，@机器人用的是录制时的self_id
+     */
+    private static long collectGroupAndSelfId(JSONObject event, Set<Long> groupIds, long selfId) {
+        if (event.has("group_id")) {
+            groupIds.add(event.getLong("group_id"));
+        }
+        return selfId == SELF_ID && event.has("self_id") ? event.getLong("self_id") : selfId;
+    }
+
+    private static boolean isRecording(Path path) {
+        return Files.isDirectory(path) || path.getFileName().toString().endsWith(EventRecorder.FILE_SUFFIX);
+    }
+
+    /**
+     * 录制的帧中只回放消息事件，API响应和元事件跳过
+     */
+    private static JSONObject messageEvent(String frame) {
+        if (!frame.contains("\"post_type\"")) {
+            return null;
+        }
+        JSONObject event = new JSONObject(frame);
+        return "message".equals(event.optString("post_type")) ? event : null;
+    }
+
+    private static void printReport(OneBotSimulator simulator, MockModelServer model, String target,
+                                    long begin, long sendElapsed, long sendFailures) {
+        long sent = simulator.getEventsSent();
+        Histogram.Snapshot latency = simulator.getReplyLatency();
+        long answered = latency.getCount();
+        // 吞吐按第一条事件到最后一条回复计算，不包括等待未回复事件的时间
+        double seconds = Math.max(simulator.getLastReplyNanos() - begin, 1) / 1e9;
+
+        System.out.println();
+        System.out.println("========== 压测结果 ==========");
+        System.out.printf("%s，实际推送: %.1f 条/秒%n", target, sent / (sendElapsed / 1e9));
+        System.out.printf("推送事件: %d，推送失败: %d%n", sent, sendFailures);
+        System.out.printf("收到回复: %d（%.1f%%），未回复: %d，无法对应事件的回复: %d%n",
+            answered, sent > 0 ? answered * 100.0 / sent : 0, simulator.getPendingCount(), simulator.getUntaggedReplies());
+        System.out.printf("回复吞吐: %.1f 条/秒%n", answered / seconds);
+        System.out.printf("端到端延迟(ms): 平均=%.1f p50=%.1f p95=%.1f p99=%.1f 最大=%.1f%n",
+            latency.getMean() / 1000.0,
+            latency.getPercentile(50) / 1000.0,
+            latency.getPercentile(95) / 1000.0,
+            latency.getPercentile(99) / 1000.0,
+            latency.getMax() / 1000.0);
+        System.out.printf("模型请求: %d，注入错误: %d%n", model.getRequests(), model.getErrors());
+        System.out.println("接口调用: " + simulator.getApiCalls());
+        for (String sample : simulator.getUntaggedSamples()) {
+            System.out.println("无法对应事件的回复: " + sample);
+        }
+    }
+
+    /**
+     * 以内置默认配置为基础，改为连接模拟器和模拟模型服务
+     */
+    @SuppressWarnings("unchecked")
+    private static void writeConfig(Path file, int wsPort, String modelBaseUrl, long selfId, long debounce, boolean enablePrivate) throws IOException {
+        Map<String, Object> config;
+        try (InputStream input = LoadGenerator.class.getClassLoader().getResourceAsStream("config.yml")) {
+            config = new Yaml().load(input);
+        }
+
+        Map<String, Object> bot = (Map<String, Object>) config.get("bot");
+        bot.put("ws_url", "ws://127.0.0.1:" + wsPort);
+        bot.put("self_id", String.valueOf(selfId));
+        bot.put("enable_private_message", enablePrivate);
+        Map<String, Object> messages = (Map<String, Object>) bot.get("messages");
+        messages.put("debounce_ms", debounce);
+
+        ((Map<String, Object>) config.get("gui")).put("enabled", false);
+
+        Map<String, Object> ai = (Map<String, Object>) config.get("ai");
+        ai.put("default_model", "stub");
+        Map<String, Object> stub = new LinkedHashMap<>();
+        stub.put("type", "openai");
+        stub.put("description", "压测用模拟模型");
+        stub.put("api_base_url", modelBaseUrl);
+        stub.put("api_key", "stub");
+        stub.put("model_name", "stub");
+        ai.put("models", Map.of("stub", stub));
+
+        ((Map<String, Object>) config.get("logging")).put("level", "warn");
+
+        DumperOptions options = new DumperOptions();
+        options.setDefaultFlowStyle(DumperOptions.FlowStyle.BLOCK);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write(CONFIG_MARKER + "\n");
+            new Yaml(options).dump(config, writer);
+        }
+    }
+
+    /**
+     * 所有压测群都开启AI
+     */
+    private static void writeData(Path file, Set<Long> groupIds) throws IOException {
+        Map<String, Object> groups = new LinkedHashMap<>();
+        for (Long groupId : groupIds) {
+            groups.put(String.valueOf(groupId), new HashMap<>(Map.of("ai_enabled", true)));
+        }
+        Map<String, Object> data = new LinkedHashMap<>();
+        data.put("groups", groups);
+        data.put("users", new HashMap<>());
+        data.put("private_message_enabled", true);
+        try (Writer writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            new Yaml().dump(data, writer);
+        }
+    }
+
+    private static List<JSONObject> readEvents(Path file) throws IOException {
+        List<JSONObject> events = new ArrayList<>();
+        for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+            if (!line.isBlank()) {
+                JSONObject event = new JSONObject(line);
+                if ("message".equals(event.optString("post_type"))) {
+                    events.add(event);
+                }
+            }
+        }
+        if (events.isEmpty()) {
+            throw new IllegalArgumentException("事件文件中没有消息事件: " + file);
+        }
+        return events;
+    }
+
+    private static Map<String, String> parseArgs(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].startsWith("--") && i + 1 < args.length) {
+                options.put(args[i].substring(2), args[++i]);
+            }
+        }
+        return options;
+    }
+}
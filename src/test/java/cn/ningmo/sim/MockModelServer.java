@@ -0,0 +1,520 @@
+package cn.ningmo.sim;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.yaml.snakeyaml.Yaml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 模拟模型服务
+ * 支持OpenAI /v1/chat/completions（普通和SSE流式）、Anthropic /v1/messages（普通和SSE流式）
+ * 以及Ollama /api/chat、/api/generate（NDJSON流式和非流式）几种接口格式。
+ *
+ * 每次请求按场景脚本取下一步决定如何应答：固定或抖动的延迟、429加Retry-After、
+ * 连续5xx、流式输出每段之间的间隔、返回截断的JSON等。场景可以按请求中的model字段分别设置，
+ * 不需要真实的API即可测试重试、备用模型切换和冷却逻辑。
+ *
+ * 回复内容默认是最后一条用户消息的回显。也可以单独运行：
+ * MockModelServer [端口] [场景文件.yml]
+ */
+public class MockModelServer {
+    private static final Logger logger = LoggerFactory.getLogger(MockModelServer.class);
+
+    // 流式输出时每段的字符数
+    private static final int CHUNK_CHARS = 8;
+
+    /**
+     * 接口格式
+     */
+    public enum Format {
+        OPENAI, ANTHROPIC, OLLAMA_CHAT, OLLAMA_GENERATE
+    }
+
+    /**
+     * 场景中的一步
+     * @param times 连续应用的请求数，0表示一直应用（通常用于最后一步）
+     * @param latencyMs 响应前的固定延迟（毫秒），流式输出时是首段之前的延迟
+     * @param jitterMs 在固定延迟上随机增加的最大延迟（毫秒）
+     * @param status HTTP状态码，非200时返回对应格式的错误响应
+     * @param retryAfterSeconds 429/503时Retry-After头的秒数，0表示不返回
+     * @param malformed 为true时返回被截断的JSON
+     * @param chunkDelayMs 流式输出时每段之间的间隔（毫秒）
+     * @param errorRate 随机返回500的比例（0-1）
+     * @param reply 固定的回复内容，为null时回显最后一条用户消息
+     */
+    public record Step(int times, long latencyMs, long jitterMs, int status, int retryAfterSeconds,
+                       boolean malformed, long chunkDelayMs, double errorRate, String reply) {
+
+        public static Step ok() {
+            return new Step(0, 0, 0, 200, 0, false, 0, 0, null);
+        }
+
+        public static Step latency(long latencyMs, long jitterMs) {
+            return new Step(0, latencyMs, jitterMs, 200, 0, false, 0, 0, null);
+        }
+
+        public static Step status(int status, int times) {
+            return new Step(times, 0, 0, status, 0, false, 0, 0, null);
+        }
+
+        public static Step rateLimited(int retryAfterSeconds, int times) {
+            return new Step(times, 0, 0, 429, retryAfterSeconds, false, 0, 0, null);
+        }
+
+        public static Step malformed(int times) {
+            return new Step(times, 0, 0, 200, 0, true, 0, 0, null);
+        }
+
+        public static Step slowStream(long chunkDelayMs) {
+            return new Step(0, 0, 0, 200, 0, false, chunkDelayMs, 0, null);
+        }
+
+        public Step withErrorRate(double errorRate) {
+            return new Step(times, latencyMs, jitterMs, status, retryAfterSeconds, malformed, chunkDelayMs, errorRate, reply);
+        }
+
+        public Step withReply(String reply) {
+            return new Step(times, latencyMs, jitterMs, status, retryAfterSeconds, malformed, chunkDelayMs, errorRate, reply);
+        }
+
+        /**
+         * 从场景文件中的一项读取，键名：times、latency_ms、jitter_ms、status、retry_after、
+         * malformed、chunk_delay_ms、error_rate、reply
+         */
+        static Step fromMap(Map<String, Object> map) {
+            return new Step(
+                ((Number) map.getOrDefault("times", 0)).intValue(),
+                ((Number) map.getOrDefault("latency_ms", 0)).longValue(),
+                ((Number) map.getOrDefault("jitter_ms", 0)).longValue(),
+                ((Number) map.getOrDefault("status", 200)).intValue(),
+                ((Number) map.getOrDefault("retry_after", 0)).intValue(),
+                Boolean.TRUE.equals(map.get("malformed")),
+                ((Number) map.getOrDefault("chunk_delay_ms", 0)).longValue(),
+                ((Number) map.getOrDefault("error_rate", 0)).doubleValue(),
+                (String) map.get("reply"));
+        }
+    }
+
+    /**
+     * 场景脚本：按顺序执行各步，每步应用times次后进入下一步，最后一步一直重复
+     */
+    public static final class Scenario {
+        private final List<Step> steps;
+        private int index;
+        private int used;
+
+        public Scenario(List<Step> steps) {
+            if (steps.isEmpty()) {
+                throw new IllegalArgumentException("场景至少需要一步");
+            }
+            this.steps = List.copyOf(steps);
+        }
+
+        public static Scenario of(Step... steps) {
+            return new Scenario(List.of(steps));
+        }
+
+        synchronized Step next() {
+            Step step = steps.get(index);
+            used++;
+            if (step.times() > 0 && used >= step.times() && index < steps.size() - 1) {
+                index++;
+                used = 0;
+            }
+            return step;
+        }
+    }
+
+    private final HttpServer server;
+    private volatile Scenario defaultScenario = Scenario.of(Step.ok());
+    // 模型名 -> 场景，没有单独设置的模型使用默认场景
+    private final Map<String, Scenario> modelScenarios = new ConcurrentHashMap<>();
+    // 固定种子，同样的场景每次抖动和随机错误的顺序相同
+    private final Random random = new Random(20240601L);
+    private final AtomicLong ids = new AtomicLong();
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final Map<String, LongAdder> requestsByPath = new ConcurrentHashMap<>();
+
+    /**
+     * @param port 监听端口，0表示随机端口
+     */
+    public MockModelServer(int port) throws IOException {
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/v1/chat/completions", exchange -> handle(exchange, Format.OPENAI));
+        server.createContext("/v1/messages", exchange -> handle(exchange, Format.ANTHROPIC));
+        server.createContext("/api/chat", exchange -> handle(exchange, Format.OLLAMA_CHAT));
+        server.createContext("/api/generate", exchange -> handle(exchange, Format.OLLAMA_GENERATE));
+        // 每个请求一个虚拟线程，模拟延迟和慢速流式输出时不占用平台线程
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+    }
+
+    public void start() {
+        server.start();
+        logger.info("模拟模型服务已启动: {}", getBaseUrl());
+    }
+
+    public void stop() {
+        server.stop(0);
+    }
+
+    /**
+     * 模型配置中api_base_url使用的地址
+     */
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+
+    /**
+     * 设置默认场景
+     */
+    public void setScenario(Scenario scenario) {
+        this.defaultScenario = scenario;
+    }
+
+    /**
+     * 为请求中model字段等于modelName的请求单独设置场景
+     */
+    public void setScenario(String modelName, Scenario scenario) {
+        modelScenarios.put(modelName, scenario);
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    /**
+     * 返回非200状态码或截断JSON的次数
+     */
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    public Map<String, Long> getRequestsByPath() {
+        Map<String, Long> counts = new TreeMap<>();
+        requestsByPath.forEach((path, count) -> counts.put(path, count.sum()));
+        return counts;
+    }
+
+    private void handle(HttpExchange exchange, Format format) throws IOException {
+        try (exchange) {
+            requests.increment();
+            requestsByPath.computeIfAbsent(exchange.getHttpContext().getPath(), k -> new LongAdder()).increment();
+
+            JSONObject request;
+            try (InputStream input = exchange.getRequestBody()) {
+                request = new JSONObject(new String(input.readAllBytes(), StandardCharsets.UTF_8));
+            } catch (JSONException e) {
+                errors.increment();
+                sendError(exchange, format, 400, 0, "invalid JSON body");
+                return;
+            }
+
+            String model = request.optString("model", "mock");
+            Step step = modelScenarios.getOrDefault(model, defaultScenario).next();
+
+            long delay;
+            boolean randomError;
+            synchronized (random) {
+                delay = step.latencyMs() + (step.jitterMs() > 0 ? (long) (random.nextDouble() * step.jitterMs()) : 0);
+                randomError = step.errorRate() > 0 && random.nextDouble() < step.errorRate();
+            }
+            if (!sleep(delay)) {
+                return;
+            }
+
+            if (step.status() != 200 || randomError) {
+                errors.increment();
+                int status = randomError ? 500 : step.status();
+                sendError(exchange, format, status, step.retryAfterSeconds(), "mock injected error " + status);
+                return;
+            }
+
+            String content = step.reply() != null ? step.reply() : "收到：" + lastUserMessage(format, request);
+            JSONObject body = completeBody(format, model, content);
+            if (step.malformed()) {
+                errors.increment();
+                String text = body.toString();
+                send(exchange, 200, "application/json; charset=utf-8", text.substring(0, text.length() / 2));
+                return;
+            }
+
+            // Ollama默认流式输出，其他接口需要在请求中指定stream: true
+            boolean stream = request.optBoolean("stream", format == Format.OLLAMA_CHAT || format == Format.OLLAMA_GENERATE);
+            if (stream) {
+                writeStream(exchange, format, model, content, step.chunkDelayMs());
+            } else {
+                send(exchange, 200, "application/json; charset=utf-8", body.toString());
+            }
+        }
+    }
+
+    private JSONObject completeBody(Format format, String model, String content) {
+        return switch (format) {
+            case OPENAI -> new JSONObject()
+                .put("id", "chatcmpl-mock-" + ids.incrementAndGet())
+                .put("object", "chat.completion")
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", model)
+                .put("choices", new JSONArray().put(new JSONObject()
+                    .put("index", 0)
+                    .put("message", new JSONObject().put("role", "assistant").put("content", content))
+                    .put("finish_reason", "stop")))
+                .put("usage", new JSONObject()
+                    .put("prompt_tokens", 100)
+                    .put("completion_tokens", content.length())
+                    .put("total_tokens", 100 + content.length()));
+            case ANTHROPIC -> new JSONObject()
+                .put("id", "msg_mock_" + ids.incrementAndGet())
+                .put("type", "message")
+                .put("role", "assistant")
+                .put("model", model)
+                .put("content", new JSONArray().put(new JSONObject().put("type", "text").put("text", content)))
+                .put("stop_reason", "end_turn")
+                .put("usage", new JSONObject().put("input_tokens", 100).put("output_tokens", content.length()));
+            case OLLAMA_CHAT -> ollamaBase(model)
+                .put("message", new JSONObject().put("role", "assistant").put("content", content))
+                .put("done", true)
+                .put("done_reason", "stop")
+                .put("eval_count", content.length());
+            case OLLAMA_GENERATE -> ollamaBase(model)
+                .put("response", content)
+                .put("done", true)
+                .put("done_reason", "stop")
+                .put("eval_count", content.length());
+        };
+    }
+
+    private static JSONObject ollamaBase(String model) {
+        return new JSONObject()
+            .put("model", model)
+            .put("created_at", Instant.now().toString());
+    }
+
+    private void writeStream(HttpExchange exchange, Format format, String model, String content, long chunkDelayMs) throws IOException {
+        boolean ndjson = format == Format.OLLAMA_CHAT || format == Format.OLLAMA_GENERATE;
+        exchange.getResponseHeaders().set("Content-Type", ndjson ? "application/x-ndjson" : "text/event-stream; charset=utf-8");
+        exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+        exchange.sendResponseHeaders(200, 0);
+
+        List<String> chunks = new ArrayList<>();
+        for (int i = 0; i < content.length(); i += CHUNK_CHARS) {
+            chunks.add(content.substring(i, Math.min(content.length(), i + CHUNK_CHARS)));
+        }
+        String id = (format == Format.ANTHROPIC ? "msg_mock_" : "chatcmpl-mock-") + ids.incrementAndGet();
+
+        try (OutputStream output = exchange.getResponseBody()) {
+            if (format == Format.ANTHROPIC) {
+                writeEvent(output, "message_start", new JSONObject()
+                    .put("type", "message_start")
+                    .put("message", new JSONObject()
+                        .put("id", id).put("type", "message").put("role", "assistant").put("model", model)
+                        .put("content", new JSONArray())
+                        .put("usage", new JSONObject().put("input_tokens", 100).put("output_tokens", 1))));
+                writeEvent(output, "content_block_start", new JSONObject()
+                    .put("type", "content_block_start").put("index", 0)
+                    .put("content_block", new JSONObject().put("type", "text").put("text", "")));
+            }
+
+            for (int i = 0; i < chunks.size(); i++) {
+                if (i > 0 && !sleep(chunkDelayMs)) {
+                    return;
+                }
+                String chunk = chunks.get(i);
+                switch (format) {
+                    case OPENAI -> writeEvent(output, null, openAIChunk(id, model, new JSONObject().put("content", chunk), null));
+                    case ANTHROPIC -> writeEvent(output, "content_block_delta", new JSONObject()
+                        .put("type", "content_block_delta").put("index", 0)
+                        .put("delta", new JSONObject().put("type", "text_delta").put("text", chunk)));
+                    case OLLAMA_CHAT -> writeLine(output, ollamaBase(model)
+                        .put("message", new JSONObject().put("role", "assistant").put("content", chunk))
+                        .put("done", false));
+                    case OLLAMA_GENERATE -> writeLine(output, ollamaBase(model).put("response", chunk).put("done", false));
+                }
+            }
+
+            switch (format) {
+                case OPENAI -> {
+                    writeEvent(output, null, openAIChunk(id, model, new JSONObject(), "stop"));
+                    write(output, "data: [DONE]\n\n");
+                }
+                case ANTHROPIC -> {
+                    writeEvent(output, "content_block_stop", new JSONObject().put("type", "content_block_stop").put("index", 0));
+                    writeEvent(output, "message_delta", new JSONObject()
+                        .put("type", "message_delta")
+                        .put("delta", new JSONObject().put("stop_reason", "end_turn"))
+                        .put("usage", new JSONObject().put("output_tokens", content.length())));
+                    writeEvent(output, "message_stop", new JSONObject().put("type", "message_stop"));
+                }
+                case OLLAMA_CHAT -> writeLine(output, ollamaBase(model)
+                    .put("message", new JSONObject().put("role", "assistant").put("content", ""))
+                    .put("done", true).put("done_reason", "stop").put("eval_count", content.length()));
+                case OLLAMA_GENERATE -> writeLine(output, ollamaBase(model)
+                    .put("response", "").put("done", true).put("done_reason", "stop").put("eval_count", content.length()));
+            }
+        }
+    }
+
+    private static JSONObject openAIChunk(String id, String model, JSONObject delta, String finishReason) {
+        return new JSONObject()
+            .put("id", id)
+            .put("object", "chat.completion.chunk")
+            .put("created", System.currentTimeMillis() / 1000)
+            .put("model", model)
+            .put("choices", new JSONArray().put(new JSONObject()
+                .put("index", 0)
+                .put("delta", delta)
+                .put("finish_reason", finishReason != null ? finishReason : JSONObject.NULL)));
+    }
+
+    private static void writeEvent(OutputStream output, String event, JSONObject data) throws IOException {
+        write(output, (event != null ? "event: " + event + "\n" : "") + "data: " + data + "\n\n");
+    }
+
+    private static void writeLine(OutputStream output, JSONObject line) throws IOException {
+        write(output, line + "\n");
+    }
+
+    private static void write(OutputStream output, String text) throws IOException {
+        output.write(text.getBytes(StandardCharsets.UTF_8));
+        output.flush();
+    }
+
+    private static void sendError(HttpExchange exchange, Format format, int status, int retryAfterSeconds, String message) throws IOException {
+        if (retryAfterSeconds > 0) {
+            exchange.getResponseHeaders().set("Retry-After", String.valueOf(retryAfterSeconds));
+        }
+        JSONObject body = switch (format) {
+            case OPENAI -> new JSONObject().put("error", new JSONObject()
+                .put("message", message)
+                .put("type", status == 429 ? "rate_limit_exceeded" : "server_error")
+                .put("code", status));
+            case ANTHROPIC -> new JSONObject()
+                .put("type", "error")
+                .put("error", new JSONObject()
+                    .put("type", status == 429 ? "rate_limit_error" : status == 529 ? "overloaded_error" : "api_error")
+                    .put("message", message));
+            case OLLAMA_CHAT, OLLAMA_GENERATE -> new JSONObject().put("error", message);
+        };
+        send(exchange, status, "application/json; charset=utf-8", body.toString());
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream output = exchange.getResponseBody()) {
+            output.write(bytes);
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        if (millis <= 0) {
+            return true;
+        }
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 最后一条用户消息的文本，带图片时content是数组，Ollama的generate接口取prompt
+     */
+    private static String lastUserMessage(Format format, JSONObject request) {
+        if (format == Format.OLLAMA_GENERATE) {
+            return request.optString("prompt");
+        }
+        JSONArray messages = request.optJSONArray("messages");
+        if (messages == null) {
+            return "";
+        }
+        for (int i = messages.length() - 1; i >= 0; i--) {
+            JSONObject message = messages.optJSONObject(i);
+            if (message == null || !"user".equals(message.optString("role"))) {
+                continue;
+            }
+            Object content = message.opt("content");
+            if (content instanceof JSONArray parts) {
+                StringBuilder text = new StringBuilder();
+                for (int j = 0; j < parts.length(); j++) {
+                    JSONObject part = parts.optJSONObject(j);
+                    if (part != null && "text".equals(part.optString("type"))) {
+                        text.append(part.optString("text"));
+                    }
+                }
+                return text.toString();
+            }
+            return String.valueOf(content);
+        }
+        return "";
+    }
+
+    /**
+     * 读取场景文件
+     * default为默认场景，models下按模型名设置单独的场景，每个场景是一组步骤
+     */
+    @SuppressWarnings("unchecked")
+    static void loadScenarios(MockModelServer server, Map<String, Object> config) {
+        Object defaults = config.get("default");
+        if (defaults instanceof List<?> steps) {
+            server.setScenario(toScenario((List<Map<String, Object>>) steps));
+        }
+        Object models = config.get("models");
+        if (models instanceof Map<?, ?> modelMap) {
+            for (Map.Entry<?, ?> entry : modelMap.entrySet()) {
+                server.setScenario(String.valueOf(entry.getKey()), toScenario((List<Map<String, Object>>) entry.getValue()));
+            }
+        }
+    }
+
+    private static Scenario toScenario(List<Map<String, Object>> steps) {
+        List<Step> result = new ArrayList<>();
+        for (Map<String, Object> step : steps) {
+            result.add(Step.fromMap(step));
+        }
+        return new Scenario(result);
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 18080;
+        MockModelServer server = new MockModelServer(port);
+        if (args.length > 1) {
+            try (InputStream input = Files.newInputStream(Paths.get(args[1]))) {
+                Map<String, Object> config = new Yaml().load(input);
+                loadScenarios(server, config);
+            }
+        }
+        server.start();
+        System.out.println("模拟模型服务: " + server.getBaseUrl());
+        System.out.println("  OpenAI:    POST /v1/chat/completions");
+        System.out.println("  Anthropic: POST /v1/messages");
+        System.out.println("  Ollama:    POST /api/chat, /api/generate");
+        Thread.currentThread().join();
+    }
+}
@@ -0,0 +1,140 @@
+package cn.ningmo.sim;
+
+import cn.ningmo.sim.MockModelServer.Scenario;
+import cn.ningmo.sim.MockModelServer.Step;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.Yaml;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 模拟模型服务测试类
+ */
+public class MockModelServerTest {
+
+    private final HttpClient http = HttpClient.newHttpClient();
+    private MockModelServer server;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        server = new MockModelServer(0);
+        server.start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.stop();
+    }
+
+    private HttpResponse<String> post(String path, JSONObject body) throws Exception {
+        return http.send(HttpRequest.newBuilder(URI.create(server.getBaseUrl() + path))
+            .POST(HttpRequest.BodyPublishers.ofString(body.toString())).build(), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static JSONObject chat(String model, String text) {
+        return new JSONObject()
+            .put("model", model)
+            .put("messages", new JSONArray()
+                .put(new JSONObject().put("role", "system").put("content", "人设"))
+                .put(new JSONObject().put("role", "user").put("content", text)));
+    }
+
+    @Test
+    void testEchoInEachFormat() throws Exception {
+        HttpResponse<String> openai = post("/v1/chat/completions", chat("gpt", "[小李] 你好 #7"));
+        assertEquals(200, openai.statusCode());
+        assertEquals("收到：[小李] 你好 #7", new JSONObject(openai.body()).getJSONArray("choices")
+            .getJSONObject(0).getJSONObject("message").getString("content"));
+
+        HttpResponse<String> anthropic = post("/v1/messages", chat("claude", "你好"));
+        assertEquals("收到：你好", new JSONObject(anthropic.body()).getJSONArray("content")
+            .getJSONObject(0).getString("text"));
+
+        HttpResponse<String> ollama = post("/api/generate", new JSONObject()
+            .put("model", "llama").put("prompt", "你好").put("stream", false));
+        assertEquals("收到：你好", new JSONObject(ollama.body()).getString("response"));
+    }
+
+    @Test
+    void testStreamingFormats() throws Exception {
+        String text = "这是一条比较长的消息，会被拆成好几段输出";
+
+        String sse = post("/v1/chat/completions", chat("gpt", text).put("stream", true)).body();
+        StringBuilder content = new StringBuilder();
+        for (String line : sse.split("\n")) {
+            if (line.startsWith("data: {")) {
+                JSONObject delta = new JSONObject(line.substring(6)).getJSONArray("choices").getJSONObject(0).getJSONObject("delta");
+                content.append(delta.optString("content"));
+            }
+        }
+        assertEquals("收到：" + text, content.toString());
+        assertTrue(sse.endsWith("data: [DONE]\n\n"));
+
+        String events = post("/v1/messages", chat("claude", text).put("stream", true)).body();
+        assertTrue(events.startsWith("event: message_start\n"));
+        assertTrue(events.contains("event: content_block_delta\n"));
+        assertTrue(events.endsWith("event: message_stop\ndata: {\"type\":\"message_stop\"}\n\n"));
+
+        // Ollama不指定stream时默认流式输出，每行一个JSON
+        String ndjson = post("/api/chat", chat("llama", text)).body();
+        String[] lines = ndjson.split("\n");
+        assertTrue(lines.length > 2);
+        assertFalse(new JSONObject(lines[0]).getBoolean("done"));
+        assertTrue(new JSONObject(lines[lines.length - 1]).getBoolean("done"));
+    }
+
+    @Test
+    void testScenarioSequenceAndFaults() throws Exception {
+        server.setScenario("flaky", Scenario.of(Step.rateLimited(3, 1), Step.status(500, 2), Step.malformed(1), Step.ok()));
+
+        HttpResponse<String> limited = post("/v1/chat/completions", chat("flaky", "你好"));
+        assertEquals(429, limited.statusCode());
+        assertEquals("3", limited.headers().firstValue("Retry-After").orElse(null));
+        assertEquals(500, post("/v1/chat/completions", chat("flaky", "你好")).statusCode());
+        assertEquals(500, post("/v1/chat/completions", chat("flaky", "你好")).statusCode());
+
+        HttpResponse<String> malformed = post("/v1/chat/completions", chat("flaky", "你好"));
+        assertEquals(200, malformed.statusCode());
+        assertThrows(JSONException.class, () -> new JSONObject(malformed.body()));
+
+        // 最后一步一直重复
+        assertEquals(200, post("/v1/chat/completions", chat("flaky", "你好")).statusCode());
+        assertEquals(200, post("/v1/chat/completions", chat("flaky", "你好")).statusCode());
+        // 其他模型使用默认场景
+        assertEquals(200, post("/v1/chat/completions", chat("other", "你好")).statusCode());
+
+        assertEquals(7, server.getRequests());
+        assertEquals(4, server.getErrors());
+    }
+
+    @Test
+    void testLoadScenariosFromYaml() throws Exception {
+        Map<String, Object> config = new Yaml().load(
+            "default:\n"
+            + "  - {reply: 固定回复}\n"
+            + "models:\n"
+            + "  broken:\n"
+            + "    - {status: 503, retry_after: 5}\n");
+        MockModelServer.loadScenarios(server, config);
+
+        HttpResponse<String> ok = post("/v1/messages", chat("any", "你好"));
+        assertEquals("固定回复", new JSONObject(ok.body()).getJSONArray("content").getJSONObject(0).getString("text"));
+
+        HttpResponse<String> broken = post("/v1/messages", chat("broken", "你好"));
+        assertEquals(503, broken.statusCode());
+        assertEquals("5", broken.headers().firstValue("Retry-After").orElse(null));
+        assertEquals("error", new JSONObject(broken.body()).getString("type"));
+        assertEquals(List.of("/v1/messages"), List.copyOf(server.getRequestsByPath().keySet()));
+    }
+}
@@ -0,0 +1,336 @@
+package cn.ningmo.sim;
+
+import cn.ningmo.metrics.Histogram;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 本地OneBot v11 WebSocket服务端模拟
+ * 机器人以正向WebSocket方式连接进来，模拟器向它推送群聊/私聊事件，
+ * 应答send_group_msg、get_group_member_list等接口调用。
+ *
+ * 每条事件的文本末尾带有"#序号"标记，配合回显用户消息的模拟模型服务，
+ * 收到带同一标记的回复时即可算出从发出事件到收到回复的端到端延迟
+ */
+public class OneBotSimulator extends WebSocketServer {
+    private static final Logger logger = LoggerFactory.getLogger(OneBotSimulator.class);
+
+    private static final Pattern TAG_PATTERN = Pattern.compile("#(\\d+)");
+
+    private final long selfId;
+    private final int membersPerGroup;
+    private final CountDownLatch started = new CountDownLatch(1);
+    private final CountDownLatch connected = new CountDownLatch(1);
+    private volatile WebSocket bot;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong messageIds = new AtomicLong(1000);
+    // 序号 -> 事件发出时间（纳秒）
+    private final Map<Long, Long> pending = new ConcurrentHashMap<>();
+    private final Histogram replyLatency = new Histogram();
+    private final LongAdder eventsSent = new LongAdder();
+    private final LongAdder repliesReceived = new LongAdder();
+    private final LongAdder untaggedReplies = new LongAdder();
+    private final Map<String, LongAdder> apiCalls = new ConcurrentHashMap<>();
+    private final List<JSONObject> sentMessages = new CopyOnWriteArrayList<>();
+    private final List<String> untaggedSamples = new CopyOnWriteArrayList<>();
+    private volatile long lastReplyNanos;
+    private volatile boolean keepSentMessages;
+
+    /**
+     * @param port 监听端口，0表示随机端口
+     * @param selfId 模拟的机器人QQ号
+     * @param membersPerGroup get_group_member_list返回的每个群的成员数
+     */
+    public OneBotSimulator(int port, long selfId, int membersPerGroup) {
+        super(new InetSocketAddress("127.0.0.1", port));
+        this.selfId = selfId;
+        this.membersPerGroup = membersPerGroup;
+        setReuseAddr(true);
+    }
+
+    /**
+     * 启动并等待端口就绪
+     */
+    public void startAndWait() throws InterruptedException {
+        start();
+        if (!started.await(10, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("模拟器启动超时");
+        }
+    }
+
+    /**
+     * 等待机器人连接
+     */
+    public boolean awaitConnection(long timeout, TimeUnit unit) throws InterruptedException {
+        return connected.await(timeout, unit);
+    }
+
+    /**
+     * 保留机器人发出的所有消息，供测试检查内容
+     */
+    public void setKeepSentMessages(boolean keepSentMessages) {
+        this.keepSentMessages = keepSentMessages;
+    }
+
+    @Override
+    public void onStart() {
+        logger.info("OneBot模拟器已启动: ws://127.0.0.1:{}", getPort());
+        started.countDown();
+    }
+
+    @Override
+    public void onOpen(WebSocket conn, ClientHandshake handshake) {
+        logger.info("机器人已连接: {}", conn.getRemoteSocketAddress());
+        bot = conn;
+        connected.countDown();
+    }
+
+    @Override
+    public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        logger.info("机器人连接已关闭: code={}, reason={}", code, reason);
+        if (conn == bot) {
+            bot = null;
+        }
+    }
+
+    @Override
+    public void onError(WebSocket conn, Exception ex) {
+        logger.warn("模拟器连接出错", ex);
+    }
+
+    @Override
+    public void onMessage(WebSocket conn, String message) {
+        JSONObject request = new JSONObject(message);
+        String action = request.optString("action");
+        JSONObject params = request.optJSONObject("params");
+        if (params == null) {
+            params = new JSONObject();
+        }
+        apiCalls.computeIfAbsent(action, k -> new LongAdder()).increment();
+
+        Object data;
+        switch (action) {
+            case "send_group_msg", "send_private_msg", "send_msg" -> {
+                onReply(action, params);
+                data = new JSONObject().put("message_id", messageIds.incrementAndGet());
+            }
+            case "get_group_member_list" -> data = memberList(params.optLong("group_id"));
+            case "get_group_member_info" -> data = member(params.optLong("group_id"), params.optLong("user_id"));
+            case "get_login_info" -> data = new JSONObject().put("user_id", selfId).put("nickname", "柠枺");
+            default -> data = new JSONObject();
+        }
+
+        JSONObject response = new JSONObject()
+            .put("status", "ok")
+            .put("retcode", 0)
+            .put("data", data);
+        if (request.has("echo")) {
+            response.put("echo", request.get("echo"));
+        }
+        conn.send(response.toString());
+    }
+
+    private void onReply(String action, JSONObject params) {
+        repliesReceived.increment();
+        long now = System.nanoTime();
+        String text = params.optString("message");
+        if (keepSentMessages) {
+            sentMessages.add(new JSONObject().put("action", action).put("params", params));
+        }
+
+        boolean tagged = false;
+        Matcher matcher = TAG_PATTERN.matcher(text);
+        while (matcher.find()) {
+            Long sentAt = pending.remove(Long.parseLong(matcher.group(1)));
+            if (sentAt != null) {
+                replyLatency.recordNanos(now - sentAt);
+                lastReplyNanos = now;
+                tagged = true;
+            }
+        }
+        if (!tagged) {
+            untaggedReplies.increment();
+            if (untaggedSamples.size() < 5) {
+                untaggedSamples.add(text);
+            }
+        }
+    }
+
+    /**
+     * 推送一条@机器人的群消息
+     * @return 事件序号，出现在消息末尾的"#序号"中
+     */
+    public long sendGroupMessage(long groupId, long userId, String text) {
+        long seq = sequence.incrementAndGet();
+        String tagged = text + " #" + seq;
+        String atCode = "[CQ:at,qq=" + selfId + "]";
+        JSONArray segments = new JSONArray()
+            .put(segment("at", new JSONObject().put("qq", String.valueOf(selfId))))
+            .put(segment("text", new JSONObject().put("text", " " + tagged)));
+        JSONObject event = baseEvent("group", userId)
+            .put("group_id", groupId)
+            .put("sub_type", "normal")
+            .put("raw_message", atCode + " " + tagged)
+            .put("message", segments);
+        event.getJSONObject("sender").put("role", "member").put("card", "");
+        push(seq, event);
+        return seq;
+    }
+
+    /**
+     * 推送一条私聊消息
+     * @return 事件序号
+     */
+    public long sendPrivateMessage(long userId, String text) {
+        long seq = sequence.incrementAndGet();
+        String tagged = text + " #" + seq;
+        JSONObject event = baseEvent("private", userId)
+            .put("sub_type", "friend")
+            .put("raw_message", tagged)
+            .put("message", new JSONArray().put(segment("text", new JSONObject().put("text", tagged))));
+        push(seq, event);
+        return seq;
+    }
+
+    /**
+     * 推送一条录制的事件，文本末尾追加"#序号"标记，message_id、time和self_id改为当前值
+     * @return 事件序号
+     */
+    public long sendRecordedEvent(JSONObject recorded) {
+        long seq = sequence.incrementAndGet();
+        JSONObject event = new JSONObject(recorded.toString())
+            .put("time", System.currentTimeMillis() / 1000)
+            .put("self_id", selfId)
+            .put("message_id", messageIds.incrementAndGet());
+        String tag = " #" + seq;
+        event.put("raw_message", event.optString("raw_message") + tag);
+        Object message = event.opt("message");
+        if (message instanceof JSONArray segments) {
+            segments.put(segment("text", new JSONObject().put("text", tag)));
+        } else if (message instanceof String text) {
+            event.put("message", text + tag);
+        }
+        push(seq, event);
+        return seq;
+    }
+
+    private void push(long seq, JSONObject event) {
+        WebSocket conn = bot;
+        if (conn == null || !conn.isOpen()) {
+            throw new IllegalStateException("机器人未连接");
+        }
+        pending.put(seq, System.nanoTime());
+        conn.send(event.toString());
+        eventsSent.increment();
+    }
+
+    private JSONObject baseEvent(String messageType, long userId) {
+        return new JSONObject()
+            .put("time", System.currentTimeMillis() / 1000)
+            .put("self_id", selfId)
+            .put("post_type", "message")
+            .put("message_type", messageType)
+            .put("message_id", messageIds.incrementAndGet())
+            .put("user_id", userId)
+            .put("font", 0)
+            .put("sender", new JSONObject().put("user_id", userId).put("nickname", "群友" + userId));
+    }
+
+    private static JSONObject segment(String type, JSONObject data) {
+        return new JSONObject().put("type", type).put("data", data);
+    }
+
+    private JSONArray memberList(long groupId) {
+        JSONArray members = new JSONArray();
+        members.put(member(groupId, selfId).put("role", "admin"));
+        for (int i = 0; i < membersPerGroup; i++) {
+            members.put(member(groupId, 10000L + i));
+        }
+        return members;
+    }
+
+    private JSONObject member(long groupId, long userId) {
+        return new JSONObject()
+            .put("group_id", groupId)
+            .put("user_id", userId)
+            .put("nickname", userId == selfId ? "柠枺" : "群友" + userId)
+            .put("card", "")
+            .put("role", "member")
+            .put("last_sent_time", System.currentTimeMillis() / 1000);
+    }
+
+    /**
+     * 从发出事件到收到带同一标记回复的延迟
+     */
+    public Histogram.Snapshot getReplyLatency() {
+        return replyLatency.snapshot();
+    }
+
+    public long getEventsSent() {
+        return eventsSent.sum();
+    }
+
+    public long getRepliesReceived() {
+        return repliesReceived.sum();
+    }
+
+    /**
+     * 没有匹配到任何待回复事件的回复数，例如屏蔽词提示或分段发送的后续段
+     */
+    public long getUntaggedReplies() {
+        return untaggedReplies.sum();
+    }
+
+    /**
+     * 前几条无法对应事件的回复内容，用于排查
+     */
+    public List<String> getUntaggedSamples() {
+        return untaggedSamples;
+    }
+
+    /**
+     * 最后一次收到对应事件回复的时间（System.nanoTime），还没有回复时为0
+     */
+    public long getLastReplyNanos() {
+        return lastReplyNanos;
+    }
+
+    /**
+     * 仍在等待回复的事件数
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 各接口被调用的次数
+     */
+    public Map<String, Long> getApiCalls() {
+        Map<String, Long> counts = new TreeMap<>();
+        apiCalls.forEach((action, count) -> counts.put(action, count.sum()));
+        return counts;
+    }
+
+    public List<JSONObject> getSentMessages() {
+        return sentMessages;
+    }
+}
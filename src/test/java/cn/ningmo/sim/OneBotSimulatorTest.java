@@ -0,0 +1,81 @@
+package cn.ningmo.sim;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.handshake.ServerHandshake;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.net.URI;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OneBot模拟器测试类
+ */
+public class OneBotSimulatorTest {
+
+    @Test
+    void testEventReplyCorrelationAndApiEcho() throws Exception {
+        OneBotSimulator simulator = new OneBotSimulator(0, 3436464181L, 3);
+        simulator.startAndWait();
+        BlockingQueue<JSONObject> received = new LinkedBlockingQueue<>();
+        WebSocketClient client = new WebSocketClient(URI.create("ws://127.0.0.1:" + simulator.getPort())) {
+            @Override
+            public void onOpen(ServerHandshake handshake) {
+            }
+
+            @Override
+            public void onMessage(String message) {
+                received.add(new JSONObject(message));
+            }
+
+            @Override
+            public void onClose(int code, String reason, boolean remote) {
+            }
+
+            @Override
+            public void onError(Exception ex) {
+            }
+        };
+        try {
+            assertTrue(client.connectBlocking(5, TimeUnit.SECONDS));
+            assertTrue(simulator.awaitConnection(5, TimeUnit.SECONDS));
+
+            long seq = simulator.sendGroupMessage(123, 10001, "你好");
+            JSONObject event = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event);
+            assertEquals("group", event.getString("message_type"));
+            assertTrue(event.getString("raw_message").startsWith("[CQ:at,qq=3436464181]"));
+            assertTrue(event.getString("raw_message").endsWith("#" + seq));
+            assertEquals(1, simulator.getPendingCount());
+
+            // 回复中带有事件标记时计入端到端延迟
+            client.send(new JSONObject()
+                .put("action", "send_group_msg")
+                .put("params", new JSONObject().put("group_id", 123).put("message", "[CQ:at,qq=10001] 收到：你好 #" + seq))
+                .put("echo", "send_group_msg_1")
+                .toString());
+            JSONObject sendResponse = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(sendResponse);
+            assertEquals("send_group_msg_1", sendResponse.getString("echo"));
+            assertEquals(0, simulator.getPendingCount());
+            assertEquals(1, simulator.getReplyLatency().getCount());
+
+            client.send(new JSONObject()
+                .put("action", "get_group_member_list")
+                .put("params", new JSONObject().put("group_id", 123))
+                .put("echo", "api_get_group_member_list_2")
+                .toString());
+            JSONObject members = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(members);
+            assertEquals("api_get_group_member_list_2", members.getString("echo"));
+            // 机器人自己加上3个成员
+            assertEquals(4, members.getJSONArray("data").length());
+        } finally {
+            client.closeBlocking();
+            simulator.stop(1000);
+        }
+    }
+}
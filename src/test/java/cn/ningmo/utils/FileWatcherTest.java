@@ -0,0 +1,90 @@
+package cn.ningmo.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.Watchable;
+import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 目录变化监听测试类
+ */
+public class FileWatcherTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void testBurstOfWritesTriggersOneCallback() throws Exception {
+        Semaphore changes = new Semaphore(0);
+        FileWatcher watcher = new FileWatcher(directory, path -> path.toString().endsWith(".md"),
+                                              300, changes::release, "Test-Watcher");
+        assertTrue(watcher.start());
+        try {
+            Files.writeString(directory.resolve("ignored.txt"), "x");
+            for (int i = 0; i < 5; i++) {
+                Files.writeString(directory.resolve("catgirl.md"), "内容" + i);
+            }
+
+            // Linux下WatchService事件通常很快到达，其他平台轮询间隔较长
+            assertTrue(changes.tryAcquire(15, TimeUnit.SECONDS));
+            assertFalse(changes.tryAcquire(1, TimeUnit.SECONDS));
+        } finally {
+            watcher.stop();
+        }
+    }
+
+    @Test
+    void testOverflowEventCountsAsChange() {
+        FileWatcher watcher = new FileWatcher(directory, path -> path.toString().endsWith(".md"),
+                                              300, () -> { }, "Test-Watcher");
+
+        // 溢出事件没有文件名，也要触发回调重新读取
+        assertTrue(watcher.matches(new StubKey(List.of(new StubEvent<>(StandardWatchEventKinds.OVERFLOW, null)))));
+        assertFalse(watcher.matches(new StubKey(List.of(
+            new StubEvent<>(StandardWatchEventKinds.ENTRY_MODIFY, Path.of("ignored.txt"))))));
+        assertTrue(watcher.matches(new StubKey(List.of(
+            new StubEvent<>(StandardWatchEventKinds.ENTRY_MODIFY, Path.of("catgirl.md"))))));
+    }
+
+    private record StubEvent<T>(WatchEvent.Kind<T> kind, T context) implements WatchEvent<T> {
+        @Override
+        public int count() {
+            return 1;
+        }
+    }
+
+    private record StubKey(List<WatchEvent<?>> events) implements WatchKey {
+        @Override
+        public boolean isValid() {
+            return true;
+        }
+
+        @Override
+        public List<WatchEvent<?>> pollEvents() {
+            return events;
+        }
+
+        @Override
+        public boolean reset() {
+            return true;
+        }
+
+        @Override
+        public void cancel() {
+        }
+
+        @Override
+        public Watchable watchable() {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package cn.ningmo.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Base64;
+
+/**
+ * 图片磁盘缓存测试类
+ */
+public class ImageDiskCacheTest {
+
+    @TempDir
+    Path cacheDir;
+
+    @Test
+    void testPutAndGet() {
+        ImageDiskCache cache = new ImageDiskCache(cacheDir, 1024);
+        byte[] data = {1, 2, 3, 4, 5};
+        cache.put("8C1676777917BC5B.jpg@1568", data);
+
+        assertEquals(Base64.getEncoder().encodeToString(data), cache.getBase64("8C1676777917BC5B.jpg@1568"));
+        assertNull(cache.getBase64("other.jpg@1568"));
+    }
+
+    @Test
+    void testIndexRebuiltAfterRestart() {
+        ImageDiskCache cache = new ImageDiskCache(cacheDir, 1024);
+        cache.put("a", new byte[100]);
+        cache.put("b", new byte[200]);
+
+        ImageDiskCache reopened = new ImageDiskCache(cacheDir, 1024);
+        assertEquals(2, reopened.size());
+        assertEquals(300, reopened.getTotalBytes());
+        assertNotNull(reopened.getBase64("a"));
+    }
+
+    @Test
+    void testStaleTempFilesAreDeletedOnStartup() throws Exception {
+        Path staleTemp = cacheDir.resolve("0123abcd.tmp");
+        Files.write(staleTemp, new byte[500]);
+
+        ImageDiskCache cache = new ImageDiskCache(cacheDir, 1024);
+        assertFalse(Files.exists(staleTemp));
+        assertEquals(0, cache.getTotalBytes());
+    }
+
+    @Test
+    void testLeastRecentlyUsedIsEvicted() throws Exception {
+        ImageDiskCache cache = new ImageDiskCache(cacheDir, 1000);
+        cache.put("old", new byte[400]);
+        Thread.sleep(5);
+        cache.put("recent", new byte[400]);
+        Thread.sleep(5);
+        // 访问old后，recent成为最久未使用的
+        assertNotNull(cache.getBase64("old"));
+        Thread.sleep(5);
+        cache.put("new", new byte[400]);
+
+        assertNotNull(cache.getBase64("old"));
+        assertNull(cache.getBase64("recent"));
+        assertNotNull(cache.getBase64("new"));
+        assertTrue(cache.getTotalBytes() <= 1000);
+    }
+}
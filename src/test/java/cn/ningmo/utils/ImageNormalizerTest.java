@@ -0,0 +1,116 @@
+package cn.ningmo.utils;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.util.Base64;
+import java.util.zip.CRC32;
+
+/**
+ * 图片规范化测试类
+ */
+public class ImageNormalizerTest {
+
+    private final ImageNormalizer normalizer = new ImageNormalizer(512, 0.85f);
+
+    private static byte[] createImage(int width, int height, int type, String format) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, type);
+        for (int x = 0; x < width; x += 7) {
+            for (int y = 0; y < height; y += 5) {
+                image.setRGB(x, y, (x * 31 + y * 17) & 0xFFFFFF);
+            }
+        }
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, format, output));
+        return output.toByteArray();
+    }
+
+    @Test
+    void testSniffMimeType() throws Exception {
+        assertEquals("image/png", ImageNormalizer.sniffMimeType(createImage(4, 4, BufferedImage.TYPE_INT_ARGB, "png")));
+        assertEquals("image/gif", ImageNormalizer.sniffMimeType(createImage(4, 4, BufferedImage.TYPE_INT_RGB, "gif")));
+        assertEquals("image/jpeg", ImageNormalizer.sniffMimeType(createImage(4, 4, BufferedImage.TYPE_INT_RGB, "jpeg")));
+        assertEquals("image/webp", ImageNormalizer.sniffMimeType("RIFF\0\0\0\0WEBPVP8 ".getBytes()));
+        assertNull(ImageNormalizer.sniffMimeType("{\"retcode\":0}".getBytes()));
+    }
+
+    @Test
+    void testSniffMimeTypeFromBase64() throws Exception {
+        String png = Base64.getEncoder().encodeToString(createImage(4, 4, BufferedImage.TYPE_INT_ARGB, "png"));
+        assertEquals("image/png", ImageNormalizer.sniffMimeTypeFromBase64(png));
+        assertEquals("image/jpeg", ImageNormalizer.sniffMimeTypeFromBase64("not-an-image"));
+    }
+
+    @Test
+    void testLargePngIsDownscaledToJpeg() throws Exception {
+        byte[] png = createImage(2000, 1000, BufferedImage.TYPE_INT_ARGB, "png");
+        ImageNormalizer.NormalizedImage result = normalizer.normalize(png, 0);
+
+        assertNotNull(result);
+        assertEquals("image/jpeg", result.getMimeType());
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(result.getData()));
+        assertEquals(512, decoded.getWidth());
+        assertEquals(256, decoded.getHeight());
+    }
+
+    @Test
+    void testModelMaxEdgeOverridesDefault() throws Exception {
+        byte[] jpeg = createImage(1200, 600, BufferedImage.TYPE_INT_RGB, "jpeg");
+        ImageNormalizer.NormalizedImage result = normalizer.normalize(jpeg, 1000);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(result.getData()));
+        assertEquals(1000, decoded.getWidth());
+    }
+
+    @Test
+    void testSmallJpegIsKeptAsIs() throws Exception {
+        byte[] jpeg = createImage(100, 100, BufferedImage.TYPE_INT_RGB, "jpeg");
+        ImageNormalizer.NormalizedImage result = normalizer.normalize(jpeg, 0);
+
+        assertSame(jpeg, result.getData());
+        assertEquals("image/jpeg", result.getMimeType());
+    }
+
+    @Test
+    void testVeryLargeImageIsSubsampledWhileDecoding() throws Exception {
+        byte[] png = createImage(4000, 2000, BufferedImage.TYPE_INT_RGB, "png");
+        ImageNormalizer.NormalizedImage result = normalizer.normalize(png, 0);
+
+        BufferedImage decoded = ImageIO.read(new ByteArrayInputStream(result.getData()));
+        assertEquals(512, decoded.getWidth());
+        assertEquals(256, decoded.getHeight());
+    }
+
+    @Test
+    void testImageDeclaringHugeDimensionsIsRejectedBeforeDecoding() throws Exception {
+        // 只有文件头的PNG，声明100000x100000像素，完整解码需要几十GB内存
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(output);
+        out.write(new byte[] {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'});
+        ByteArrayOutputStream ihdr = new ByteArrayOutputStream();
+        DataOutputStream chunk = new DataOutputStream(ihdr);
+        chunk.writeBytes("IHDR");
+        chunk.writeInt(100_000);
+        chunk.writeInt(100_000);
+        chunk.write(new byte[] {8, 6, 0, 0, 0});
+        CRC32 crc = new CRC32();
+        crc.update(ihdr.toByteArray());
+        out.writeInt(13);
+        out.write(ihdr.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        assertNull(normalizer.normalize(output.toByteArray(), 0));
+        assertNull(new ImageNormalizer(512, 0.85f, 1000)
+            .normalize(createImage(100, 100, BufferedImage.TYPE_INT_RGB, "png"), 0));
+    }
+
+    @Test
+    void testNonImageIsRejected() {
+        assertNull(normalizer.normalize("<html></html>".getBytes(), 0));
+    }
+}
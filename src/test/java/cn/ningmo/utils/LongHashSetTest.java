@@ -0,0 +1,47 @@
+package cn.ningmo.utils;
+
+import org.junit.jupiter.api.Test;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * long哈希集合测试类
+ */
+public class LongHashSetTest {
+
+    @Test
+    void testMatchesHashSetUnderRandomAddAndRemove() {
+        LongHashSet set = new LongHashSet(4);
+        Set<Long> expected = new HashSet<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            // 取值范围较小，保证有大量冲突和删除
+            long key = random.nextInt(2000) - 10;
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(key), set.add(key));
+            } else {
+                assertEquals(expected.remove(key), set.remove(key));
+            }
+        }
+        assertEquals(expected.size(), set.size());
+        for (long key = -10; key < 1990; key++) {
+            assertEquals(expected.contains(key), set.contains(key), "key=" + key);
+        }
+    }
+
+    @Test
+    void testCopyIsIndependent() {
+        LongHashSet set = new LongHashSet();
+        set.add(123456789L);
+        LongHashSet copy = set.copy();
+        copy.add(987654321L);
+        copy.remove(123456789L);
+
+        assertTrue(set.contains(123456789L));
+        assertFalse(set.contains(987654321L));
+        assertArrayEquals(new long[]{987654321L}, copy.toSortedArray());
+    }
+}